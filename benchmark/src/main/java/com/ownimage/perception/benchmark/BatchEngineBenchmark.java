@@ -0,0 +1,124 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.perception.app.Properties;
+import com.ownimage.perception.app.Services;
+import com.ownimage.perception.render.BaseBatchEngine;
+import com.ownimage.perception.render.IBatchTransform;
+import com.ownimage.perception.render.JTPBatchEngine;
+import com.ownimage.perception.render.RenderService;
+import com.ownimage.perception.render.TransformResultBatch;
+import com.ownimage.perception.transform.PolarTransform;
+import com.ownimage.perception.transform.RotateTransform;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the same ImageLoad, Rotate, Polar chain with each of the batch engine strategies. The JTP strategies are the ones that
+ * JTPBatchEngine.transform chooses between by hand, jtpPipelined is JTPBatchEngine.render which overlaps generating, transforming
+ * and writing back the batches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BatchEngineBenchmark {
+
+    @Param({"256", "1024", "2048"})
+    public int mSize;
+
+    @Param({"base", "jtpOriginal", "jtpNew", "jtpNoThreads", "jtpParallelStream", "jtpPipelined", "tile"})
+    public String mStrategy;
+
+    private RenderService mRenderService;
+    private BaseBatchEngine mBaseBatchEngine;
+    private JTPBatchEngine mJTPBatchEngine;
+    private TransformResultBatch mBatch;
+    private IBatchTransform mTransform;
+    private PictureType mPicture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        val perception = BenchmarkSupport.getPerception();
+        val imageLoad = BenchmarkSupport.createImageLoadTransform(mSize);
+        val rotate = new RotateTransform(perception);
+        rotate.setPreviousTransform(imageLoad);
+        val polar = new PolarTransform(perception);
+        polar.setPreviousTransform(rotate);
+        mTransform = polar;
+
+        final Properties properties = Services.getServices().getProperties();
+        mRenderService = Services.getServices().getRenderService();
+        mBaseBatchEngine = new BaseBatchEngine();
+        mJTPBatchEngine = new JTPBatchEngine(mRenderService, properties.getRenderThreadPoolSize(), properties.getRenderJTPBatchSize());
+        mBatch = new TransformResultBatch(mRenderService, properties.getRenderBatchSize());
+        mPicture = new PictureType(mSize);
+    }
+
+    @Benchmark
+    public PictureType render() {
+        if ("tile".equals(mStrategy)) {
+            mRenderService.getTileBatchEngine().render(mPicture, mTransform, 1, p -> {
+            }, () -> false);
+            return mPicture;
+        }
+
+        if ("jtpPipelined".equals(mStrategy)) {
+            mJTPBatchEngine.render(mPicture, mTransform, 1, mBatch.getMaxBatchSize(), p -> {
+            }, () -> false);
+            return mPicture;
+        }
+
+        mBatch.initialize(mPicture, "base".equals(mStrategy) ? mBaseBatchEngine : mJTPBatchEngine, mBatch.getMaxBatchSize());
+        while (mBatch.hasNext()) {
+            mBatch.next(1);
+            for (IBatchTransform transform = mTransform; transform != null; transform = transform.getPreviousTransform()) {
+                transform(transform);
+            }
+            mBatch.render(mPicture, 1);
+        }
+        return mPicture;
+    }
+
+    private void transform(final IBatchTransform pTransform) {
+        switch (mStrategy) {
+            case "base":
+                mBaseBatchEngine.transform(mBatch, pTransform);
+                break;
+            case "jtpOriginal":
+                mJTPBatchEngine.transformOriginal(mBatch, pTransform);
+                break;
+            case "jtpNew":
+                mJTPBatchEngine.transformNew(mBatch, pTransform);
+                break;
+            case "jtpNoThreads":
+                mJTPBatchEngine.transformNoThreads(mBatch, pTransform);
+                break;
+            case "jtpParallelStream":
+                mJTPBatchEngine.transformParallelStream(mBatch, pTransform);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + mStrategy);
+        }
+    }
+}
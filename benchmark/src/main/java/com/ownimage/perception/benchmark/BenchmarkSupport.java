@@ -0,0 +1,119 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.util.Framework;
+import com.ownimage.framework.util.ImageQuality;
+import com.ownimage.framework.view.factory.ViewFactory;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.app.Services;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.transform.CannyEdgeTransform;
+import com.ownimage.perception.transform.ImageLoadTransform;
+import com.ownimage.perception.transform.cannyEdge.CannyEdgeDetectorFactory;
+import lombok.NonNull;
+import lombok.val;
+
+import java.awt.*;
+import java.io.File;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Helpers that create the synthetic pictures and transforms that the benchmarks run against. The pictures are generated rather
+ * than loaded so that the benchmarks can be run anywhere and give the same result each time.
+ */
+public class BenchmarkSupport {
+
+    private final static Logger mLogger = Framework.getLogger();
+
+    static {
+        LogManager.getLogManager().reset();
+        // FXViewFactory.setAsViewFactory() has to be called from the main thread and the benchmarks run on the JMH worker threads,
+        // the controls only need the factory to exist, no views are created
+        try {
+            ViewFactory.setViewFactory(FXViewFactory.getInstance());
+        } catch (final IllegalStateException pISE) {
+            mLogger.fine("ViewFactory already set");
+        }
+    }
+
+    public static Perception getPerception() {
+        return Services.getServices().getPerception();
+    }
+
+    /**
+     * Creates a square picture of concentric rings over a diagonal gradient with a few solid discs, which gives a mix of smooth
+     * areas, hard edges and curves at every size.
+     *
+     * @param pSize the width and height of the picture
+     * @return the picture
+     */
+    public static PictureType createPicture(final int pSize) {
+        val picture = new PictureType(pSize, pSize);
+        val colors = new int[pSize * pSize];
+        for (int y = 0; y < pSize; y++) {
+            for (int x = 0; x < pSize; x++) {
+                final double dx = (double) x / pSize - 0.5d;
+                final double dy = (double) y / pSize - 0.5d;
+                final double r = Math.sqrt(dx * dx + dy * dy);
+                final int ring = ((int) (r * 20)) % 2 == 0 ? 200 : 55;
+                final int gradient = (255 * (x + y)) / (2 * pSize);
+                int rgb = new Color(ring, gradient, 255 - gradient).getRGB();
+                for (int disc = 0; disc < 3; disc++) {
+                    final double cx = 0.2d + 0.3d * disc - 0.5d;
+                    final double cy = 0.7d - 0.25d * disc - 0.5d;
+                    if ((dx - cx) * (dx - cx) + (dy - cy) * (dy - cy) < 0.01d) {
+                        rgb = Color.WHITE.getRGB();
+                    }
+                }
+                colors[y * pSize + x] = rgb;
+            }
+        }
+        picture.setColors(colors);
+        return picture;
+    }
+
+    /**
+     * Creates an ImageLoadTransform for a synthetic picture. The picture is written to a temporary jpg as ImageLoadTransform can
+     * only be created from a file.
+     *
+     * @param pSize the width and height of the picture
+     * @return the transform
+     */
+    public static ImageLoadTransform createImageLoadTransform(final int pSize) throws Exception {
+        val file = File.createTempFile("benchmark" + pSize + "_", ".jpg");
+        file.deleteOnExit();
+        createPicture(pSize).save(file, new ImageQuality(1.0f));
+        return new ImageLoadTransform(getPerception(), file);
+    }
+
+    /**
+     * Runs an edge detector over the picture.
+     *
+     * @param pTransform the CannyEdgeTransform that owns the detector, this needs to have a previous transform of the same size as
+     *                   the picture
+     * @param pPicture   the picture
+     * @param pType      the type of edge detector
+     * @return the edges
+     */
+    public static ImmutablePixelMap createEdges(
+            @NonNull final CannyEdgeTransform pTransform,
+            @NonNull final PictureType pPicture,
+            @NonNull final CannyEdgeDetectorFactory.Type pType
+    ) {
+        val detector = CannyEdgeDetectorFactory.createInstance(pTransform, pType);
+        try {
+            detector.setSourceImage(pPicture);
+            detector.process(null);
+            return detector.getEdgeData();
+        } finally {
+            detector.dispose();
+        }
+    }
+}
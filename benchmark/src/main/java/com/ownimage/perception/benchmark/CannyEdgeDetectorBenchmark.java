@@ -0,0 +1,66 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.aparapi.device.OpenCLDevice;
+import com.aparapi.internal.kernel.KernelManager;
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.transform.CannyEdgeTransform;
+import com.ownimage.perception.transform.cannyEdge.CannyEdgeDetectorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each of the CannyEdgeDetector variants over a synthetic picture, including writing the edges into the pixel map.
+ * <p>
+ * The OPENCL variant needs an OpenCL device and so is not run by default, run it with -p mType=OPENCL. It fails in setUp if there
+ * is no device rather than timing the Java fallback that Aparapi would otherwise use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CannyEdgeDetectorBenchmark {
+
+    @Param({"256", "1024", "2048"})
+    public int mSize;
+
+    @Param({"SINGLE_THREAD", "JAVA_THREADS"})
+    public CannyEdgeDetectorFactory.Type mType;
+
+    private CannyEdgeTransform mTransform;
+    private PictureType mPicture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (mType == CannyEdgeDetectorFactory.Type.OPENCL && !(KernelManager.instance().bestDevice() instanceof OpenCLDevice)) {
+            throw new IllegalStateException("The OPENCL variant needs an OpenCL device and there is none.");
+        }
+        mTransform = new CannyEdgeTransform(BenchmarkSupport.getPerception());
+        mTransform.setPreviousTransform(BenchmarkSupport.createImageLoadTransform(mSize));
+        mPicture = BenchmarkSupport.createPicture(mSize);
+    }
+
+    @Benchmark
+    public ImmutablePixelMap process() {
+        return BenchmarkSupport.createEdges(mTransform, mPicture, mType);
+    }
+}
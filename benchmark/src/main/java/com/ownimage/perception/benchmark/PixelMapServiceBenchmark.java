@@ -0,0 +1,91 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.ownimage.framework.persist.SortedProperties;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.services.Config;
+import com.ownimage.perception.pixelMap.services.PixelMapApproximationService;
+import com.ownimage.perception.pixelMap.services.PixelMapService;
+import com.ownimage.perception.transform.CannyEdgeTransform;
+import com.ownimage.perception.transform.cannyEdge.CannyEdgeDetectorFactory;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the approximation of the edges of a synthetic picture, and the writing and reading of the resulting pixel map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PixelMapServiceBenchmark {
+
+    private final static String ID = "transform.2.cannyEdge";
+
+    @Param({"256", "512", "1024"})
+    public int mSize;
+
+    private PixelMapService mPixelMapService;
+    private PixelMapApproximationService mPixelMapApproximationService;
+    private ImmutablePixelMap mEdges;
+    private ImmutablePixelMap mProcessed;
+    private SortedProperties mWritten;
+    private double mTolerance;
+    private double mLineCurvePreference;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final ApplicationContext context = new AnnotationConfigApplicationContext(Config.class);
+        mPixelMapService = context.getBean(PixelMapService.class);
+        mPixelMapApproximationService = context.getBean(PixelMapApproximationService.class);
+
+        val transform = new CannyEdgeTransform(BenchmarkSupport.getPerception());
+        transform.setPreviousTransform(BenchmarkSupport.createImageLoadTransform(mSize));
+        mTolerance = transform.getLineTolerance() / transform.getHeight();
+        mLineCurvePreference = transform.getLineCurvePreference();
+
+        mEdges = BenchmarkSupport.createEdges(transform, BenchmarkSupport.createPicture(mSize), CannyEdgeDetectorFactory.Type.SINGLE_THREAD);
+        mProcessed = mPixelMapApproximationService.actionProcess(mEdges, mTolerance, mLineCurvePreference, null);
+        mWritten = new SortedProperties();
+        mPixelMapService.write(mProcessed, mWritten, ID);
+    }
+
+    @Benchmark
+    public ImmutablePixelMap actionProcess() {
+        return mPixelMapApproximationService.actionProcess(mEdges, mTolerance, mLineCurvePreference, null);
+    }
+
+    @Benchmark
+    public SortedProperties write() throws IOException {
+        val db = new SortedProperties();
+        mPixelMapService.write(mProcessed, db, ID);
+        return db;
+    }
+
+    @Benchmark
+    public ImmutablePixelMap read() {
+        return mPixelMapService.read(mWritten, ID);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.ownimage.perception.pixelMap.IPixelChain;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.immutable.SegmentGrid;
+import com.ownimage.perception.pixelMap.services.Config;
+import com.ownimage.perception.pixelMap.services.PixelMapApproximationService;
+import com.ownimage.perception.pixelMap.services.PixelMapService;
+import com.ownimage.perception.transform.CannyEdgeTransform;
+import com.ownimage.perception.transform.cannyEdge.CannyEdgeDetectorFactory;
+import io.vavr.Tuple2;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the SegmentGrid of a pixel map after an edit that makes one line thick, built from scratch and made from the grid of the
+ * version before the edit. Each withChanges call applies the edit or undoes it, in turn, as the editor does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SegmentGridBenchmark {
+
+    private static final int EDITED_PIXEL_COUNT = 40;
+
+    @Param({"256", "512", "1024"})
+    public int mSize;
+
+    private ImmutablePixelMap mProcessed;
+    private ImmutablePixelMap mEdited;
+    private Tuple2<List<ImmutablePixelChain>, List<ImmutablePixelChain>> mEdit;
+    private SegmentGrid mSegmentGrid;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final ApplicationContext context = new AnnotationConfigApplicationContext(Config.class);
+        val pixelMapService = context.getBean(PixelMapService.class);
+        val pixelMapApproximationService = context.getBean(PixelMapApproximationService.class);
+
+        val transform = new CannyEdgeTransform(BenchmarkSupport.getPerception());
+        transform.setPreviousTransform(BenchmarkSupport.createImageLoadTransform(mSize));
+        val edges = BenchmarkSupport.createEdges(transform, BenchmarkSupport.createPicture(mSize),
+                CannyEdgeDetectorFactory.Type.SINGLE_THREAD);
+        mProcessed = pixelMapApproximationService.actionProcess(edges,
+                transform.getLineTolerance() / transform.getHeight(), transform.getLineCurvePreference(), null);
+        // edit a chain that indexes about as many pixels at every size, so that only the size of the map changes
+        val pixelChain = mProcessed.pixelChains().stream()
+                .min(Comparator.comparingInt(pc -> Math.abs(indexPixelCount(mProcessed, pc) - EDITED_PIXEL_COUNT)))
+                .orElseThrow();
+        mEdited = pixelMapService.pixelChainsReplaceAll(mProcessed,
+                List.of(new Tuple2<>(pixelChain, pixelChain.withThickness(IPixelChain.Thickness.Thick))));
+        mEdit = pixelMapService.getChangedPixelChains(mProcessed, mEdited);
+        mSegmentGrid = new SegmentGrid(mProcessed);
+    }
+
+    private static int indexPixelCount(final ImmutablePixelMap pPixelMap, final ImmutablePixelChain pPixelChain) {
+        return pPixelChain.segments().stream().mapToInt(s -> s.getIndexPixels(pPixelMap, pPixelChain).size()).sum();
+    }
+
+    @Benchmark
+    public SegmentGrid build() {
+        return new SegmentGrid(mEdited);
+    }
+
+    @Benchmark
+    public SegmentGrid withChanges() {
+        mSegmentGrid = mSegmentGrid.isFor(mProcessed)
+                ? SegmentGrid.withChanges(mSegmentGrid, mEdited, mEdit._1, mEdit._2)
+                : SegmentGrid.withChanges(mSegmentGrid, mProcessed, mEdit._2, mEdit._1);
+        return mSegmentGrid;
+    }
+}
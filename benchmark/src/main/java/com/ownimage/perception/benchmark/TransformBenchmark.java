@@ -0,0 +1,164 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.benchmark;
+
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.app.Services;
+import com.ownimage.perception.pixelMap.services.Config;
+import com.ownimage.perception.pixelMap.services.PixelMapApproximationService;
+import com.ownimage.perception.render.BaseBatchEngine;
+import com.ownimage.perception.render.TransformResultBatch;
+import com.ownimage.perception.transform.BorderTransform;
+import com.ownimage.perception.transform.CannyEdgeTransform;
+import com.ownimage.perception.transform.CircleMaskTransform;
+import com.ownimage.perception.transform.CropTransform;
+import com.ownimage.perception.transform.ITransform;
+import com.ownimage.perception.transform.ImageLoadTransform;
+import com.ownimage.perception.transform.LayerCakeTransform;
+import com.ownimage.perception.transform.OutputTransform;
+import com.ownimage.perception.transform.PolarTransform;
+import com.ownimage.perception.transform.QuadSpaceTransform;
+import com.ownimage.perception.transform.RotateTransform;
+import com.ownimage.perception.transform.RuleOfThirdsTransform;
+import com.ownimage.perception.transform.SoftSquarePolarTransform;
+import com.ownimage.perception.transform.SquarePolarTransform;
+import com.ownimage.perception.transform.VariableStretch3Transform;
+import com.ownimage.perception.transform.WoodcutTransform;
+import com.ownimage.perception.transform.cannyEdge.CannyEdgeDetectorFactory;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single transform, on its own, over one batch that covers every pixel of a synthetic picture. The batch is
+ * regenerated before each invocation as the transforms change the sample positions in place.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransformBenchmark {
+
+    @Param({"256", "1024"})
+    public int mSize;
+
+    @Param({"imageLoad", "border", "cannyEdge", "circleMask", "crop", "layerCake", "output", "polar", "quadSpace", "rotate",
+            "ruleOfThirds", "softSquarePolar", "squarePolar", "variableStretch3", "woodcut"})
+    public String mTransformName;
+
+    private ITransform mTransform;
+    private BaseBatchEngine mBatchEngine;
+    private TransformResultBatch mBatch;
+    private PictureType mPicture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        val imageLoad = BenchmarkSupport.createImageLoadTransform(mSize);
+        mTransform = createTransform(BenchmarkSupport.getPerception(), imageLoad);
+        mBatchEngine = new BaseBatchEngine();
+        mBatch = new TransformResultBatch(Services.getServices().getRenderService(), mSize * mSize);
+        mPicture = new PictureType(mSize);
+    }
+
+    private ITransform createTransform(final Perception pPerception, final ImageLoadTransform pImageLoad) {
+        final ITransform transform;
+        switch (mTransformName) {
+            case "imageLoad":
+                return pImageLoad;
+            case "border":
+                transform = new BorderTransform(pPerception);
+                break;
+            case "cannyEdge":
+                transform = createCannyEdgeTransform(pPerception, pImageLoad);
+                break;
+            case "circleMask":
+                transform = new CircleMaskTransform(pPerception);
+                break;
+            case "crop":
+                transform = new CropTransform(pPerception);
+                break;
+            case "layerCake":
+                transform = new LayerCakeTransform(pPerception);
+                break;
+            case "output":
+                transform = new OutputTransform(pPerception);
+                break;
+            case "polar":
+                transform = new PolarTransform(pPerception);
+                break;
+            case "quadSpace":
+                transform = new QuadSpaceTransform(pPerception);
+                break;
+            case "rotate":
+                transform = new RotateTransform(pPerception);
+                break;
+            case "ruleOfThirds":
+                transform = new RuleOfThirdsTransform(pPerception);
+                break;
+            case "softSquarePolar":
+                transform = new SoftSquarePolarTransform(pPerception);
+                break;
+            case "squarePolar":
+                transform = new SquarePolarTransform(pPerception);
+                break;
+            case "variableStretch3":
+                transform = new VariableStretch3Transform(pPerception);
+                break;
+            case "woodcut":
+                transform = new WoodcutTransform(pPerception);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transform " + mTransformName);
+        }
+        if (transform.getPreviousTransform() == null) {
+            transform.setPreviousTransform(pImageLoad);
+        }
+        return transform;
+    }
+
+    /**
+     * The CannyEdgeTransform only draws lines once it has a pixel map, so the edges of the synthetic picture are generated and
+     * approximated up front.
+     */
+    private CannyEdgeTransform createCannyEdgeTransform(final Perception pPerception, final ImageLoadTransform pImageLoad) {
+        val transform = new CannyEdgeTransform(pPerception);
+        transform.setPreviousTransform(pImageLoad);
+
+        val edges = BenchmarkSupport.createEdges(transform, BenchmarkSupport.createPicture(mSize), CannyEdgeDetectorFactory.Type.SINGLE_THREAD);
+        val approximationService = new AnnotationConfigApplicationContext(Config.class).getBean(PixelMapApproximationService.class);
+        val tolerance = transform.getLineTolerance() / transform.getHeight();
+        transform.setPixelMap(approximationService.actionProcess(edges, tolerance, transform.getLineCurvePreference(), null));
+        return transform;
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBatch() {
+        mBatch.initialize(mPicture, mBatchEngine, mSize * mSize);
+        mBatch.next(1);
+    }
+
+    @Benchmark
+    public TransformResultBatch transform() {
+        mTransform.transform(mBatch, 0, mBatch.getBatchSize());
+        return mBatch;
+    }
+}
@@ -22,6 +22,9 @@ import javax.imageio.ImageWriter;
 import javax.imageio.stream.FileImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -77,6 +80,11 @@ public class PictureType implements IType<NullMetaType<PictureType>, PictureType
      */
     private final BufferedImage mImage;
 
+    /**
+     * The read only view of the pixels, this is created on demand by getView() and discarded whenever the picture is changed.
+     */
+    private volatile PictureView mView;
+
 
     /**
      * Instantiates a new picture type.
@@ -209,6 +217,49 @@ public class PictureType implements IType<NullMetaType<PictureType>, PictureType
         return mImage;
     }
 
+    /**
+     * Gets a read only view of the pixels. The view is not synchronized and creates no objects when it is read, so it should be used
+     * in preference to getColor when the picture is sampled from many threads, e.g. during a render.
+     * <p>
+     * If the picture is changed after the view has been created then a view that shares the raster of the picture will see the
+     * change and a view that holds a copy of the pixels will not, so a new view should be obtained after any change.
+     *
+     * @return the view
+     */
+    public PictureView getView() {
+        PictureView view = mView;
+        if (view == null) {
+            synchronized (this) {
+                view = mView;
+                if (view == null) {
+                    view = createView();
+                    mView = view;
+                }
+            }
+        }
+        return view;
+    }
+
+    private PictureView createView() {
+        final int type = mImage.getType();
+        final WritableRaster raster = mImage.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == mWidth
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0) {
+            final int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            return new PictureView(pixels, mWidth, mHeight, mIs360, type == BufferedImage.TYPE_INT_RGB);
+        }
+
+        mLogger.fine(() -> "PictureType.createView() copying pixels for image type " + type);
+        return new PictureView(getColors(), mWidth, mHeight, mIs360, false);
+    }
+
     public synchronized Optional<Color> getColor(final double pX, final double pY) {
         final int x = (int) (pX * mWidth);
         final int y = (int) (pY * mHeight);
@@ -482,6 +533,7 @@ public class PictureType implements IType<NullMetaType<PictureType>, PictureType
     public void set360(final boolean pIs360) {
         testIsLocked();
         mIs360 = pIs360;
+        mView = null;
     }
 
     /**
@@ -515,6 +567,7 @@ public class PictureType implements IType<NullMetaType<PictureType>, PictureType
 
         try {
             mImage.setRGB(x, mHeight - pY - 1, pColor.getRGB());
+            mView = null;
         } catch (final Exception pEx) {
             if (mLogger.isLoggable(Level.SEVERE)) {
                 mLogger.severe(pX + " " + pY + " Out of bounds");
@@ -581,6 +634,36 @@ public class PictureType implements IType<NullMetaType<PictureType>, PictureType
         }
 
         mImage.setRGB(0, 0, mWidth, mHeight, pColors, 0, mWidth);
+        mView = null;
+    }
+
+    /**
+     * Sets the colors of a rectangular region of the picture. The colors are packed ARGB values held row by row, the first row
+     * being the row at pY, i.e. the same orientation as setColor(int, int, Color). This is not synchronized so that different
+     * threads can write disjoint regions of the same picture at the same time; it is up to the caller to ensure that the regions
+     * do not overlap.
+     *
+     * @param pX      the left most x of the region
+     * @param pY      the bottom most y of the region
+     * @param pWidth  the width of the region
+     * @param pHeight the height of the region
+     * @param pColors the packed ARGB colors, must hold at least pWidth * pHeight values
+     */
+    public void setColors(final int pX, final int pY, final int pWidth, final int pHeight, @NonNull final int[] pColors) {
+        testIsLocked();
+
+        if (pX < 0 || pY < 0 || pWidth < 0 || pHeight < 0 || pX + pWidth > mWidth || pY + pHeight > mHeight) {
+            throw new IllegalArgumentException(
+                    "Region (" + pX + ", " + pY + ", " + pWidth + ", " + pHeight + ") is not inside the picture " + mWidth + "x" + mHeight);
+        }
+        if (pColors.length < pWidth * pHeight) {
+            throw new IllegalArgumentException("pColors.length = " + pColors.length + " pWidth * pHeight = " + pWidth * pHeight);
+        }
+
+        for (int row = 0; row < pHeight; row++) {
+            mImage.setRGB(pX, mHeight - pY - row - 1, pWidth, 1, pColors, row * pWidth, pWidth);
+        }
+        mView = null;
     }
 
     /*
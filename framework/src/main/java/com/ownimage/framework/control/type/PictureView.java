@@ -0,0 +1,180 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.framework.control.type;
+
+import lombok.NonNull;
+
+import java.awt.*;
+import java.util.Optional;
+
+/**
+ * The Class PictureView is a read only view of the pixels of a PictureType. It is obtained from PictureType.getView().
+ * <p>
+ * The pixels are held as packed ARGB ints in a single array, row by row, so none of the getters are synchronized and none of them
+ * create any objects. This makes it suitable for sampling the picture from many render threads at once. The coordinates are the
+ * same as PictureType, i.e. y = 0 is the bottom row, and if the picture was 360 when the view was created then x wraps round.
+ * <p>
+ * Where the picture is held as TYPE_INT_ARGB or TYPE_INT_RGB the view shares the raster of the picture, otherwise the view holds a
+ * copy of the pixels that is made when the view is created. The view itself can never be used to change the picture.
+ */
+public class PictureView implements IPictureSource {
+
+    private final static int OPAQUE = 0xFF000000;
+
+    private final int[] mPixels;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mIs360;
+    private final int mAlpha;
+
+    /**
+     * Instantiates a new picture view.
+     *
+     * @param pPixels the packed pixels, row by row with the top row first, i.e. the same layout as a BufferedImage raster
+     * @param pWidth  the width
+     * @param pHeight the height
+     * @param pIs360  whether x wraps round
+     * @param pOpaque whether the alpha of the pixels should be ignored and the pixels treated as opaque, e.g. for TYPE_INT_RGB
+     */
+    PictureView(@NonNull final int[] pPixels, final int pWidth, final int pHeight, final boolean pIs360, final boolean pOpaque) {
+        if (pPixels.length < pWidth * pHeight) {
+            throw new IllegalArgumentException("pPixels.length = " + pPixels.length + " pWidth * pHeight = " + pWidth * pHeight);
+        }
+
+        mPixels = pPixels;
+        mWidth = pWidth;
+        mHeight = pHeight;
+        mIs360 = pIs360;
+        mAlpha = pOpaque ? OPAQUE : 0;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public boolean is360() {
+        return mIs360;
+    }
+
+    /**
+     * Indicates whether the (x, y) coordinate is inside the picture. For a 360 picture any x is inside.
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return true if the coordinate is inside the picture
+     */
+    public boolean contains(final int pX, final int pY) {
+        return 0 <= pY && pY < mHeight && (mIs360 || (0 <= pX && pX < mWidth));
+    }
+
+    /**
+     * Gets the packed ARGB color at the (x, y) coordinate. There is no bounds checking other than that done by the JVM, so the
+     * coordinate must satisfy contains(x, y).
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return the packed ARGB color
+     */
+    public int getARGB(final int pX, final int pY) {
+        final int x = mIs360 ? Math.floorMod(pX, mWidth) : pX;
+        return mPixels[(mHeight - pY - 1) * mWidth + x] | mAlpha;
+    }
+
+    /**
+     * Gets the packed ARGB color at the (x, y) coordinate, or pOutOfBounds if the coordinate is outside the picture.
+     *
+     * @param pX           the x
+     * @param pY           the y
+     * @param pOutOfBounds the value returned if the coordinate is outside the picture
+     * @return the packed ARGB color
+     */
+    public int getARGB(final int pX, final int pY, final int pOutOfBounds) {
+        return contains(pX, pY) ? getARGB(pX, pY) : pOutOfBounds;
+    }
+
+    /**
+     * Gets the packed ARGB color at the (x, y) coordinate, where x and y are in the range 0.0d to 1.0d. This uses the same mapping
+     * as PictureType.getColor(double, double).
+     *
+     * @param pX           the x
+     * @param pY           the y
+     * @param pOutOfBounds the value returned if the coordinate is outside the picture
+     * @return the packed ARGB color
+     */
+    public int getARGB(final double pX, final double pY, final int pOutOfBounds) {
+        return getARGB((int) (pX * mWidth), (int) (pY * mHeight), pOutOfBounds);
+    }
+
+    /**
+     * Copies part of a row of the picture into pRow. Unlike getARGB this does not wrap for a 360 picture, so the pixels from pX to
+     * pX + pWidth - 1 must all be inside the picture.
+     *
+     * @param pY      the y of the row
+     * @param pX      the x of the first pixel to copy
+     * @param pWidth  the number of pixels to copy
+     * @param pRow    the destination
+     * @param pOffset the index in pRow of the first pixel
+     * @return pRow
+     */
+    public int[] getRow(final int pY, final int pX, final int pWidth, @NonNull final int[] pRow, final int pOffset) {
+        if (pY < 0 || pY >= mHeight || pX < 0 || pWidth < 0 || pX + pWidth > mWidth) {
+            throw new IllegalArgumentException(
+                    "Row (" + pX + ", " + pY + ", " + pWidth + ") is not inside the picture " + mWidth + "x" + mHeight);
+        }
+
+        final int start = (mHeight - pY - 1) * mWidth + pX;
+        System.arraycopy(mPixels, start, pRow, pOffset, pWidth);
+        if (mAlpha != 0) {
+            for (int i = pOffset; i < pOffset + pWidth; i++) {
+                pRow[i] |= mAlpha;
+            }
+        }
+        return pRow;
+    }
+
+    /**
+     * Copies the whole of row pY into pRow. If pRow is null or is the wrong length a new array is created.
+     *
+     * @param pY   the y of the row
+     * @param pRow the destination, can be null
+     * @return the row
+     */
+    public int[] getRow(final int pY, final int[] pRow) {
+        final int[] row = pRow != null && pRow.length == mWidth ? pRow : new int[mWidth];
+        return getRow(pY, 0, mWidth, row, 0);
+    }
+
+    /**
+     * Gets the color at the (x, y) coordinate. This is provided to allow the view to be used in place of the PictureType, the
+     * getARGB methods should be used where performance matters as they do not create any objects.
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return the color, or empty if the coordinate is outside the picture
+     */
+    @Override
+    public Optional<Color> getColor(final int pX, final int pY) {
+        return contains(pX, pY) ? Optional.of(new Color(getARGB(pX, pY))) : Optional.empty();
+    }
+
+    /**
+     * Gets the color at the (x, y) coordinate, where x and y are in the range 0.0d to 1.0d. This uses the same mapping as
+     * PictureType.getColor(double, double).
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return the color, or empty if the coordinate is outside the picture
+     */
+    public Optional<Color> getColor(final double pX, final double pY) {
+        return getColor((int) (pX * mWidth), (int) (pY * mHeight));
+    }
+}
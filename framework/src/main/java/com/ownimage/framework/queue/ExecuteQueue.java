@@ -7,50 +7,102 @@ package com.ownimage.framework.queue;
 
 import com.ownimage.framework.util.Framework;
 import lombok.NonNull;
-import lombok.val;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * The Class ExecuteQueue.
+ * The Class ExecuteQueue runs jobs in the background on a small set of long lived worker threads.
+ * <p>
+ * Jobs are taken in priority order, and within a priority the most recently created job is taken first. The queue has two lanes:
+ * jobs with a priority of LOW or LOWEST are background jobs and can use all but one of the workers, so that there is always a
+ * worker free for the foreground jobs, i.e. NORMAL and above.
+ * <p>
+ * Submitting a job cancels any queued jobs, and terminates any running job, that have the same control object. A job is not started
+ * while a job with the same control object is still running, so the jobs for a control object run one at a time in the order in
+ * which they would have run on a single worker.
  */
 public class ExecuteQueue {
 
 
     private final static Logger mLogger = Framework.getLogger();
 
+    public final static int DEFAULT_WORKER_COUNT = 3;
+
+    /**
+     * The order in which the jobs are taken from the queue. Note: this comparator imposes orderings that are inconsistent with
+     * equals.
+     */
+    private final static Comparator<IJob> mJobOrder = (pJob1, pJob2) -> {
+        final int priorityOrder = pJob1.getPriority().ordinal() - pJob2.getPriority().ordinal();
+        if (priorityOrder != 0) {
+            return priorityOrder;
+        }
+
+        if (pJob1.getCreateDate().equals(pJob2.getCreateDate())) {
+            return 0;
+        }
+
+        final int dateOrder = pJob1.getCreateDate().before(pJob2.getCreateDate()) ? 1 : -1;
+        return dateOrder;
+    };
+
     private static final ExecuteQueue mExecuteQueue = new ExecuteQueue();
 
     /**
-     * The job queue.
+     * The job queue. This is also the lock for all of the state of the queue.
      */
     private final PriorityQueue<IJob> mQueue;
 
     /**
-     * The running ExecuteThread.
+     * The running jobs.
      */
-    private ExecuteThread mRunningThread;
+    private final List<IJob> mRunning = new ArrayList<>();
 
     /**
-     * Instantiates a new execute queue.
+     * The worker threads.
      */
-    private ExecuteQueue() {
-        mQueue = new PriorityQueue<>((pJob1, pJob2) -> {
-            // Note: this comparator imposes orderings that are inconsistent with equals.
-            final int priorityOrder = pJob1.getPriority().ordinal() - pJob2.getPriority().ordinal();
-            if (priorityOrder != 0) {
-                return priorityOrder;
-            }
+    private final List<Worker> mWorkers = new ArrayList<>();
+
+    private int mWorkerCount = DEFAULT_WORKER_COUNT;
+    private int mWorkerId = 0;
 
-            if (pJob1.getCreateDate().equals(pJob2.getCreateDate())) {
-                return 0;
+    private class Worker extends Thread {
+
+        private Worker(final int pId) {
+            super("ExecuteQueue-" + pId);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            for (Optional<IJob> job = take(this); job.isPresent(); job = take(this)) {
+                final String name = getName();
+                try {
+                    setName(name + " " + job.get().getName());
+                    ExecuteThread.execute(job.get());
+                } catch (final Throwable pThrowable) {
+                    // e.g. the job could not be moved to FAILED, this must not stop the worker
+                    Framework.logThrowable(mLogger, Level.SEVERE, pThrowable);
+                } finally {
+                    setName(name);
+                    finished(job.get());
+                }
             }
+        }
+    }
 
-            final int dateOrder = pJob1.getCreateDate().before(pJob2.getCreateDate()) ? 1 : -1;
-            return dateOrder;
-        });
+    /**
+     * Instantiates a new execute queue.
+     */
+    private ExecuteQueue() {
+        mQueue = new PriorityQueue<>(mJobOrder);
     }
 
     public static ExecuteQueue getInstance() {
@@ -63,34 +115,102 @@ public class ExecuteQueue {
      * @return the depth
      */
     public int getDepth() {
-        return mQueue.size();
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    public int getWorkerCount() {
+        synchronized (mQueue) {
+            return mWorkerCount;
+        }
     }
 
     /**
-     * Run next.
+     * Sets the number of worker threads. If this is reduced then the extra workers finish their current job before they stop.
+     *
+     * @param pWorkerCount the worker count, this must be at least 1
      */
-    void runNext() {
+    public void setWorkerCount(final int pWorkerCount) {
+        Framework.logEntry(mLogger);
+        Framework.checkParameterGreaterThanEqual(mLogger, pWorkerCount, 1, "pWorkerCount");
+
+        synchronized (mQueue) {
+            mWorkerCount = pWorkerCount;
+            runNext();
+        }
+
+        Framework.logExit(mLogger);
+    }
+
+    private boolean isBackground(final IJob pJob) {
+        return pJob.getPriority().ordinal() > IJob.Priority.NORMAL.ordinal();
+    }
+
+    /**
+     * Indicates whether the job can be started now. It cannot be started if a job with the same control object is still running or
+     * if it is a background job and the background lane is full.
+     */
+    private boolean canStart(final IJob pJob) {
+        final Object controlObject = pJob.getControlObject();
+        if (controlObject != null && mRunning.stream().anyMatch(j -> j.getControlObject() == controlObject)) {
+            return false;
+        }
+
+        if (isBackground(pJob) && mWorkerCount > 1) {
+            final long background = mRunning.stream().filter(this::isBackground).count();
+            return background < mWorkerCount - 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Blocks until there is a job that the worker can run. This returns empty if the worker is no longer needed, in which case the
+     * worker must stop.
+     */
+    private Optional<IJob> take(final Worker pWorker) {
         synchronized (mQueue) {
-            // if something is already running then we are done
-            final ExecuteThread runningThread = mRunningThread;
+            while (true) {
+                if (mWorkers.indexOf(pWorker) >= mWorkerCount) {
+                    mWorkers.remove(pWorker);
+                    return Optional.empty();
+                }
 
-            if (runningThread != Thread.currentThread()) {
-                if (runningThread != null && runningThread.isAlive()) {
-                    return;
+                final Optional<IJob> job = mQueue.stream().filter(this::canStart).min(mJobOrder);
+                if (job.isPresent()) {
+                    mQueue.remove(job.get());
+                    mRunning.add(job.get());
+                    return job;
+                }
+
+                try {
+                    mQueue.wait();
+                } catch (final InterruptedException pE) {
+                    Framework.logThrowable(mLogger, Level.SEVERE, pE);
                 }
             }
+        }
+    }
 
-            // get the head of the queue
-            final IJob job = mQueue.size() != 0 ? mQueue.remove() : null;
+    private void finished(final IJob pJob) {
+        synchronized (mQueue) {
+            mRunning.remove(pJob);
+            runNext();
+        }
+    }
 
-            // if the queue is empty we are done
-            if (job == null) {
-                return;
+    /**
+     * Run next. This makes sure that there are enough workers and wakes them up so that they can take any jobs that can now be run.
+     */
+    void runNext() {
+        synchronized (mQueue) {
+            while (mWorkers.size() < mWorkerCount && mWorkers.size() < mRunning.size() + mQueue.size()) {
+                final Worker worker = new Worker(mWorkerId++);
+                mWorkers.add(worker);
+                worker.start();
             }
-
-            // kick off new thread
-            mRunningThread = new ExecuteThread(job);
-            mRunningThread.start();
+            mQueue.notifyAll();
         }
     }
 
@@ -105,18 +225,17 @@ public class ExecuteQueue {
         synchronized (mQueue) {
             pJob.queued();
 
-            final ExecuteThread runningThread = mRunningThread;
-            if (
-                    runningThread != null && runningThread.getJob().getControlObject() != null
-                            && runningThread.getJob().getControlObject() == pJob.getControlObject()
-            ) {
-                runningThread.getJob().terminate();
+            final Object controlObject = pJob.getControlObject();
+            if (controlObject != null) {
+                mRunning.stream()
+                        .filter(j -> j.getControlObject() == controlObject)
+                        .forEach(IJob::terminate);
             }
 
             final Vector<IJob> remove = new Vector<>();
 
             for (final IJob job : mQueue) {
-                if (job.getControlObject() == pJob.getControlObject()) {
+                if (job.getControlObject() == controlObject) {
                     job.cancel();
                     remove.add(job);
                 }
@@ -135,8 +254,14 @@ public class ExecuteQueue {
         submit(job);
     }
 
+    /**
+     * Indicates whether there are any jobs running or waiting to run.
+     *
+     * @return true if the queue is busy
+     */
     public boolean isBusy() {
-        val runningThread = mRunningThread;
-        return runningThread != null && runningThread.isAlive();
+        synchronized (mQueue) {
+            return !mRunning.isEmpty() || !mQueue.isEmpty();
+        }
     }
 }
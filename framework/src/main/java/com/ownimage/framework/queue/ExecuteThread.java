@@ -52,28 +52,41 @@ public class ExecuteThread extends Thread {
         Framework.logEntry(mLogger);
 
         try {
-            mJob.doJob();
+            execute(mJob);
+        } finally {
+            ExecuteQueue.getInstance().runNext();
+            mLogger.finest("ExecuteQueue.getInstance().runNext() - DONE");
+
+            Framework.logExit(mLogger);
+        }
+    }
+
+    /**
+     * Runs the job on the calling thread. When the job completes this calls complete() on the job. If there is an exception thrown
+     * during the processing of the doJob method then the exception is passed to the error method of the job. This is used by both
+     * the ExecuteThread and the workers of the ExecuteQueue.
+     *
+     * @param pJob the job
+     */
+    static void execute(final IJob pJob) {
+        try {
+            pJob.doJob();
             mLogger.finest("mJob.doJob() - DONE");
 
-            if (mJob.getStatus() == Status.RUNNING) {
-                mJob.complete();
+            if (pJob.getStatus() == Status.RUNNING) {
+                pJob.complete();
                 mLogger.finest("mJob.complete() - DONE");
             }
 
-            if (mJob.getStatus() == Status.TERMINATED) {
+            if (pJob.getStatus() == Status.TERMINATED) {
                 mLogger.finest("TERMINATED");
             }
 
         } catch (final Throwable pThrowable) {
-            mJob.error(pThrowable);
+            pJob.error(pThrowable);
             mLogger.finest("mJob.error() - DONE");
             Framework.logThrowable(mLogger, Level.SEVERE, pThrowable);
-        } finally {
-            ExecuteQueue.getInstance().runNext();
-            mLogger.finest("ExecuteQueue.getInstance().runNext() - DONE");
-
-            Framework.logExit(mLogger);
         }
     }
 
-}
\ No newline at end of file
+}
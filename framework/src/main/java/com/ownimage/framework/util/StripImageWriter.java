@@ -0,0 +1,186 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.framework.util;
+
+import lombok.NonNull;
+import lombok.val;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.File;
+import java.util.Hashtable;
+import java.util.logging.Logger;
+
+/**
+ * Writes an image to a jpg or png file a horizontal strip at a time so that the whole image never has to be held in memory. The
+ * image writers read the image from the top row down, so the pixels are supplied by a StripRenderer that is asked for each strip
+ * as the writer reaches it, and only the current strip is held. Peak memory is therefore the strip size plus whatever the encoder
+ * itself buffers, rather than the size of the image.
+ * <p>
+ * This works by giving the writer a BufferedImage whose DataBuffer renders the strips on demand. The writers only read the image
+ * from one thread, in row order, so no locking is needed; reading the rows out of order still gives the right result but means
+ * that strips are rendered more than once.
+ */
+public class StripImageWriter {
+
+    public final static Logger mLogger = Framework.getLogger();
+
+    /**
+     * Supplies the pixels of a strip of the image.
+     */
+    @FunctionalInterface
+    public interface StripRenderer {
+        /**
+         * Renders the rows pRow to pRow + pRows - 1 of the image, where row 0 is the top of the image.
+         *
+         * @param pRow   the top row of the strip
+         * @param pRows  the number of rows in the strip
+         * @param pStrip receives the packed RGB colors row by row, top row first, with a row length of the image width
+         */
+        void render(int pRow, int pRows, int[] pStrip) throws Exception;
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStripHeight;
+    private final StripRenderer mRenderer;
+    private final int[] mStrip;
+
+    private int mStripStart = -1;
+    private int mStripEnd = -1;
+
+    public StripImageWriter(final int pWidth, final int pHeight, final int pStripHeight, @NonNull final StripRenderer pRenderer) {
+        Framework.checkParameterGreaterThan(mLogger, pWidth, 0, "pWidth");
+        Framework.checkParameterGreaterThan(mLogger, pHeight, 0, "pHeight");
+        Framework.checkParameterGreaterThan(mLogger, pStripHeight, 0, "pStripHeight");
+        if ((long) pWidth * pHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image " + pWidth + "x" + pHeight + " has too many pixels to be written");
+        }
+
+        mWidth = pWidth;
+        mHeight = pHeight;
+        mStripHeight = Math.min(pStripHeight, pHeight);
+        mRenderer = pRenderer;
+        mStrip = new int[pWidth * mStripHeight];
+    }
+
+    private static String getExtension(@NonNull final File pFile) {
+        val fileName = pFile.getName();
+        val i = fileName.lastIndexOf('.');
+        return i > 0 ? fileName.substring(i + 1).toLowerCase() : "";
+    }
+
+    /**
+     * Whether the file is of a type that can be written a strip at a time, i.e. .jpg or .png.
+     *
+     * @param pFile the file
+     * @return true if the file can be written by a StripImageWriter
+     */
+    public static boolean isSupported(@NonNull final File pFile) {
+        val extension = getExtension(pFile);
+        return "jpg".equals(extension) || "png".equals(extension);
+    }
+
+    public int getStripHeight() {
+        return mStripHeight;
+    }
+
+    /**
+     * Writes the image to pFile, the format is given by the extension which must be .jpg or .png. The StripRenderer is called from
+     * the calling thread.
+     *
+     * @param pFile         the file
+     * @param pImageQuality the image quality, only used for jpg
+     * @throws Exception if the strips cannot be rendered or the file cannot be written
+     */
+    public void write(@NonNull final File pFile, @NonNull final ImageQuality pImageQuality) throws Exception {
+        Framework.logEntry(mLogger);
+
+        if (!isSupported(pFile)) {
+            throw new IllegalArgumentException("Extension of file " + pFile.getAbsolutePath() + " needs to be one of .jpg or .png.");
+        }
+
+        val extension = getExtension(pFile);
+        val writer = ImageIO.getImageWritersByFormatName(extension).next();
+        val iwp = writer.getDefaultWriteParam();
+        if ("jpg".equals(extension)) {
+            iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            iwp.setCompressionQuality(pImageQuality.getJPGQuality());
+        }
+
+        mStripStart = -1;
+        mStripEnd = -1;
+        try (final FileImageOutputStream output = new FileImageOutputStream(pFile)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(createImage(), null, null), iwp);
+        } catch (StripRenderException pEx) {
+            throw (Exception) pEx.getCause();
+        } finally {
+            writer.dispose();
+        }
+
+        Framework.logExit(mLogger);
+    }
+
+    private BufferedImage createImage() {
+        val colorModel = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        val sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, mWidth, mHeight, colorModel.getMasks());
+        val raster = Raster.createWritableRaster(sampleModel, new StripDataBuffer(), null);
+        return new BufferedImage(colorModel, raster, false, new Hashtable<>());
+    }
+
+    private void loadStrip(final int pRow) {
+        mStripStart = pRow - pRow % mStripHeight;
+        mStripEnd = Math.min(mStripStart + mStripHeight, mHeight);
+        try {
+            mRenderer.render(mStripStart, mStripEnd - mStripStart, mStrip);
+        } catch (Exception pEx) {
+            mStripStart = -1;
+            mStripEnd = -1;
+            throw new StripRenderException(pEx);
+        }
+    }
+
+    /**
+     * Carries an exception from the StripRenderer out through the image writer so that write can rethrow it.
+     */
+    private static class StripRenderException extends RuntimeException {
+        private StripRenderException(final Exception pCause) {
+            super(pCause);
+        }
+    }
+
+    /**
+     * A read only DataBuffer that holds one strip of the image, moving to the strip that holds the requested element.
+     */
+    private class StripDataBuffer extends DataBuffer {
+
+        private StripDataBuffer() {
+            super(TYPE_INT, mWidth * mHeight);
+        }
+
+        @Override
+        public int getElem(final int pBank, final int pIndex) {
+            val row = pIndex / mWidth;
+            if (row < mStripStart || row >= mStripEnd) {
+                loadStrip(row);
+            }
+            return mStrip[pIndex - mStripStart * mWidth];
+        }
+
+        @Override
+        public void setElem(final int pBank, final int pIndex, final int pValue) {
+            throw new UnsupportedOperationException("StripImageWriter images are read only");
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.framework.util.immutable;
+
+import com.ownimage.framework.util.Framework;
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * An immutable, versioned 2D map of bytes. This has the same versioning as ImmutableMap2D, i.e. all of the versions share a single
+ * master and moving between versions replays the changes, but the values are held as primitive bytes in square pages rather than
+ * as boxed values in a HashMap. A page is only created when a value in it is set to something other than the default value, so
+ * a sparse map uses very little memory and a dense map uses one byte per pixel. None of the getters or setters create keys or box
+ * the values.
+ */
+public class ImmutableByteMap2D extends ImmutableNode<ImmutableByteMap2D.ByteMap2D> {
+
+    public static final Logger mLogger = Framework.getLogger();
+
+    @FunctionalInterface
+    public interface ByteConsumerXY {
+        void accept(int pX, int pY, byte pValue);
+    }
+
+    public ImmutableByteMap2D(int pWidth, int pHeight, byte pDefaultValue) {
+        super(new ByteMap2D(pWidth, pHeight, pDefaultValue));
+    }
+
+    private ImmutableByteMap2D(ByteMap2D pMaster) {
+        super(pMaster);
+    }
+
+    private ImmutableByteMap2D(ImmutableByteMap2D pPrevious, Consumer<ByteMap2D> pRedo, Consumer<ByteMap2D> pUndo) {
+        super(pPrevious, pRedo, pUndo);
+    }
+
+    /**
+     * Creates a new map with every value given by pGenerator. This is much faster than calling set for every value as no versions
+     * are created.
+     *
+     * @param pWidth        the width
+     * @param pHeight       the height
+     * @param pDefaultValue the default value
+     * @param pGenerator    gives the value at (x, y), the result is cast to a byte
+     * @return the new map
+     */
+    public static ImmutableByteMap2D generate(int pWidth, int pHeight, byte pDefaultValue, IntBinaryOperator pGenerator) {
+        val master = new ByteMap2D(pWidth, pHeight, pDefaultValue);
+        for (int x = 0; x < pWidth; x++) {
+            for (int y = 0; y < pHeight; y++) {
+                master.set(x, y, (byte) pGenerator.applyAsInt(x, y));
+            }
+        }
+        return new ImmutableByteMap2D(master);
+    }
+
+    public int width() {
+        synchronized (getSynchronisationObject()) {
+            return getMaster().width();
+        }
+    }
+
+    public int height() {
+        synchronized (getSynchronisationObject()) {
+            return getMaster().height();
+        }
+    }
+
+    public byte get(int pX, int pY) {
+        synchronized (getSynchronisationObject()) {
+            return getMaster().get(pX, pY);
+        }
+    }
+
+    /**
+     * Gets the number of values that are not the default value.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (getSynchronisationObject()) {
+            return getMaster().mSize;
+        }
+    }
+
+    public ImmutableByteMap2D set(int pX, int pY, byte pNewValue) {
+        synchronized (getSynchronisationObject()) {
+            byte currentValue = getMaster().get(pX, pY);
+            if (pNewValue == currentValue) {
+                return this;
+            }
+            Consumer<ByteMap2D> redo = m -> m.set(pX, pY, pNewValue);
+            Consumer<ByteMap2D> undo = m -> m.set(pX, pY, currentValue);
+            return new ImmutableByteMap2D(this, redo, undo);
+        }
+    }
+
+    public ImmutableByteMap2D clear() {
+        synchronized (getSynchronisationObject()) {
+            val master = getMaster();
+            return new ImmutableByteMap2D(new ByteMap2D(master.mWidth, master.mHeight, master.mDefaultValue));
+        }
+    }
+
+    /**
+     * Creates a new map with pFn applied to every value, including the default value.
+     *
+     * @param pFn the function, the result is cast to a byte
+     * @return the new map
+     */
+    public ImmutableByteMap2D forEach(IntUnaryOperator pFn) {
+        synchronized (getSynchronisationObject()) {
+            val master = getMaster();
+            val copy = new ByteMap2D(master.mWidth, master.mHeight, (byte) pFn.applyAsInt(master.mDefaultValue));
+            for (int i = 0; i < master.mPages.length; i++) {
+                val page = master.mPages[i];
+                if (page != null) {
+                    val newPage = new byte[page.length];
+                    for (int j = 0; j < page.length; j++) {
+                        newPage[j] = (byte) pFn.applyAsInt(page[j]);
+                    }
+                    copy.setPage(i, newPage);
+                }
+            }
+            return new ImmutableByteMap2D(copy);
+        }
+    }
+
+    /**
+     * Calls pConsumer for every value that is not the default value. The values are visited page by page so the order is not
+     * defined.
+     *
+     * @param pConsumer the consumer
+     */
+    public void forEachValue(ByteConsumerXY pConsumer) {
+        synchronized (getSynchronisationObject()) {
+            getMaster().forEachValue(pConsumer);
+        }
+    }
+
+    public static class ByteMap2D {
+        private final static int PAGE_SHIFT = 6;
+        private final static int PAGE_SIZE = 1 << PAGE_SHIFT;
+        private final static int PAGE_MASK = PAGE_SIZE - 1;
+
+        private final int mWidth;
+        private final int mHeight;
+        private final byte mDefaultValue;
+        private final int mPagesAcross;
+        private final byte[][] mPages;
+        private int mSize;
+
+        public ByteMap2D(int pWidth, int pHeight, byte pDefaultValue) {
+            mWidth = pWidth;
+            mHeight = pHeight;
+            mDefaultValue = pDefaultValue;
+            mPagesAcross = (pWidth + PAGE_SIZE - 1) >> PAGE_SHIFT;
+            mPages = new byte[mPagesAcross * ((pHeight + PAGE_SIZE - 1) >> PAGE_SHIFT)][];
+        }
+
+        public int width() {
+            return mWidth;
+        }
+
+        public int height() {
+            return mHeight;
+        }
+
+        private int pageIndex(int pX, int pY) {
+            return (pY >> PAGE_SHIFT) * mPagesAcross + (pX >> PAGE_SHIFT);
+        }
+
+        private static int offset(int pX, int pY) {
+            return ((pY & PAGE_MASK) << PAGE_SHIFT) + (pX & PAGE_MASK);
+        }
+
+        public byte get(int pX, int pY) {
+            checkXY(pX, pY);
+            val page = mPages[pageIndex(pX, pY)];
+            return page != null ? page[offset(pX, pY)] : mDefaultValue;
+        }
+
+        public void set(int pX, int pY, byte pValue) {
+            checkXY(pX, pY);
+            val pageIndex = pageIndex(pX, pY);
+            var page = mPages[pageIndex];
+            if (page == null) {
+                if (pValue == mDefaultValue) {
+                    return;
+                }
+                page = new byte[PAGE_SIZE * PAGE_SIZE];
+                if (mDefaultValue != 0) {
+                    Arrays.fill(page, mDefaultValue);
+                }
+                mPages[pageIndex] = page;
+            }
+            val offset = offset(pX, pY);
+            val oldValue = page[offset];
+            if (oldValue == mDefaultValue && pValue != mDefaultValue) {
+                mSize++;
+            } else if (oldValue != mDefaultValue && pValue == mDefaultValue) {
+                mSize--;
+            }
+            page[offset] = pValue;
+        }
+
+        private void setPage(int pPageIndex, byte[] pPage) {
+            mPages[pPageIndex] = pPage;
+            val pageX = (pPageIndex % mPagesAcross) << PAGE_SHIFT;
+            val pageY = (pPageIndex / mPagesAcross) << PAGE_SHIFT;
+            for (int j = 0; j < pPage.length; j++) {
+                if (pPage[j] != mDefaultValue && isInside(pageX + (j & PAGE_MASK), pageY + (j >> PAGE_SHIFT))) {
+                    mSize++;
+                }
+            }
+        }
+
+        private boolean isInside(int pX, int pY) {
+            return pX < mWidth && pY < mHeight;
+        }
+
+        private void forEachValue(ByteConsumerXY pConsumer) {
+            for (int i = 0; i < mPages.length; i++) {
+                val page = mPages[i];
+                if (page == null) {
+                    continue;
+                }
+                val pageX = (i % mPagesAcross) << PAGE_SHIFT;
+                val pageY = (i / mPagesAcross) << PAGE_SHIFT;
+                for (int j = 0; j < page.length; j++) {
+                    val x = pageX + (j & PAGE_MASK);
+                    val y = pageY + (j >> PAGE_SHIFT);
+                    if (page[j] != mDefaultValue && isInside(x, y)) {
+                        pConsumer.accept(x, y, page[j]);
+                    }
+                }
+            }
+        }
+
+        private void checkXY(int pX, int pY) {
+            if (pX < 0 || pY < 0 || pX >= mWidth || pY >= mHeight) {
+                Framework.checkParameterGreaterThanEqual(mLogger, pX, 0, "pX");
+                Framework.checkParameterGreaterThanEqual(mLogger, pY, 0, "pY");
+                Framework.checkParameterLessThan(mLogger, pX, mWidth, "pX");
+                Framework.checkParameterLessThan(mLogger, pY, mHeight, "pY");
+            }
+        }
+    }
+}
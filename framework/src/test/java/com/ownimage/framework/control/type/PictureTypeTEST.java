@@ -600,6 +600,96 @@ public class PictureTypeTEST implements IUndoRedoBufferProvider {
         mPicture.setString("");
     }
 
+    @Test
+    // public void setColors(int pX, int pY, int pWidth, int pHeight, int[] pColors) {
+    public void PictureType_setColors_region_00() {
+        final int[] region = new int[]{
+                mTestColor1.getRGB(), mTestColor1.getRGB(), mTestColor1.getRGB(),
+                mTestColor2.getRGB(), mTestColor2.getRGB(), mTestColor2.getRGB()
+        };
+        mPicture.setColors(10, 20, 3, 2, region);
+        assertEquals("first row", mTestColor1, mPicture.getColor(12, 20).get());
+        assertEquals("second row", mTestColor2, mPicture.getColor(10, 21).get());
+        assertFalse("outside region", mTestColor2.equals(mPicture.getColor(13, 21).get()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    // public void setColors(int pX, int pY, int pWidth, int pHeight, int[] pColors) {
+    public void PictureType_setColors_region_01() {
+        mPicture.setColors(98, 0, 3, 1, new int[3]);
+    }
+
+    @Test
+    // public PictureView getView()
+    public void PictureType_getView_00() {
+        mPicture.setColor(3, 4, mTestColor1);
+        mPicture.setColor(99, 0, mTestColor2);
+        final PictureView view = mPicture.getView();
+
+        assertEquals(100, view.getWidth());
+        assertEquals(100, view.getHeight());
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 100; y++) {
+                assertEquals(mPicture.getBufferedImage().getRGB(x, 99 - y), view.getARGB(x, y));
+            }
+        }
+        assertEquals(mTestColor1, view.getColor(3, 4).get());
+        assertEquals(mTestColor2.getRGB(), view.getARGB(0.999d, 0.0d, 0));
+        assertEquals(17, view.getARGB(100, 4, 17));
+        assertEquals(17, view.getARGB(4, -1, 17));
+        assertFalse(view.getColor(-1, 4).isPresent());
+    }
+
+    @Test
+    // public PictureView getView()
+    public void PictureType_getView_01() {
+        mPicture.set360(true);
+        mPicture.setColor(99, 10, mTestColor1);
+        final PictureView view = mPicture.getView();
+
+        assertTrue(view.is360());
+        assertTrue(view.contains(-1, 10));
+        assertEquals(mTestColor1.getRGB(), view.getARGB(-1, 10));
+        assertEquals(mTestColor1.getRGB(), view.getARGB(199, 10));
+    }
+
+    @Test
+    // public PictureView getView()
+    public void PictureType_getView_02() {
+        final PictureView before = mPicture.getView();
+        assertTrue(before == mPicture.getView());
+
+        mPicture.setColor(5, 6, mTestColor1);
+        final PictureView after = mPicture.getView();
+        assertFalse(before == after);
+        assertEquals(mTestColor1.getRGB(), after.getARGB(5, 6));
+    }
+
+    @Test
+    // public int[] getRow(int pY, int[] pRow)
+    public void PictureView_getRow_00() {
+        mPicture.setColor(0, 7, mTestColor1);
+        mPicture.setColor(99, 7, mTestColor2);
+        final int[] row = mPicture.getView().getRow(7, null);
+
+        assertEquals(100, row.length);
+        assertEquals(mTestColor1.getRGB(), row[0]);
+        assertEquals(mTestColor2.getRGB(), row[99]);
+        assertEquals(mPicture.getBufferedImage().getRGB(50, 92), row[50]);
+
+        final int[] part = mPicture.getView().getRow(7, 98, 2, new int[4], 1);
+        assertEquals(0, part[0]);
+        assertEquals(mPicture.getBufferedImage().getRGB(98, 92), part[1]);
+        assertEquals(mTestColor2.getRGB(), part[2]);
+        assertEquals(0, part[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    // public int[] getRow(int pY, int pX, int pWidth, int[] pRow, int pOffset)
+    public void PictureView_getRow_01() {
+        mPicture.getView().getRow(7, 98, 3, new int[3], 0);
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     // public void setValue(PictureType pValue) {
     public void PictureType_setValue() {
@@ -0,0 +1,144 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.framework.queue;
+
+import com.ownimage.framework.queue.IJob.Priority;
+import com.ownimage.framework.queue.IJob.Status;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecuteQueueTEST {
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * A job that blocks until the test releases it.
+     */
+    private class BlockingJob extends Job {
+
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+
+        private BlockingJob(final String pName, final Priority pPriority, final Object pControlObject) {
+            super(pName, pPriority, pControlObject);
+        }
+
+        @Override
+        public void doJob() {
+            super.doJob();
+            mStarted.countDown();
+            try {
+                mRelease.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException pE) {
+                throw new RuntimeException(pE);
+            }
+        }
+
+        private boolean awaitStarted() throws InterruptedException {
+            return mStarted.await(2, TimeUnit.SECONDS);
+        }
+
+        private boolean isStarted() {
+            return mStarted.getCount() == 0;
+        }
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mRelease.countDown();
+        while (ExecuteQueue.getInstance().isBusy()) {
+            Thread.sleep(10);
+        }
+        ExecuteQueue.getInstance().setWorkerCount(ExecuteQueue.DEFAULT_WORKER_COUNT);
+    }
+
+    @Test
+    public void submit_concurrent_00() throws InterruptedException {
+        // GIVEN
+        ExecuteQueue.getInstance().setWorkerCount(2);
+        final BlockingJob job1 = new BlockingJob("job1", Priority.NORMAL, "a");
+        final BlockingJob job2 = new BlockingJob("job2", Priority.NORMAL, "b");
+        // WHEN
+        job1.submit();
+        job2.submit();
+        // THEN jobs for different control objects run at the same time
+        assertTrue(job1.awaitStarted());
+        assertTrue(job2.awaitStarted());
+    }
+
+    @Test
+    public void submit_sameControlObject_00() throws InterruptedException {
+        // GIVEN
+        ExecuteQueue.getInstance().setWorkerCount(2);
+        final Object controlObject = new Object();
+        final BlockingJob job1 = new BlockingJob("job1", Priority.NORMAL, controlObject);
+        final BlockingJob job2 = new BlockingJob("job2", Priority.NORMAL, controlObject);
+        final BlockingJob job3 = new BlockingJob("job3", Priority.NORMAL, controlObject);
+        job1.submit();
+        assertTrue(job1.awaitStarted());
+        // WHEN
+        job2.submit();
+        job3.submit();
+        // THEN the running job is terminated, the queued job is cancelled and the new job waits for the running job to finish
+        assertEquals(Status.TERMINATED, job1.getStatus());
+        assertEquals(Status.CANCELLED, job2.getStatus());
+        Thread.sleep(100);
+        assertFalse(job3.isStarted());
+        mRelease.countDown();
+        assertTrue(job3.awaitStarted());
+        assertFalse(job2.isStarted());
+    }
+
+    @Test
+    public void submit_lanes_00() throws InterruptedException {
+        // GIVEN
+        ExecuteQueue.getInstance().setWorkerCount(2);
+        final BlockingJob background1 = new BlockingJob("background1", Priority.LOW, "a");
+        final BlockingJob background2 = new BlockingJob("background2", Priority.LOWEST, "b");
+        final BlockingJob foreground = new BlockingJob("foreground", Priority.NORMAL, "c");
+        // WHEN
+        background1.submit();
+        assertTrue(background1.awaitStarted());
+        background2.submit();
+        foreground.submit();
+        // THEN the second background job has to wait but a worker is kept free for the foreground job
+        assertTrue(foreground.awaitStarted());
+        assertFalse(background2.isStarted());
+        assertEquals(Status.QUEUED, background2.getStatus());
+        mRelease.countDown();
+        assertTrue(background2.awaitStarted());
+    }
+
+    @Test
+    public void setWorkerCount_00() throws InterruptedException {
+        // GIVEN
+        ExecuteQueue.getInstance().setWorkerCount(1);
+        final BlockingJob job1 = new BlockingJob("job1", Priority.NORMAL, "a");
+        final BlockingJob job2 = new BlockingJob("job2", Priority.NORMAL, "b");
+        // WHEN
+        job1.submit();
+        job2.submit();
+        // THEN
+        assertTrue(job1.awaitStarted());
+        Thread.sleep(100);
+        assertFalse(job2.isStarted());
+        ExecuteQueue.getInstance().setWorkerCount(2);
+        assertTrue(job2.awaitStarted());
+    }
+}
@@ -97,6 +97,8 @@ public class JobTEST {
     public static void setUpBeforeClass() throws Exception {
         final Job job = new Job("name", Priority.NORMAL);
         final ExecuteThread et = new ExecuteThread(job);
+        // these tests check the status of a job that is queued behind another one, so only allow one job to run at a time
+        ExecuteQueue.getInstance().setWorkerCount(1);
         FrameworkLogger.getInstance().init("logging.properies", "log\\Perception.log");
         FrameworkLogger.getInstance().setLevel("com.ownimage.framework.queue.ExecuteThread", Level.FINEST);
         // FrameworkLogger.getInstance().setLevel("com.ownimage.framework.queue.Job", Level.FINEST);
@@ -104,6 +106,7 @@ public class JobTEST {
 
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
+        ExecuteQueue.getInstance().setWorkerCount(ExecuteQueue.DEFAULT_WORKER_COUNT);
     }
 
     @After
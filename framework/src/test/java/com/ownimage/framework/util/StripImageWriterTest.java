@@ -0,0 +1,122 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.framework.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StripImageWriterTest {
+
+    private static final ImageQuality QUALITY = new ImageQuality(1.0f);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static int color(final int pX, final int pY) {
+        return (pX * 7 % 256) << 16 | (pY * 3 % 256) << 8 | (pX + pY) % 256;
+    }
+
+    private static StripImageWriter.StripRenderer gradient(final int pWidth, final List<Integer> pRowsRendered) {
+        return (row, rows, strip) -> {
+            pRowsRendered.add(row);
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < pWidth; x++) {
+                    strip[y * pWidth + x] = color(x, row + y);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void write_png_00() throws Exception {
+        // GIVEN a height that is not a multiple of the strip height
+        final List<Integer> rowsRendered = new ArrayList<>();
+        final File file = mFolder.newFile("test.png");
+        final StripImageWriter underTest = new StripImageWriter(70, 45, 16, gradient(70, rowsRendered));
+        // WHEN
+        underTest.write(file, QUALITY);
+        // THEN the png is lossless so every pixel can be checked, and each strip is only rendered once
+        final BufferedImage actual = ImageIO.read(file);
+        assertEquals(70, actual.getWidth());
+        assertEquals(45, actual.getHeight());
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 45; y++) {
+                assertEquals(color(x, y), actual.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+        assertEquals(Arrays.asList(0, 16, 32), rowsRendered);
+    }
+
+    @Test
+    public void write_jpg_00() throws Exception {
+        // GIVEN
+        final List<Integer> rowsRendered = new ArrayList<>();
+        final File file = mFolder.newFile("test.jpg");
+        final StripImageWriter underTest = new StripImageWriter(64, 40, 8, (row, rows, strip) -> {
+            rowsRendered.add(row);
+            Arrays.fill(strip, 0, rows * 64, row < 24 ? 0xFF0000 : 0x0000FF);
+        });
+        // WHEN
+        underTest.write(file, QUALITY);
+        // THEN
+        final BufferedImage actual = ImageIO.read(file);
+        assertEquals(64, actual.getWidth());
+        assertEquals(40, actual.getHeight());
+        assertTrue((actual.getRGB(10, 5) >> 16 & 0xFF) > 240);
+        assertTrue((actual.getRGB(10, 35) & 0xFF) > 240);
+        assertEquals(Arrays.asList(0, 8, 16, 24, 32), rowsRendered);
+    }
+
+    @Test
+    public void write_exception_00() throws IOException {
+        // GIVEN
+        final Exception expected = new Exception("render failed");
+        final File file = mFolder.newFile("test.png");
+        final StripImageWriter underTest = new StripImageWriter(10, 10, 4, (row, rows, strip) -> {
+            if (row > 0) {
+                throw expected;
+            }
+        });
+        // WHEN
+        try {
+            underTest.write(file, QUALITY);
+            fail();
+        } catch (Exception pEx) {
+            // THEN
+            assertSame(expected, pEx);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void write_gif_00() throws Exception {
+        // GIVEN WHEN
+        new StripImageWriter(10, 10, 4, (row, rows, strip) -> {
+        }).write(mFolder.newFile("test.gif"), QUALITY);
+    }
+
+    @Test
+    public void isSupported_00() {
+        assertTrue(StripImageWriter.isSupported(new File("a.jpg")));
+        assertTrue(StripImageWriter.isSupported(new File("a.PNG")));
+        assertFalse(StripImageWriter.isSupported(new File("a.gif")));
+        assertFalse(StripImageWriter.isSupported(new File("jpg")));
+    }
+}
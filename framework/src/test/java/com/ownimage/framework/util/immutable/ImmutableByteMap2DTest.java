@@ -0,0 +1,133 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+
+package com.ownimage.framework.util.immutable;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImmutableByteMap2DTest {
+
+    @Test
+    public void getDefaultValue() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 3);
+        assertEquals(3, underTest.get(5, 5));
+        assertEquals(0, underTest.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void xNegative() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0);
+        underTest.get(-1, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void yTooLarge() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0);
+        underTest.get(5, 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void xTooLargeInsidePage() {
+        // the page is 64 wide so this checks that the bounds are not just those of the page
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0);
+        underTest.set(10, 5, (byte) 1);
+    }
+
+    @Test
+    public void xyMax() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(130, 70, (byte) 0);
+        underTest = underTest.set(129, 69, (byte) 7);
+        assertEquals(7, underTest.get(129, 69));
+        assertEquals(0, underTest.get(128, 69));
+    }
+
+    @Test
+    public void setValueAndSwitchBetweenversions() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0);
+        underTest = underTest.set(5, 5, (byte) 1);
+        ImmutableByteMap2D other = underTest;
+        other = other.set(5, 5, (byte) 2);
+        assertEquals(1, underTest.get(5, 5));
+        assertEquals(2, other.get(5, 5));
+        assertEquals(1, underTest.get(5, 5));
+    }
+
+    @Test
+    public void setSameValue() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0);
+        underTest = underTest.set(5, 5, (byte) 1);
+        assertEquals(underTest, underTest.set(5, 5, (byte) 1));
+    }
+
+    @Test
+    public void size() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(100, 100, (byte) 0);
+        underTest = underTest.set(5, 5, (byte) 1).set(70, 80, (byte) 2).set(5, 5, (byte) 3);
+        ImmutableByteMap2D removed = underTest.set(70, 80, (byte) 0);
+        assertEquals(2, underTest.size());
+        assertEquals(1, removed.size());
+        assertEquals(2, underTest.size());
+    }
+
+    @Test
+    public void clear() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(10, 20, (byte) 0).set(1, 1, (byte) 1);
+        ImmutableByteMap2D cleared = underTest.clear();
+        assertEquals(0, cleared.get(1, 1));
+        assertEquals(0, cleared.size());
+        assertEquals(1, underTest.get(1, 1));
+    }
+
+    @Test
+    public void forEach() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(100, 70, (byte) 0)
+                .set(1, 1, (byte) 3)
+                .set(99, 69, (byte) 5);
+        ImmutableByteMap2D result = underTest.forEach(v -> v | 8);
+        assertEquals(11, result.get(1, 1));
+        assertEquals(13, result.get(99, 69));
+        assertEquals(8, result.get(50, 50));
+        assertEquals(2, result.size());
+        assertEquals(3, underTest.get(1, 1));
+
+        ImmutableByteMap2D masked = underTest.forEach(v -> v & 1);
+        assertEquals(1, masked.get(1, 1));
+        assertEquals(2, masked.size());
+    }
+
+    @Test
+    public void forEachValue() {
+        ImmutableByteMap2D underTest = new ImmutableByteMap2D(100, 70, (byte) 0)
+                .set(1, 1, (byte) 3)
+                .set(99, 69, (byte) 5)
+                .set(64, 0, (byte) 6);
+        Map<String, Byte> actual = new HashMap<>();
+        underTest.forEachValue((x, y, v) -> actual.put(x + "," + y, v));
+        assertEquals(3, actual.size());
+        assertEquals(Byte.valueOf((byte) 3), actual.get("1,1"));
+        assertEquals(Byte.valueOf((byte) 5), actual.get("99,69"));
+        assertEquals(Byte.valueOf((byte) 6), actual.get("64,0"));
+    }
+
+    @Test
+    public void generate() {
+        ImmutableByteMap2D underTest = ImmutableByteMap2D.generate(90, 70, (byte) 0, (x, y) -> (x + y) % 3);
+        for (int x = 0; x < 90; x++) {
+            for (int y = 0; y < 70; y++) {
+                assertEquals((x + y) % 3, underTest.get(x, y));
+            }
+        }
+        assertEquals(90 * 70 - 90 * 70 / 3, underTest.size());
+        ImmutableByteMap2D other = underTest.set(0, 0, (byte) 1);
+        assertEquals(0, underTest.get(0, 0));
+        assertEquals(1, other.get(0, 0));
+    }
+}
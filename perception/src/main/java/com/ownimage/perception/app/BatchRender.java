@@ -0,0 +1,260 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.app;
+
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.queue.ExecuteQueue;
+import com.ownimage.framework.queue.IJob.Status;
+import com.ownimage.framework.util.Framework;
+import com.ownimage.framework.util.ImageQuality;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.transformSequence.TransformSequence;
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Renders images through their .transform files without the JavaFX application. The .transform file for an image is found in
+ * the same way as Perception does, i.e. the image filename with the extension replaced by .transform, and the result is saved as
+ * the image filename stem plus -transform.jpg, either next to the image or in the output directory. A directory argument renders
+ * every image in it that has a .transform file.
+ * <p>
+ * Usage: BatchRender [-o outputDir] [-w width] [-h height] [-s overSample] [-j jobs] [-q jpgQuality] file|directory ...
+ * <p>
+ * If only one of the width and height is given the other keeps the aspect ratio of the transform, if neither is given the size of
+ * the transform is used. The overSample defaults to that of the transform. Up to jobs files are loaded and rendered at the same
+ * time, each render runs on its own ExecuteQueue worker and is streamed to the file a strip at a time.
+ */
+public class BatchRender {
+
+    private final static Logger mLogger = Framework.getLogger();
+
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "gif", "bmp");
+
+    /**
+     * Loading a TransformSequence goes through the shared Services and the controls, so only one is loaded at a time. The renders
+     * and saves run concurrently.
+     */
+    private static final Object mLoadLock = new Object();
+
+    private File mOutputDirectory;
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mOverSample = 0;
+    private int mJobs = 1;
+    private ImageQuality mImageQuality;
+    private final List<File> mImages = new ArrayList<>();
+
+    public static void main(String[] pArgs) {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        Thread.currentThread().setName("main");
+        FXViewFactory.setAsViewFactory();
+
+        int failures;
+        try {
+            failures = new BatchRender(pArgs).run();
+        } catch (IllegalArgumentException pEx) {
+            System.err.println(pEx.getMessage());
+            System.err.println("Usage: BatchRender [-o outputDir] [-w width] [-h height] [-s overSample] [-j jobs] [-q jpgQuality] file|directory ...");
+            failures = -1;
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    public BatchRender(@NonNull String[] pArgs) {
+        for (int i = 0; i < pArgs.length; i++) {
+            val arg = pArgs[i];
+            if (arg.startsWith("-")) {
+                if (i + 1 == pArgs.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                val value = pArgs[++i];
+                switch (arg) {
+                    case "-o":
+                        mOutputDirectory = new File(value);
+                        break;
+                    case "-w":
+                        mWidth = parsePositive(arg, value);
+                        break;
+                    case "-h":
+                        mHeight = parsePositive(arg, value);
+                        break;
+                    case "-s":
+                        mOverSample = parsePositive(arg, value);
+                        break;
+                    case "-j":
+                        mJobs = parsePositive(arg, value);
+                        break;
+                    case "-q":
+                        mImageQuality = new ImageQuality(Float.parseFloat(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } else {
+                addImages(new File(arg));
+            }
+        }
+        if (mImages.isEmpty()) {
+            throw new IllegalArgumentException("No images with .transform files to render");
+        }
+        if (mOutputDirectory != null && !mOutputDirectory.isDirectory() && !mOutputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create output directory " + mOutputDirectory);
+        }
+    }
+
+    private static int parsePositive(String pOption, String pValue) {
+        try {
+            val value = Integer.parseInt(pValue);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException pEx) {
+            // drop through
+        }
+        throw new IllegalArgumentException(format("%s needs a positive integer, not %s", pOption, pValue));
+    }
+
+    private void addImages(File pFile) {
+        if (pFile.isDirectory()) {
+            val files = pFile.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                Arrays.stream(files)
+                        .filter(File::isFile)
+                        .filter(f -> IMAGE_EXTENSIONS.contains(getExtension(f).toLowerCase()))
+                        .filter(f -> getTransformFile(f).isFile())
+                        .forEach(mImages::add);
+            }
+        } else if (pFile.isFile() && getTransformFile(pFile).isFile()) {
+            mImages.add(pFile);
+        } else {
+            throw new IllegalArgumentException(format("%s is not an image with a .transform file or a directory", pFile));
+        }
+    }
+
+    private static String getExtension(File pFile) {
+        val name = pFile.getName();
+        val i = name.lastIndexOf('.');
+        return i <= 0 ? "" : name.substring(i + 1);
+    }
+
+    private static String getStem(File pFile) {
+        val name = pFile.getName();
+        val i = name.lastIndexOf('.');
+        return i <= 0 ? name : name.substring(0, i);
+    }
+
+    static File getTransformFile(File pImage) {
+        return new File(pImage.getAbsoluteFile().getParentFile(), getStem(pImage) + ".transform");
+    }
+
+    File getOutputFile(File pImage) {
+        val directory = mOutputDirectory != null ? mOutputDirectory : pImage.getAbsoluteFile().getParentFile();
+        return new File(directory, getStem(pImage) + "-transform.jpg");
+    }
+
+    /**
+     * Renders all of the images.
+     *
+     * @return the number of images that could not be rendered
+     */
+    public int run() {
+        Framework.logEntry(mLogger);
+
+        val queue = ExecuteQueue.getInstance();
+        if (queue.getWorkerCount() < mJobs) {
+            queue.setWorkerCount(mJobs);
+        }
+        val executor = Executors.newFixedThreadPool(mJobs);
+        int failures = 0;
+        try {
+            val results = new ArrayList<Future<Boolean>>();
+            mImages.forEach(image -> results.add(executor.submit(() -> render(image))));
+            for (val result : results) {
+                try {
+                    if (!result.get()) {
+                        failures++;
+                    }
+                } catch (ExecutionException pEx) {
+                    Framework.logThrowable(mLogger, Level.SEVERE, pEx.getCause());
+                    failures++;
+                }
+            }
+        } catch (InterruptedException pEx) {
+            Thread.currentThread().interrupt();
+            failures = mImages.size();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        mLogger.info(format("BatchRender rendered %s of %s images", mImages.size() - failures, mImages.size()));
+        Framework.logExit(mLogger);
+        return failures;
+    }
+
+    /**
+     * Loads the image and its .transform file and renders the last transform straight into the output file a strip at a time, so
+     * that large outputs do not need the whole picture in memory.
+     *
+     * @param pImage the image
+     * @return true if the result was saved
+     */
+    boolean render(File pImage) throws Exception {
+        Framework.logEntry(mLogger);
+
+        val outputFile = getOutputFile(pImage);
+        mLogger.info(format("BatchRender %s -> %s", pImage, outputFile));
+
+        TransformSequence transformSequence;
+        synchronized (mLoadLock) {
+            transformSequence = new TransformSequence(Services.getServices().getPerception(), pImage);
+            transformSequence.read(getTransformFile(pImage));
+        }
+        val lastTransform = transformSequence.getLastTransform();
+
+        var width = mWidth;
+        var height = mHeight;
+        if (width == 0 && height == 0) {
+            width = lastTransform.getWidth();
+            height = lastTransform.getHeight();
+        } else if (width == 0) {
+            width = (int) Math.round((double) height * lastTransform.getWidth() / lastTransform.getHeight());
+        } else if (height == 0) {
+            height = (int) Math.round((double) width * lastTransform.getHeight() / lastTransform.getWidth());
+        }
+        val overSample = mOverSample != 0 ? mOverSample : lastTransform.getOversample();
+        val imageQuality = mImageQuality != null ? mImageQuality : Services.getServices().getProperties().getImageQuality();
+
+        val renderJob = Services.getServices().getRenderService()
+                .getSaveJobBuilder("BatchRender::render", outputFile, imageQuality, width, height, lastTransform)
+                .withOverSample(overSample)
+                .withAllowTerminate(false)
+                .build();
+        renderJob.run();
+        val status = renderJob.await();
+        if (status != Status.COMPLETE) {
+            mLogger.severe(format("BatchRender %s finished with status %s", pImage, status));
+            Framework.logExit(mLogger);
+            return false;
+        }
+
+        mLogger.info(format("BatchRender %s done in %s ms", outputFile, renderJob.getDuration().map(d -> d.toMillis()).orElse(0L)));
+        Framework.logExit(mLogger);
+        return true;
+    }
+}
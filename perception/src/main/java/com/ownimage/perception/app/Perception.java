@@ -20,9 +20,11 @@ import com.ownimage.framework.logging.FrameworkException;
 import com.ownimage.framework.logging.FrameworkLogger;
 import com.ownimage.framework.math.RectangleSize;
 import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.queue.IJob.Priority;
 import com.ownimage.framework.undo.UndoRedoBuffer;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.framework.util.Id;
+import com.ownimage.framework.util.StripImageWriter;
 import com.ownimage.framework.util.StrongReference;
 import com.ownimage.framework.view.IAppControlView.DialogOptions;
 import com.ownimage.framework.view.IView;
@@ -365,6 +367,20 @@ public class Perception extends AppControlBase {
                     PictureType testSave = new PictureType(100, 100);
                     testSave.getValue().save(pFile, getProperties().getImageQuality()); // no point generating a large file if we cant save it
 
+                    if (StripImageWriter.isSupported(pFile)) {
+                        // render straight into the file a strip at a time so that the full size picture is never held
+                        getRenderService()
+                                .getSaveJobBuilder("Perception::fileSaveUnchecked", pFile, getProperties().getImageQuality(),
+                                        lastTransform.getWidth(), lastTransform.getHeight(), lastTransform)
+                                .withCompleteAction(() -> mLogger.severe("Done"))
+                                .withProgressObserver(progress)
+                                .withOverSample(lastTransform.getOversample())
+                                .withPriority(Priority.LOW)
+                                .build()
+                                .run();
+                        return;
+                    }
+
                     PictureType output = new PictureType(lastTransform.getWidth(), lastTransform.getHeight());
                     getRenderService()
                             .getRenderJobBuilder("Perception::fileSaveUnchecked", output, lastTransform)
@@ -379,6 +395,7 @@ public class Perception extends AppControlBase {
                             })
                             .withProgressObserver(progress)
                             .withOverSample(lastTransform.getOversample())
+                            .withPriority(Priority.LOW)
                             .build()
                             .run();
                 } catch (Exception pT) {
@@ -738,9 +755,16 @@ public class Perception extends AppControlBase {
     public void refreshOutputPreview() {
         Framework.logEntry(mLogger);
 
+        if (getOptionalTransformSequence().isEmpty()) {
+            // nothing is open, e.g. when a TransformSequence is loaded headless by BatchRender
+            Framework.logExit(mLogger);
+            return;
+        }
         resizePreviewControlIfNeeded();
         getRenderService()
                 .getRenderJobBuilder("Perception::refreshOutputPreview", mOutputPreviewControl, getTransformSequence().getLastTransform())
+                .withPriority(Priority.HIGH)
+                .withProgressive(true)
                 .build()
                 .run();
 
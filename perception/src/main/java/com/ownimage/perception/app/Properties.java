@@ -20,6 +20,7 @@ import com.ownimage.framework.logging.FrameworkException;
 import com.ownimage.framework.persist.IPersist;
 import com.ownimage.framework.persist.IPersistDB;
 import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.queue.ExecuteQueue;
 import com.ownimage.framework.undo.IUndoRedoBufferProvider;
 import com.ownimage.framework.undo.UndoRedoBuffer;
 import com.ownimage.framework.util.Framework;
@@ -74,6 +75,10 @@ public class Properties implements IViewable, IUndoRedoBufferProvider, IPersist,
     private final IntegerControl mRenderThreadPoolSize = new IntegerControl("Thread pool size", "threadPoolSize", mContainer, 8, 1, 32, 1);
     private final IntegerControl mRenderJTPBatchSize = new IntegerControl("JTP batch size", "JTPBatchSize", mContainer, 100000, 1, 100000, 1000);
     private final BooleanControl mUseOpenCL = new BooleanControl("Use OpenCL", "useOpenCL", mContainer, true);
+    private final BooleanControl mUseTileEngine = new BooleanControl("Use tile engine", "useTileEngine", mContainer, true);
+    private final IntegerControl mRenderTileSize = new IntegerControl("Tile size", "tileSize", mContainer, 128, 16, 1024, 16);
+    private final IntegerControl mQueueWorkerCount = new IntegerControl("Queue workers", "queueWorkers", mContainer, ExecuteQueue.DEFAULT_WORKER_COUNT, 1, 16, 1);
+    private final IntegerControl mRenderCacheSize = new IntegerControl("Render cache MB", "renderCacheSize", mContainer, 256, 0, 4096, 64);
 
     // output
     private final DoubleControl mJPGQuality = new DoubleControl("JPG Quality", "jpgQuality", mContainer, 1.0);
@@ -90,6 +95,12 @@ public class Properties implements IViewable, IUndoRedoBufferProvider, IPersist,
         if (pControl == mUseJTP) {
             setEnabled(mUseJTP.getValue(), mRenderBatchSize, mRenderJTPBatchSize, mRenderThreadPoolSize);
         }
+        if (pControl == mUseTileEngine) {
+            setEnabled(mUseTileEngine.getValue(), mRenderTileSize, mRenderCacheSize);
+        }
+        if (pControl == mQueueWorkerCount) {
+            ExecuteQueue.getInstance().setWorkerCount(mQueueWorkerCount.getValue());
+        }
 
     }
 
@@ -105,7 +116,7 @@ public class Properties implements IViewable, IUndoRedoBufferProvider, IPersist,
         transformsTab.addTab("CannyEdge", new VFlowLayout(
                 mCETEPMDPreviewSize, mCETEPMDZoom, mCETEPMDEdgeColor, mCETEPMDNodeColor, mCETEPMDWorkingColor));
         final VFlowLayout render = new VFlowLayout(
-                mUseJTP, mRenderBatchSize, mRenderThreadPoolSize, mRenderJTPBatchSize, mUseOpenCL);
+                mUseJTP, mRenderBatchSize, mRenderThreadPoolSize, mRenderJTPBatchSize, mUseOpenCL, mUseTileEngine, mRenderTileSize, mQueueWorkerCount, mRenderCacheSize);
         final VFlowLayout output = new VFlowLayout(mJPGQuality);
 
         view.addTab("Defaults", defaults);
@@ -205,6 +216,14 @@ public class Properties implements IViewable, IUndoRedoBufferProvider, IPersist,
         return mRenderJTPBatchSize.getProperty();
     }
 
+    public int getRenderTileSize() {
+        return mRenderTileSize.getValue();
+    }
+
+    public IntegerProperty getRenderTileSizeProperty() {
+        return mRenderTileSize.getProperty();
+    }
+
     public int getRenderThreadPoolSize() {
         return mRenderThreadPoolSize.getValue();
     }
@@ -269,6 +288,39 @@ public class Properties implements IViewable, IUndoRedoBufferProvider, IPersist,
         return mUseJTP.getProperty();
     }
 
+    /**
+     * Gets the memory that the RenderCache can use.
+     *
+     * @return the size in bytes
+     */
+    public long getRenderCacheSize() {
+        return mRenderCacheSize.getValue() * 1024L * 1024L;
+    }
+
+    /**
+     * Gets the values of the properties, some of which are read by the transforms when they render, e.g. the out of bounds color, so
+     * that the RenderCache can tell when they have changed.
+     *
+     * @return the values
+     */
+    public PersistDB getRenderCacheContext() {
+        try {
+            final PersistDB db = new PersistDB();
+            mContainer.write(db, "");
+            return db;
+        } catch (final IOException pEx) {
+            throw new FrameworkException(this, Level.SEVERE, "Unable to write properties", pEx);
+        }
+    }
+
+    public boolean useTileEngine() {
+        return mUseTileEngine.getValue();
+    }
+
+    public BooleanProperty useTileEngineProperty() {
+        return mUseTileEngine.getProperty();
+    }
+
     @Override
     public void write(final IPersistDB pDB, final String pId) throws IOException {
         mContainer.write(pDB, pId);
@@ -5,6 +5,8 @@
  */
 package com.ownimage.perception.pixelMap;
 
+import com.ownimage.perception.pixelMap.immutable.PixelMap;
+import com.ownimage.perception.pixelMap.immutable.SegmentGrid;
 import com.ownimage.perception.transform.CannyEdgeTransform;
 import com.ownimage.perception.transform.CannyEdgeTransform.LineEndShape;
 
@@ -57,4 +59,15 @@ public interface IPixelMapTransformSource {
     boolean getShowLines();
 
     boolean getShowShadow();
+
+    /**
+     * Gets the SegmentGrid that the lines of a PixelMap are found with. A transform source that shows one PixelMap after another
+     * can make the grid of each from the grid of the one before, rather than building it from scratch.
+     *
+     * @param pPixelMap the PixelMap
+     * @return the SegmentGrid
+     */
+    default SegmentGrid getSegmentGrid(PixelMap pPixelMap) {
+        return pPixelMap.segmentGrid();
+    }
 }
@@ -54,6 +54,11 @@ public interface CurveSegment extends Segment, Serializable, Cloneable {
     @Value.Parameter(order = 5)
     Point getP1();
 
+    @Override
+    default SegmentCoefficients getCoefficients(PixelMap pPixelMap, PixelChain pPixelChain) {
+        return SegmentCoefficients.of(pPixelMap, pPixelChain, this);
+    }
+
     @Override
     default Segment toImmutable() {
         return ImmutableCurveSegment.copyOf(this);
@@ -0,0 +1,437 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.perception.pixelMap.IPixelChain.Thickness;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import com.ownimage.perception.transform.CannyEdgeTransform.LineEndLengthType;
+import com.ownimage.perception.transform.CannyEdgeTransform.LineEndShape;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The lines of a PixelMap drawn once into a coverage buffer, so that rendering them is a lookup for each sample rather than a
+ * search of the SegmentGrid with a distance to each candidate segment. The cost of building it goes with the total length of the
+ * lines rather than with the number of samples, which matters for sparse line art rendered at a high resolution.
+ * <p>
+ * The buffer has pScale cells for each pixel of the PixelMap. Each segment of the SegmentGrid is walked once in steps of at most
+ * half a cell, and at each step a disc of the actual thickness of the line at that position is stamped into the buffer with an
+ * anti-aliased edge a cell wide, each cell keeping the greatest coverage and the segment that gave it. A point is covered by at
+ * least a half where Segment.closerThanActual would find it inside the line, to within the width of a cell.
+ * <p>
+ * The buffer is split into square tiles that are only allocated where a line is drawn, and the rows of tiles are drawn in
+ * parallel, each by walking the segments that can reach it. A LineRaster holds the thicknesses that it was drawn with, so the
+ * owner can tell with isFor whether it has to be drawn again. When only the PixelMap has changed, withChanges draws again just the
+ * tiles that the removed and added PixelChains reach, and shares the rest with the previous LineRaster.
+ */
+public class LineRaster {
+
+    public static final int TILE_SIZE = 64;
+
+    private final PixelMap mPixelMap;
+    private final SegmentGrid mSegmentGrid;
+    private final double mMultiplier;
+    private final boolean mThickOnly;
+    private final int mScale;
+
+    // the transform source values that the lines were drawn with
+    private final int mHeight;
+    private final double mShortLineThickness;
+    private final double mMediumLineThickness;
+    private final double mLongLineThickness;
+    private final double mLineEndThickness;
+    private final LineEndShape mLineEndShape;
+    private final LineEndLengthType mLineEndLengthType;
+    private final int mLineEndLengthPercent;
+    private final int mLineEndLengthPixel;
+
+    private final double mCellsPerUnit;
+    private final int mRasterWidth;
+    private final int mRasterHeight;
+    private final int mTilesWide;
+    private final int mTilesHigh;
+
+    // the coverage of each cell of each tile from 0 to 255, and the SegmentGrid entry that gave it; null where nothing is drawn
+    private final byte[][] mCoverage;
+    private final int[][] mEntries;
+    // the widest that the envelope of any segment that has been drawn can be, in UHVW
+    private double mMaxEnvelope;
+
+    /**
+     * Draws the lines of a PixelMap.
+     *
+     * @param pPixelMap        the PixelMap
+     * @param pTransformSource the transform source that gives the line thicknesses
+     * @param pMultiplier      the thickness multiplier, as passed to closerThanActual
+     * @param pThickOnly       whether only Thick lines are to be drawn
+     * @param pScale           the number of cells across each pixel of the PixelMap
+     */
+    public LineRaster(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final IPixelMapTransformSource pTransformSource,
+            final double pMultiplier,
+            final boolean pThickOnly,
+            final int pScale) {
+        if (pScale < 1) {
+            throw new IllegalArgumentException("pScale must be at least 1.");
+        }
+
+        mPixelMap = pPixelMap;
+        mSegmentGrid = pTransformSource.getSegmentGrid(pPixelMap);
+        mMultiplier = pMultiplier;
+        mThickOnly = pThickOnly;
+        mScale = pScale;
+
+        mHeight = pTransformSource.getHeight();
+        mShortLineThickness = pTransformSource.getShortLineThickness();
+        mMediumLineThickness = pTransformSource.getMediumLineThickness();
+        mLongLineThickness = pTransformSource.getLongLineThickness();
+        mLineEndThickness = pTransformSource.getLineEndThickness();
+        mLineEndShape = pTransformSource.getLineEndShape();
+        mLineEndLengthType = pTransformSource.getLineEndLengthType();
+        mLineEndLengthPercent = pTransformSource.getLineEndLengthPercent();
+        mLineEndLengthPixel = pTransformSource.getLineEndLengthPixel();
+
+        // UHVW is in units of the height of the PixelMap, so this is the number of cells in one UHVW unit in both x and y
+        mCellsPerUnit = (double) pPixelMap.height() * pScale;
+        mRasterWidth = pPixelMap.width() * pScale;
+        mRasterHeight = pPixelMap.height() * pScale;
+        mTilesWide = (mRasterWidth + TILE_SIZE - 1) / TILE_SIZE;
+        mTilesHigh = (mRasterHeight + TILE_SIZE - 1) / TILE_SIZE;
+        mCoverage = new byte[mTilesWide * mTilesHigh][];
+        mEntries = new int[mTilesWide * mTilesHigh][];
+
+        val envelopes = new double[mSegmentGrid.size()];
+        val bandEntries = groupEntriesByBand(pTransformSource, envelopes);
+        IntStream.range(0, mTilesHigh).parallel().forEach(band ->
+                drawEntries(pTransformSource, bandEntries[band], entry -> envelopes[entry], band * TILE_SIZE, 0, mRasterWidth));
+    }
+
+    private LineRaster(final LineRaster pPrevious, final PixelMap pPixelMap, final SegmentGrid pSegmentGrid) {
+        mPixelMap = pPixelMap;
+        mSegmentGrid = pSegmentGrid;
+        mMultiplier = pPrevious.mMultiplier;
+        mThickOnly = pPrevious.mThickOnly;
+        mScale = pPrevious.mScale;
+        mHeight = pPrevious.mHeight;
+        mShortLineThickness = pPrevious.mShortLineThickness;
+        mMediumLineThickness = pPrevious.mMediumLineThickness;
+        mLongLineThickness = pPrevious.mLongLineThickness;
+        mLineEndThickness = pPrevious.mLineEndThickness;
+        mLineEndShape = pPrevious.mLineEndShape;
+        mLineEndLengthType = pPrevious.mLineEndLengthType;
+        mLineEndLengthPercent = pPrevious.mLineEndLengthPercent;
+        mLineEndLengthPixel = pPrevious.mLineEndLengthPixel;
+        mCellsPerUnit = pPrevious.mCellsPerUnit;
+        mRasterWidth = pPrevious.mRasterWidth;
+        mRasterHeight = pPrevious.mRasterHeight;
+        mTilesWide = pPrevious.mTilesWide;
+        mTilesHigh = pPrevious.mTilesHigh;
+        mCoverage = pPrevious.mCoverage.clone();
+        mEntries = pPrevious.mEntries.clone();
+        mMaxEnvelope = pPrevious.mMaxEnvelope;
+    }
+
+    /**
+     * Draws the lines of a later version of the PixelMap. If this was drawn with the same thicknesses, multiplier and scale, and
+     * from a SegmentGrid that pTransformSource.getSegmentGrid(pPixelMap) was made from by SegmentGrid.withChanges, only the tiles
+     * that the removed and added PixelChains reach are drawn again, in time that goes with the area of the change rather than with
+     * the size of the PixelMap. Otherwise all of the lines are drawn again.
+     *
+     * @param pPixelMap        the PixelMap
+     * @param pTransformSource the transform source that gives the line thicknesses and the SegmentGrid
+     * @param pRemoved         the PixelChains of the PixelMap that this was drawn from that are not in pPixelMap
+     * @param pAdded           the PixelChains of pPixelMap that are not in the PixelMap that this was drawn from
+     * @return the LineRaster
+     */
+    public LineRaster withChanges(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final IPixelMapTransformSource pTransformSource,
+            @NonNull final Collection<? extends PixelChain> pRemoved,
+            @NonNull final Collection<? extends PixelChain> pAdded) {
+        val segmentGrid = pTransformSource.getSegmentGrid(pPixelMap);
+        if (!isFor(mPixelMap, pTransformSource, mMultiplier, mThickOnly, mScale) || !segmentGrid.isNumberedAs(mSegmentGrid)) {
+            return new LineRaster(pPixelMap, pTransformSource, mMultiplier, mThickOnly, mScale);
+        }
+
+        val result = new LineRaster(this, pPixelMap, segmentGrid);
+        val dirty = new BitSet();
+        Stream.concat(
+                pRemoved.stream().map(pc -> new Object[]{mPixelMap, pc}),
+                pAdded.stream().map(pc -> new Object[]{pPixelMap, pc}))
+                .forEach(change -> result.addDirtyTiles((PixelMap) change[0], (PixelChain) change[1], pTransformSource, dirty));
+        result.drawTiles(pTransformSource, dirty.stream().toArray());
+        return result;
+    }
+
+    /**
+     * Marks the tiles that the line of a PixelChain can reach, if it is drawn here.
+     */
+    private void addDirtyTiles(
+            final PixelMap pPixelMap,
+            final PixelChain pPixelChain,
+            final IPixelMapTransformSource pTransformSource,
+            final BitSet pDirty) {
+        if (pPixelChain.thickness() == Thickness.None || (mThickOnly && pPixelChain.thickness() != Thickness.Thick)) {
+            return;
+        }
+        val envelope = getEnvelope(pPixelChain, pTransformSource);
+        mMaxEnvelope = Math.max(mMaxEnvelope, envelope);
+        val reach = envelope + 2.0d / mCellsPerUnit;
+        pPixelChain.segments().forEach(segment -> {
+            val coefficients = segment.getCoefficients(pPixelMap, pPixelChain);
+            val minX = Math.max(0, (int) Math.floor((coefficients.getMinX() - reach) * mCellsPerUnit) / TILE_SIZE);
+            val maxX = Math.min(mTilesWide - 1, (int) Math.ceil((coefficients.getMaxX() + reach) * mCellsPerUnit) / TILE_SIZE);
+            val minY = Math.max(0, (int) Math.floor((coefficients.getMinY() - reach) * mCellsPerUnit) / TILE_SIZE);
+            val maxY = Math.min(mTilesHigh - 1, (int) Math.ceil((coefficients.getMaxY() + reach) * mCellsPerUnit) / TILE_SIZE);
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    pDirty.set(y * mTilesWide + x);
+                }
+            }
+        });
+    }
+
+    /**
+     * Clears the tiles and draws into each the segments that can reach it, which are found in the cells of the SegmentGrid that are
+     * within the widest envelope of the tile. The segments are drawn in the order of their entries, as they are when all of the
+     * lines are drawn, so a tile comes out the same as if all of the lines had been drawn again.
+     */
+    private void drawTiles(final IPixelMapTransformSource pTransformSource, final int[] pTiles) {
+        // the pixels of the SegmentGrid that a segment reaching a tile can be indexed at, with a pixel to spare each side
+        val margin = (int) Math.ceil(mMaxEnvelope * mCellsPerUnit / mScale) + 2;
+        val tileEntries = IntStream.of(pTiles).parallel()
+                .mapToObj(tile -> {
+                    val left = tile % mTilesWide * TILE_SIZE;
+                    val top = tile / mTilesWide * TILE_SIZE;
+                    return IntStream.of(mSegmentGrid.getEntries(left / mScale - margin, top / mScale - margin,
+                            (left + TILE_SIZE - 1) / mScale + margin, (top + TILE_SIZE - 1) / mScale + margin))
+                            .filter(entry -> !mThickOnly || mSegmentGrid.isThick(entry))
+                            .toArray();
+                })
+                .toArray(int[][]::new);
+        IntStream.range(0, pTiles.length).parallel().forEach(i -> {
+            val tile = pTiles[i];
+            val left = tile % mTilesWide * TILE_SIZE;
+            mCoverage[tile] = null;
+            mEntries[tile] = null;
+            drawEntries(pTransformSource, tileEntries[i], entry -> getEnvelope(mSegmentGrid.getPixelChain(entry), pTransformSource),
+                    tile / mTilesWide * TILE_SIZE, left,
+                    Math.min(mRasterWidth, left + TILE_SIZE));
+        });
+    }
+
+    private double getEnvelope(final PixelChain pPixelChain, final IPixelMapTransformSource pTransformSource) {
+        return pPixelChain.width(pTransformSource) * Math.max(1.0d, pTransformSource.getLineEndThickness()) * mMultiplier;
+    }
+
+    /**
+     * Finds the rows of tiles that each segment can reach, from its bounding box widened by the thickest that its line can be, which
+     * is put into pEnvelopes in UHVW.
+     */
+    private int[][] groupEntriesByBand(final IPixelMapTransformSource pTransformSource, final double[] pEnvelopes) {
+        val counts = new int[mTilesHigh];
+        val entries = mSegmentGrid.getEntries();
+        val first = new int[mSegmentGrid.size()];
+        val last = new int[mSegmentGrid.size()];
+        Arrays.fill(last, -1);
+        for (val entry : entries) {
+            if (mThickOnly && !mSegmentGrid.isThick(entry)) {
+                continue;
+            }
+            val coefficients = mSegmentGrid.getCoefficients(entry);
+            val envelope = getEnvelope(mSegmentGrid.getPixelChain(entry), pTransformSource);
+            pEnvelopes[entry] = envelope;
+            mMaxEnvelope = Math.max(mMaxEnvelope, envelope);
+            val minRow = (int) Math.floor((coefficients.getMinY() - envelope) * mCellsPerUnit) - 1;
+            val maxRow = (int) Math.ceil((coefficients.getMaxY() + envelope) * mCellsPerUnit) + 1;
+            first[entry] = Math.max(0, Math.floorDiv(minRow, TILE_SIZE));
+            last[entry] = Math.min(mTilesHigh - 1, Math.floorDiv(maxRow, TILE_SIZE));
+            for (int band = first[entry]; band <= last[entry]; band++) {
+                counts[band]++;
+            }
+        }
+
+        val bandEntries = new int[mTilesHigh][];
+        val next = new int[mTilesHigh];
+        for (int band = 0; band < mTilesHigh; band++) {
+            bandEntries[band] = new int[counts[band]];
+        }
+        for (val entry : entries) {
+            for (int band = first[entry]; band <= last[entry]; band++) {
+                bandEntries[band][next[band]++] = entry;
+            }
+        }
+        return bandEntries;
+    }
+
+    /**
+     * Draws the segments into the columns from pLeft to pRight of the row of tiles that starts at pTop. Only those tiles are written,
+     * so the rows, or the tiles, can be drawn in parallel. Each segment is only walked over the range of lambda whose discs can reach
+     * the row, so a long segment is not walked in full for every row that it crosses.
+     */
+    private void drawEntries(
+            final IPixelMapTransformSource pTransformSource,
+            final int[] pEntries,
+            final IntToDoubleFunction pEnvelopes,
+            final int pTop,
+            final int pLeft,
+            final int pRight) {
+        val top = pTop;
+        val bottom = Math.min(mRasterHeight, top + TILE_SIZE);
+        for (val entry : pEntries) {
+            val coefficients = mSegmentGrid.getCoefficients(entry);
+            val pixelChain = mSegmentGrid.getPixelChain(entry);
+            // a disc reaches half a cell past its radius, and a cell more is allowed for the steps between the discs
+            val reach = pEnvelopes.applyAsDouble(entry) + 2.0d / mCellsPerUnit;
+            val lambdaRange = coefficients.getLambdaRange(top / mCellsPerUnit - reach, bottom / mCellsPerUnit + reach);
+            if (lambdaRange == null) {
+                continue;
+            }
+            val steps = Math.max(1, (int) Math.ceil(coefficients.getControlLength() * mCellsPerUnit * 2.0d));
+            val firstStep = Math.max(0, (int) Math.floor(lambdaRange[0] * steps));
+            val lastStep = Math.min(steps, (int) Math.ceil(lambdaRange[1] * steps));
+            for (int step = firstStep; step <= lastStep; step++) {
+                val lambda = (double) step / steps;
+                val radius = pixelChain.actualThickness(pTransformSource, coefficients.getPosition(lambda)) * mMultiplier * mCellsPerUnit;
+                if (radius > 0.0d) {
+                    stamp(entry, coefficients.getX(lambda) * mCellsPerUnit, coefficients.getY(lambda) * mCellsPerUnit, radius,
+                            top, bottom, pLeft, pRight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stamps a disc whose centre and radius are in cells, clipped to the rows from pTop to pBottom and the columns from pLeft to
+     * pRight. The coverage of a cell is how far its centre is inside the edge of the disc, from 0 half a cell outside to 1 half a cell
+     * inside.
+     */
+    private void stamp(
+            final int pEntry,
+            final double pX,
+            final double pY,
+            final double pRadius,
+            final int pTop,
+            final int pBottom,
+            final int pLeft,
+            final int pRight) {
+        val minX = Math.max(pLeft, (int) Math.floor(pX - pRadius - 0.5d));
+        val maxX = Math.min(pRight - 1, (int) Math.ceil(pX + pRadius + 0.5d));
+        val minY = Math.max(pTop, (int) Math.floor(pY - pRadius - 0.5d));
+        val maxY = Math.min(pBottom - 1, (int) Math.ceil(pY + pRadius + 0.5d));
+        for (int y = minY; y <= maxY; y++) {
+            val dy = y + 0.5d - pY;
+            for (int x = minX; x <= maxX; x++) {
+                val dx = x + 0.5d - pX;
+                val coverage = pRadius + 0.5d - Math.sqrt(dx * dx + dy * dy);
+                if (coverage <= 0.0d) {
+                    continue;
+                }
+                val value = (int) Math.round(Math.min(1.0d, coverage) * 255.0d);
+                val tile = y / TILE_SIZE * mTilesWide + x / TILE_SIZE;
+                if (mCoverage[tile] == null) {
+                    mCoverage[tile] = new byte[TILE_SIZE * TILE_SIZE];
+                    mEntries[tile] = new int[TILE_SIZE * TILE_SIZE];
+                    Arrays.fill(mEntries[tile], -1);
+                }
+                val cell = y % TILE_SIZE * TILE_SIZE + x % TILE_SIZE;
+                if (value > (mCoverage[tile][cell] & 0xff)) {
+                    mCoverage[tile][cell] = (byte) value;
+                    mEntries[tile][cell] = pEntry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether this was drawn from the PixelMap with the same thicknesses, multiplier and scale, so that it does not need to be drawn
+     * again.
+     *
+     * @param pPixelMap        the PixelMap
+     * @param pTransformSource the transform source that gives the line thicknesses
+     * @param pMultiplier      the thickness multiplier
+     * @param pThickOnly       whether only Thick lines are to be drawn
+     * @param pScale           the number of cells across each pixel of the PixelMap
+     * @return true if it would be drawn the same
+     */
+    public boolean isFor(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final IPixelMapTransformSource pTransformSource,
+            final double pMultiplier,
+            final boolean pThickOnly,
+            final int pScale) {
+        return mPixelMap == pPixelMap
+                && mMultiplier == pMultiplier
+                && mThickOnly == pThickOnly
+                && mScale == pScale
+                && mHeight == pTransformSource.getHeight()
+                && mShortLineThickness == pTransformSource.getShortLineThickness()
+                && mMediumLineThickness == pTransformSource.getMediumLineThickness()
+                && mLongLineThickness == pTransformSource.getLongLineThickness()
+                && mLineEndThickness == pTransformSource.getLineEndThickness()
+                && mLineEndShape == pTransformSource.getLineEndShape()
+                && mLineEndLengthType == pTransformSource.getLineEndLengthType()
+                && mLineEndLengthPercent == pTransformSource.getLineEndLengthPercent()
+                && mLineEndLengthPixel == pTransformSource.getLineEndLengthPixel();
+    }
+
+    public PixelMap getPixelMap() {
+        return mPixelMap;
+    }
+
+    public SegmentGrid getSegmentGrid() {
+        return mSegmentGrid;
+    }
+
+    /**
+     * Finds the cell that a point is in, as the tile in the high int and the cell in the tile in the low int, or -1 if the point is
+     * outside the buffer or in a tile that nothing is drawn in.
+     */
+    private long findCell(final double pX, final double pY) {
+        val x = (int) Math.floor(pX * mCellsPerUnit);
+        val y = (int) Math.floor(pY * mCellsPerUnit);
+        if (x < 0 || x >= mRasterWidth || y < 0 || y >= mRasterHeight) {
+            return -1;
+        }
+        val tile = y / TILE_SIZE * mTilesWide + x / TILE_SIZE;
+        return mCoverage[tile] == null ? -1 : (long) tile << 32 | y % TILE_SIZE * TILE_SIZE + x % TILE_SIZE;
+    }
+
+    /**
+     * Gets how much of the cell that a point is in is covered by the lines.
+     *
+     * @param pX the x of the point in UHVW
+     * @param pY the y of the point in UHVW
+     * @return the coverage, from 0 to 1
+     */
+    public double getCoverage(final double pX, final double pY) {
+        val cell = findCell(pX, pY);
+        return cell == -1 ? 0.0d : (mCoverage[(int) (cell >>> 32)][(int) cell] & 0xff) / 255.0d;
+    }
+
+    /**
+     * Gets the PixelChain of the line that covers the cell that a point is in the most.
+     *
+     * @param pX the x of the point in UHVW
+     * @param pY the y of the point in UHVW
+     * @return the PixelChain, or null if the cell is not covered
+     */
+    public PixelChain getPixelChain(final double pX, final double pY) {
+        val cell = findCell(pX, pY);
+        if (cell == -1 || mEntries[(int) (cell >>> 32)][(int) cell] == -1) {
+            return null;
+        }
+        return mSegmentGrid.getPixelChain(mEntries[(int) (cell >>> 32)][(int) cell]);
+    }
+}
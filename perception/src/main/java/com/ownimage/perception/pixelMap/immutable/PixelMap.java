@@ -1,13 +1,20 @@
 package com.ownimage.perception.pixelMap.immutable;
 
+import com.ownimage.framework.util.StrongReference;
 import com.ownimage.framework.util.immutable.Immutable2DArray;
+import com.ownimage.framework.util.immutable.ImmutableByteMap2D;
 import com.ownimage.framework.util.immutable.ImmutableMap;
-import com.ownimage.framework.util.immutable.ImmutableMap2D;
 import com.ownimage.framework.util.immutable.ImmutableSet;
 import io.vavr.Tuple2;
 import org.immutables.value.Value;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @Value.Immutable
 public interface PixelMap {
 
@@ -27,8 +34,8 @@ public interface PixelMap {
     }
 
     @Value.Default
-    default ImmutableMap2D<Byte> data() {
-        return new ImmutableMap2D<>(width(), height(), (byte) 0);
+    default ImmutableByteMap2D data() {
+        return new ImmutableByteMap2D(width(), height(), (byte) 0);
     }
 
     @Value.Default
@@ -46,6 +53,30 @@ public interface PixelMap {
         return new Immutable2DArray<>(width(), height(), 10);
     }
 
+    /**
+     * Whether the segmentIndex is left to be built from the pixelChains until it is needed, so that a PixelMap that has just been
+     * read can be shown without waiting for it. While this is set the segmentIndex attribute is not kept up to date; use
+     * currentSegmentIndex() to read the index.
+     */
+    @Value.Default
+    default boolean segmentIndexDeferred() {
+        return false;
+    }
+
+    /**
+     * The segmentIndex. If it is deferred it is built from the pixelChains the first time that it is asked for, and then kept for the
+     * life of this PixelMap in the same way as the segmentGrid.
+     *
+     * @return the segmentIndex
+     */
+    @Value.Lazy
+    default Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> currentSegmentIndex() {
+        if (!segmentIndexDeferred()) {
+            return segmentIndex();
+        }
+        return indexPixelChains(this, segmentIndex().clear(), pixelChains().toCollection());
+    }
+
     @Value.Default
     default int segmentCount() {
         return 0;
@@ -56,7 +87,79 @@ public interface PixelMap {
         return false;
     }
 
-    ImmutablePixelMap withData(@NotNull ImmutableMap2D<Byte> data);
+    /**
+     * The segmentIndex packed for finding the lines near a point. This is built the first time it is asked for and kept for the
+     * life of this PixelMap; it is not part of equals, and any with... gives a new PixelMap that builds its own. Building it looks at
+     * every pixel of the segmentIndex, so it takes time in proportion to width * height. Where a PixelMap is edited one version after
+     * another, as in the editor and its undo and redo, the grid of each version should be made from the grid of the version before
+     * with SegmentGrid.withChanges, which only packs the part of the grid that the changed PixelChains reach.
+     *
+     * @return the SegmentGrid
+     */
+    @Value.Lazy
+    default SegmentGrid segmentGrid() {
+        return new SegmentGrid(this);
+    }
+
+    /**
+     * Adds the segments of the pixelChains to a segmentIndex in one go, working out the pixels of the segments in parallel and then
+     * setting each pixel of the segmentIndex once.
+     *
+     * @param pixelMap     the PixelMap that the pixelChains are in
+     * @param segmentIndex the segmentIndex to add to
+     * @param pixelChains  the pixelChains
+     * @return the new segmentIndex
+     */
+    static Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> indexPixelChains(
+            @NotNull PixelMap pixelMap,
+            @NotNull Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> segmentIndex,
+            @NotNull Collection<? extends PixelChain> pixelChains) {
+        return reindexPixelChains(pixelMap, segmentIndex, Collections.emptyList(), pixelChains);
+    }
+
+    /**
+     * Removes the segments of some pixelChains from a segmentIndex and adds the segments of others in one go, working out the
+     * pixels of the segments in parallel and then setting each pixel of the segmentIndex that changes once.
+     *
+     * @param pixelMap     the PixelMap that the pixelChains are in
+     * @param segmentIndex the segmentIndex to change
+     * @param removed      the pixelChains whose segments are removed
+     * @param added        the pixelChains whose segments are added
+     * @return the new segmentIndex
+     */
+    static Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> reindexPixelChains(
+            @NotNull PixelMap pixelMap,
+            @NotNull Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> segmentIndex,
+            @NotNull Collection<? extends PixelChain> removed,
+            @NotNull Collection<? extends PixelChain> added) {
+        var removedCells = indexCells(pixelMap, removed);
+        var addedCells = indexCells(pixelMap, added);
+        var result = StrongReference.of(segmentIndex);
+        removedCells.forEach((ip, segments) -> {
+            var current = segmentIndex.getOptional(ip.getX(), ip.getY()).orElseGet(ImmutableSet::new);
+            var updated = current.removeAll(segments).addAll(addedCells.getOrDefault(ip, Collections.emptyList()));
+            result.update(si -> si.set(ip.getX(), ip.getY(), updated));
+        });
+        addedCells.forEach((ip, segments) -> {
+            if (!removedCells.containsKey(ip)) {
+                var current = segmentIndex.getOptional(ip.getX(), ip.getY()).orElseGet(ImmutableSet::new);
+                result.update(si -> si.set(ip.getX(), ip.getY(), current.addAll(segments)));
+            }
+        });
+        return result.get();
+    }
+
+    private static Map<ImmutableIXY, List<Tuple2<PixelChain, Segment>>> indexCells(
+            PixelMap pixelMap,
+            Collection<? extends PixelChain> pixelChains) {
+        return pixelChains.parallelStream()
+                .flatMap(pc -> pc.segments().stream()
+                        .flatMap(s -> s.getIndexPixels(pixelMap, pc).stream()
+                                .map(ip -> new Tuple2<>(ip, new Tuple2<PixelChain, Segment>(pc, s)))))
+                .collect(Collectors.groupingBy(Tuple2::_1, Collectors.mapping(Tuple2::_2, Collectors.toList())));
+    }
+
+    ImmutablePixelMap withData(@NotNull ImmutableByteMap2D data);
 
     ImmutablePixelMap withNodes(@NotNull ImmutableMap<ImmutableIXY, Node> nodes);
 
@@ -64,5 +167,7 @@ public interface PixelMap {
 
     ImmutablePixelMap withSegmentIndex(@NotNull Immutable2DArray<ImmutableSet<Tuple2<PixelChain, Segment>>> segmentIndex);
 
+    ImmutablePixelMap withSegmentIndexDeferred(boolean segmentIndexDeferred);
+
     ImmutablePixelMap withAutoTrackChanges(boolean autoTrackChanges);
 }
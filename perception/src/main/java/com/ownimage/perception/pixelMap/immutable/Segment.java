@@ -3,11 +3,14 @@ package com.ownimage.perception.pixelMap.immutable;
 import com.ownimage.framework.math.Line;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.math.Vector;
+import com.ownimage.framework.util.Range2D;
 import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
 import com.ownimage.perception.pixelMap.segment.ISegmentGrafittiHelper;
 
 import java.awt.*;
 import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public interface Segment extends Serializable {
 
@@ -16,13 +19,19 @@ public interface Segment extends Serializable {
     double getStartPosition();
 
     default double calcError(PixelMap pPixelMap, PixelChain pPixelChain) {
-        double error = 0.0d;
-        for (int i = getStartIndex(pPixelChain); i <= getEndIndex(pPixelChain); i++) {
-            Point uhvw = pPixelChain.getUHVWPoint(pPixelMap, i);
-            double distance = distance(pPixelMap, pPixelChain, uhvw);
-
-            error += distance * distance;
+        int start = getStartIndex(pPixelChain);
+        int count = getEndIndex(pPixelChain) - start + 1;
+        if (count <= 0) {
+            return 0.0d;
+        }
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            Point uhvw = pPixelChain.getUHVWPoint(pPixelMap, start + i);
+            x[i] = uhvw.getX();
+            y[i] = uhvw.getY();
         }
+        double error = getCoefficients(pPixelMap, pPixelChain).sumOfSquaredDistances(x, y, count);
 
 //        if (error < 0.0d) {
 //            mLogger.warning("-ve error");
@@ -41,6 +50,15 @@ public interface Segment extends Serializable {
 
     boolean closerThanActual(PixelMap pPixelMap, PixelChain pPixelChain, IPixelMapTransformSource pTransformSource, Point pPoint, double pMultiplier);
 
+    /**
+     * Gets the values needed to find distances to this segment, worked out for the segment in pPixelChain.
+     *
+     * @param pPixelMap   the PixelMap
+     * @param pPixelChain the PixelChain that this segment is part of
+     * @return the SegmentCoefficients
+     */
+    SegmentCoefficients getCoefficients(PixelMap pPixelMap, PixelChain pPixelChain);
+
     double closestLambda(PixelMap pPixelMap, PixelChain pPixelChain, Point pPoint);
 
     Segment withSegmentIndex(int segmentIndex);
@@ -86,6 +104,37 @@ public interface Segment extends Serializable {
 
     double getMinY(PixelMap pPixelMap, PixelChain pPixelChain);
 
+    /**
+     * Gets the pixels whose segmentIndex entry should hold this segment, i.e. those whose centre is within half a pixel of it. This
+     * only reads the size of the PixelMap so it is safe to call from several threads at once.
+     *
+     * @param pPixelMap   the PixelMap
+     * @param pPixelChain the PixelChain that this segment is part of
+     * @return the pixels
+     */
+    default List<ImmutableIXY> getIndexPixels(PixelMap pPixelMap, PixelChain pPixelChain) {
+        var width = pPixelMap.width();
+        var height = pPixelMap.height();
+        var aspectRatio = (double) width / height;
+        var halfPixel = new Point(0.5d * aspectRatio / width, 0.5d / height).length();
+
+        int minX = (int) Math.floor(getMinX(pPixelMap, pPixelChain) * width / aspectRatio) - 1;
+        minX = Math.max(minX, 0);
+        minX = Math.min(minX, width - 1);
+        int maxX = (int) Math.ceil(getMaxX(pPixelMap, pPixelChain) * width / aspectRatio) + 1;
+        maxX = Math.min(maxX, width - 1);
+        int minY = (int) Math.floor(getMinY(pPixelMap, pPixelChain) * height) - 1;
+        minY = Math.max(minY, 0);
+        minY = Math.min(minY, height - 1);
+        int maxY = (int) Math.ceil(getMaxY(pPixelMap, pPixelChain) * height) + 1;
+        maxY = Math.min(maxY, height - 1);
+
+        return new Range2D(minX, maxX, minY, maxY).stream()
+                .filter(i -> closerThan(pPixelMap, pPixelChain, Pixel.of(i.getX(), i.getY(), height).getUHVWMidPoint(height), halfPixel))
+                .map(i -> ImmutableIXY.of(i.getX(), i.getY()))
+                .collect(Collectors.toList());
+    }
+
     default int getPixelLength(PixelChain pPixelChain) {
         int length;
 
@@ -126,9 +175,11 @@ public interface Segment extends Serializable {
     }
 
     default boolean noPixelFurtherThan(PixelMap pPixelMap, PixelChain pPixelChain, double pDistance) {
+        SegmentCoefficients coefficients = getCoefficients(pPixelMap, pPixelChain);
+        SegmentCoefficients.Workspace workspace = new SegmentCoefficients.Workspace();
         for (int i = getStartIndex(pPixelChain); i <= getEndIndex(pPixelChain); i++) {
             Point uhvw = pPixelChain.getUHVWPoint(pPixelMap, i);
-            if (distance(pPixelMap, pPixelChain, uhvw) > pDistance) {
+            if (coefficients.distance(uhvw.getX(), uhvw.getY(), workspace) > pDistance) {
                 return false;
             }
         }
@@ -0,0 +1,393 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.framework.math.KMath;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import edu.rit.numeric.Cubic;
+import lombok.NonNull;
+
+/**
+ * The values that are needed to find the distance from a point to a Segment, worked out once for the Segment in its PixelChain
+ * and held as primitives. Finding the distance through the Segment itself goes back to the PixelChain for the vertex positions and
+ * allocates Points, Vectors, equations and a Tuple2 for every point, which matters as it is done for every candidate segment of
+ * every sample when rendering the lines, and for every pixel of every candidate segment when refining the PixelChains.
+ * <p>
+ * The distances are calculated in exactly the same way, and in the same order, as CurveSegment.closestLambdaAndDistance and
+ * LineSegment.distance, so the results are identical. The Cubic that the curve distances are solved with is passed in so that
+ * it can be reused.
+ */
+public class SegmentCoefficients {
+
+    private final PixelChain mPixelChain;
+    private final boolean mStraight;
+    private final double mStartPosition;
+    private final double mLength;
+
+    // curve: P0, P1, P2 are the control points and P(t) = A t^2 + B t + P0; straight: P0 and P2 are the ends and B is P2 - P0
+    private final double mP0X;
+    private final double mP0Y;
+    private final double mP1X;
+    private final double mP1Y;
+    private final double mP2X;
+    private final double mP2Y;
+    private final double mAX;
+    private final double mAY;
+    private final double mBX;
+    private final double mBY;
+
+    // coefficients of the derivative of the distance squared that do not depend on the point
+    private final double mA2;
+    private final double mAB2;
+    private final double mB2;
+
+    private final double mMinX;
+    private final double mMinY;
+    private final double mMaxX;
+    private final double mMaxY;
+
+    /**
+     * Reusable storage for finding the distance to one point at a time. A Workspace must only be used by one thread.
+     */
+    public static class Workspace {
+        private final Cubic mCubic = new Cubic();
+        private final double[] mX = new double[1];
+        private final double[] mY = new double[1];
+        private final double[] mLambda = new double[1];
+        private final double[] mDistance = new double[1];
+
+        public Cubic getCubic() {
+            return mCubic;
+        }
+    }
+
+    private SegmentCoefficients(
+            final PixelChain pPixelChain,
+            final boolean pStraight,
+            final double pStartPosition,
+            final double pLength,
+            final double pP0X, final double pP0Y,
+            final double pP1X, final double pP1Y,
+            final double pP2X, final double pP2Y,
+            final double pAX, final double pAY,
+            final double pBX, final double pBY) {
+        mPixelChain = pPixelChain;
+        mStraight = pStraight;
+        mStartPosition = pStartPosition;
+        mLength = pLength;
+        mP0X = pP0X;
+        mP0Y = pP0Y;
+        mP1X = pP1X;
+        mP1Y = pP1Y;
+        mP2X = pP2X;
+        mP2Y = pP2Y;
+        mAX = pAX;
+        mAY = pAY;
+        mBX = pBX;
+        mBY = pBY;
+
+        mA2 = pAX * pAX + pAY * pAY;
+        mAB2 = 2.0d * (pAX * pBX + pAY * pBY);
+        mB2 = pBX * pBX + pBY * pBY;
+
+        mMinX = KMath.min(pP0X, pP1X, pP2X);
+        mMinY = KMath.min(pP0Y, pP1Y, pP2Y);
+        mMaxX = KMath.max(pP0X, pP1X, pP2X);
+        mMaxY = KMath.max(pP0Y, pP1Y, pP2Y);
+    }
+
+    public static SegmentCoefficients of(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pPixelChain,
+            @NonNull final CurveSegment pSegment) {
+        final var p0 = pSegment.getP0(pPixelChain);
+        final var p1 = pSegment.getP1();
+        final var p2 = pSegment.getP2(pPixelChain);
+        return new SegmentCoefficients(pPixelChain, false, pSegment.getStartPosition(), pSegment.getLength(pPixelMap, pPixelChain),
+                p0.getX(), p0.getY(), p1.getX(), p1.getY(), p2.getX(), p2.getY(),
+                pSegment.getA().getX(), pSegment.getA().getY(), pSegment.getB().getX(), pSegment.getB().getY());
+    }
+
+    public static SegmentCoefficients of(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pPixelChain,
+            @NonNull final StraightSegment pSegment) {
+        final var lineSegment = pSegment.getLineSegment();
+        final var a = lineSegment.getA();
+        final var ab = lineSegment.getAB();
+        // the middle control point is only used for the bounding box
+        return new SegmentCoefficients(pPixelChain, true, pSegment.getStartPosition(), pSegment.getLength(pPixelMap, pPixelChain),
+                a.getX(), a.getY(), a.getX(), a.getY(), lineSegment.getB().getX(), lineSegment.getB().getY(),
+                0.0d, 0.0d, ab.getX(), ab.getY());
+    }
+
+    public PixelChain getPixelChain() {
+        return mPixelChain;
+    }
+
+    /**
+     * Gets the x of the point at pLambda along the segment, as Segment.getPointFromLambda does.
+     *
+     * @param pLambda the lambda, from 0 to 1
+     * @return the x in UHVW
+     */
+    public double getX(final double pLambda) {
+        return mStraight
+                ? mP0X + mBX * pLambda
+                : mP0X * (1.0d - pLambda) * (1.0d - pLambda) + mP1X * 2.0d * (1.0d - pLambda) * pLambda + mP2X * pLambda * pLambda;
+    }
+
+    /**
+     * Gets the y of the point at pLambda along the segment, as Segment.getPointFromLambda does.
+     *
+     * @param pLambda the lambda, from 0 to 1
+     * @return the y in UHVW
+     */
+    public double getY(final double pLambda) {
+        return mStraight
+                ? mP0Y + mBY * pLambda
+                : mP0Y * (1.0d - pLambda) * (1.0d - pLambda) + mP1Y * 2.0d * (1.0d - pLambda) * pLambda + mP2Y * pLambda * pLambda;
+    }
+
+    /**
+     * Gets the position along the PixelChain of the point at pLambda, which is what PixelChain.actualThickness is given.
+     *
+     * @param pLambda the lambda, from 0 to 1
+     * @return the position
+     */
+    public double getPosition(final double pLambda) {
+        return mStartPosition + pLambda * mLength;
+    }
+
+    /**
+     * Gets the length of the control polygon of the segment in UHVW, which is never less than the length of the segment itself.
+     *
+     * @return the length
+     */
+    public double getControlLength() {
+        return mStraight
+                ? Math.sqrt(mB2)
+                : Math.hypot(mP1X - mP0X, mP1Y - mP0Y) + Math.hypot(mP2X - mP1X, mP2Y - mP1Y);
+    }
+
+    /**
+     * Gets the smallest range of lambda that holds every point of the segment whose y is from pMinY to pMaxY. A curve can leave the y
+     * range and come back, so not every point in the range of lambda need be inside the y range.
+     *
+     * @param pMinY the least y in UHVW
+     * @param pMaxY the greatest y in UHVW
+     * @return the lowest lambda in the low index and the highest in the high index, or null if no point is in the y range
+     */
+    public double[] getLambdaRange(final double pMinY, final double pMaxY) {
+        // y = a * lambda^2 + b * lambda + c, so the ends of the lambda ranges are 0, 1 and where y crosses pMinY or pMaxY
+        final double a = mStraight ? 0.0d : mP0Y - 2.0d * mP1Y + mP2Y;
+        final double b = mStraight ? mBY : 2.0d * (mP1Y - mP0Y);
+        final double c = mP0Y;
+        final double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (final double lambda : new double[]{0.0d, 1.0d}) {
+            final double y = getY(lambda);
+            if (pMinY <= y && y <= pMaxY) {
+                addToRange(range, lambda);
+            }
+        }
+        for (final double y : new double[]{pMinY, pMaxY}) {
+            if (a == 0.0d) {
+                if (b != 0.0d) {
+                    addToRange(range, (y - c) / b);
+                }
+                continue;
+            }
+            final double discriminant = b * b - 4.0d * a * (c - y);
+            if (discriminant >= 0.0d) {
+                final double root = Math.sqrt(discriminant);
+                addToRange(range, (-b - root) / (2.0d * a));
+                addToRange(range, (-b + root) / (2.0d * a));
+            }
+        }
+        return range[0] <= range[1] ? range : null;
+    }
+
+    private static void addToRange(final double[] pRange, final double pLambda) {
+        if (0.0d <= pLambda && pLambda <= 1.0d) {
+            pRange[0] = Math.min(pRange[0], pLambda);
+            pRange[1] = Math.max(pRange[1], pLambda);
+        }
+    }
+
+    public double getMinX() {
+        return mMinX;
+    }
+
+    public double getMinY() {
+        return mMinY;
+    }
+
+    public double getMaxX() {
+        return mMaxX;
+    }
+
+    public double getMaxY() {
+        return mMaxY;
+    }
+
+    /**
+     * Finds the closest lambda on the segment, and the distance to it, for each of the points. This is the batch form of
+     * Segment.closestLambda and Segment.distance.
+     *
+     * @param pX        the x of the points in UHVW
+     * @param pY        the y of the points in UHVW
+     * @param pCount    the number of points
+     * @param pLambda   receives the closest lambda for each point
+     * @param pDistance receives the distance for each point
+     * @param pCubic    the Cubic to solve with
+     */
+    public void distances(
+            @NonNull final double[] pX,
+            @NonNull final double[] pY,
+            final int pCount,
+            @NonNull final double[] pLambda,
+            @NonNull final double[] pDistance,
+            @NonNull final Cubic pCubic) {
+        if (mStraight) {
+            for (int i = 0; i < pCount; i++) {
+                straight(pX[i], pY[i], i, pLambda, pDistance);
+            }
+        } else {
+            for (int i = 0; i < pCount; i++) {
+                curve(pX[i], pY[i], i, pLambda, pDistance, pCubic);
+            }
+        }
+    }
+
+    /**
+     * Gets the sum of the squares of the distances from the points to the segment, as Segment.calcError does.
+     *
+     * @param pX     the x of the points in UHVW
+     * @param pY     the y of the points in UHVW
+     * @param pCount the number of points
+     * @return the sum of the squares of the distances
+     */
+    public double sumOfSquaredDistances(@NonNull final double[] pX, @NonNull final double[] pY, final int pCount) {
+        final var lambda = new double[pCount];
+        final var distance = new double[pCount];
+        distances(pX, pY, pCount, lambda, distance, new Cubic());
+        double error = 0.0d;
+        for (int i = 0; i < pCount; i++) {
+            error += distance[i] * distance[i];
+        }
+        return error;
+    }
+
+    /**
+     * Gets the distance from a point to the segment.
+     *
+     * @param pX         the x of the point in UHVW
+     * @param pY         the y of the point in UHVW
+     * @param pWorkspace the workspace for this thread
+     * @return the distance
+     */
+    public double distance(final double pX, final double pY, @NonNull final Workspace pWorkspace) {
+        pWorkspace.mX[0] = pX;
+        pWorkspace.mY[0] = pY;
+        distances(pWorkspace.mX, pWorkspace.mY, 1, pWorkspace.mLambda, pWorkspace.mDistance, pWorkspace.mCubic);
+        return pWorkspace.mDistance[0];
+    }
+
+    /**
+     * Whether the point is inside the line that the segment is drawn as, giving the same result as Segment.closerThanActual. The
+     * thickest that the line can be is the width of the PixelChain, or the line end thickness if that is greater, so points that
+     * are further than this from the bounding box of the segment are rejected without finding the distance.
+     *
+     * @param pTransformSource the transform source that gives the line thicknesses
+     * @param pX               the x of the point in UHVW
+     * @param pY               the y of the point in UHVW
+     * @param pMultiplier      the thickness multiplier
+     * @param pWorkspace       the workspace for this thread
+     * @return true if the point is closer to the segment than the actual thickness of the line at that point
+     */
+    public boolean closerThanActual(
+            @NonNull final IPixelMapTransformSource pTransformSource,
+            final double pX,
+            final double pY,
+            final double pMultiplier,
+            @NonNull final Workspace pWorkspace) {
+        var envelope = mPixelChain.width(pTransformSource) * Math.max(1.0d, pTransformSource.getLineEndThickness()) * pMultiplier;
+        var dx = pX < mMinX ? mMinX - pX : pX > mMaxX ? pX - mMaxX : 0.0d;
+        var dy = pY < mMinY ? mMinY - pY : pY > mMaxY ? pY - mMaxY : 0.0d;
+        // the envelope is widened slightly so that rounding in the distance cannot reject a point that is just inside the line
+        if (dx * dx + dy * dy > envelope * envelope * 1.000001d) {
+            return false;
+        }
+
+        pWorkspace.mX[0] = pX;
+        pWorkspace.mY[0] = pY;
+        distances(pWorkspace.mX, pWorkspace.mY, 1, pWorkspace.mLambda, pWorkspace.mDistance, pWorkspace.mCubic);
+        var position = mStartPosition + pWorkspace.mLambda[0] * mLength;
+        var actualThickness = mPixelChain.actualThickness(pTransformSource, position) * pMultiplier;
+        return pWorkspace.mDistance[0] < actualThickness;
+    }
+
+    private void straight(final double pX, final double pY, final int pIndex, final double[] pLambda, final double[] pDistance) {
+        // as LineSegment.closestLambda and LineSegment.distance
+        var paxX = mP0X - pX;
+        var paxY = mP0Y - pY;
+        var lambda = -(paxX * mBX + paxY * mBY) / mB2;
+        lambda = lambda < 0.0d ? 0.0d : lambda > 1.0d ? 1.0d : lambda;
+        var dx = (mP0X + mBX * lambda) - pX;
+        var dy = (mP0Y + mBY * lambda) - pY;
+        pLambda[pIndex] = lambda;
+        pDistance[pIndex] = Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void curve(
+            final double pX,
+            final double pY,
+            final int pIndex,
+            final double[] pLambda,
+            final double[] pDistance,
+            final Cubic pCubic) {
+        // as CurveSegment.closestLambdaAndDistance, the roots of the derivative of the distance squared are the candidates
+        var cX = mP0X - pX;
+        var cY = mP0Y - pY;
+        var c = 2.0d * (mAX * cX + mAY * cY) + mB2;
+        var d = 2.0d * (mBX * cX + mBY * cY);
+        pCubic.solve(4.0d * mA2, 3.0d * mAB2, 2.0 * c, d);
+
+        var t1 = KMath.limit01(pCubic.x1);
+        var distance1 = curveDistance(t1, pX, pY);
+        if (pCubic.nRoots == 1) {
+            pLambda[pIndex] = t1;
+            pDistance[pIndex] = distance1;
+            return;
+        }
+
+        var t2 = KMath.limit01(pCubic.x2);
+        var distance2 = curveDistance(t2, pX, pY);
+        var t3 = KMath.limit01(pCubic.x3);
+        var distance3 = curveDistance(t3, pX, pY);
+
+        if (distance1 <= distance2 && distance1 <= distance3) {
+            pLambda[pIndex] = t1;
+            pDistance[pIndex] = distance1;
+        } else if (distance2 <= distance3) {
+            pLambda[pIndex] = t2;
+            pDistance[pIndex] = distance2;
+        } else {
+            pLambda[pIndex] = t3;
+            pDistance[pIndex] = distance3;
+        }
+    }
+
+    private double curveDistance(final double pT, final double pX, final double pY) {
+        // as CurveSegment.getPointFromLambda
+        var s0 = (1.0d - pT) * (1.0d - pT);
+        var s1 = 2.0d * (1.0d - pT) * pT;
+        var s2 = pT * pT;
+        var dx = (mP0X * s0 + mP1X * s1 + mP2X * s2) - pX;
+        var dy = (mP0Y * s0 + mP1Y * s1 + mP2Y * s2) - pY;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
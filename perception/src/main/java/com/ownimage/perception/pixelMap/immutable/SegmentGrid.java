@@ -0,0 +1,610 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.framework.math.Point;
+import com.ownimage.perception.pixelMap.IPixelChain.Thickness;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A read only copy of the segmentIndex of a PixelMap that is laid out for finding the lines near a point when rendering. The
+ * segmentIndex is an Immutable2DArray of ImmutableSets which is good for making changes, but looking up a window of cells in it for
+ * every sample, and removing the duplicates with a HashSet of Tuple2s that hash the whole PixelChain, dominates the time taken to
+ * render the lines.
+ * <p>
+ * Here the pixels are grouped into square cells of CELL_SIZE pixels and the (PixelChain, Segment) pairs that the segmentIndex
+ * holds for any pixel in a cell are numbered, and the numbers of the pairs of each cell are packed into an int array. The cells are
+ * held in square blocks of BLOCK_SIZE cells, each packed into one array with the start of each cell at the front, and blocks with
+ * no pairs are null. Pairs whose PixelChain has no thickness are left out. The Thickness of each pair is held alongside it so that
+ * the thick only lookups do not need to go to the PixelChain, and the SegmentCoefficients of each pair are worked out when it is
+ * added. Queries do not allocate; a pair that is in more than one cell of the window is only tested once by stamping it with a per
+ * thread query number.
+ * <p>
+ * Building a grid from a PixelMap looks at every pixel of the segmentIndex, so it takes time in proportion to the size of the
+ * PixelMap. PixelMap.segmentGrid() builds one the first time that it is needed and keeps it with that PixelMap. When a PixelMap is
+ * edited, withChanges makes the grid of the new version from the grid of the previous one and the PixelChains that were removed
+ * and added, in time that goes with the size of the change. The pairs are held in a log that the grids made in this way share, and
+ * that a new grid appends the pairs that it adds to, so a pair keeps its number from one grid to the next and only the blocks that
+ * the changed PixelChains reach are packed again. The pairs of removed PixelChains stay in the log, and the grid is built again
+ * from scratch once these outnumber the pairs that are in use. If the segmentIndex of the PixelMap is deferred the grid is built
+ * straight from the PixelChains, so a PixelMap that has just been read can be drawn without building its segmentIndex.
+ */
+public class SegmentGrid {
+
+    public static final int CELL_SIZE = 4;
+    public static final int BLOCK_SIZE = 16;
+
+    private static final int BLOCK_CELLS = BLOCK_SIZE * BLOCK_SIZE;
+    // the number of unused pairs in the log that a grid is not built again for, however few pairs are in use
+    private static final int MIN_UNUSED = 4096;
+
+    private final PixelMap mPixelMap;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mGridWidth;
+    private final int mGridHeight;
+    private final int mBlocksWide;
+    private final int mBlocksHigh;
+
+    // the start of the entries of each cell in the block, then the end of the last, then the entries; null if the block is empty
+    private final int[][] mBlocks;
+
+    private final Entries mEntries;
+    // the number of entries in the log that this grid can see, and the number of these that are in a cell
+    private final int mSize;
+    private final int mLive;
+
+    private final ThreadLocal<Stamps> mStamps;
+
+    /**
+     * The query numbers that each entry was last tested in by this thread, and the workspace that it finds the distances with.
+     * These are shared by the grids made by withChanges, so they grow to cover the entries of the grid that is queried.
+     */
+    private static class Stamps {
+        private int[] mStamps = new int[0];
+        private final SegmentCoefficients.Workspace mWorkspace = new SegmentCoefficients.Workspace();
+        private int mQuery = 0;
+
+        private int nextQuery(final int pSize) {
+            if (mStamps.length < pSize) {
+                mStamps = Arrays.copyOf(mStamps, Math.max(pSize, 2 * mStamps.length));
+            }
+            if (++mQuery == 0) {
+                Arrays.fill(mStamps, 0);
+                mQuery = 1;
+            }
+            return mQuery;
+        }
+    }
+
+    /**
+     * The log of the (PixelChain, Segment) pairs that the grids made from one another share. Entries are only ever appended, and
+     * only by a grid whose size is the size of the log, so each grid sees the same entries that it was made with.
+     */
+    private static class Entries {
+        private volatile PixelChain[] mPixelChains;
+        private volatile Segment[] mSegments;
+        private volatile SegmentCoefficients[] mCoefficients;
+        private volatile boolean[] mThick;
+        private int mSize;
+
+        private Entries(final PixelMap pPixelMap, final List<PixelChain> pPixelChains, final List<Segment> pSegments) {
+            mPixelChains = new PixelChain[0];
+            mSegments = new Segment[0];
+            mCoefficients = new SegmentCoefficients[0];
+            mThick = new boolean[0];
+            mSize = 0;
+            append(pPixelMap, 0, pPixelChains, pSegments);
+        }
+
+        /**
+         * Appends the pairs if the log has pFrom entries.
+         *
+         * @return whether they were appended
+         */
+        private synchronized boolean append(
+                final PixelMap pPixelMap,
+                final int pFrom,
+                final List<PixelChain> pPixelChains,
+                final List<Segment> pSegments) {
+            if (mSize != pFrom) {
+                return false;
+            }
+            val size = pFrom + pSegments.size();
+            if (size > mSegments.length) {
+                val capacity = Math.max(size, pFrom + pFrom / 2);
+                // the old arrays are left as they are for the grids that are reading them
+                mCoefficients = Arrays.copyOf(mCoefficients, capacity);
+                mThick = Arrays.copyOf(mThick, capacity);
+                mSegments = Arrays.copyOf(mSegments, capacity);
+                mPixelChains = Arrays.copyOf(mPixelChains, capacity);
+            }
+            val pixelChains = mPixelChains;
+            val segments = mSegments;
+            val coefficients = mCoefficients;
+            val thick = mThick;
+            IntStream.range(0, pSegments.size()).parallel().forEach(i -> {
+                pixelChains[pFrom + i] = pPixelChains.get(i);
+                segments[pFrom + i] = pSegments.get(i);
+                coefficients[pFrom + i] = pSegments.get(i).getCoefficients(pPixelMap, pPixelChains.get(i));
+                thick[pFrom + i] = pPixelChains.get(i).thickness() == Thickness.Thick;
+            });
+            mSize = size;
+            return true;
+        }
+    }
+
+    public SegmentGrid(@NonNull final PixelMap pPixelMap) {
+        mPixelMap = pPixelMap;
+        mWidth = pPixelMap.width();
+        mHeight = pPixelMap.height();
+        mGridWidth = (mWidth + CELL_SIZE - 1) / CELL_SIZE;
+        mGridHeight = (mHeight + CELL_SIZE - 1) / CELL_SIZE;
+        mBlocksWide = (mGridWidth + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        mBlocksHigh = (mGridHeight + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        val pixelChains = new ArrayList<PixelChain>();
+        val segments = new ArrayList<Segment>();
+        val cellStart = new int[mGridWidth * mGridHeight + 1];
+        val cellEntries = pPixelMap.segmentIndexDeferred()
+                ? packPixelChains(pPixelMap, pixelChains, segments, cellStart)
+                : packSegmentIndex(pPixelMap, pixelChains, segments, cellStart);
+        mBlocks = toBlocks(cellStart, cellEntries);
+
+        mEntries = new Entries(pPixelMap, pixelChains, segments);
+        mSize = segments.size();
+        mLive = segments.size();
+        mStamps = ThreadLocal.withInitial(Stamps::new);
+    }
+
+    private SegmentGrid(
+            final SegmentGrid pPrevious,
+            final PixelMap pPixelMap,
+            final int[][] pBlocks,
+            final Entries pEntries,
+            final int pSize,
+            final int pLive) {
+        mPixelMap = pPixelMap;
+        mWidth = pPrevious.mWidth;
+        mHeight = pPrevious.mHeight;
+        mGridWidth = pPrevious.mGridWidth;
+        mGridHeight = pPrevious.mGridHeight;
+        mBlocksWide = pPrevious.mBlocksWide;
+        mBlocksHigh = pPrevious.mBlocksHigh;
+        mBlocks = pBlocks;
+        mEntries = pEntries;
+        mSize = pSize;
+        mLive = pLive;
+        mStamps = pPrevious.mStamps;
+    }
+
+    /**
+     * Makes the grid of a PixelMap from the grid of a previous version of it. Only the blocks that the removed and added PixelChains
+     * reach are packed again, and the rest are shared with the previous grid, so the time taken goes with the size of the change
+     * rather than with the size of the PixelMap. The grid is built from scratch if the PixelMap is a different size, or if the log
+     * of pairs would hold more that are not in use than are.
+     *
+     * @param pPrevious  the grid of the previous version of the PixelMap
+     * @param pPixelMap  the PixelMap
+     * @param pRemoved   the PixelChains of the previous version that are not in the PixelMap
+     * @param pAdded     the PixelChains of the PixelMap that are not in the previous version
+     * @return the grid
+     */
+    public static SegmentGrid withChanges(
+            @NonNull final SegmentGrid pPrevious,
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final Collection<? extends PixelChain> pRemoved,
+            @NonNull final Collection<? extends PixelChain> pAdded) {
+        if (pPixelMap.width() != pPrevious.mWidth || pPixelMap.height() != pPrevious.mHeight) {
+            return new SegmentGrid(pPixelMap);
+        }
+
+        val removed = Collections.<PixelChain>newSetFromMap(new IdentityHashMap<>());
+        pRemoved.stream().filter(pc -> pc.thickness() != Thickness.None).forEach(removed::add);
+        val removedCount = removed.stream().mapToInt(pc -> pc.segments().size()).sum();
+        val pixelChains = new ArrayList<PixelChain>();
+        val segments = new ArrayList<Segment>();
+        pAdded.stream().filter(pc -> pc.thickness() != Thickness.None)
+                .forEach(pc -> pc.segments().forEach(segment -> {
+                    pixelChains.add(pc);
+                    segments.add(segment);
+                }));
+        val live = pPrevious.mLive - removedCount + segments.size();
+        if (pPrevious.mSize + segments.size() - live > Math.max(MIN_UNUSED, live)) {
+            return new SegmentGrid(pPixelMap);
+        }
+
+        var entries = pPrevious.mEntries;
+        if (!entries.append(pPixelMap, pPrevious.mSize, pixelChains, segments)) {
+            // the grid has already been changed in another way, so this change starts a log of its own
+            entries = new Entries(pPixelMap,
+                    Arrays.asList(Arrays.copyOf(entries.mPixelChains, pPrevious.mSize)),
+                    Arrays.asList(Arrays.copyOf(entries.mSegments, pPrevious.mSize)));
+            entries.append(pPixelMap, pPrevious.mSize, pixelChains, segments);
+        }
+
+        // the cells of each added entry, grouped by block, and the blocks that the removed PixelChains reach
+        val added = new HashMap<Integer, List<int[]>>();
+        IntStream.range(0, segments.size()).forEach(i -> IntStream
+                .of(pPrevious.getCells(pPixelMap, pixelChains.get(i), segments.get(i)))
+                .forEach(cell -> added.computeIfAbsent(pPrevious.getBlock(cell), k -> new ArrayList<>())
+                        .add(new int[]{pPrevious.getBlockCell(cell), pPrevious.mSize + i})));
+        val dirty = new TreeSet<>(added.keySet());
+        removed.forEach(pc -> pc.segments().forEach(segment -> IntStream.of(pPrevious.getCells(pPixelMap, pc, segment))
+                .forEach(cell -> dirty.add(pPrevious.getBlock(cell)))));
+
+        val blocks = pPrevious.mBlocks.clone();
+        val pixelChainsOfEntries = entries.mPixelChains;
+        for (val block : dirty) {
+            blocks[block] = packBlock(pPrevious.mBlocks[block], added.getOrDefault(block, List.of()),
+                    entry -> removed.contains(pixelChainsOfEntries[entry]));
+        }
+        return new SegmentGrid(pPrevious, pPixelMap, blocks, entries, pPrevious.mSize + segments.size(), live);
+    }
+
+    /**
+     * Packs a block again without the entries that are to be removed and with the added entries after the others of their cell.
+     */
+    private static int[] packBlock(final int[] pBlock, final List<int[]> pAdded, final IntPredicate pRemoved) {
+        val counts = new int[BLOCK_CELLS];
+        if (pBlock != null) {
+            for (int cell = 0; cell < BLOCK_CELLS; cell++) {
+                for (int i = pBlock[cell]; i < pBlock[cell + 1]; i++) {
+                    if (!pRemoved.test(pBlock[i])) {
+                        counts[cell]++;
+                    }
+                }
+            }
+        }
+        pAdded.forEach(a -> counts[a[0]]++);
+        val total = Arrays.stream(counts).sum();
+        if (total == 0) {
+            return null;
+        }
+
+        val result = new int[BLOCK_CELLS + 1 + total];
+        val next = new int[BLOCK_CELLS];
+        var start = BLOCK_CELLS + 1;
+        for (int cell = 0; cell < BLOCK_CELLS; cell++) {
+            result[cell] = start;
+            next[cell] = start;
+            start += counts[cell];
+        }
+        result[BLOCK_CELLS] = start;
+        if (pBlock != null) {
+            for (int cell = 0; cell < BLOCK_CELLS; cell++) {
+                for (int i = pBlock[cell]; i < pBlock[cell + 1]; i++) {
+                    if (!pRemoved.test(pBlock[i])) {
+                        result[next[cell]++] = pBlock[i];
+                    }
+                }
+            }
+        }
+        pAdded.forEach(a -> result[next[a[0]]++] = a[1]);
+        return result;
+    }
+
+    /**
+     * Gets the cells that a segment is in, from the pixels that the segmentIndex holds it for.
+     */
+    private int[] getCells(final PixelMap pPixelMap, final PixelChain pPixelChain, final Segment pSegment) {
+        return pSegment.getIndexPixels(pPixelMap, pPixelChain).stream()
+                .mapToInt(p -> p.getY() / CELL_SIZE * mGridWidth + p.getX() / CELL_SIZE)
+                .distinct()
+                .toArray();
+    }
+
+    private int getBlock(final int pCell) {
+        return pCell / mGridWidth / BLOCK_SIZE * mBlocksWide + pCell % mGridWidth / BLOCK_SIZE;
+    }
+
+    private int getBlockCell(final int pCell) {
+        return pCell / mGridWidth % BLOCK_SIZE * BLOCK_SIZE + pCell % mGridWidth % BLOCK_SIZE;
+    }
+
+    /**
+     * Splits the entries of the cells, which are held cell after cell with the start of each in pCellStart, into blocks.
+     */
+    private int[][] toBlocks(final int[] pCellStart, final int[] pCellEntries) {
+        val blocks = new int[mBlocksWide * mBlocksHigh][];
+        IntStream.range(0, blocks.length).parallel().forEach(block -> {
+            val bx = block % mBlocksWide * BLOCK_SIZE;
+            val by = block / mBlocksWide * BLOCK_SIZE;
+            var total = 0;
+            for (int gy = by; gy < Math.min(mGridHeight, by + BLOCK_SIZE); gy++) {
+                total += pCellStart[gy * mGridWidth + Math.min(mGridWidth, bx + BLOCK_SIZE)] - pCellStart[gy * mGridWidth + bx];
+            }
+            if (total == 0) {
+                return;
+            }
+            val result = new int[BLOCK_CELLS + 1 + total];
+            var next = BLOCK_CELLS + 1;
+            for (int cell = 0; cell < BLOCK_CELLS; cell++) {
+                result[cell] = next;
+                val gx = bx + cell % BLOCK_SIZE;
+                val gy = by + cell / BLOCK_SIZE;
+                if (gx < mGridWidth && gy < mGridHeight) {
+                    val gridCell = gy * mGridWidth + gx;
+                    val count = pCellStart[gridCell + 1] - pCellStart[gridCell];
+                    System.arraycopy(pCellEntries, pCellStart[gridCell], result, next, count);
+                    next += count;
+                }
+            }
+            result[BLOCK_CELLS] = next;
+            blocks[block] = result;
+        });
+        return blocks;
+    }
+
+    /**
+     * Numbers the pairs in the segmentIndex in the order that they are first found, and packs the entries of each cell.
+     */
+    private int[] packSegmentIndex(
+            final PixelMap pPixelMap,
+            final ArrayList<PixelChain> pPixelChains,
+            final ArrayList<Segment> pSegments,
+            final int[] pCellStart) {
+        val segmentIndex = pPixelMap.segmentIndex();
+        val ids = new IdentityHashMap<PixelChain, IdentityHashMap<Segment, Integer>>();
+        var lastCell = new int[64];
+        var cellEntries = new int[1024];
+        var entryCount = 0;
+
+        for (int gy = 0; gy < mGridHeight; gy++) {
+            for (int gx = 0; gx < mGridWidth; gx++) {
+                val cell = gy * mGridWidth + gx;
+                pCellStart[cell] = entryCount;
+                for (int y = gy * CELL_SIZE; y < Math.min(mHeight, (gy + 1) * CELL_SIZE); y++) {
+                    for (int x = gx * CELL_SIZE; x < Math.min(mWidth, (gx + 1) * CELL_SIZE); x++) {
+                        val set = segmentIndex.getOptional(x, y).orElse(null);
+                        if (set == null) {
+                            continue;
+                        }
+                        for (val tuple : set.toCollection()) {
+                            if (tuple._1.thickness() == Thickness.None) {
+                                continue;
+                            }
+                            val id = ids.computeIfAbsent(tuple._1, k -> new IdentityHashMap<>())
+                                    .computeIfAbsent(tuple._2, k -> {
+                                        pPixelChains.add(tuple._1);
+                                        pSegments.add(tuple._2);
+                                        return pSegments.size() - 1;
+                                    });
+                            if (id >= lastCell.length) {
+                                lastCell = Arrays.copyOf(lastCell, lastCell.length * 2);
+                            }
+                            // lastCell holds cell + 1 so that the initial 0 does not match cell 0
+                            if (lastCell[id] != cell + 1) {
+                                lastCell[id] = cell + 1;
+                                if (entryCount == cellEntries.length) {
+                                    cellEntries = Arrays.copyOf(cellEntries, entryCount * 2);
+                                }
+                                cellEntries[entryCount++] = id;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        pCellStart[mGridWidth * mGridHeight] = entryCount;
+        return Arrays.copyOf(cellEntries, entryCount);
+    }
+
+    /**
+     * Numbers the segments of the PixelChains in turn and packs the entries of each cell, working out the pixels of each segment
+     * in the same way as the segmentIndex does. This is used when the segmentIndex of the PixelMap is deferred, so that the lines can
+     * be drawn without building it.
+     */
+    private int[] packPixelChains(
+            final PixelMap pPixelMap,
+            final ArrayList<PixelChain> pPixelChains,
+            final ArrayList<Segment> pSegments,
+            final int[] pCellStart) {
+        for (val pixelChain : pPixelMap.pixelChains().toCollection()) {
+            if (pixelChain.thickness() == Thickness.None) {
+                continue;
+            }
+            pixelChain.segments().forEach(segment -> {
+                pPixelChains.add(pixelChain);
+                pSegments.add(segment);
+            });
+        }
+
+        val cells = IntStream.range(0, pSegments.size()).parallel()
+                .mapToObj(id -> getCells(pPixelMap, pPixelChains.get(id), pSegments.get(id)))
+                .toArray(int[][]::new);
+        for (val idCells : cells) {
+            for (val cell : idCells) {
+                pCellStart[cell + 1]++;
+            }
+        }
+        for (int cell = 0; cell < mGridWidth * mGridHeight; cell++) {
+            pCellStart[cell + 1] += pCellStart[cell];
+        }
+        val cellEntries = new int[pCellStart[mGridWidth * mGridHeight]];
+        val next = Arrays.copyOf(pCellStart, mGridWidth * mGridHeight);
+        for (int id = 0; id < cells.length; id++) {
+            for (val cell : cells[id]) {
+                cellEntries[next[cell]++] = id;
+            }
+        }
+        return cellEntries;
+    }
+
+    /**
+     * Whether this is the grid of the PixelMap.
+     *
+     * @param pPixelMap the PixelMap
+     * @return true if it is
+     */
+    public boolean isFor(final PixelMap pPixelMap) {
+        return mPixelMap == pPixelMap;
+    }
+
+    public PixelMap getPixelMap() {
+        return mPixelMap;
+    }
+
+    /**
+     * Whether this grid was made from pPrevious by withChanges, directly or through other grids, so that the entries of pPrevious
+     * are the same entries in this grid.
+     *
+     * @param pPrevious the grid
+     * @return true if the entries of pPrevious are numbered in the same way here
+     */
+    public boolean isNumberedAs(@NonNull final SegmentGrid pPrevious) {
+        return mEntries == pPrevious.mEntries && mSize >= pPrevious.mSize;
+    }
+
+    /**
+     * The number of (PixelChain, Segment) pairs that the grid numbers. Some of these can be pairs of PixelChains that have been
+     * removed, which are not in any cell; getEntries gives the pairs that are in use.
+     *
+     * @return the size
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets the (PixelChain, Segment) pairs that are in a cell.
+     *
+     * @return the entries, in increasing order
+     */
+    public int[] getEntries() {
+        val used = new boolean[mSize];
+        for (val block : mBlocks) {
+            if (block != null) {
+                for (int i = BLOCK_CELLS + 1; i < block.length; i++) {
+                    used[block[i]] = true;
+                }
+            }
+        }
+        return IntStream.range(0, mSize).filter(i -> used[i]).toArray();
+    }
+
+    /**
+     * Gets the (PixelChain, Segment) pairs that are in the cells that cover the pixels in a rectangle.
+     *
+     * @param pMinX the first column of pixels
+     * @param pMinY the first row of pixels
+     * @param pMaxX the last column of pixels
+     * @param pMaxY the last row of pixels
+     * @return the entries, in increasing order
+     */
+    public int[] getEntries(final int pMinX, final int pMinY, final int pMaxX, final int pMaxY) {
+        val entries = new BitSet();
+        for (int gy = Math.max(0, pMinY) / CELL_SIZE; gy <= Math.min(mHeight - 1, pMaxY) / CELL_SIZE; gy++) {
+            for (int gx = Math.max(0, pMinX) / CELL_SIZE; gx <= Math.min(mWidth - 1, pMaxX) / CELL_SIZE; gx++) {
+                val block = mBlocks[gy / BLOCK_SIZE * mBlocksWide + gx / BLOCK_SIZE];
+                if (block == null) {
+                    continue;
+                }
+                val cell = gy % BLOCK_SIZE * BLOCK_SIZE + gx % BLOCK_SIZE;
+                for (int i = block[cell]; i < block[cell + 1]; i++) {
+                    entries.set(block[i]);
+                }
+            }
+        }
+        return entries.stream().toArray();
+    }
+
+    /**
+     * The number of blocks that are not shared with another grid, for the tests.
+     */
+    int countBlocksNotSharedWith(final SegmentGrid pOther) {
+        return (int) IntStream.range(0, mBlocks.length).filter(b -> mBlocks[b] != pOther.mBlocks[b]).count();
+    }
+
+    public PixelChain getPixelChain(final int pEntry) {
+        return mEntries.mPixelChains[pEntry];
+    }
+
+    public Segment getSegment(final int pEntry) {
+        return mEntries.mSegments[pEntry];
+    }
+
+    public SegmentCoefficients getCoefficients(final int pEntry) {
+        return mEntries.mCoefficients[pEntry];
+    }
+
+    public boolean isThick(final int pEntry) {
+        return mEntries.mThick[pEntry];
+    }
+
+    /**
+     * Finds a segment that the point is inside the line of. The pixels searched are those within pMaxThickness of the point plus
+     * one pixel, and each candidate is tested with SegmentCoefficients.closerThanActual, which gives the same result as
+     * Segment.closerThanActual.
+     *
+     * @param pTransformSource the transform source that gives the line thicknesses
+     * @param pUHVW           the point in UHVW coordinates
+     * @param pMaxThickness   the thickest that any line can be
+     * @param pMultiplier     the thickness multiplier passed to closerThanActual
+     * @param pThickOnly      whether only Thick lines are to be found
+     * @return the entry for the segment found, or -1 if there is none
+     */
+    public int findAnyCloserThan(
+            @NonNull final IPixelMapTransformSource pTransformSource,
+            @NonNull final Point pUHVW,
+            final double pMaxThickness,
+            final double pMultiplier,
+            final boolean pThickOnly) {
+        if (mLive == 0) {
+            return -1;
+        }
+
+        // UHVW x is in units of the height, so x * height gives the pixel column in the same way as y * height gives the row
+        val minX = Math.max(0, (int) Math.floor((pUHVW.getX() - pMaxThickness) * mHeight) - 1);
+        val maxX = Math.min(mWidth - 1, (int) Math.ceil((pUHVW.getX() + pMaxThickness) * mHeight) + 1);
+        val minY = Math.max(0, (int) Math.floor((pUHVW.getY() - pMaxThickness) * mHeight) - 1);
+        val maxY = Math.min(mHeight - 1, (int) Math.ceil((pUHVW.getY() + pMaxThickness) * mHeight) + 1);
+        if (minX > maxX || minY > maxY) {
+            return -1;
+        }
+
+        val x = pUHVW.getX();
+        val y = pUHVW.getY();
+        val thick = mEntries.mThick;
+        val coefficients = mEntries.mCoefficients;
+        val stamps = mStamps.get();
+        val query = stamps.nextQuery(mSize);
+        for (int gy = minY / CELL_SIZE; gy <= maxY / CELL_SIZE; gy++) {
+            for (int gx = minX / CELL_SIZE; gx <= maxX / CELL_SIZE; gx++) {
+                val block = mBlocks[gy / BLOCK_SIZE * mBlocksWide + gx / BLOCK_SIZE];
+                if (block == null) {
+                    continue;
+                }
+                val cell = gy % BLOCK_SIZE * BLOCK_SIZE + gx % BLOCK_SIZE;
+                for (int i = block[cell]; i < block[cell + 1]; i++) {
+                    val entry = block[i];
+                    if (stamps.mStamps[entry] == query || (pThickOnly && !thick[entry])) {
+                        continue;
+                    }
+                    stamps.mStamps[entry] = query;
+                    if (coefficients[entry].closerThanActual(pTransformSource, x, y, pMultiplier, stamps.mWorkspace)) {
+                        return entry;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
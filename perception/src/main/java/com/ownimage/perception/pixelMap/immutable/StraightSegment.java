@@ -20,6 +20,11 @@ public interface StraightSegment extends Segment {
     @Value.Parameter(order = 3)
     LineSegment getLineSegment();
 
+    @Override
+    default SegmentCoefficients getCoefficients(PixelMap pPixelMap, PixelChain pPixelChain) {
+        return SegmentCoefficients.of(pPixelMap, pPixelChain, this);
+    }
+
     @Override
     default Segment toImmutable() {
         return ImmutableStraightSegment.copyOf(this);
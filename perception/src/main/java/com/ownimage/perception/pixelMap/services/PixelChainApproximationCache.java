@@ -0,0 +1,244 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.pixelMap.services;
+
+import com.ownimage.framework.util.immutable.ImmutableVectorClone;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
+import com.ownimage.perception.pixelMap.immutable.PixelChain;
+import com.ownimage.perception.pixelMap.immutable.PixelMap;
+import com.ownimage.perception.pixelMap.immutable.Segment;
+import com.ownimage.perception.pixelMap.immutable.Vertex;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Holds the vertexes and segments that approximating a PixelChain gave, keyed by the pixels of the PixelChain, the size of the
+ * PixelMap and the tolerance, and those that refining that approximation gave, keyed by the line curve preference as well. Moving
+ * the tolerance or curve preference controls back to a value that has been used before does not approximate the PixelChains
+ * again, and moving only the curve preference refines the approximations that are held rather than approximating again. The
+ * results only depend on the pixels of the PixelChain and the size of the PixelMap, not on the vertexes and segments that the
+ * PixelChain had before, or its thickness and color, which are kept from the PixelChain that the result is looked up for.
+ * <p>
+ * The pixels are part of the key as their coordinates, as the ImmutableVectorClone that they are held in is only equal to itself.
+ * The least recently used entries are dropped once the estimated memory that the entries take is more than the budget. It is safe
+ * to use from many threads.
+ */
+public class PixelChainApproximationCache {
+
+    public final static long DEFAULT_BUDGET = 64L * 1024L * 1024L;
+
+    // rough sizes of the objects held, used to estimate the memory that an entry takes
+    private final static long ENTRY_BYTES = 128L;
+    private final static long VERTEX_BYTES = 48L;
+    private final static long SEGMENT_BYTES = 96L;
+
+    private final LinkedHashMap<Key, Approximation> mApproximations = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBudget;
+    private long mSize = 0;
+
+    private static class Key {
+        private final int[] mPixels;
+        private final int mWidth;
+        private final int mHeight;
+        private final double mTolerance;
+        private final boolean mRefined;
+        private final double mLineCurvePreference;
+        private final int mHashCode;
+
+        private Key(
+                final PixelMap pPixelMap,
+                final PixelChain pPixelChain,
+                final double pTolerance,
+                final boolean pRefined,
+                final double pLineCurvePreference) {
+            val pixels = pPixelChain.pixels();
+            mPixels = new int[2 * pixels.size()];
+            for (int i = 0; i < pixels.size(); i++) {
+                mPixels[2 * i] = pixels.get(i).getX();
+                mPixels[2 * i + 1] = pixels.get(i).getY();
+            }
+            mWidth = pPixelMap.width();
+            mHeight = pPixelMap.height();
+            mTolerance = pTolerance;
+            mRefined = pRefined;
+            mLineCurvePreference = pRefined ? pLineCurvePreference : 0.0d;
+            mHashCode = Objects.hash(Arrays.hashCode(mPixels), mWidth, mHeight, mTolerance, mRefined, mLineCurvePreference);
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof Key)) {
+                return false;
+            }
+            val other = (Key) pOther;
+            return mHashCode == other.mHashCode
+                    && mWidth == other.mWidth
+                    && mHeight == other.mHeight
+                    && mTolerance == other.mTolerance
+                    && mRefined == other.mRefined
+                    && mLineCurvePreference == other.mLineCurvePreference
+                    && Arrays.equals(mPixels, other.mPixels);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    private static class Approximation {
+        private final ImmutableVectorClone<Vertex> mVertexes;
+        private final ImmutableVectorClone<Segment> mSegments;
+        private final double mLength;
+        private final long mSize;
+
+        private Approximation(final Key pKey, final PixelChain pPixelChain) {
+            mVertexes = pPixelChain.vertexes();
+            mSegments = pPixelChain.segments();
+            mLength = pPixelChain.length();
+            mSize = ENTRY_BYTES + 4L * pKey.mPixels.length + VERTEX_BYTES * mVertexes.size() + SEGMENT_BYTES * mSegments.size();
+        }
+    }
+
+    public PixelChainApproximationCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param pBudget the memory in bytes that the entries can take
+     */
+    public PixelChainApproximationCache(final long pBudget) {
+        mBudget = pBudget;
+    }
+
+    /**
+     * Gets the PixelChain with the vertexes and segments that approximating it gave before, if they are held.
+     *
+     * @param pPixelMap   the PixelMap that the PixelChain is in
+     * @param pPixelChain the PixelChain
+     * @param pTolerance  the tolerance
+     * @return the approximated PixelChain, or empty if it is not held
+     */
+    public Optional<ImmutablePixelChain> getApproximated(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pPixelChain,
+            final double pTolerance) {
+        return get(new Key(pPixelMap, pPixelChain, pTolerance, false, 0.0d), pPixelChain);
+    }
+
+    /**
+     * Gets the PixelChain with the vertexes and segments that approximating and then refining it gave before, if they are held.
+     *
+     * @param pPixelMap            the PixelMap that the PixelChain is in
+     * @param pPixelChain          the PixelChain
+     * @param pTolerance           the tolerance
+     * @param pLineCurvePreference the line curve preference
+     * @return the refined PixelChain, or empty if it is not held
+     */
+    public Optional<ImmutablePixelChain> getRefined(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pPixelChain,
+            final double pTolerance,
+            final double pLineCurvePreference) {
+        return get(new Key(pPixelMap, pPixelChain, pTolerance, true, pLineCurvePreference), pPixelChain);
+    }
+
+    private Optional<ImmutablePixelChain> get(final Key pKey, final PixelChain pPixelChain) {
+        final Approximation approximation;
+        synchronized (this) {
+            approximation = mApproximations.get(pKey);
+        }
+        return Optional.ofNullable(approximation)
+                .map(a -> ImmutablePixelChain.copyOf(pPixelChain)
+                        .withVertexes(a.mVertexes)
+                        .withSegments(a.mSegments)
+                        .withLength(a.mLength));
+    }
+
+    /**
+     * Holds the vertexes and segments that approximating a PixelChain gave.
+     *
+     * @param pPixelMap     the PixelMap that the PixelChain is in
+     * @param pApproximated the approximated PixelChain
+     * @param pTolerance    the tolerance
+     */
+    public void putApproximated(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pApproximated,
+            final double pTolerance) {
+        put(new Key(pPixelMap, pApproximated, pTolerance, false, 0.0d), pApproximated);
+    }
+
+    /**
+     * Holds the vertexes and segments that approximating and then refining a PixelChain gave.
+     *
+     * @param pPixelMap            the PixelMap that the PixelChain is in
+     * @param pRefined             the refined PixelChain
+     * @param pTolerance           the tolerance
+     * @param pLineCurvePreference the line curve preference
+     */
+    public void putRefined(
+            @NonNull final PixelMap pPixelMap,
+            @NonNull final PixelChain pRefined,
+            final double pTolerance,
+            final double pLineCurvePreference) {
+        put(new Key(pPixelMap, pRefined, pTolerance, true, pLineCurvePreference), pRefined);
+    }
+
+    private void put(final Key pKey, final PixelChain pPixelChain) {
+        val approximation = new Approximation(pKey, pPixelChain);
+        synchronized (this) {
+            if (approximation.mSize > mBudget) {
+                return;
+            }
+            val previous = mApproximations.put(pKey, approximation);
+            if (previous != null) {
+                mSize -= previous.mSize;
+            }
+            mSize += approximation.mSize;
+            evict();
+        }
+    }
+
+    private void evict() {
+        val iterator = mApproximations.values().iterator();
+        while (mSize > mBudget && iterator.hasNext()) {
+            mSize -= iterator.next().mSize;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void setBudget(final long pBudget) {
+        mBudget = pBudget;
+        evict();
+    }
+
+    /**
+     * Gets the estimated memory that the entries take.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized int size() {
+        return mApproximations.size();
+    }
+
+    public synchronized void clear() {
+        mApproximations.clear();
+        mSize = 0;
+    }
+}
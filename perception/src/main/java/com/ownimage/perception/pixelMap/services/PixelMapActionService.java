@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Vector;
 import java.util.function.Function;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 @Service
 public class PixelMapActionService {
@@ -37,6 +38,7 @@ public class PixelMapActionService {
     private PixelMapApproximationService pixelMapApproximationService;
     private PixelChainService pixelChainService;
     private PixelService pixelService;
+    private final PixelChainApproximationCache approximationCache = new PixelChainApproximationCache();
 
     @Autowired
     public void setPixelMapService(PixelMapService pixelMapService) {
@@ -248,36 +250,61 @@ public class PixelMapActionService {
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull IPixelMapTransformSource transformSource) {
         SplitTimer.split("PixelMap actionReapproximate() start");
-        var result = StrongReference.of(pixelMap);
-        var updates = new Vector<ImmutablePixelChain>();
-        var tolerance = transformSource.getLineTolerance() / transformSource.getHeight();
-        var lineCurvePreference = transformSource.getLineCurvePreference();
-        result.get().pixelChains().stream()
-                .parallel()
-                .map(pc -> pixelChainService.approximate(result.get(), pc, tolerance))
-                .map(pc -> pixelChainService.refine(result.get(), pc, lineCurvePreference))
-                //.map(pc -> pc.indexSegments(this, true))
-                .forEach(updates::add);
-        result.update(r -> pixelMapService.pixelChainsClear(r));
-        result.update(r -> pixelMapService.pixelChainsAddAll(r, updates));
+        var result = reapproximate(pixelMap, transformSource);
         SplitTimer.split("PixelMap actionReapproximate() end");
-        return result.get();
+        return result;
     }
 
+    /**
+     * Refines the PixelChains again for a new line curve preference. Each PixelChain is refined from its approximation for the
+     * current tolerance, rather than from the PixelChain as it was refined for the previous curve preference, so that a curve
+     * preference gives the same lines whichever values it was moved through, and these can be held in the approximationCache.
+     *
+     * @param pixelMap        the pixelMap
+     * @param transformSource the transform that gives the tolerance and line curve preference
+     * @return the updated pixelMap
+     */
     public ImmutablePixelMap actionRerefine(
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull CannyEdgeTransform transformSource) {
-        var result = StrongReference.of(pixelMap);
-        var updates = new Vector<ImmutablePixelChain>();
+        return reapproximate(pixelMap, transformSource);
+    }
+
+    /**
+     * Approximates and refines each PixelChain for the tolerance and line curve preference of the transformSource, taking the
+     * results from the approximationCache where they are held, and only reindexing the PixelChains that have changed.
+     */
+    private ImmutablePixelMap reapproximate(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull IPixelMapTransformSource transformSource) {
         var tolerance = transformSource.getLineTolerance() / transformSource.getHeight();
         var lineCurvePreference = transformSource.getLineCurvePreference();
-        result.get().pixelChains().stream()
+        var replacements = pixelMap.pixelChains().stream()
                 .parallel()
-                .map(pc -> pixelChainService.refine(result.get(), pc, lineCurvePreference))
-                .forEach(updates::add);
-        result.update(r -> pixelMapService.pixelChainsClear(r));
-        result.update(r -> pixelMapService.pixelChainsAddAll(r, updates));
-        return result.get();
+                .map(pc -> new Tuple2<>(pc, approximationCache.getRefined(pixelMap, pc, tolerance, lineCurvePreference)
+                        .orElseGet(() -> {
+                            var refined = pixelChainService.refine(pixelMap, approximate(pixelMap, pc, tolerance), lineCurvePreference);
+                            approximationCache.putRefined(pixelMap, refined, tolerance, lineCurvePreference);
+                            return refined;
+                        })))
+                .collect(Collectors.toList());
+        return pixelMapService.pixelChainsReplaceAll(pixelMap, replacements);
+    }
+
+    /**
+     * Approximates the PixelChain for the tolerance, taking the approximation from the approximationCache where it is held, so that
+     * a new line curve preference only refines the PixelChains again.
+     */
+    private ImmutablePixelChain approximate(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull ImmutablePixelChain pixelChain,
+            double tolerance) {
+        return approximationCache.getApproximated(pixelMap, pixelChain, tolerance)
+                .orElseGet(() -> {
+                    var approximated = pixelChainService.approximate(pixelMap, pixelChain, tolerance);
+                    approximationCache.putApproximated(pixelMap, approximated, tolerance);
+                    return approximated;
+                });
     }
 
     public ImmutablePixelMap actionSetPixelChainDefaultThickness(
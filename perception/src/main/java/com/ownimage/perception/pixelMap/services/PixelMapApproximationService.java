@@ -14,20 +14,22 @@ import com.ownimage.perception.pixelMap.immutable.Node;
 import com.ownimage.perception.pixelMap.immutable.Pixel;
 import com.ownimage.perception.pixelMap.immutable.PixelChain;
 import com.ownimage.perception.pixelMap.immutable.XY;
+import io.vavr.Tuple2;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.ownimage.perception.pixelMap.PixelConstants.E;
 import static com.ownimage.perception.pixelMap.PixelConstants.EDGE;
@@ -44,6 +46,7 @@ public class PixelMapApproximationService {
 
     private final static Logger logger = Framework.getLogger();
     private static final int[][] eliminate = {{N, E, SW}, {E, S, NW}, {S, W, NE}, {W, N, SE}};
+    private static final int NODE_BAND_WIDTH = 64;
     private PixelMapChainGenerationService pixelMapChainGenerationService;
     private PixelChainService pixelChainService;
     private PixelService pixelService;
@@ -141,17 +144,60 @@ public class PixelMapApproximationService {
             @NotNull ImmutablePixelMap pixelMap,
             double tolerance, double lineCurvePreference, IProgressObserver progress) {
         reportProgress(progress, "thinning ...", 0);
+        // thinning a pixel can cascade to its neighbours so the order matters and this has to stay on one thread, but it never
+        // turns a pixel on so only the pixels that start as edges need to be visited, in the same x then y order as a Range2D.
+        var height = pixelMap.height();
         var result = StrongReference.of(pixelMap);
-        new Range2D(pixelMap.width(), pixelMap.height())
-                .forEach((x, y) -> result.update(r -> thin(r, pixelMapService.getPixelOptionalAt(r, x, y).orElseThrow(), tolerance, lineCurvePreference)));
+        for (long key : getEdgeKeys(pixelMap)) {
+            var pixel = Pixel.of((int) (key >> 32), (int) key, height);
+            result.update(r -> thin(r, pixel, tolerance, lineCurvePreference));
+        }
         return result.get();
     }
 
+    /**
+     * Gets the positions of the edge pixels sorted into x then y order, each encoded as x in the high int and y in the low int.
+     */
+    private long[] getEdgeKeys(@NotNull ImmutablePixelMap pixelMap) {
+        var keys = new long[pixelMap.data().size()];
+        var count = new int[1];
+        pixelMap.data().forEachValue((x, y, v) -> {
+            if ((v & EDGE) != 0) {
+                keys[count[0]++] = ((long) x << 32) | y;
+            }
+        });
+        var result = Arrays.copyOf(keys, count[0]);
+        Arrays.parallelSort(result);
+        return result;
+    }
+
     public ImmutablePixelMap process03_generateNodes(
             @NotNull ImmutablePixelMap pixelMap, IProgressObserver pProgressObserver) {
-        var result = StrongReference.of(pixelMap);
         reportProgress(pProgressObserver, "Generating Nodes ...", 0);
-        pixelMapService.forEachPixel(result.get(), pixel -> result.update(r -> pixelMapService.calcIsNode(result.get(), pixel)));
+        // whether a pixel is a node only depends on the edges, which this does not change, so the picture is split into bands
+        // of columns that are worked out in parallel and then the changes are applied in one pass.
+        var width = pixelMap.width();
+        var height = pixelMap.height();
+        var bandCount = (width + NODE_BAND_WIDTH - 1) / NODE_BAND_WIDTH;
+        var changes = IntStream.range(0, bandCount).parallel()
+                .mapToObj(band -> {
+                    var bandChanges = new ArrayList<Tuple2<Pixel, Boolean>>();
+                    var xTo = Math.min(width, (band + 1) * NODE_BAND_WIDTH);
+                    for (int x = band * NODE_BAND_WIDTH; x < xTo; x++) {
+                        for (int y = 0; y < height; y++) {
+                            var pixel = Pixel.of(x, y, height);
+                            var shouldBeNode = pixelMapService.shouldBeNode(pixelMap, pixel);
+                            if (shouldBeNode != pixelService.isNode(pixelMap, pixel)) {
+                                bandChanges.add(new Tuple2<>(pixel, shouldBeNode));
+                            }
+                        }
+                    }
+                    return bandChanges;
+                })
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        var result = StrongReference.of(pixelMap);
+        changes.forEach(change -> result.update(r -> pixelMapService.setNode(r, change._1, change._2)));
         return result.get();
     }
 
@@ -237,14 +283,14 @@ public class PixelMapApproximationService {
         reportProgress(pProgressObserver, "Generating chains ...", 0);
         var result = StrongReference.of(pixelMap);
         var counter = Counter.createMaxCounter(pixelMap.nodes().size());
-        var chains = Collections.synchronizedCollection(new ArrayList<ImmutablePixelChain>());
-        pixelMap.nodes().values().parallelStream().forEach(node -> {
-            counter.increase();
-            reportProgress(pProgressObserver, "Generating chains ...", counter.getPercentInt());
-            pixelMapChainGenerationService.generateChains(result.get(), node).stream()
-                    .filter(pc -> 0 >= pc.pixels().firstElement().orElseThrow().compareTo(pc.pixels().lastElement().orElseThrow()))
-                    .forEach(chains::add);
-        });
+        var chains = pixelMap.nodes().values().parallelStream()
+                .flatMap(node -> {
+                    counter.increase();
+                    reportProgress(pProgressObserver, "Generating chains ...", counter.getPercentInt());
+                    return pixelMapChainGenerationService.generateChains(pixelMap, node).stream();
+                })
+                .filter(pc -> 0 >= pc.pixels().firstElement().orElseThrow().compareTo(pc.pixels().lastElement().orElseThrow()))
+                .collect(Collectors.toList());
         result.update(r -> pixelMapService.pixelChainsAddAll(r, chains));
         logger.info(() -> "Number of chains: " + result.get().pixelChains().size());
         return result.get();
@@ -259,11 +305,12 @@ public class PixelMapApproximationService {
                 .flatMap(pc -> pc.pixels().stream())
                 .map(XY::of)
                 .forEach(pixelsInChains::add);
-        var edges = pixelMap.data().entrySet().stream().parallel()
-                .filter(e -> (e.getValue() & EDGE) != 0)
-                .map(Map.Entry::getKey)
-                .map(XY::of)
-                .collect(Collectors.toList());
+        var edges = new ArrayList<ImmutableIXY>();
+        pixelMap.data().forEachValue((x, y, v) -> {
+            if ((v & EDGE) != 0) {
+                edges.add(XY.of(x, y));
+            }
+        });
         var counter = Counter.createMaxCounter(edges.size());
         edges.forEach(pixel -> {
             counter.increase();
@@ -295,9 +342,9 @@ public class PixelMapApproximationService {
         pegCounterService.clear(pegs);
         logger.info(() -> "process06_straightLinesRefineCorners " + tolerance);
         var result = StrongReference.of(pixelMap);
-        var refined = new Vector<ImmutablePixelChain>();
-        result.get().pixelChains().forEach(pixelChain ->
-                refined.add(pixelChainService.approximate(result.get(), pixelChain, tolerance)));
+        var refined = pixelMap.pixelChains().stream().parallel()
+                .map(pixelChain -> pixelChainService.approximate(pixelMap, pixelChain, tolerance))
+                .collect(Collectors.toList());
         result.update(r -> pixelMapService.pixelChainsClear(r));
         result.update(r -> pixelMapService.pixelChainsAddAll(r, refined));
         logger.info(pegCounterService.getString(pegs));
@@ -335,13 +382,14 @@ public class PixelMapApproximationService {
         if (pixelChainCount > 0) {
             var counter = Counter.createMaxCounter(pixelChainCount);
             reportProgress(pProgressObserver, "Refining ...", 0);
-            var refined = new Vector<ImmutablePixelChain>();
-            result.get().pixelChains().stream().parallel().forEach(pc -> {
-                var refinedPC = pixelChainService.approximateCurvesOnly(result.get(), pc, tolerance, lineCurvePreference);
-                refined.add(refinedPC);
-                counter.increase();
-                reportProgress(pProgressObserver, "Refining ...", counter.getPercentInt());
-            });
+            var refined = pixelMap.pixelChains().stream().parallel()
+                    .map(pc -> {
+                        var refinedPC = pixelChainService.approximateCurvesOnly(pixelMap, pc, tolerance, lineCurvePreference);
+                        counter.increase();
+                        reportProgress(pProgressObserver, "Refining ...", counter.getPercentInt());
+                        return refinedPC;
+                    })
+                    .collect(Collectors.toList());
             result.update(r -> pixelMapService.pixelChainsClear(r));
             result.update(r -> pixelMapService.pixelChainsAddAll(r, refined));
         }
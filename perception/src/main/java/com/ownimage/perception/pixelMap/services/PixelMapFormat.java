@@ -0,0 +1,407 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.pixelMap.services;
+
+import com.ownimage.framework.math.LineSegment;
+import com.ownimage.framework.math.Point;
+import com.ownimage.framework.math.Vector;
+import com.ownimage.framework.util.immutable.ImmutableVectorClone;
+import com.ownimage.perception.pixelMap.IPixelChain.Thickness;
+import com.ownimage.perception.pixelMap.immutable.CurveSegment;
+import com.ownimage.perception.pixelMap.immutable.ImmutableCurveSegment;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.immutable.ImmutableStraightSegment;
+import com.ownimage.perception.pixelMap.immutable.ImmutableVertex;
+import com.ownimage.perception.pixelMap.immutable.Pixel;
+import com.ownimage.perception.pixelMap.immutable.PixelChain;
+import com.ownimage.perception.pixelMap.immutable.Segment;
+import com.ownimage.perception.pixelMap.immutable.StraightSegment;
+import com.ownimage.perception.pixelMap.immutable.Vertex;
+import lombok.NonNull;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The binary format that a PixelMap is written in, which replaces the Java serialization of the pixel bytes and PixelChains. It only
+ * holds primitive values, so it does not depend on the classes that the PixelMap is made of. All values are big endian, and the
+ * small integers are written as variable length ints of 7 bits a byte, signed ones zig zag encoded.
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     width
+ * int     height
+ * int     the number of runs of the pixel bytes, which are in row major order
+ * runs    varint length and byte value of each run
+ * int     the number of PixelChains
+ * chains  varint pixel count, varint vertex count, varint segment count, double length, UTF thickness, boolean has color and
+ *         int ARGB color if it does, for each PixelChain
+ * pixels  signed varint x of each pixel less the x of the one before, which is 0 for the first of each chain, then the same for y
+ * vertexes varint vertex index and varint pixel index of each vertex, then double x and y of the position of each vertex
+ * segments byte type, STRAIGHT or CURVE, varint segment index and double start position of each segment, then the doubles of the
+ *         points of each segment: a then b for a straight segment, and a, b and p1 for a curve segment
+ * </pre>
+ * The columns of each kind of value are kept together so that the Deflater that the bytes are then compressed with finds more
+ * repeats. Only the pixel bytes and PixelChains are written, the nodes and segment index are rebuilt from them when read.
+ */
+public class PixelMapFormat {
+
+    public final static int MAGIC = 0x50584D50; // PXMP
+    public final static int VERSION = 1;
+
+    private final static byte STRAIGHT = 0;
+    private final static byte CURVE = 1;
+
+    private PixelMapFormat() {
+    }
+
+    /**
+     * What is read from the bytes, from which PixelMapService builds the PixelMap.
+     */
+    public static class Content {
+        private final int mWidth;
+        private final int mHeight;
+        private final byte[] mData;
+        private final List<ImmutablePixelChain> mPixelChains;
+
+        private Content(final int pWidth, final int pHeight, final byte[] pData, final List<ImmutablePixelChain> pPixelChains) {
+            mWidth = pWidth;
+            mHeight = pHeight;
+            mData = pData;
+            mPixelChains = pPixelChains;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * Gets the pixel bytes.
+         *
+         * @return the bytes, index x + y * width
+         */
+        public byte[] getData() {
+            return mData;
+        }
+
+        public List<ImmutablePixelChain> getPixelChains() {
+            return mPixelChains;
+        }
+    }
+
+    /**
+     * Writes the pixel bytes and PixelChains of a PixelMap.
+     *
+     * @param pPixelMap the PixelMap
+     * @return the bytes
+     * @throws IOException if the bytes cannot be written
+     */
+    public static byte[] write(@NonNull final ImmutablePixelMap pPixelMap) throws IOException {
+        final int width = pPixelMap.width();
+        final int height = pPixelMap.height();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+
+        // pixel bytes
+        final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        final DataOutputStream runsOut = new DataOutputStream(runs);
+        int runCount = 0;
+        int runLength = 0;
+        byte runValue = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final byte value = pPixelMap.data().get(x, y);
+                if (runLength != 0 && value != runValue) {
+                    writeVarInt(runsOut, runLength);
+                    runsOut.writeByte(runValue);
+                    runCount++;
+                    runLength = 0;
+                }
+                runValue = value;
+                runLength++;
+            }
+        }
+        if (runLength != 0) {
+            writeVarInt(runsOut, runLength);
+            runsOut.writeByte(runValue);
+            runCount++;
+        }
+        out.writeInt(runCount);
+        runs.writeTo(out);
+
+        // pixel chains
+        final Collection<ImmutablePixelChain> pixelChains = pPixelMap.pixelChains().toCollection();
+        out.writeInt(pixelChains.size());
+        for (final PixelChain pixelChain : pixelChains) {
+            writeVarInt(out, pixelChain.pixelCount());
+            writeVarInt(out, pixelChain.vertexCount());
+            writeVarInt(out, pixelChain.segmentCount());
+            out.writeDouble(pixelChain.length());
+            out.writeUTF(pixelChain.thickness().name());
+            out.writeBoolean(pixelChain.color().isPresent());
+            if (pixelChain.color().isPresent()) {
+                out.writeInt(pixelChain.color().get().getRGB());
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            int previous = 0;
+            for (final Pixel pixel : pixelChain.pixels().toVector()) {
+                writeSignedVarInt(out, pixel.getX() - previous);
+                previous = pixel.getX();
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            int previous = 0;
+            for (final Pixel pixel : pixelChain.pixels().toVector()) {
+                writeSignedVarInt(out, pixel.getY() - previous);
+                previous = pixel.getY();
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            for (final Vertex vertex : pixelChain.vertexes().toVector()) {
+                writeVarInt(out, vertex.getVertexIndex());
+                writeVarInt(out, vertex.getPixelIndex());
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            for (final Vertex vertex : pixelChain.vertexes().toVector()) {
+                writePoint(out, vertex.getPosition());
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            for (final Segment segment : pixelChain.segments().toVector()) {
+                if (segment instanceof StraightSegment) {
+                    out.writeByte(STRAIGHT);
+                } else if (segment instanceof CurveSegment) {
+                    out.writeByte(CURVE);
+                } else {
+                    throw new IllegalArgumentException("Unknown segment type: " + segment.getClass().getName());
+                }
+                writeVarInt(out, segment.getSegmentIndex());
+                out.writeDouble(segment.getStartPosition());
+            }
+        }
+        for (final PixelChain pixelChain : pixelChains) {
+            for (final Segment segment : pixelChain.segments().toVector()) {
+                if (segment instanceof StraightSegment) {
+                    final LineSegment line = ((StraightSegment) segment).getLineSegment();
+                    writePoint(out, line.getA());
+                    writePoint(out, line.getB());
+                } else {
+                    final CurveSegment curve = (CurveSegment) segment;
+                    writePoint(out, curve.getA());
+                    writePoint(out, curve.getB());
+                    writePoint(out, curve.getP1());
+                }
+            }
+        }
+
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads what write wrote.
+     *
+     * @param pBytes the bytes
+     * @return the Content
+     * @throws IOException if the bytes are not in this format, or are of a later version
+     */
+    public static Content read(@NonNull final byte[] pBytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(pBytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("The bytes are not a PixelMap.");
+        }
+        final int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("PixelMap version " + version + " is later than the version that can be read, " + VERSION + ".");
+        }
+        final int width = in.readInt();
+        final int height = in.readInt();
+
+        // pixel bytes
+        final byte[] data = new byte[width * height];
+        final int runCount = in.readInt();
+        int index = 0;
+        for (int run = 0; run < runCount; run++) {
+            final int length = readVarInt(in);
+            final byte value = in.readByte();
+            if (index + length > data.length) {
+                throw new IOException("The pixel bytes are longer than width * height.");
+            }
+            if (value != 0) {
+                Arrays.fill(data, index, index + length, value);
+            }
+            index += length;
+        }
+
+        // pixel chains
+        final int chainCount = in.readInt();
+        final int[] pixelCount = new int[chainCount];
+        final int[] vertexCount = new int[chainCount];
+        final int[] segmentCount = new int[chainCount];
+        final double[] length = new double[chainCount];
+        final Thickness[] thickness = new Thickness[chainCount];
+        final List<Optional<Color>> color = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            pixelCount[chain] = readVarInt(in);
+            vertexCount[chain] = readVarInt(in);
+            segmentCount[chain] = readVarInt(in);
+            length[chain] = in.readDouble();
+            thickness[chain] = Thickness.valueOf(in.readUTF());
+            color.add(in.readBoolean() ? Optional.of(new Color(in.readInt(), true)) : Optional.empty());
+        }
+
+        final List<int[]> pixelX = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            pixelX.add(readDeltas(in, pixelCount[chain]));
+        }
+        final List<List<Pixel>> pixels = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            final int[] x = pixelX.get(chain);
+            final int[] y = readDeltas(in, pixelCount[chain]);
+            final List<Pixel> chainPixels = new ArrayList<>(x.length);
+            for (int i = 0; i < x.length; i++) {
+                chainPixels.add(Pixel.of(x[i], y[i], height));
+            }
+            pixels.add(chainPixels);
+        }
+
+        final List<int[]> vertexIndexes = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            final int[] indexes = new int[2 * vertexCount[chain]];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = readVarInt(in);
+            }
+            vertexIndexes.add(indexes);
+        }
+        final List<List<Vertex>> vertexes = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            final int[] indexes = vertexIndexes.get(chain);
+            final List<Vertex> chainVertexes = new ArrayList<>(vertexCount[chain]);
+            for (int i = 0; i < vertexCount[chain]; i++) {
+                chainVertexes.add(ImmutableVertex.of(indexes[2 * i], indexes[2 * i + 1], readPoint(in)));
+            }
+            vertexes.add(chainVertexes);
+        }
+
+        final List<byte[]> segmentTypes = new ArrayList<>(chainCount);
+        final List<int[]> segmentIndexes = new ArrayList<>(chainCount);
+        final List<double[]> startPositions = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            final byte[] types = new byte[segmentCount[chain]];
+            final int[] indexes = new int[segmentCount[chain]];
+            final double[] positions = new double[segmentCount[chain]];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = in.readByte();
+                indexes[i] = readVarInt(in);
+                positions[i] = in.readDouble();
+            }
+            segmentTypes.add(types);
+            segmentIndexes.add(indexes);
+            startPositions.add(positions);
+        }
+        final List<ImmutablePixelChain> pixelChains = new ArrayList<>(chainCount);
+        for (int chain = 0; chain < chainCount; chain++) {
+            final byte[] types = segmentTypes.get(chain);
+            final List<Segment> segments = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; i++) {
+                final int segmentIndex = segmentIndexes.get(chain)[i];
+                final double startPosition = startPositions.get(chain)[i];
+                if (types[i] == STRAIGHT) {
+                    final LineSegment line = new LineSegment(readPoint(in), readPoint(in));
+                    segments.add(ImmutableStraightSegment.of(segmentIndex, startPosition, line));
+                } else if (types[i] == CURVE) {
+                    segments.add(ImmutableCurveSegment.of(segmentIndex, startPosition, readVector(in), readVector(in), readPoint(in)));
+                } else {
+                    throw new IOException("Unknown segment type: " + types[i]);
+                }
+            }
+            pixelChains.add(ImmutablePixelChain.of(
+                    new ImmutableVectorClone<Pixel>().addAll(pixels.get(chain)),
+                    new ImmutableVectorClone<Vertex>().addAll(vertexes.get(chain)),
+                    new ImmutableVectorClone<Segment>().addAll(segments),
+                    length[chain],
+                    thickness[chain]
+            ).withColor(color.get(chain)));
+        }
+
+        return new Content(width, height, data, pixelChains);
+    }
+
+    private static int[] readDeltas(final DataInputStream pIn, final int pCount) throws IOException {
+        final int[] values = new int[pCount];
+        int previous = 0;
+        for (int i = 0; i < pCount; i++) {
+            previous += readSignedVarInt(pIn);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static void writePoint(final DataOutputStream pOut, final Point pPoint) throws IOException {
+        pOut.writeDouble(pPoint.getX());
+        pOut.writeDouble(pPoint.getY());
+    }
+
+    private static Point readPoint(final DataInputStream pIn) throws IOException {
+        final double x = pIn.readDouble();
+        final double y = pIn.readDouble();
+        return new Point(x, y);
+    }
+
+    private static Vector readVector(final DataInputStream pIn) throws IOException {
+        return new Vector(readPoint(pIn));
+    }
+
+    private static void writeVarInt(final DataOutputStream pOut, final int pValue) throws IOException {
+        int value = pValue;
+        while ((value & ~0x7F) != 0) {
+            pOut.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        pOut.writeByte(value);
+    }
+
+    private static int readVarInt(final DataInputStream pIn) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = pIn.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length int.");
+    }
+
+    private static void writeSignedVarInt(final DataOutputStream pOut, final int pValue) throws IOException {
+        writeVarInt(pOut, (pValue << 1) ^ (pValue >> 31));
+    }
+
+    private static int readSignedVarInt(final DataInputStream pIn) throws IOException {
+        final int value = readVarInt(pIn);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -6,14 +6,16 @@ import com.ownimage.framework.util.Framework;
 import com.ownimage.framework.util.MyBase64;
 import com.ownimage.framework.util.Range2D;
 import com.ownimage.framework.util.StrongReference;
-import com.ownimage.framework.util.immutable.ImmutableMap2D;
+import com.ownimage.framework.util.immutable.ImmutableByteMap2D;
 import com.ownimage.framework.util.immutable.ImmutableSet;
+import com.ownimage.framework.util.immutable.ImmutableVectorClone;
 import com.ownimage.perception.pixelMap.immutable.ImmutableIXY;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
 import com.ownimage.perception.pixelMap.immutable.Node;
 import com.ownimage.perception.pixelMap.immutable.Pixel;
 import com.ownimage.perception.pixelMap.immutable.PixelChain;
+import com.ownimage.perception.pixelMap.immutable.PixelMap;
 import com.ownimage.perception.pixelMap.immutable.Segment;
 import com.ownimage.perception.pixelMap.immutable.XY;
 import io.vavr.Tuple2;
@@ -24,10 +26,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -40,6 +40,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
 
 import static com.ownimage.perception.pixelMap.PixelConstants.ALL;
 import static com.ownimage.perception.pixelMap.PixelConstants.E;
@@ -90,8 +91,9 @@ public class PixelMapService {
     }
 
     public boolean canRead(IPersistDB pDB, String pId) {
+        String binaryString = pDB.read(pId + ".pixelMap");
         String pixelString = pDB.read(pId + ".data");
-        return pixelString != null && !pixelString.isEmpty();
+        return (binaryString != null && !binaryString.isEmpty()) || (pixelString != null && !pixelString.isEmpty());
     }
 
     public ImmutablePixelMap read(@NotNull IPersistDB db, @NotNull String id) {
@@ -100,8 +102,15 @@ public class PixelMapService {
         var width = Integer.parseInt(db.read(id + ".width"));
         var height = Integer.parseInt(db.read(id + ".height"));
 
-        ImmutablePixelMap pixelMap = ImmutablePixelMap.builder().width(width).height(height).is360(false).build();
-        var data = new ImmutableMap2D<>(width, height, (byte) 0);
+        // the segmentIndex is built when it is first needed, rather than holding up the opening of the file
+        ImmutablePixelMap pixelMap = ImmutablePixelMap.builder().width(width).height(height).is360(false)
+                .segmentIndexDeferred(true).build();
+        String binaryString = db.read(id + ".pixelMap");
+        if (binaryString != null && !binaryString.isEmpty()) {
+            pixelMap = readBinary(pixelMap, binaryString);
+            Framework.logExit(logger);
+            return pixelMap.withAutoTrackChanges(true);
+        }
 
         try {
             // pixel data
@@ -110,29 +119,21 @@ public class PixelMapService {
                 byte[] pixelBytes = MyBase64.decodeAndDecompress(pixelString);
                 ByteArrayInputStream bais = new ByteArrayInputStream(pixelBytes);
                 ObjectInputStream ois = new ObjectInputStream(bais);
+                byte[][] columns = new byte[width][];
                 for (int x = 0; x < width; x++) {
                     byte[] buff = new byte[height];
                     int cnt = 0;
                     while ((cnt += ois.read(buff, cnt, height - cnt)) < height) {
                     }
-                    for (int y = 0; y < height; y++) {
-                        data = data.set(x, y, buff[y]);
-                    }
+                    columns[x] = buff;
                 }
+                var data = ImmutableByteMap2D.generate(width, height, (byte) 0, (x, y) -> columns[x][y]);
                 bais = null;
                 ois = null;
                 pixelString = null;
                 pixelBytes = null;
-                int cnt = 0;
-                for (int x = 0; x < width; x++) {
-                    for (int y = 0; y < height; y++) {
-                        if (data.get(x, y) != 0) {
-                            cnt++;
-                        }
-                    }
-                }
                 pixelMap = pixelMap.withData(data);
-                logger.info("mData cnt = " + cnt);
+                logger.info("mData cnt = " + data.size());
             }
             // mPixelChains
             {
@@ -169,6 +170,34 @@ public class PixelMapService {
         return pixelMap.withAutoTrackChanges(true);
     }
 
+    /**
+     * Reads a PixelMap that was written in the PixelMapFormat. As the PixelChains are written with the current Pixels, Vertexes and
+     * Segments they do not need upgrading.
+     */
+    private ImmutablePixelMap readBinary(@NotNull ImmutablePixelMap pixelMap, @NotNull String binaryString) {
+        try {
+            var content = PixelMapFormat.read(MyBase64.decodeAndDecompress(binaryString));
+            if (content.getWidth() != pixelMap.width() || content.getHeight() != pixelMap.height()) {
+                throw new IOException("The PixelMap is " + content.getWidth() + "x" + content.getHeight()
+                        + " not " + pixelMap.width() + "x" + pixelMap.height() + ".");
+            }
+            var width = content.getWidth();
+            var bytes = content.getData();
+            var data = ImmutableByteMap2D.generate(width, content.getHeight(), (byte) 0, (x, y) -> bytes[x + y * width]);
+            pixelMap = pixelMap.withData(data);
+            pixelMap = pixelChainsClear(pixelMap);
+            pixelMap = pixelChainsAddAll(pixelMap, content.getPixelChains());
+            pixelMap = pixelMapUpgradeService.ensureAllPixelChainsMappedToNodes(pixelMap);
+        } catch (IOException | DataFormatException pEx) {
+            logger.log(Level.SEVERE, "PixelMap.read()", pEx);
+        }
+
+        logger.info("node count = " + pixelMap.nodes().size());
+        logger.info("pixelChain count = " + pixelMap.pixelChains().size());
+        logger.info("segment count = " + pixelMap.segmentCount());
+        return pixelMap;
+    }
+
     // TODO this will dissappear when the concept of a Pixel dissappears and is replaced with an ImmutableIXY
     private ImmutableIXY getKey(XY pIntegerXY) {
         // this is because pIntegerXY might be a Node or Pixel
@@ -315,6 +344,10 @@ public class PixelMapService {
         return pixelChains;
     }
 
+    /**
+     * Writes the PixelMap in the PixelMapFormat. PixelMaps that were written with Java serialization, as the .data and .objects
+     * properties, can still be read.
+     */
     public void write(ImmutablePixelMap pixelMap, IPersistDB db, String id) throws IOException {
         // note that write/read does not preserve the mAllNodes values
         Framework.logEntry(logger);
@@ -322,39 +355,12 @@ public class PixelMapService {
         db.write(id + ".width", String.valueOf(pixelMap.width()));
         db.write(id + ".height", String.valueOf(pixelMap.height()));
 
-        // from http://stackoverflow.com/questions/134492/how-to-serialize-an-object-into-a-string
-        ByteArrayOutputStream baos;
-        ObjectOutputStream oos;
-        // mData
-        {
-            logger.finest("About to write mData");
-            baos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(baos);
-            for (int x = 0; x < pixelMap.width(); x++) {
-                byte[] buff = new byte[pixelMap.height()];
-                for (int y = 0; y < pixelMap.height(); y++) {
-                    buff[y] = pixelMap.data().get(x, y);
-                }
-                oos.write(buff);
-            }
-            oos.close();
-            String pixelString = MyBase64.compressAndEncode(baos.toByteArray());
-            db.write(id + ".data", pixelString);
-            pixelString = null;
-        }
-
         logger.info("node count = " + pixelMap.nodes().size());
         logger.info("pixelChain count = " + pixelMap.pixelChains().size());
         logger.info("segment count = " + pixelMap.segmentCount());
 
-        baos = new ByteArrayOutputStream();
-        oos = new ObjectOutputStream(baos);
-        var pixelChains = pixelMap.pixelChains().toCollection();
-        oos.writeObject(pixelChains);
-        oos.close();
-        String objectString = MyBase64.compressAndEncode(baos.toByteArray());
-        db.write(id + ".objects", objectString);
-        objectString = null;
+        String binaryString = MyBase64.compressAndEncode(PixelMapFormat.write(pixelMap));
+        db.write(id + ".pixelMap", binaryString);
         Framework.logExit(logger);
     }
 
@@ -363,7 +369,7 @@ public class PixelMapService {
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull PixelChain pixelChain,
             boolean add) {
-        var result = StrongReference.of(pixelMap);
+        var result = StrongReference.of(buildDeferredSegmentIndex(pixelMap));
         pixelChain.segments().forEach(s -> result.update(r -> indexSegments(r, pixelChain, s, add)));
         return result.get();
     }
@@ -373,45 +379,57 @@ public class PixelMapService {
             @NotNull PixelChain pixelChain,
             @NotNull Segment segment,
             boolean add) {
-        var segmentIndex = StrongReference.of(pixelMap.segmentIndex());
-        var segmentCount = pixelMap.segmentCount() + 1;
-        var width = pixelMap.width();
-        var height = pixelMap.height();
-        var aspectRatio = aspectRatio(pixelMap);
-
-        int minX = (int) Math.floor(segment.getMinX(pixelMap, pixelChain) * width / aspectRatio) - 1;
-        minX = Math.max(minX, 0);
-        minX = Math.min(minX, width - 1);
-        int maxX = (int) Math.ceil(segment.getMaxX(pixelMap, pixelChain) * width / aspectRatio) + 1;
-        maxX = Math.min(maxX, width - 1);
-        int minY = (int) Math.floor(segment.getMinY(pixelMap, pixelChain) * height) - 1;
-        minY = Math.max(minY, 0);
-        minY = Math.min(minY, height - 1);
-        int maxY = (int) Math.ceil(segment.getMaxY(pixelMap, pixelChain) * height) + 1;
-        maxY = Math.min(maxY, height - 1);
-
-        new Range2D(minX, maxX, minY, maxY).stream().forEach(i -> {
-            Pixel pixel = getPixelOptionalAt(pixelMap, i.getX(), i.getY()).orElseThrow();
-            Point centre = pixel.getUHVWMidPoint(height);
-            if (segment.closerThan(pixelMap, pixelChain, centre, getUHVWHalfPixel(pixelMap).length())) {
-                var segments = StrongReference.of(
-                        pixelMap.segmentIndex().getOptional(i.getX(), i.getY()).orElseGet(ImmutableSet::new));
-                if (add) {
-                    segments.update(s -> s.add(new Tuple2<>(pixelChain, segment)));
-                } else {
-                    segments.update(s -> s.remove(new Tuple2<>(pixelChain, segment)));
-                }
-                segmentIndex.update(si -> si.set(i.getX(), i.getY(), segments.get()));
+        var indexed = buildDeferredSegmentIndex(pixelMap);
+        var segmentIndex = StrongReference.of(indexed.segmentIndex());
+        var segmentCount = indexed.segmentCount() + 1;
+        getSegmentIndexPixels(indexed, pixelChain, segment).forEach(i -> {
+            var segments = StrongReference.of(
+                    indexed.segmentIndex().getOptional(i.getX(), i.getY()).orElseGet(ImmutableSet::new));
+            if (add) {
+                segments.update(s -> s.add(new Tuple2<>(pixelChain, segment)));
+            } else {
+                segments.update(s -> s.remove(new Tuple2<>(pixelChain, segment)));
             }
+            segmentIndex.update(si -> si.set(i.getX(), i.getY(), segments.get()));
         });
 
-        var result = pixelMap
+        var result = indexed
                 .withSegmentCount(segmentCount)
                 .withSegmentIndex(segmentIndex.get());
 
         return result;
     }
 
+    /**
+     * Builds the segmentIndex of a PixelMap whose segmentIndex is deferred, so that it can be changed a segment at a time.
+     *
+     * @param pixelMap the pixelMap
+     * @return the pixelMap with its segmentIndex built
+     */
+    private ImmutablePixelMap buildDeferredSegmentIndex(@NotNull ImmutablePixelMap pixelMap) {
+        if (!pixelMap.segmentIndexDeferred()) {
+            return pixelMap;
+        }
+        return pixelMap
+                .withSegmentIndex(pixelMap.currentSegmentIndex())
+                .withSegmentIndexDeferred(false);
+    }
+
+    /**
+     * Gets the pixels whose segmentIndex entry should hold the segment, see Segment.getIndexPixels.
+     *
+     * @param pixelMap   the pixelMap
+     * @param pixelChain the pixelChain that the segment belongs to
+     * @param segment    the segment
+     * @return the pixels
+     */
+    public List<ImmutableIXY> getSegmentIndexPixels(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull PixelChain pixelChain,
+            @NotNull Segment segment) {
+        return segment.getIndexPixels(pixelMap, pixelChain);
+    }
+
     public Point getUHVWHalfPixel(ImmutablePixelMap pixelMap) {
         return new Point(0.5d * aspectRatio(pixelMap) / pixelMap.width(), 0.5d / pixelMap.height());
     }
@@ -523,6 +541,20 @@ public class PixelMapService {
     public ImmutablePixelMap calcIsNode(
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull XY point) {
+        return setNode(pixelMap, point, shouldBeNode(pixelMap, point));
+    }
+
+    /**
+     * Works out whether the XY should be a node from the edges around it. This does not change the PixelMap so it can be called
+     * for many points in parallel.
+     *
+     * @param pixelMap the pixelMap
+     * @param point    the point
+     * @return whether it should be a node
+     */
+    public boolean shouldBeNode(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull XY point) {
         boolean shouldBeNode = false;
         if (pixelService.isEdge(pixelMap, point)) {
             // here we use transitions to eliminate double counting connected neighbours
@@ -532,7 +564,7 @@ public class PixelMapService {
                 shouldBeNode = true;
             }
         }
-        return setNode(pixelMap, point, shouldBeNode);
+        return shouldBeNode;
     }
 
     public Stream<ImmutablePixelChain> generateChainsAndApproximate(
@@ -607,12 +639,101 @@ public class PixelMapService {
         return pixelMap.withNodes(pixelMap.nodes().put(node.toImmutableIXY(), node));
     }
 
+    /**
+     * Adds all of the pixelChains in a single merge. The start positions and the segmentIndex entries only depend on the chain
+     * itself so they are worked out for all of the chains in parallel, and then the pixelChains, segmentIndex and segmentCount
+     * are each updated once. The result is the same as calling pixelChainAdd for each chain in turn.
+     *
+     * @param pixelMap    the pixelMap
+     * @param pixelChains the pixelChains to add
+     * @return the updated pixelMap
+     */
     public ImmutablePixelMap pixelChainsAddAll(
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull Collection<ImmutablePixelChain> pixelChains) {
-        var result = StrongReference.of(pixelMap);
-        pixelChains.forEach(pc -> result.update(r -> pixelChainAdd(r, pc)));
-        return result.get();
+        if (pixelChains.isEmpty()) {
+            return pixelMap;
+        }
+        var withStartPositions = pixelChains.parallelStream()
+                .map(pc -> pixelChainService.setStartPositions(pixelMap, pc))
+                .collect(Collectors.toList());
+        var segmentCount = withStartPositions.stream().mapToInt(pc -> pc.segments().size()).sum();
+        var result = pixelMap
+                .withPixelChains(pixelMap.pixelChains().addAll(withStartPositions))
+                .withSegmentCount(pixelMap.segmentCount() + segmentCount);
+        if (pixelMap.segmentIndexDeferred()) {
+            return result;
+        }
+        return result.withSegmentIndex(PixelMap.indexPixelChains(pixelMap, pixelMap.segmentIndex(), withStartPositions));
+    }
+
+    /**
+     * Gets the PixelChains that are in one PixelMap but not in the other.
+     *
+     * @param before the PixelMap before the change
+     * @param after  the PixelMap after the change
+     * @return the PixelChains that were removed, and the PixelChains that were added
+     */
+    public Tuple2<List<ImmutablePixelChain>, List<ImmutablePixelChain>> getChangedPixelChains(
+            @NotNull PixelMap before,
+            @NotNull PixelMap after) {
+        var removed = before.pixelChains().stream()
+                .filter(pc -> !after.pixelChains().contains(pc))
+                .collect(Collectors.toList());
+        var added = after.pixelChains().stream()
+                .filter(pc -> !before.pixelChains().contains(pc))
+                .collect(Collectors.toList());
+        return new Tuple2<>(removed, added);
+    }
+
+    /**
+     * Replaces pixelChains that are in the pixelMap with new versions of them, e.g. after they have been approximated again, only
+     * changing the segmentIndex for the pixelChains whose vertexes or segments have changed. A new version that is the same as the
+     * old one is dropped, and the old one is left in the pixelMap and its segmentIndex as it is, so if nothing has changed the
+     * pixelMap itself is returned.
+     *
+     * @param pixelMap     the pixelMap
+     * @param replacements pairs of the pixelChain that is in the pixelMap and the pixelChain that replaces it
+     * @return the updated pixelMap
+     */
+    public ImmutablePixelMap pixelChainsReplaceAll(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull Collection<Tuple2<ImmutablePixelChain, ImmutablePixelChain>> replacements) {
+        var changed = replacements.parallelStream()
+                .map(r -> new Tuple2<>(r._1, pixelChainService.setStartPositions(pixelMap, r._2)))
+                .filter(r -> !isSamePixelChain(r._1, r._2))
+                .collect(Collectors.toList());
+        if (changed.isEmpty()) {
+            return pixelMap;
+        }
+        var removed = changed.stream().map(Tuple2::_1).collect(Collectors.toList());
+        var added = changed.stream().map(Tuple2::_2).collect(Collectors.toList());
+        var segmentCount = added.stream().mapToInt(pc -> pc.segments().size()).sum()
+                - removed.stream().mapToInt(pc -> pc.segments().size()).sum();
+        var result = pixelMap
+                .withPixelChains(pixelMap.pixelChains().removeAll(removed).addAll(added))
+                .withSegmentCount(pixelMap.segmentCount() + segmentCount);
+        if (pixelMap.segmentIndexDeferred()) {
+            return result;
+        }
+        return result.withSegmentIndex(PixelMap.reindexPixelChains(pixelMap, pixelMap.segmentIndex(), removed, added));
+    }
+
+    /**
+     * Whether two pixelChains have the same pixels, vertexes, segments, thickness and color. The ImmutableVectorClones that these
+     * are held in are only equal to themselves, so they are compared element by element.
+     */
+    private boolean isSamePixelChain(@NotNull PixelChain pixelChain1, @NotNull PixelChain pixelChain2) {
+        return pixelChain1.thickness() == pixelChain2.thickness()
+                && pixelChain1.color().equals(pixelChain2.color())
+                && pixelChain1.length() == pixelChain2.length()
+                && isSameElements(pixelChain1.pixels(), pixelChain2.pixels())
+                && isSameElements(pixelChain1.vertexes(), pixelChain2.vertexes())
+                && isSameElements(pixelChain1.segments(), pixelChain2.segments());
+    }
+
+    private <E> boolean isSameElements(@NotNull ImmutableVectorClone<E> vector1, @NotNull ImmutableVectorClone<E> vector2) {
+        return vector1 == vector2 || vector1.toVector().equals(vector2.toVector());
     }
 
     public ImmutablePixelMap pixelChainAdd(@NotNull ImmutablePixelMap pixelMap, @NotNull ImmutablePixelChain chain) {
@@ -683,7 +804,7 @@ public class PixelMapService {
         Set segments = new HashSet<Segment>();
         for (int x = 0; x < pixelMap.width(); x++) {
             for (int y = 0; y < pixelMap.height(); y++) {
-                pixelMap.segmentIndex().getOptional(x, y)
+                pixelMap.currentSegmentIndex().getOptional(x, y)
                         .stream()
                         .flatMap(ImmutableSet::stream)
                         .forEach(t -> segments.add(t._2));
@@ -694,6 +815,7 @@ public class PixelMapService {
     public ImmutablePixelMap clearSegmentIndex(@NotNull ImmutablePixelMap pixelMap) {
         return pixelMap
                 .withSegmentIndex(pixelMap.segmentIndex().clear())
+                .withSegmentIndexDeferred(false)
                 .withSegmentCount(0);
     }
 
@@ -2,14 +2,16 @@ package com.ownimage.perception.pixelMap.services;
 
 import com.ownimage.framework.math.KMath;
 import com.ownimage.framework.math.Point;
+import com.ownimage.framework.math.Rectangle;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.framework.util.KColor;
 import com.ownimage.framework.util.StrongReference;
 import com.ownimage.framework.util.immutable.ImmutableSet;
-import com.ownimage.perception.pixelMap.IPixelChain.Thickness;
 import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.immutable.LineRaster;
 import com.ownimage.perception.pixelMap.immutable.PixelChain;
+import com.ownimage.perception.pixelMap.immutable.PixelMap;
 import com.ownimage.perception.pixelMap.immutable.Segment;
 import com.ownimage.perception.render.ITransformResult;
 import io.vavr.Tuple2;
@@ -18,7 +20,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.awt.*;
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -89,50 +90,127 @@ public class PixelMapTransformService {
         double shortThickness = transformSource.getMediumLineThickness() * thicknessMultiplier / 1000d;
         double normalThickness = transformSource.getShortLineThickness() * thicknessMultiplier / 1000d;
         double longThickness = transformSource.getLongLineThickness() * thicknessMultiplier / 1000d;
-        var hitColor = isAnyLineCloserThan(pixelMap, transformSource, point, shortThickness, normalThickness, longThickness, thicknessMultiplier, pThickOnly);
-        if (hitColor._1) {
-            return hitColor._2
+        double maxThickness = KMath.max(shortThickness, normalThickness, longThickness) * thicknessMultiplier;
+        var uhvw = pixelMapService.toUHVW(pixelMap, point);
+        var segmentGrid = transformSource.getSegmentGrid(pixelMap);
+        var hit = segmentGrid.findAnyCloserThan(transformSource, uhvw, maxThickness, thicknessMultiplier, pThickOnly);
+        if (hit != -1) {
+            return segmentGrid.getPixelChain(hit).color()
                     .map(c -> KColor.fade(color, c, opacity))
                     .orElse(KColor.fade(color, lineColor, opacity));
         }
         return color;
     }
 
-    private Tuple2<Boolean, Optional<Color>> isAnyLineCloserThan(
+    /**
+     * Gets the line color from lines that have already been drawn into a LineRaster, rather than by searching for the segments
+     * near the point. The line is faded in by the coverage of the point, so it gives the same color as transformGetLineColor
+     * inside the line and anti-aliases its edge. The caller checks getShowLines, so that the LineRaster is only drawn when the lines
+     * are shown.
+     *
+     * @param pixelMap        the PixelMap that the lines were drawn from
+     * @param transformSource the transform source
+     * @param point           the point
+     * @param color           the color so far
+     * @param lineRaster      the lines, drawn with a multiplier of 1 and all thicknesses
+     * @return the color
+     */
+    public Color transformGetLineColor(
             @NotNull ImmutablePixelMap pixelMap,
             @NotNull IPixelMapTransformSource transformSource,
             @NotNull Point point,
-            double pThinWidth,
-            double pNormalWidth,
-            double pThickWidth,
-            double pMultiplier,
-            boolean pThickOnly) {
-        double maxThickness = KMath.max(pThinWidth, pNormalWidth, pThickWidth) * pMultiplier;
-        Point uhvw = pixelMapService.toUHVW(pixelMap, point);
-        var width = pixelMap.width();
-        var height = pixelMap.height();
-        var aspectRatio = pixelMapService.aspectRatio(pixelMap);
-        // to prevent the expensive closerThanActual being run against the same segment more than once they
-        // are condensed into a set.
-        var candidateSegments = new HashSet<Tuple2<PixelChain, Segment>>();
-        for (int x = Math.max(0, (int) Math.floor((uhvw.getX() - maxThickness) * width / aspectRatio) - 1);
-             x <= Math.min(pixelMap.width(), (int)Math.ceil((uhvw.getX() + maxThickness) * width / aspectRatio) + 1); x++) {
-            for (int y = Math.max(0, (int) (Math.floor((uhvw.getY() - maxThickness) * height)) - 1);
-                 y <= Math.min(pixelMap.height(), Math.ceil((uhvw.getY() + maxThickness) * height) + 1); y++) {
-                if (0 <= x && x < width && 0 <= y && y < height) {
-                    getSegments(pixelMap, x, y).ifPresent(set -> set.stream()
-                            .filter(tuple -> tuple._1().thickness() != Thickness.None)
-                            .filter(tuple -> !pThickOnly || tuple._1().thickness() == Thickness.Thick)
-                            .forEach(candidateSegments::add));
-                }
-            }
+            @NotNull Color color,
+            @NotNull LineRaster lineRaster) {
+        return transformGetLineColor(pixelMap, point, color, transformSource.getLineColor(), transformSource.getLineOpacity(), lineRaster);
+    }
+
+    private Color transformGetLineColor(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull Point point,
+            @NotNull Color color,
+            @NotNull Color lineColor,
+            double opacity,
+            @NotNull LineRaster lineRaster) {
+        var uhvw = pixelMapService.toUHVW(pixelMap, point);
+        var coverage = lineRaster.getCoverage(uhvw.getX(), uhvw.getY());
+        if (coverage == 0.0d) {
+            return color;
         }
-        var result = new StrongReference<Tuple2<Boolean, Optional<Color>>>(new Tuple2<>(false, Optional.empty()));
-        candidateSegments.stream()
-                .filter(tuple -> tuple._2().closerThanActual(pixelMap, tuple._1(), transformSource, uhvw, pMultiplier))
-                .findAny()
-                .ifPresent(tuple -> result.set(new Tuple2<>(true, tuple._1.color())));
-        return result.get();
+        var chainColor = lineRaster.getPixelChain(uhvw.getX(), uhvw.getY()).color();
+        return KColor.fade(color, chainColor.orElse(lineColor), opacity * coverage);
+    }
+
+    /**
+     * Gets the part of the PixelMap, in UHVW, where the lines and shadows of two PixelMaps can differ. This is the bounds of the
+     * segments of the PixelChains that are in one PixelMap but not in the other, widened by the thickest that their lines can be,
+     * together with those bounds moved by the shadow offset if the shadow is shown. The pixels that getShowPixels draws are not
+     * covered, as they can change without any PixelChain changing.
+     *
+     * @param before          the PixelMap before the change
+     * @param after           the PixelMap after the change
+     * @param transformSource the transform source
+     * @return the bounds, or empty if the PixelMaps have the same PixelChains
+     */
+    public Optional<Rectangle> getChangedBounds(
+            @NotNull ImmutablePixelMap before,
+            @NotNull ImmutablePixelMap after,
+            @NotNull IPixelMapTransformSource transformSource) {
+        var bounds = new double[]{Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        var changed = pixelMapService.getChangedPixelChains(before, after);
+        changed._2.forEach(pc -> addChangedBounds(after, pc, transformSource, bounds));
+        changed._1.forEach(pc -> addChangedBounds(before, pc, transformSource, bounds));
+        if (bounds[0] > bounds[2]) {
+            return Optional.empty();
+        }
+        return Optional.of(new Rectangle(bounds[0], bounds[1], bounds[2], bounds[3]));
+    }
+
+    /**
+     * Widens the bounds, which is held as minX, minY, maxX, maxY, to cover the line of a PixelChain and its shadow.
+     */
+    private void addChangedBounds(
+            @NotNull PixelMap pixelMap,
+            @NotNull PixelChain pixelChain,
+            @NotNull IPixelMapTransformSource transformSource,
+            @NotNull double[] bounds) {
+        if (pixelChain.segments().size() == 0) {
+            return;
+        }
+        var minX = Double.MAX_VALUE;
+        var minY = Double.MAX_VALUE;
+        var maxX = -Double.MAX_VALUE;
+        var maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < pixelChain.segments().size(); i++) {
+            var coefficients = pixelChain.segments().get(i).getCoefficients(pixelMap, pixelChain);
+            minX = Math.min(minX, coefficients.getMinX());
+            minY = Math.min(minY, coefficients.getMinY());
+            maxX = Math.max(maxX, coefficients.getMaxX());
+            maxY = Math.max(maxY, coefficients.getMaxY());
+        }
+
+        var envelope = pixelChain.width(transformSource) * Math.max(1.0d, transformSource.getLineEndThickness());
+        addBounds(bounds, minX - envelope, minY - envelope, maxX + envelope, maxY + envelope);
+
+        if (transformSource.getShowShadow()) {
+            // getShadowPoint moves the points back by the offset, and clamps the points that it moves off the left or bottom
+            var shadowEnvelope = envelope * transformSource.getShadowThickness();
+            var xOffset = transformSource.getShadowXOffset() / 1000d * pixelMap.width() / pixelMap.height();
+            var yOffset = transformSource.getShadowYOffset() / 1000d;
+            var shadowMinX = minX - shadowEnvelope + xOffset;
+            var shadowMinY = minY - shadowEnvelope + yOffset;
+            addBounds(bounds,
+                    minX - shadowEnvelope <= 0.0d ? Math.min(shadowMinX, 0.0d) : shadowMinX,
+                    minY - shadowEnvelope <= 0.0d ? Math.min(shadowMinY, 0.0d) : shadowMinY,
+                    maxX + shadowEnvelope + xOffset,
+                    maxY + shadowEnvelope + yOffset);
+        }
+    }
+
+    private void addBounds(double[] bounds, double minX, double minY, double maxX, double maxY) {
+        bounds[0] = Math.min(bounds[0], minX);
+        bounds[1] = Math.min(bounds[1], minY);
+        bounds[2] = Math.max(bounds[2], maxX);
+        bounds[3] = Math.max(bounds[3], maxY);
     }
 
     public Optional<ImmutableSet<Tuple2<PixelChain, Segment>>> getSegments(
@@ -141,7 +219,7 @@ public class PixelMapTransformService {
         Framework.checkParameterLessThan(mLogger, x, pixelMap.width(), "x");
         Framework.checkParameterGreaterThanEqual(mLogger, y, 0, "y");
         Framework.checkParameterLessThan(mLogger, y, pixelMap.height(), "y");
-        return pixelMap.segmentIndex().getOptional(x, y);
+        return pixelMap.currentSegmentIndex().getOptional(x, y);
     }
 
     public Color getMaxiLineShadowColor(
@@ -150,13 +228,41 @@ public class PixelMapTransformService {
             @NotNull Point point,
             @NotNull Color pColor) {
         if (transformSource.getShowShadow()) {
-            double x = point.getX() - transformSource.getShadowXOffset() / 1000d;
-            x = x < 0 ? 0 : x > pixelMap.width() - 1 ? x - pixelMap.width() : x;
-            double y = point.getY() - transformSource.getShadowYOffset() / 1000d;
-            y = y < 0 ? 0 : y > pixelMap.height() - 1 ? y - (pixelMap.height() - 1) : y;
-            Point uhvw = new Point(x, y);
+            Point uhvw = getShadowPoint(pixelMap, transformSource, point);
             return transformGetLineColor(pixelMap, transformSource, uhvw, pColor, transformSource.getShadowColor(), transformSource.getShadowOpacity(), transformSource.getShadowThickness(), true);
         }
         return pColor;
     }
+
+    /**
+     * Gets the shadow color from the thick lines that have already been drawn into a LineRaster. The caller checks getShowShadow,
+     * so that the LineRaster is only drawn when the shadow is shown.
+     *
+     * @param pixelMap        the PixelMap that the lines were drawn from
+     * @param transformSource the transform source
+     * @param point           the point
+     * @param pColor          the color so far
+     * @param shadowRaster    the lines, drawn thick only with the shadow thickness as the multiplier
+     * @return the color
+     */
+    public Color getMaxiLineShadowColor(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull IPixelMapTransformSource transformSource,
+            @NotNull Point point,
+            @NotNull Color pColor,
+            @NotNull LineRaster shadowRaster) {
+        Point shadowPoint = getShadowPoint(pixelMap, transformSource, point);
+        return transformGetLineColor(pixelMap, shadowPoint, pColor, transformSource.getShadowColor(), transformSource.getShadowOpacity(), shadowRaster);
+    }
+
+    private Point getShadowPoint(
+            @NotNull ImmutablePixelMap pixelMap,
+            @NotNull IPixelMapTransformSource transformSource,
+            @NotNull Point point) {
+        double x = point.getX() - transformSource.getShadowXOffset() / 1000d;
+        x = x < 0 ? 0 : x > pixelMap.width() - 1 ? x - pixelMap.width() : x;
+        double y = point.getY() - transformSource.getShadowYOffset() / 1000d;
+        y = y < 0 ? 0 : y > pixelMap.height() - 1 ? y - (pixelMap.height() - 1) : y;
+        return new Point(x, y);
+    }
 }
@@ -51,7 +51,7 @@ public class BaseBatchEngine implements IBatchEngine {
         int x = pBatch.getXCurrent();
         int y = pBatch.getYCurrent();
 
-        while ((index + pOverSample * pOverSample) < pBatch.getMaxBatchSize() && y < pBatch.getYMax()) {
+        while ((index + pOverSample * pOverSample) <= pBatch.getMaxBatchSize() && y < pBatch.getYEnd()) {
             for (int xs = 0; xs < pOverSample; xs++) {
                 for (int ys = 0; ys < pOverSample; ys++) {
                     pBatch.getXPixel()[index] = x;
@@ -65,8 +65,8 @@ public class BaseBatchEngine implements IBatchEngine {
                     index++;
                 }
             }
-            if (++x >= pBatch.getXMax()) {
-                x = 0;
+            if (++x >= pBatch.getXEnd()) {
+                x = pBatch.getXStart();
                 y++;
             }
         }
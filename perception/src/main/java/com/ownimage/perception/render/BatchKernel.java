@@ -0,0 +1,307 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.render;
+
+import com.aparapi.Kernel;
+import lombok.NonNull;
+
+/**
+ * The Aparapi kernel that the OpenCLBatchEngine runs the transforms that opt in to it with. A kernel can only have one run method,
+ * and the arrays of a batch can only stay on the device between executions of the same kernel, so every transform that can run
+ * on the device is an operation of this one kernel. A transform selects its operation and passes its values to setOperation in its
+ * IBatchTransform.setKernelOperation, then the kernel is executed over the samples of the batch.
+ * <p>
+ * Each operation does exactly what the Java transform does, in the same order, so when Aparapi runs the kernel in its Java thread
+ * pool, e.g. on a machine without OpenCL, the results are identical. Only primitive fields and the Kernel maths methods can be used
+ * in run() as it is translated to OpenCL.
+ */
+public class BatchKernel extends Kernel {
+
+    public static final int ROTATE_LINEAR = 1;
+    public static final int ROTATE_POINT = 2;
+    public static final int POLAR = 3;
+    public static final int SQUARE_POLAR = 4;
+    public static final int CROP = 5;
+    public static final int CIRCLE_MASK = 6;
+    public static final int LAYER_CAKE = 7;
+    public static final int QUAD_SPACE = 8;
+
+    public static final int MAX_VALUES = 16;
+
+    protected double[] mX = new double[1];
+    protected double[] mY = new double[1];
+    protected float[] mR = new float[1];
+    protected float[] mG = new float[1];
+    protected float[] mB = new float[1];
+    protected float[] mA = new float[1];
+    protected double[] mValues = new double[MAX_VALUES];
+    protected int mOperation = 0;
+    protected int mBatchSize = 0;
+
+    public BatchKernel() {
+        setExplicit(true);
+    }
+
+    /**
+     * Uses the arrays of the batch and copies them to the device.
+     *
+     * @param pBatch the batch
+     */
+    public void putBatch(@NonNull final ITransformResultBatch pBatch) {
+        mX = pBatch.getX();
+        mY = pBatch.getY();
+        mR = pBatch.getR();
+        mG = pBatch.getG();
+        mB = pBatch.getB();
+        mA = pBatch.getA();
+        put(mX).put(mY).put(mR).put(mG).put(mB).put(mA);
+    }
+
+    /**
+     * Copies the arrays of the batch back from the device.
+     *
+     * @param pBatch the batch
+     */
+    public void getBatch(@NonNull final ITransformResultBatch pBatch) {
+        get(pBatch.getX()).get(pBatch.getY()).get(pBatch.getR()).get(pBatch.getG()).get(pBatch.getB()).get(pBatch.getA());
+    }
+
+    /**
+     * Sets the operation for the next execute.
+     *
+     * @param pOperation the operation, e.g. ROTATE_POINT
+     * @param pValues    the values that the operation uses, at most MAX_VALUES
+     */
+    public void setOperation(final int pOperation, @NonNull final double... pValues) {
+        if (pValues.length > MAX_VALUES) {
+            throw new IllegalArgumentException("pValues must have at most " + MAX_VALUES + " values");
+        }
+        mOperation = pOperation;
+        System.arraycopy(pValues, 0, mValues, 0, pValues.length);
+        put(mValues);
+    }
+
+    /**
+     * Runs the operation over the first pBatchSize samples.
+     *
+     * @param pBatchSize the number of samples
+     */
+    public void transform(final int pBatchSize) {
+        mBatchSize = pBatchSize;
+        if (pBatchSize > 0) {
+            execute(pBatchSize);
+        }
+    }
+
+    @Override
+    public void run() {
+        final int i = getGlobalId();
+        if (i >= mBatchSize) {
+            return;
+        }
+        if (mOperation == ROTATE_LINEAR) {
+            rotateLinear(i);
+        } else if (mOperation == ROTATE_POINT) {
+            rotatePoint(i);
+        } else if (mOperation == POLAR) {
+            polar(i);
+        } else if (mOperation == SQUARE_POLAR) {
+            squarePolar(i);
+        } else if (mOperation == CROP) {
+            crop(i);
+        } else if (mOperation == CIRCLE_MASK) {
+            circleMask(i);
+        } else if (mOperation == LAYER_CAKE) {
+            layerCake(i);
+        } else if (mOperation == QUAD_SPACE) {
+            quadSpace(i);
+        }
+    }
+
+    /**
+     * As KMath.mod1, without the recursion.
+     */
+    private double mod1(final double pD) {
+        if (pD != pD) {
+            return 0.0d;
+        }
+        double d = pD;
+        while (d < 0.0d) {
+            d = d + 1.0d;
+        }
+        while (d >= 1.0d) {
+            d = d - 1.0d;
+        }
+        return d;
+    }
+
+    /**
+     * As ITransformResultBatch.setRGBA, the color is taken from the values starting at pValue.
+     */
+    private void setRGBAValues(final int pIndex, final int pValue) {
+        setRGBA(pIndex, (float) mValues[pValue], (float) mValues[pValue + 1], (float) mValues[pValue + 2], (float) mValues[pValue + 3]);
+    }
+
+    private void setRGBA(final int pIndex, final float pR, final float pG, final float pB, final float pA) {
+        final float a = mA[pIndex];
+        mR[pIndex] += (1.0f - a) * pA * pR;
+        mG[pIndex] += (1.0f - a) * pA * pG;
+        mB[pIndex] += (1.0f - a) * pA * pB;
+        mA[pIndex] = a + (1.0f - a) * pA;
+    }
+
+    /**
+     * RotateTransform without point rotate; values: rotate.
+     */
+    private void rotateLinear(final int i) {
+        mX[i] = mod1(mX[i] + mValues[0]);
+    }
+
+    /**
+     * RotateTransform with point rotate; values: scale, cos, sin, out of bounds color.
+     */
+    private void rotatePoint(final int i) {
+        final double scale = mValues[0];
+        final double cos = mValues[1];
+        final double sin = mValues[2];
+        final double dx = (mX[i] - 0.5d) * scale;
+        final double dy = (mY[i] - 0.5d) * scale;
+        final double outX = 0.5d + (dx * cos - dy * sin);
+        final double outY = 0.5d + (dy * cos + dx * sin);
+        if (!(0 <= outX && outX <= 1.0d && 0 < outY && outY <= 1.0d)) {
+            setRGBAValues(i, 3);
+        }
+        mX[i] = outX;
+        mY[i] = outY;
+    }
+
+    /**
+     * PolarTransform; values: rotate, color.
+     */
+    private void polar(final int i) {
+        final double dx = mX[i] - 0.5d;
+        final double dy = mY[i] - 0.5d;
+        final double r = sqrt(dx * dx + dy * dy) / 0.5d;
+
+        double theta = atan(dx / dy);
+        if (dy < 0) {
+            theta = theta + Math.PI;
+        }
+        if (theta < 0) {
+            theta += 2.0 * Math.PI;
+        }
+        if (theta > 2 * Math.PI) {
+            theta -= 2.0 * Math.PI;
+        }
+
+        if (r < 1.0) {
+            mX[i] = mod1(mValues[0] + theta / (2.0 * Math.PI));
+            mY[i] = r;
+        } else {
+            setRGBAValues(i, 1);
+        }
+    }
+
+    /**
+     * SquarePolarTransform; values: rotate in radians, out of bounds color.
+     */
+    private void squarePolar(final int i) {
+        final double dx = mX[i] - 0.5;
+        final double dy = mY[i] - 0.5;
+
+        double theta = atan(dx / dy);
+        if (dy < 0) {
+            theta = theta + Math.PI;
+        }
+        if (theta > 2 * Math.PI) {
+            theta -= 2.0 * Math.PI;
+        }
+
+        final double fx = mod1((theta + mValues[0]) / (2.0 * Math.PI));
+        final double maxR = 0.5 / max(abs(sin(theta)), abs(cos(theta)));
+        final double fy = sqrt(dx * dx + dy * dy) / maxR;
+
+        if (fy >= 1.0) {
+            setRGBAValues(i, 1);
+        } else {
+            mX[i] = fx;
+            mY[i] = fy;
+        }
+    }
+
+    /**
+     * CropTransform; values: left, bottom, width, height.
+     */
+    private void crop(final int i) {
+        mX[i] = mValues[0] + mX[i] * mValues[2];
+        mY[i] = mValues[1] + mY[i] * mValues[3];
+    }
+
+    /**
+     * CircleMaskTransform; values: radius, blend, color, and the red, green and blue of the blend.
+     */
+    private void circleMask(final int i) {
+        final double radius = mValues[0];
+        final double blend = mValues[1];
+        final double dx = mX[i] - 0.5d;
+        final double dy = mY[i] - 0.5d;
+        final double length = sqrt(dx * dx + dy * dy);
+
+        if (length > radius) {
+            setRGBAValues(i, 2);
+        } else if (length > blend) {
+            final double d = 1.0d - (length - blend) / (radius - blend);
+            // as KMath.sigma
+            final double sigma = 2 * d * d * d - 3 * d * d + 1;
+            setRGBA(i, (float) mValues[6], (float) mValues[7], (float) mValues[8], (float) sigma);
+        }
+    }
+
+    /**
+     * LayerCakeTransform; values: cut off height, half width, mirror top, 180 top, the booleans being 1 for true.
+     */
+    private void layerCake(final int i) {
+        double x = mX[i];
+        double y = 0;
+
+        if (mValues[1] == 1.0d) {
+            x = 0.5 * x;
+        }
+
+        if (mY[i] <= mValues[0]) {
+            y = mY[i] / mValues[0];
+        } else {
+            y = (1.0 - mY[i]) / (1.0 - mValues[0]);
+            if (mValues[2] == 1.0d) {
+                x = 1.0 - x;
+            }
+            if (mValues[3] == 1.0d) {
+                x += 0.5;
+            }
+        }
+
+        mX[i] = mod1(x);
+        mY[i] = y;
+    }
+
+    /**
+     * QuadSpaceTransform; values: the five dividers.
+     */
+    private void quadSpace(final int i) {
+        final double x = mX[i];
+        int segment = 3;
+        if (x < 0.25) {
+            segment = 0;
+        } else if (x < 0.5) {
+            segment = 1;
+        } else if (x < 0.75) {
+            segment = 2;
+        }
+
+        final double ratio = (x - 0.25 * segment) / 0.25;
+        mX[i] = mod1(mValues[segment] + ratio * (mValues[segment + 1] - mValues[segment]));
+    }
+}
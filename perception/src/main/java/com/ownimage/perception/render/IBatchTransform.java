@@ -5,6 +5,8 @@
  */
 package com.ownimage.perception.render;
 
+import java.util.Optional;
+
 public interface IBatchTransform {
 
     public String getDisplayName();
@@ -24,4 +26,68 @@ public interface IBatchTransform {
 
     public void transform(ITransformResultBatch pBatch);
 
+    /**
+     * Transforms the samples from pStart (inclusive) to pStop (exclusive) of the batch. Implementations should work directly on the
+     * primitive arrays of the batch, i.e. getX(), getY(), getR(), getG(), getB() and getA(), rather than creating an
+     * ITransformResult, Point or Color per sample. This can be called concurrently for disjoint ranges of the same batch.
+     *
+     * @param pBatch the batch
+     * @param pStart the index of the first sample to transform
+     * @param pStop  the index after the last sample to transform
+     */
+    public void transform(ITransformResultBatch pBatch, int pStart, int pStop);
+
+    /**
+     * Sets pKernel up to do the same as transform(ITransformResultBatch) by selecting one of its operations, so that the transform
+     * can be run by the OpenCLBatchEngine. Transforms that do this should also return the OpenCLBatchEngine from
+     * getPreferredBatchEngine.
+     *
+     * @param pKernel the kernel
+     * @return true if the kernel has been set up, false if the transform has to be run in Java
+     */
+    public default boolean setKernelOperation(BatchKernel pKernel) {
+        return false;
+    }
+
+    /**
+     * Gets a key for the state that the output of this transform depends on, not including its previous transforms. This is used
+     * by the RenderCache, so two keys must only be equal if the transform would give the same output for the same input. An empty
+     * key means that the output of the transform cannot be cached.
+     *
+     * @return the key
+     */
+    public default Optional<Object> getRenderCacheKey() {
+        return Optional.empty();
+    }
+
+    /**
+     * Whether the transform only adds color to the samples, i.e. it never changes the x and y of a sample.
+     *
+     * @return true if the samples are not moved
+     */
+    public default boolean isColorOnly() {
+        return false;
+    }
+
+    /**
+     * Whether the color that the transform adds to a sample does not depend on the color already accumulated for the sample, i.e.
+     * it only ever blends its own colors behind with setRGBA or setColor.
+     *
+     * @return true if the accumulated color is not read
+     */
+    public default boolean isIndependentOfColor() {
+        return false;
+    }
+
+    /**
+     * Whether the transform only maps the x and y of each sample, and at most blends a color of its own behind a sample, e.g. one
+     * that is mapped out of the picture, working out each sample from that sample alone. Consecutive transforms that are coordinate
+     * only are fused into one pass over the batch by TransformChain.compile.
+     *
+     * @return true if the transform is coordinate only
+     */
+    public default boolean isCoordinateOnly() {
+        return false;
+    }
+
 }
@@ -26,4 +26,33 @@ public interface ITransformResultBatch {
     double[] getY();
 
     int getPercentComplete();
+
+    /**
+     * Blends the color into the sample at pIndex in exactly the same way as ITransformResult.setRGBA, i.e. the new color is placed
+     * behind the color that has already been accumulated for the sample.
+     *
+     * @param pIndex the index of the sample
+     * @param pR     the red component
+     * @param pG     the green component
+     * @param pB     the blue component
+     * @param pA     the alpha component
+     */
+    default void setRGBA(final int pIndex, final float pR, final float pG, final float pB, final float pA) {
+        final float a = getA()[pIndex];
+        getR()[pIndex] += (1.0f - a) * pA * pR;
+        getG()[pIndex] += (1.0f - a) * pA * pG;
+        getB()[pIndex] += (1.0f - a) * pA * pB;
+        getA()[pIndex] = a + (1.0f - a) * pA;
+    }
+
+    /**
+     * Blends the color into the sample at pIndex, see setRGBA(int, float, float, float, float). The color is given as the array
+     * returned from java.awt.Color.getRGBComponents so that it can be calculated once per batch rather than once per sample.
+     *
+     * @param pIndex the index of the sample
+     * @param pRGBA  the color components
+     */
+    default void setRGBA(final int pIndex, final float[] pRGBA) {
+        setRGBA(pIndex, pRGBA[0], pRGBA[1], pRGBA[2], pRGBA[3]);
+    }
 }
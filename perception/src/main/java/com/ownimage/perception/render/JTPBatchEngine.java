@@ -5,31 +5,51 @@
  */
 package com.ownimage.perception.render;
 
+import com.ownimage.framework.control.type.PictureType;
 import com.ownimage.framework.util.Framework;
 import lombok.NonNull;
 import lombok.val;
 
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.IntStream;
 
+/**
+ * The JTPBatchEngine transforms each batch by splitting it into contiguous ranges that are run on a long lived ForkJoinPool. The
+ * pool is only recreated when the thread pool size changes, so no threads are created per batch.
+ * <p>
+ * The render method also pipelines the phases of the render, i.e. while batch N is being transformed, batch N + 1 is being
+ * generated and batch N - 1 is being written back into the picture. This is done by rotating round a small ring of
+ * TransformResultBatches.
+ */
 public class JTPBatchEngine extends BaseBatchEngine {
 
 
     public final static Logger mLogger = Framework.getLogger();
     public final static long serialVersionUID = 1L;
 
+    /**
+     * The number of batches in the pipeline, one being generated, one being transformed and one being written back.
+     */
+    private final static int PIPELINE_DEPTH = 3;
+
+    private final RenderService mRenderService;
+    private final TransformResultBatch[] mPipeline = new TransformResultBatch[PIPELINE_DEPTH];
+
     private int mThreadPoolSize = -1;
     private int mThreadBatchSize;
     private ForkJoinPool mForkJoinPool;
 
-    public JTPBatchEngine(final int pThreadPoolSize, final int pThreadBatchSize) {
+    public JTPBatchEngine(@NonNull final RenderService pRenderService, final int pThreadPoolSize, final int pThreadBatchSize) {
+        mRenderService = pRenderService;
         mThreadPoolSize = pThreadPoolSize;
         mThreadBatchSize = pThreadBatchSize;
-
     }
 
     private void checkThreadPool() {
@@ -62,7 +82,12 @@ public class JTPBatchEngine extends BaseBatchEngine {
         super.next(pBatch, pOverSample);
     }
 
-    public void setThreadPoolSize(final int pThreadPoolSize, final int pThreadBatchSize) {
+    private synchronized ForkJoinPool getForkJoinPool() {
+        checkThreadPool();
+        return mForkJoinPool;
+    }
+
+    public synchronized void setThreadPoolSize(final int pThreadPoolSize, final int pThreadBatchSize) {
         mThreadPoolSize = pThreadPoolSize;
         mThreadBatchSize = pThreadBatchSize;
     }
@@ -73,6 +98,7 @@ public class JTPBatchEngine extends BaseBatchEngine {
             @NonNull final IBatchTransform pTransform
     ) {
         mLogger.info(() -> "Running batch, size=" + pBatch.getBatchSize());
+        pBatch.moveTo(this);
 //        transformNoThreads(pBatch, pTransform);
         transformNew(pBatch, pTransform);
 //        transformParallelStream(pBatch, pTransform);
@@ -92,61 +118,160 @@ public class JTPBatchEngine extends BaseBatchEngine {
         Framework.logExit(mLogger);
     }
 
+    /**
+     * Transforms the batch on the long lived pool. The batch is split into one contiguous range per worker, rather than the
+     * mThreadBatchSize chunks that transformOriginal uses, so that each worker streams through its own part of the arrays.
+     */
     public synchronized void transformNew(
             @NonNull final TransformResultBatch pBatch,
             @NonNull final IBatchTransform pTransform
     ) {
-        class Transformer extends Thread {
-            private int mOffset;
-            private int mIncrement;
-
-            Transformer(int pOffset, int pIncrement) {
-                mOffset = pOffset;
-                mIncrement = pIncrement;
-            }
-
-            @Override
-            public void run() {
-                for (int i = mOffset; i < pBatch.getBatchSize(); i += mIncrement) {
-                    val result = pBatch.getTransformResult(i);
-                    pTransform.transform(result);
-                }
-            }
-        }
+        Framework.logEntry(mLogger);
 
-        val threads = new ArrayList<Thread>();
-        for (int t = 0; t < mThreadPoolSize; t++) {
-            val transformer = new Transformer(t, mThreadPoolSize);
-            threads.add(transformer);
-            transformer.start();
-        }
+        checkThreadPool();
+        val batchSize = pBatch.getBatchSize();
+        val rangeSize = Math.max(1, (batchSize + mThreadPoolSize - 1) / mThreadPoolSize);
+        mForkJoinPool.invoke(new JTPTransformAction(pTransform, pBatch, rangeSize));
 
-        threads.forEach(t -> {
-            try {
-                t.join();
-            } catch (InterruptedException pE) {
-                Framework.logThrowable(mLogger, Level.SEVERE, pE);
-            }
-        });
+        Framework.logExit(mLogger);
     }
 
     public synchronized void transformNoThreads(
             @NonNull final TransformResultBatch pBatch,
             @NonNull final IBatchTransform pTransform
     ) {
-        for (int i = 0; i < pBatch.getBatchSize(); i++) {
-            val result = pBatch.getTransformResult(i);
-            pTransform.transform(result);
-        }
+        pTransform.transform(pBatch, 0, pBatch.getBatchSize());
     }
 
     public synchronized void transformParallelStream(
             @NonNull final TransformResultBatch pBatch,
             @NonNull final IBatchTransform pTransform
     ) {
-        IntStream.range(0, pBatch.getBatchSize()).forEach(i -> {
-            val result = pBatch.getTransformResult(i);
-            pTransform.transform(result);
-        });
+        IntStream.range(0, pBatch.getBatchSize()).forEach(i -> pTransform.transform(pBatch, i, i + 1));
+    }
+
+    /**
+     * Renders the output of pTransform, and all of its previous transforms, into pPicture. The generation of the next batch and the
+     * write back of the previous batch are run on the pool while the current batch is being transformed. This blocks until the
+     * whole picture has been rendered or pIsTerminated returns true, in which case the batches already in the pipeline are written
+     * back and no more are started. Only one render can run at a time as the batches in the pipeline are reused.
+     *
+     * @param pPicture      the picture to render into
+     * @param pTransform    the last transform in the chain
+     * @param pOverSample   the oversample to use in each dimension
+     * @param pMaxBatchSize the max batch size
+     * @param pProgress     receives the percent complete as each batch is written back, this is called from the worker threads
+     * @param pIsTerminated indicates whether the render has been terminated
+     */
+    public synchronized void render(
+            @NonNull final PictureType pPicture,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample,
+            final int pMaxBatchSize,
+            @NonNull final IntConsumer pProgress,
+            @NonNull final BooleanSupplier pIsTerminated
+    ) {
+        Framework.logEntry(mLogger);
+
+        val pool = getForkJoinPool();
+        val pipeline = getPipeline(pTransform.getDisplayName(), pMaxBatchSize);
+        val height = pPicture.getHeight();
+        val passes = TransformChain.compile(pTransform);
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<Void>[] written = new CompletableFuture[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            written[i] = CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> lastWritten = written[0];
+        CompletableFuture<Void> generated = generate(pool, written[0], pipeline[0], pPicture, pMaxBatchSize, pOverSample, 0, 0);
+
+        try {
+            for (int slot = 0; ; slot = (slot + 1) % PIPELINE_DEPTH) {
+                join(generated);
+                val batch = pipeline[slot];
+                if (batch.getBatchSize() == 0 || pIsTerminated.getAsBoolean()) {
+                    break;
+                }
+
+                // start generating batch N + 1 as soon as the slot that it uses has been written back
+                val isLast = batch.getYCurrent() >= batch.getYEnd();
+                if (!isLast) {
+                    val nextSlot = (slot + 1) % PIPELINE_DEPTH;
+                    generated = generate(pool, written[nextSlot], pipeline[nextSlot], pPicture, pMaxBatchSize, pOverSample,
+                                         batch.getXCurrent(), batch.getYCurrent());
+                }
+
+                for (val pass : passes) {
+                    transform(batch, pass);
+                }
+
+                // the write backs are chained so that only one batch is written into the picture at a time
+                val percent = 100 * batch.getYCurrent() / height;
+                lastWritten = lastWritten.thenRunAsync(() -> {
+                    batch.render(pPicture, pOverSample);
+                    pProgress.accept(percent);
+                }, pool);
+                written[slot] = lastWritten;
+
+                if (isLast) {
+                    break;
+                }
+            }
+        } finally {
+            // nothing must still be writing into the picture when the render returns
+            CompletableFuture.allOf(generated.exceptionally(t -> null), lastWritten.exceptionally(t -> null)).join();
+        }
+        join(lastWritten);
+
+        Framework.logExit(mLogger);
+    }
+
+    private CompletableFuture<Void> generate(
+            final ForkJoinPool pPool,
+            final CompletableFuture<Void> pWritten,
+            final TransformResultBatch pBatch,
+            final PictureType pPicture,
+            final int pMaxBatchSize,
+            final int pOverSample,
+            final int pXCurrent,
+            final int pYCurrent
+    ) {
+        return pWritten.thenRunAsync(() -> {
+            pBatch.initialize(pPicture, this, pMaxBatchSize);
+            pBatch.setXCurrent(pXCurrent);
+            pBatch.setYCurrent(pYCurrent);
+            // the batches in the pipeline are not shared so there is no need to take the lock in next
+            super.next(pBatch, pOverSample);
+        }, pPool);
+    }
+
+    private synchronized TransformResultBatch[] getPipeline(final String pName, final int pMaxBatchSize) {
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            if (mPipeline[i] == null) {
+                mLogger.fine(String.format("Creating new TransformResultBatch with maxBatchSize = %d.", pMaxBatchSize));
+                mPipeline[i] = new TransformResultBatch(mRenderService, pMaxBatchSize);
+            }
+            mPipeline[i].setName(pName);
+        }
+        return mPipeline;
+    }
+
+    /**
+     * Waits for the future to complete, rethrowing the cause of any failure so that a failed stage looks the same as a failure in
+     * a single threaded render.
+     */
+    private static void join(final CompletableFuture<Void> pFuture) {
+        try {
+            pFuture.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 }
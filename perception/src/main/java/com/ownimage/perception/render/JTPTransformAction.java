@@ -45,10 +45,7 @@ public class JTPTransformAction extends RecursiveAction {
     }
 
     private void doCompute() {
-        for (int i = mStart; i < mStop; i++) {
-            final ITransformResult result = mBatch.getTransformResult(i);
-            mTransform.transform(result);
-        }
+        mTransform.transform(mBatch, mStart, mStop);
     }
 
     private void doSplit() {
@@ -5,13 +5,115 @@
  */
 package com.ownimage.perception.render;
 
-import java.util.logging.Logger;
-
 import com.ownimage.framework.util.Framework;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
 
+/**
+ * The OpenCLBatchEngine runs the transforms that can be expressed as an operation of the BatchKernel through Aparapi, which runs
+ * the kernel on an OpenCL device if there is one and falls back to its Java thread pool if there is not. While the batch is owned by
+ * this engine its arrays are on the device, so consecutive transforms that run on the kernel do not copy the samples back and
+ * forth; the samples are only copied when the batch moves to or from a Java engine through get and put. A transform that does not
+ * set up a kernel operation is run by the Java engine.
+ * <p>
+ * Each batch has a kernel of its own from when it is put on the device until it is got back, as the renders for different
+ * pictures run at the same time. The kernels are then kept for the next batch that is put, rather than being created again.
+ */
 public class OpenCLBatchEngine extends BaseBatchEngine {
 
 
     public final static Logger mLogger = Framework.getLogger();
 
+    private final RenderService mRenderService;
+    private final Map<ITransformResultBatch, BatchKernel> mKernels = new IdentityHashMap<>();
+    private final Deque<BatchKernel> mIdleKernels = new ArrayDeque<>();
+
+    public OpenCLBatchEngine(@NonNull final RenderService pRenderService) {
+        mRenderService = pRenderService;
+    }
+
+    /**
+     * Gets the kernel that holds the samples of pBatch while it is on the device, taking an idle kernel, or creating a new one, if
+     * the batch does not have one.
+     */
+    private synchronized BatchKernel getKernel(final ITransformResultBatch pBatch) {
+        return mKernels.computeIfAbsent(pBatch, b -> mIdleKernels.isEmpty() ? new BatchKernel() : mIdleKernels.pop());
+    }
+
+    /**
+     * Returns the kernel of pBatch, if it has one, to the idle kernels once the batch is no longer on the device.
+     */
+    private synchronized void releaseKernel(final ITransformResultBatch pBatch) {
+        val kernel = mKernels.remove(pBatch);
+        if (kernel != null) {
+            mIdleKernels.push(kernel);
+        }
+    }
+
+    @Override
+    public void get(@NonNull final ITransformResultBatch pBatch) {
+        Framework.logEntry(mLogger);
+        getKernel(pBatch).getBatch(pBatch);
+        releaseKernel(pBatch);
+        Framework.logExit(mLogger);
+    }
+
+    @Override
+    public BatchLocation getProcessingLocation() {
+        return BatchLocation.OpenCL;
+    }
+
+    /**
+     * The samples are generated in Java and then put on the device as the batch is owned by this engine.
+     */
+    @Override
+    public void next(@NonNull final TransformResultBatch pBatch, final int pOverSample) {
+        super.next(pBatch, pOverSample);
+        put(pBatch);
+    }
+
+    @Override
+    public void put(@NonNull final ITransformResultBatch pBatch) {
+        Framework.logEntry(mLogger);
+        getKernel(pBatch).putBatch(pBatch);
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * A transform that does not run on the kernel moves the batch back to Java, so the batch then no longer needs its kernel.
+     */
+    @Override
+    public void transform(
+            @NonNull final TransformResultBatch pBatch,
+            @NonNull final IBatchTransform pTransform
+    ) {
+        Framework.logEntry(mLogger);
+
+        val kernel = getKernel(pBatch);
+        if (pTransform.setKernelOperation(kernel)) {
+            pBatch.moveTo(this);
+            kernel.transform(pBatch.getBatchSize());
+        } else {
+            mRenderService.getBaseBatchEngine().transform(pBatch, pTransform);
+            releaseKernel(pBatch);
+        }
+
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * Releases the OpenCL resources held by the kernels, new kernels are created if the engine is used again.
+     */
+    public synchronized void dispose() {
+        mKernels.values().forEach(BatchKernel::dispose);
+        mKernels.clear();
+        mIdleKernels.forEach(BatchKernel::dispose);
+        mIdleKernels.clear();
+    }
 }
@@ -0,0 +1,219 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.util.Framework;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Holds the colors of the samples rendered for a transform chain, keyed by the state of every transform in the chain, so that a
+ * render of a chain that has already been rendered, or whose previous transforms have already been rendered, does not need to run
+ * those transforms again. The colors are held as one float array per tile in the order that the TileBatchEngine generates the
+ * samples, r then g then b then a, so a field can only be reused for the same picture size, oversample and tile size, all of which
+ * are part of the key.
+ * <p>
+ * The least recently used fields are dropped once the fields held take more than the budget. Everything is dropped if the context,
+ * i.e. the Properties that the transforms read, changes.
+ */
+public class RenderCache {
+
+    public final static Logger mLogger = Framework.getLogger();
+    public final static long serialVersionUID = 1L;
+
+    private final LinkedHashMap<Key, float[][]> mFields = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBudget;
+    private long mSize = 0;
+    private Object mContext;
+
+    /**
+     * Wraps an object so that it is only equal to itself. This is for the state of a transform that is not held in its controls,
+     * e.g. a PixelMap, where a new object is created for each change and comparing the contents would take longer than rendering.
+     */
+    private static class Identity {
+        private final Object mObject;
+
+        private Identity(final Object pObject) {
+            mObject = pObject;
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            return pOther instanceof Identity && ((Identity) pOther).mObject == mObject;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mObject);
+        }
+    }
+
+    /**
+     * The key of a field, i.e. the picture size, oversample and tile size that it was rendered with and the keys of the transforms
+     * in the chain, last transform first.
+     */
+    public static class Key {
+        private final int mWidth;
+        private final int mHeight;
+        private final int mOverSample;
+        private final int mTileSize;
+        private final List<Object> mTransformKeys;
+        private final int mHashCode;
+
+        private Key(final int pWidth, final int pHeight, final int pOverSample, final int pTileSize, final List<Object> pTransformKeys) {
+            mWidth = pWidth;
+            mHeight = pHeight;
+            mOverSample = pOverSample;
+            mTileSize = pTileSize;
+            mTransformKeys = pTransformKeys;
+            mHashCode = Objects.hash(pWidth, pHeight, pOverSample, pTileSize, pTransformKeys);
+        }
+
+        @Override
+        public boolean equals(final Object pOther) {
+            if (this == pOther) {
+                return true;
+            }
+            if (!(pOther instanceof Key)) {
+                return false;
+            }
+            val other = (Key) pOther;
+            return mHashCode == other.mHashCode
+                    && mWidth == other.mWidth
+                    && mHeight == other.mHeight
+                    && mOverSample == other.mOverSample
+                    && mTileSize == other.mTileSize
+                    && mTransformKeys.equals(other.mTransformKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    public RenderCache(final long pBudget) {
+        mBudget = pBudget;
+    }
+
+    /**
+     * Wraps pObject so that it is only equal to itself, for use in IBatchTransform.getRenderCacheKey.
+     *
+     * @param pObject the object, which can be null
+     * @return the wrapped object
+     */
+    public static Object identity(final Object pObject) {
+        return new Identity(pObject);
+    }
+
+    /**
+     * Gets the keys for the outputs of each transform in the chain ending with pTransform, i.e. element 0 is the key for the output
+     * of the whole chain and the last element is the key for the output of the first transform. A transform whose output cannot be
+     * cached gives a null key, as do all of the transforms after it.
+     *
+     * @param pTransforms the transforms in the chain, last transform first
+     * @param pWidth      the width of the picture
+     * @param pHeight     the height of the picture
+     * @param pOverSample the oversample
+     * @param pTileSize   the tile size
+     * @return the keys
+     */
+    public static Key[] getKeys(
+            @NonNull final List<IBatchTransform> pTransforms,
+            final int pWidth,
+            final int pHeight,
+            final int pOverSample,
+            final int pTileSize
+    ) {
+        val keys = new Key[pTransforms.size()];
+        val transformKeys = new ArrayList<Object>();
+        for (int i = pTransforms.size() - 1; i >= 0; i--) {
+            val transform = pTransforms.get(i);
+            val transformKey = transform.getUseTransform() ? transform.getRenderCacheKey() : Optional.<Object>of(false);
+            if (transformKey.isEmpty()) {
+                break;
+            }
+            transformKeys.add(0, transformKey.get());
+            keys[i] = new Key(pWidth, pHeight, pOverSample, pTileSize, List.copyOf(transformKeys));
+        }
+        return keys;
+    }
+
+    /**
+     * Sets the context that all of the fields were rendered in. If it is not equal to the current context then all of the fields
+     * are dropped.
+     *
+     * @param pContext the context
+     */
+    public synchronized void setContext(final Object pContext) {
+        if (!Objects.equals(mContext, pContext)) {
+            clear();
+            mContext = pContext;
+        }
+    }
+
+    public synchronized void setBudget(final long pBudget) {
+        mBudget = pBudget;
+        evict();
+    }
+
+    public synchronized void clear() {
+        mFields.clear();
+        mSize = 0;
+    }
+
+    public synchronized boolean contains(final Key pKey) {
+        return pKey != null && mFields.containsKey(pKey);
+    }
+
+    public synchronized Optional<float[][]> get(final Key pKey) {
+        return pKey == null ? Optional.empty() : Optional.ofNullable(mFields.get(pKey));
+    }
+
+    /**
+     * Adds a field. The arrays are held by the cache and must not be changed afterwards. A field that is larger than the whole
+     * budget is not held.
+     *
+     * @param pKey   the key
+     * @param pField the colors of the samples, one array per tile
+     */
+    public synchronized void put(@NonNull final Key pKey, @NonNull final float[][] pField) {
+        val size = size(pField);
+        if (size > mBudget) {
+            return;
+        }
+        val previous = mFields.put(pKey, pField);
+        if (previous != null) {
+            mSize -= size(previous);
+        }
+        mSize += size;
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    private void evict() {
+        val iterator = mFields.values().iterator();
+        while (mSize > mBudget && iterator.hasNext()) {
+            mSize -= size(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long size(final float[][] pField) {
+        return Arrays.stream(pField).mapToLong(tile -> tile == null ? 0L : 4L * tile.length).sum();
+    }
+}
@@ -9,20 +9,28 @@ import com.ownimage.framework.control.control.IAction;
 import com.ownimage.framework.control.control.IProgressObserver;
 import com.ownimage.framework.control.control.PictureControl;
 import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.math.Bounds;
 import com.ownimage.framework.queue.ExecuteQueue;
 import com.ownimage.framework.queue.IJob.Priority;
+import com.ownimage.framework.queue.IJob.Status;
 import com.ownimage.framework.queue.Job;
 import com.ownimage.framework.util.Framework;
+import com.ownimage.framework.util.ImageQuality;
+import com.ownimage.framework.util.StripImageWriter;
 import com.ownimage.perception.app.Properties;
 import com.ownimage.perception.app.Services;
 import lombok.NonNull;
 import lombok.val;
 
+import java.io.File;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,11 +40,26 @@ public class RenderService {
     public final static Logger mLogger = Framework.getLogger();
     public final static long serialVersionUID = 1L;
 
-    private TransformResultBatch mBatch;
+    /**
+     * The scale of the first pass of a progressive render, i.e. the first pass is 1/8 of the width and height of the picture.
+     */
+    private final static int PROGRESSIVE_START_SCALE = 8;
+
+    /**
+     * The smallest width or height of a progressive pass, passes that would be smaller than this are skipped.
+     */
+    private final static int PROGRESSIVE_MIN_SIZE = 16;
+
+    /**
+     * The number of rows of tiles in each strip of a save, see getSaveJobBuilder.
+     */
+    private final static int SAVE_STRIP_TILE_ROWS = 4;
 
     private final IBatchEngine mBaseBatchEngine;
     private final JTPBatchEngine mJTPBatchEngine;
     private final IBatchEngine mOpenCLBatchEngine;
+    private final TileBatchEngine mTileBatchEngine;
+    private final RenderCache mRenderCache;
 
     public class RenderJob {
         private String mReason;
@@ -48,7 +71,16 @@ public class RenderService {
         private IProgressObserver mObserver;
         private int mOverSample = 1;
         private boolean mAllowTerminate = true;
+        private Priority mPriority = Priority.NORMAL;
+        private boolean mProgressive = false;
+        private Bounds mDirtyRegion;
+        private File mSaveFile;
+        private ImageQuality mImageQuality;
+        private int mSaveWidth;
+        private int mSaveHeight;
         private Duration mDuration;
+        // completed with the final status of the job started by run()
+        private volatile CompletableFuture<Status> mFinished;
 
         private RenderJob() {
         }
@@ -63,6 +95,13 @@ public class RenderService {
             mObserver = pFrom.mObserver;
             mOverSample = pFrom.mOverSample;
             mAllowTerminate = pFrom.mAllowTerminate;
+            mPriority = pFrom.mPriority;
+            mProgressive = pFrom.mProgressive;
+            mDirtyRegion = pFrom.mDirtyRegion;
+            mSaveFile = pFrom.mSaveFile;
+            mImageQuality = pFrom.mImageQuality;
+            mSaveWidth = pFrom.mSaveWidth;
+            mSaveHeight = pFrom.mSaveHeight;
         }
 
         private Optional<IProgressObserver> getObserver() {
@@ -73,23 +112,47 @@ public class RenderService {
             return Optional.ofNullable(mDuration);
         }
 
+        /**
+         * Waits for the job started by run() to finish. This is for callers that are not driven by the UI and need to block until
+         * the picture is ready, e.g. BatchRender.
+         *
+         * @return the final status of the job, i.e. COMPLETE, TERMINATED, CANCELLED or FAILED
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public Status await() throws InterruptedException {
+            val finished = mFinished;
+            if (finished == null) {
+                throw new IllegalStateException("run() has not been called");
+            }
+            try {
+                return finished.get();
+            } catch (ExecutionException pEx) {
+                // the future is only ever completed with a status
+                throw new IllegalStateException(pEx);
+            }
+        }
+
         public void run() {
             Framework.logEntry(mLogger);
             // note slightly forced use of checkParmeter below
             Framework.checkParameterNotNullOrEmpty(mLogger, mReason, "mReason");
             Framework.checkParameterGreaterThanEqual(mLogger, mOverSample, 1, "pOverSample");
             Framework.checkParameterLessThanEqual(mLogger, mOverSample, 4, "pOverSample");
-            if (mPictureControl == null && mPictureType == null)
-                throw new IllegalStateException("mPictureType and mPictureControl must not both be null");
-            if (mPictureControl != null && mPictureType != null)
-                throw new IllegalStateException("mPictureType and mPictureControl must not both be non null");
+            val targets = (mPictureControl != null ? 1 : 0) + (mPictureType != null ? 1 : 0) + (mSaveFile != null ? 1 : 0);
+            if (targets != 1)
+                throw new IllegalStateException("exactly one of mPictureType, mPictureControl and mSaveFile must be non null");
 
             mLogger.info(() -> String.format("RenderService::transform pReason=\"%s\", pTransform=%s", mReason, mTransform.getDisplayName()));
 
             final ExecuteQueue eq = ExecuteQueue.getInstance();
 
+            // each of the ways that the job can end completes this, so await does not need to poll the status
+            final CompletableFuture<Status> finished = new CompletableFuture<>();
+            mFinished = finished;
+
             class TransformJob extends Job {
-                private boolean mTerminated = false;
+                private volatile boolean mTerminated = false;
+                private TransformResultBatch mBatch;
 
                 private TransformJob(final String pName, final Priority pPriority, final Object pControlObject) {
                     super(pName, pPriority, pControlObject);
@@ -101,40 +164,234 @@ public class RenderService {
                     super.doJob();
 
                     getObserver().ifPresent(IProgressObserver::started);
-                    mJTPBatchEngine.setThreadPoolSize(
-                            getProperties().getRenderThreadPoolSize(), getProperties().getRenderJTPBatchSize());
+                    if (mSaveFile != null) {
+                        save();
+                    } else {
+                        renderPicture();
+                    }
+                    if (mCompleteAction != null && !mTerminated) mCompleteAction.performAction();
+                    getObserver().ifPresent(IProgressObserver::finished);
+                    val end = Instant.now();
+                    mDuration = Duration.between(start, end);
+                    Framework.log(mLogger, Level.INFO, () -> mReason + " duration = " + mDuration.toMillis());
+                }
 
-                    val preferredBatchEngine = mTransform.getPreferredBatchEngine();
-                    val actualEngine = getActualBatchEngine(preferredBatchEngine);
+                private void renderPicture() {
+                    if (mDirtyRegion != null && getProperties().useTileEngine()) {
+                        renderDirtyRegion();
+                        return;
+                    }
 
-                    val maxBatchSize = getProperties().getRenderBatchSize();
-                    val batch = getBatch(mTransform.getDisplayName());
                     val pictureType = mPictureType != null ? mPictureType : mPictureControl.getValue().createCompatible();
-                    batch.initialize(pictureType, actualEngine, maxBatchSize);
 
-                    while (batch.hasNext() && !mTerminated) {
-                        getObserver().ifPresent(o -> o.setProgress("Transforming", batch.getPercentComplete()));
-                        batch.next(mOverSample);
-                        transform(batch, mTransform);
-                        batch.render(pictureType, mOverSample);
+                    // the progressive passes are not worth showing if most of the picture can be taken from the cache
+                    if (mProgressive && mPictureControl != null && !isCached(pictureType)) {
+                        val row = new int[pictureType.getWidth()];
+                        for (int scale = PROGRESSIVE_START_SCALE; scale > 1 && !mTerminated; scale /= 2) {
+                            renderProgressivePass(pictureType, scale, row);
+                        }
+                    }
+                    if (!mTerminated) {
+                        render(pictureType, mOverSample);
                     }
 
                     if (mPictureType == null && !mTerminated) mPictureControl.setValue(pictureType);
-                    if (mCompleteAction != null && !mTerminated) mCompleteAction.performAction();
-                    getObserver().ifPresent(IProgressObserver::finished);
-                    val end = Instant.now();
-                    mDuration = Duration.between(start, end);
-                    Framework.log(mLogger, Level.INFO, () -> mReason + " duration = " + mDuration.toMillis());
+                }
+
+                /**
+                 * Renders again only the tiles that the dirty region touches, straight into the picture that is already there,
+                 * and then lets the PictureControl know that its picture has changed.
+                 */
+                private void renderDirtyRegion() {
+                    val pictureType = mPictureType != null ? mPictureType : mPictureControl.getValue();
+                    updateRenderCache();
+                    mTileBatchEngine.setThreadPoolSize(
+                            getProperties().getRenderThreadPoolSize(), getProperties().getRenderTileSize());
+                    mTileBatchEngine.renderRegion(
+                            pictureType,
+                            mTransform,
+                            mOverSample,
+                            mDirtyRegion,
+                            percent -> getObserver().ifPresent(o -> o.setProgress("Transforming", percent)),
+                            () -> mTerminated,
+                            mRenderCache
+                    );
+
+                    if (mPictureType == null && !mTerminated) mPictureControl.setValue(pictureType);
+                }
+
+                /**
+                 * Renders the picture a strip at a time straight into the file, so that only one strip is held in memory rather
+                 * than the whole picture. The strips are always rendered with the TileBatchEngine as it is the engine that renders
+                 * into a bounded buffer, each strip being several rows of tiles so that there are enough tiles to keep all of the
+                 * workers busy.
+                 */
+                private void save() {
+                    mTileBatchEngine.setThreadPoolSize(
+                            getProperties().getRenderThreadPoolSize(), getProperties().getRenderTileSize());
+                    val stripHeight = getProperties().getRenderTileSize() * SAVE_STRIP_TILE_ROWS;
+                    val writer = new StripImageWriter(mSaveWidth, mSaveHeight, stripHeight, (row, rows, strip) -> {
+                        if (mTerminated) {
+                            throw new InterruptedException("Render terminated");
+                        }
+                        getObserver().ifPresent(o -> o.setProgress("Transforming", 100 * row / mSaveHeight));
+                        mTileBatchEngine.renderStrip(
+                                mSaveWidth,
+                                mSaveHeight,
+                                mTransform,
+                                mOverSample,
+                                mSaveHeight - row - rows,
+                                mSaveHeight - row,
+                                strip,
+                                () -> mTerminated
+                        );
+                    });
+                    try {
+                        writer.write(mSaveFile, mImageQuality);
+                    } catch (InterruptedException pEx) {
+                        mLogger.info(() -> mReason + " terminated, " + mSaveFile + " is incomplete");
+                    } catch (Exception pEx) {
+                        throw new RuntimeException("Unable to save " + mSaveFile, pEx);
+                    }
+                }
+
+                /**
+                 * Renders a picture that is 1/pScale of the size of pPicture, with no oversampling, scales it back up straight into
+                 * pPicture a row at a time and publishes pPicture to the PictureControl. The full render then overwrites it in
+                 * place, so the only picture made for each pass is the coarse one. The pass is skipped if the picture would be too
+                 * small to be worth showing.
+                 *
+                 * @param pRow a buffer for one row of pPicture, shared by all of the passes
+                 */
+                private void renderProgressivePass(final PictureType pPicture, final int pScale, final int[] pRow) {
+                    val width = pPicture.getWidth();
+                    val height = pPicture.getHeight();
+                    val coarseWidth = width / pScale;
+                    val coarseHeight = height / pScale;
+                    if (coarseWidth < PROGRESSIVE_MIN_SIZE || coarseHeight < PROGRESSIVE_MIN_SIZE) {
+                        return;
+                    }
+
+                    val coarse = new PictureType(coarseWidth, coarseHeight);
+                    render(coarse, 1);
+                    if (mTerminated) {
+                        return;
+                    }
+
+                    val view = coarse.getView();
+                    int rowCoarseY = -1;
+                    for (int y = 0; y < height; y++) {
+                        val coarseY = y * coarseHeight / height;
+                        if (coarseY != rowCoarseY) {
+                            for (int x = 0; x < width; x++) {
+                                pRow[x] = view.getARGB(x * coarseWidth / width, coarseY);
+                            }
+                            rowCoarseY = coarseY;
+                        }
+                        pPicture.setColors(0, y, width, 1, pRow);
+                    }
+                    mPictureControl.setValue(pPicture);
+                }
+
+                private boolean isCached(final PictureType pPicture) {
+                    if (!getProperties().useTileEngine()) {
+                        return false;
+                    }
+                    updateRenderCache();
+                    mTileBatchEngine.setThreadPoolSize(
+                            getProperties().getRenderThreadPoolSize(), getProperties().getRenderTileSize());
+                    return mTileBatchEngine.isCached(mRenderCache, pPicture.getWidth(), pPicture.getHeight(), mTransform, mOverSample);
+                }
+
+                private void render(final PictureType pPicture, final int pOverSample) {
+                    if (getProperties().useTileEngine()) {
+                        updateRenderCache();
+                        mTileBatchEngine.setThreadPoolSize(
+                                getProperties().getRenderThreadPoolSize(), getProperties().getRenderTileSize());
+                        mTileBatchEngine.render(
+                                pPicture,
+                                mTransform,
+                                pOverSample,
+                                percent -> getObserver().ifPresent(o -> o.setProgress("Transforming", percent)),
+                                () -> mTerminated,
+                                mRenderCache
+                        );
+                    } else {
+                        mJTPBatchEngine.setThreadPoolSize(
+                                getProperties().getRenderThreadPoolSize(), getProperties().getRenderJTPBatchSize());
+
+                        val preferredBatchEngine = mTransform.getPreferredBatchEngine();
+                        val actualEngine = getActualBatchEngine(preferredBatchEngine);
+
+                        val maxBatchSize = getProperties().getRenderBatchSize();
+                        if (actualEngine == mJTPBatchEngine) {
+                            mJTPBatchEngine.render(
+                                    pPicture,
+                                    mTransform,
+                                    pOverSample,
+                                    maxBatchSize,
+                                    percent -> getObserver().ifPresent(o -> o.setProgress("Transforming", percent)),
+                                    () -> mTerminated
+                            );
+                        } else {
+                            val batch = getBatch();
+                            batch.initialize(pPicture, actualEngine, maxBatchSize);
+                            // the kernel already keeps the batch on the device between transforms so the chain is only fused in Java
+                            val passes = getProperties().useOpenCL()
+                                    ? TransformChain.getTransforms(mTransform)
+                                    : TransformChain.compile(mTransform);
+
+                            while (batch.hasNext() && !mTerminated) {
+                                getObserver().ifPresent(o -> o.setProgress("Transforming", batch.getPercentComplete()));
+                                batch.next(pOverSample);
+                                transform(batch, passes);
+                                batch.render(pPicture, pOverSample);
+                            }
+                        }
+                    }
+                }
+
+                /**
+                 * Gets the batch that this job renders with on the Base and OpenCL engines. Each job has its own batch, as the
+                 * jobs for different control objects run at the same time on the ExecuteQueue. The batch is kept for the
+                 * progressive passes of the job.
+                 */
+                private TransformResultBatch getBatch() {
+                    if (mBatch == null) {
+                        mBatch = new TransformResultBatch(RenderService.this, getProperties().getRenderBatchSize());
+                        mBatch.setName(mTransform.getDisplayName());
+                    }
+                    return mBatch;
                 }
 
                 @Override
                 public void terminate() {
                     if (mAllowTerminate) mTerminated = true;
                     super.terminate();
+                    finished.complete(Status.TERMINATED);
+                }
+
+                @Override
+                public void cancel() {
+                    super.cancel();
+                    finished.complete(Status.CANCELLED);
+                }
+
+                @Override
+                public void complete() {
+                    super.complete();
+                    finished.complete(Status.COMPLETE);
+                }
+
+                @Override
+                public void error(final Throwable pThrowable) {
+                    super.error(pThrowable);
+                    finished.complete(Status.FAILED);
                 }
             }
 
-            new TransformJob(mReason, Priority.NORMAL, mControlObject).submit();
+            val job = new TransformJob(mReason, mPriority, mControlObject);
+            job.submit();
             Framework.logExit(mLogger);
         }
     }
@@ -143,6 +400,22 @@ public class RenderService {
 
         private final RenderJob mRenderJob = new RenderJob();
 
+        public RenderJobBuilder(
+                final String pReason,
+                @NonNull final File pSaveFile,
+                @NonNull final ImageQuality pImageQuality,
+                final int pWidth,
+                final int pHeight,
+                final IBatchTransform pTransform
+        ) {
+            mRenderJob.mReason = pReason;
+            mRenderJob.mSaveFile = pSaveFile;
+            mRenderJob.mImageQuality = pImageQuality;
+            mRenderJob.mSaveWidth = pWidth;
+            mRenderJob.mSaveHeight = pHeight;
+            mRenderJob.mTransform = pTransform;
+        }
+
         public RenderJobBuilder(final String pReason, final PictureControl pPictureControl, final IBatchTransform pTransform) {
             mRenderJob.mReason = pReason;
             mRenderJob.mPictureControl = pPictureControl;
@@ -180,6 +453,47 @@ public class RenderService {
             return this;
         }
 
+        /**
+         * Sets the priority of the job in the ExecuteQueue. The default is NORMAL, interactive previews should be HIGH and long
+         * running renders that the user is not waiting to see should be LOW so that they do not hold up the previews.
+         *
+         * @param pPriority the priority
+         * @return this builder
+         */
+        public RenderJobBuilder withPriority(@NonNull final Priority pPriority) {
+            mRenderJob.mPriority = pPriority;
+            return this;
+        }
+
+        /**
+         * Sets whether the job renders progressively. A progressive job first renders at 1/8, 1/4 and 1/2 of the resolution,
+         * without oversampling, and publishes each of these to the PictureControl before the full resolution render, which then
+         * overwrites the same picture. Each pass checks for the job being terminated so a new preview can replace it straight
+         * away. This only applies to jobs that render into a PictureControl.
+         *
+         * @param pProgressive whether to render progressively
+         * @return this builder
+         */
+        public RenderJobBuilder withProgressive(final boolean pProgressive) {
+            mRenderJob.mProgressive = pProgressive;
+            return this;
+        }
+
+        /**
+         * Sets the part of the picture that has changed since it was last rendered, in pixels. Only the tiles that the region
+         * touches are rendered again, straight into the picture that is already there, rather than the whole picture being
+         * rendered into a new one. The transforms must only have changed inside the region, and the picture must be the size
+         * that it was last rendered at. This is not progressive, and if the TileBatchEngine is not in use the whole picture is
+         * rendered.
+         *
+         * @param pDirtyRegion the region, or null to render the whole picture
+         * @return this builder
+         */
+        public RenderJobBuilder withDirtyRegion(final Bounds pDirtyRegion) {
+            mRenderJob.mDirtyRegion = pDirtyRegion;
+            return this;
+        }
+
         public RenderJob build() {
             return new RenderJob(mRenderJob);
         }
@@ -189,8 +503,10 @@ public class RenderService {
         Framework.logEntry(mLogger);
 
         mBaseBatchEngine = new BaseBatchEngine();
-        mJTPBatchEngine = new JTPBatchEngine(getProperties().getRenderThreadPoolSize(), getProperties().getRenderJTPBatchSize());
-        mOpenCLBatchEngine = new OpenCLBatchEngine();
+        mJTPBatchEngine = new JTPBatchEngine(this, getProperties().getRenderThreadPoolSize(), getProperties().getRenderJTPBatchSize());
+        mOpenCLBatchEngine = new OpenCLBatchEngine(this);
+        mTileBatchEngine = new TileBatchEngine(this, getProperties().getRenderThreadPoolSize(), getProperties().getRenderTileSize());
+        mRenderCache = new RenderCache(getProperties().getRenderCacheSize());
 
         Framework.logExit(mLogger);
     }
@@ -203,28 +519,64 @@ public class RenderService {
         return new RenderJobBuilder(pReason, pPictureType, pTransform).withControlObject(pPictureType);
     }
 
-    private IBatchEngine getActualBatchEngine(@NonNull final IBatchEngine pPreferredBatchEngine) {
+    /**
+     * Gets a builder for a job that renders a picture of pWidth by pHeight straight into pSaveFile, which must be a .jpg or .png.
+     * The picture is rendered and encoded a strip at a time, so the whole picture is never held in memory; this is the way to
+     * save very large outputs.
+     *
+     * @param pReason       the reason for the render, used in the logs
+     * @param pSaveFile     the file to save to, it is overwritten if it exists
+     * @param pImageQuality the image quality
+     * @param pWidth        the width of the picture
+     * @param pHeight       the height of the picture
+     * @param pTransform    the last transform in the chain
+     * @return the builder
+     */
+    public RenderJobBuilder getSaveJobBuilder(
+            final String pReason,
+            @NonNull final File pSaveFile,
+            @NonNull final ImageQuality pImageQuality,
+            final int pWidth,
+            final int pHeight,
+            final IBatchTransform pTransform
+    ) {
+        return new RenderJobBuilder(pReason, pSaveFile, pImageQuality, pWidth, pHeight, pTransform).withControlObject(pSaveFile);
+    }
+
+    /**
+     * Gets the engine to transform with. The OpenCLBatchEngine is only used if it is preferred by the transform and OpenCL is
+     * turned on in the Properties, otherwise the JTPBatchEngine or BaseBatchEngine is used as set in the Properties.
+     *
+     * @param pPreferredBatchEngine the engine that the transform prefers
+     * @return the engine
+     */
+    private IBatchEngine getActualBatchEngine(final IBatchEngine pPreferredBatchEngine) {
         Framework.logEntry(mLogger);
 
+        if (pPreferredBatchEngine == mOpenCLBatchEngine && getProperties().useOpenCL()) {
+            return mOpenCLBatchEngine;
+        }
         return (getProperties().useJTP()) ? mJTPBatchEngine : mBaseBatchEngine;
     }
 
-    public IBatchEngine getBaseBatchEngine() {
-        return mBaseBatchEngine;
+    /**
+     * Gets the cache of rendered colors that the pictures rendered with the TileBatchEngine use, so that rendering a transform
+     * chain that has already been rendered, or that has only changed at the end, does not need to run the whole chain again. Saves
+     * do not use the cache as their size means that they would push out all of the previews.
+     *
+     * @return the render cache
+     */
+    public RenderCache getRenderCache() {
+        return mRenderCache;
     }
 
-    private synchronized TransformResultBatch getBatch(final String pName) {
-        Framework.logEntry(mLogger);
-
-        if (mBatch == null) {
-            final int maxBatchSize = getProperties().getRenderBatchSize();
-            mLogger.fine(String.format("Creating new TransformResultBatch with maxBatchSize = %d.", maxBatchSize));
-            mBatch = new TransformResultBatch(this, maxBatchSize);
-        }
-        mBatch.setName(pName);
+    private void updateRenderCache() {
+        mRenderCache.setBudget(getProperties().getRenderCacheSize());
+        mRenderCache.setContext(getProperties().getRenderCacheContext());
+    }
 
-        Framework.logExit(mLogger);
-        return mBatch;
+    public IBatchEngine getBaseBatchEngine() {
+        return mBaseBatchEngine;
     }
 
     public IBatchEngine getJTPBatchEngine() {
@@ -235,36 +587,38 @@ public class RenderService {
         return mOpenCLBatchEngine;
     }
 
+    public TileBatchEngine getTileBatchEngine() {
+        return mTileBatchEngine;
+    }
+
     private Properties getProperties() {
         return Services.getServices().getProperties();
     }
 
     private synchronized void transform(
             @NonNull final TransformResultBatch pBatch,
-            @NonNull final IBatchTransform pTransform
+            @NonNull final List<IBatchTransform> pPasses
     ) {
         Framework.logEntry(mLogger);
-        mLogger.fine("transform pBatch " + pTransform.getClass().getSimpleName());
 
-        final IBatchEngine preferredBatchEngine = pTransform.getPreferredBatchEngine();
-        final IBatchEngine actualEngine = getActualBatchEngine(preferredBatchEngine);
+        for (val pass : pPasses) {
+            mLogger.fine("transform pBatch " + pass.getClass().getSimpleName());
 
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
-        final long start = cal.getTimeInMillis();
+            final IBatchEngine preferredBatchEngine = pass.getPreferredBatchEngine();
+            final IBatchEngine actualEngine = getActualBatchEngine(preferredBatchEngine);
 
-        if (pTransform.getUseTransform()) {
-            actualEngine.transform(pBatch, pTransform);
-        }
+            final Calendar cal = Calendar.getInstance();
+            cal.setTime(new Date());
+            final long start = cal.getTimeInMillis();
 
-        cal.setTime(new Date());
-        final long end = cal.getTimeInMillis();
+            if (pass.getUseTransform()) {
+                actualEngine.transform(pBatch, pass);
+            }
 
-        mLogger.fine(() -> String.format("Transform=%s, batchSise=%d, millisecs=%d", pTransform.getDisplayName(), pBatch.getBatchSize(), (end - start)));
+            cal.setTime(new Date());
+            final long end = cal.getTimeInMillis();
 
-        final IBatchTransform previousTransform = pTransform.getPreviousTransform();
-        if (previousTransform != null) {
-            transform(pBatch, previousTransform);
+            mLogger.fine(() -> String.format("Transform=%s, batchSise=%d, millisecs=%d", pass.getDisplayName(), pBatch.getBatchSize(), (end - start)));
         }
 
         Framework.logExit(mLogger);
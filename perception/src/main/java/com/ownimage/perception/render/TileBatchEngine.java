@@ -0,0 +1,540 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.math.Bounds;
+import com.ownimage.framework.util.Framework;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * The TileBatchEngine renders a picture by splitting it into independent square tiles. Each tile is run through the whole
+ * pipeline, i.e. generate the samples, transform them through the transform chain, reduce the oversampling and write the result
+ * into the picture, on a single worker of a work stealing pool. Each worker has its own TransformResultBatch and tile buffer so
+ * there is no shared state between tiles and none of the phases are single threaded.
+ */
+public class TileBatchEngine extends BaseBatchEngine {
+
+
+    public final static Logger mLogger = Framework.getLogger();
+    public final static long serialVersionUID = 1L;
+
+    private final RenderService mRenderService;
+    private final ThreadLocal<TransformResultBatch> mBatch;
+    private final ThreadLocal<int[]> mTile;
+    private final ThreadLocal<float[]> mTailColors;
+
+    private int mThreadPoolSize;
+    private int mTileSize;
+    private ForkJoinPool mForkJoinPool;
+
+    public TileBatchEngine(@NonNull final RenderService pRenderService, final int pThreadPoolSize, final int pTileSize) {
+        mRenderService = pRenderService;
+        mThreadPoolSize = pThreadPoolSize;
+        mTileSize = pTileSize;
+        mBatch = ThreadLocal.withInitial(() -> new TransformResultBatch(mRenderService, 1));
+        mTile = ThreadLocal.withInitial(() -> new int[0]);
+        mTailColors = ThreadLocal.withInitial(() -> new float[0]);
+    }
+
+    /**
+     * How a render uses the RenderCache. mTransforms are always run, last transform first. If mPrefix is set the colors are then
+     * saved, cleared and mPrefix is run on the same samples, so its colors can be recorded in mPrefixColors, before the colors of
+     * mTransforms are put back in front. If mCachedColors is set they are blended behind the colors from mTransforms instead of
+     * running the rest of the chain. mOutputColors records the colors of the whole chain. The transforms are held as the passes
+     * that TransformChain.compile gives.
+     */
+    private static class CachePlan {
+        private final List<IBatchTransform> mTransforms;
+        private final List<IBatchTransform> mPrefix;
+        private final float[][] mCachedColors;
+        private final float[][] mPrefixColors;
+        private final float[][] mOutputColors;
+        private final RenderCache.Key mPrefixKey;
+        private final RenderCache.Key mOutputKey;
+
+        private CachePlan(
+                final List<IBatchTransform> pTransforms,
+                final List<IBatchTransform> pPrefix,
+                final float[][] pCachedColors,
+                final float[][] pPrefixColors,
+                final float[][] pOutputColors,
+                final RenderCache.Key pPrefixKey,
+                final RenderCache.Key pOutputKey
+        ) {
+            mTransforms = TransformChain.compile(pTransforms);
+            mPrefix = pPrefix == null ? null : TransformChain.compile(pPrefix);
+            mCachedColors = pCachedColors;
+            mPrefixColors = pPrefixColors;
+            mOutputColors = pOutputColors;
+            mPrefixKey = pPrefixKey;
+            mOutputKey = pOutputKey;
+        }
+
+        private void createTile(final int pTile, final int pSampleCount) {
+            if (mPrefixColors != null) {
+                mPrefixColors[pTile] = new float[4 * pSampleCount];
+            }
+            if (mOutputColors != null) {
+                mOutputColors[pTile] = new float[4 * pSampleCount];
+            }
+        }
+
+        private void store(final RenderCache pRenderCache) {
+            if (pRenderCache == null) {
+                return;
+            }
+            if (mPrefixKey != null && isComplete(mPrefixColors)) {
+                pRenderCache.put(mPrefixKey, mPrefixColors);
+            }
+            if (mOutputKey != null && isComplete(mOutputColors)) {
+                pRenderCache.put(mOutputKey, mOutputColors);
+            }
+        }
+
+        private static boolean isComplete(final float[][] pColors) {
+            return pColors != null && Arrays.stream(pColors).allMatch(tile -> tile != null);
+        }
+    }
+
+    private static class TileRenderAction extends RecursiveAction {
+
+        private final IntConsumer mRenderer;
+        private final int mStart;
+        private final int mStop;
+
+        private TileRenderAction(final IntConsumer pRenderer, final int pStart, final int pStop) {
+            mRenderer = pRenderer;
+            mStart = pStart;
+            mStop = pStop;
+        }
+
+        @Override
+        protected void compute() {
+            if (mStop - mStart <= 1) {
+                for (int i = mStart; i < mStop; i++) {
+                    mRenderer.accept(i);
+                }
+            } else {
+                final int half = (mStart + mStop) / 2;
+                invokeAll(new TileRenderAction(mRenderer, mStart, half), new TileRenderAction(mRenderer, half, mStop));
+            }
+        }
+    }
+
+    /**
+     * Works out how a render can use the RenderCache. If the output of the whole chain is cached it is used as it is. Otherwise the
+     * chain is split into a tail, the transforms after the last transform that reads the accumulated color, and the prefix, the
+     * rest of the chain. If none of the transforms in the tail move the samples then the prefix is rendered at the same positions
+     * whatever the state of the tail, and as none of the transforms in the prefix read the accumulated color the colors of the prefix
+     * can be rendered on their own and blended behind the colors of the tail. So a change to the tail, e.g. the CannyEdgeTransform
+     * at the end of a sequence, only needs the tail to be run again.
+     */
+    private CachePlan getCachePlan(
+            final RenderCache pRenderCache,
+            final int pWidth,
+            final int pHeight,
+            final IBatchTransform pTransform,
+            final int pOverSample,
+            final int pTileSize,
+            final int pTileCount
+    ) {
+        val transforms = TransformChain.getTransforms(pTransform);
+        if (pRenderCache == null) {
+            return new CachePlan(transforms, null, null, null, null, null, null);
+        }
+
+        val keys = RenderCache.getKeys(transforms, pWidth, pHeight, pOverSample, pTileSize);
+        val outputKey = keys[0];
+        val output = pRenderCache.get(outputKey);
+        if (output.isPresent()) {
+            return new CachePlan(Collections.emptyList(), null, output.get(), null, null, null, null);
+        }
+
+        val outputColors = outputKey != null ? new float[pTileCount][] : null;
+        var split = 1;
+        for (int i = 0; i < transforms.size(); i++) {
+            if (transforms.get(i).getUseTransform() && !transforms.get(i).isIndependentOfColor()) {
+                split = i + 1;
+            }
+        }
+        if (split >= transforms.size() || keys[split] == null
+                || transforms.subList(0, split).stream().anyMatch(t -> t.getUseTransform() && !t.isColorOnly())) {
+            return new CachePlan(transforms, null, null, null, outputColors, null, outputKey);
+        }
+
+        val tail = transforms.subList(0, split);
+        val prefixKey = keys[split];
+        val prefix = pRenderCache.get(prefixKey);
+        if (prefix.isPresent()) {
+            return new CachePlan(tail, null, prefix.get(), null, outputColors, null, outputKey);
+        }
+        return new CachePlan(tail, transforms.subList(split, transforms.size()), null, new float[pTileCount][], outputColors, prefixKey, outputKey);
+    }
+
+    private synchronized ForkJoinPool getForkJoinPool() {
+        if (mForkJoinPool == null || mForkJoinPool.getParallelism() != mThreadPoolSize) {
+            if (mForkJoinPool != null) {
+                mLogger.fine("Shutting down pool");
+                mForkJoinPool.shutdown();
+            }
+            mLogger.fine("Creating new pool");
+            mForkJoinPool = new ForkJoinPool(mThreadPoolSize);
+        }
+        return mForkJoinPool;
+    }
+
+    private int[] getTile(final int pTileSize) {
+        int[] tile = mTile.get();
+        if (tile.length < pTileSize * pTileSize) {
+            tile = new int[pTileSize * pTileSize];
+            mTile.set(tile);
+        }
+        return tile;
+    }
+
+    public synchronized void setThreadPoolSize(final int pThreadPoolSize, final int pTileSize) {
+        mThreadPoolSize = pThreadPoolSize;
+        mTileSize = pTileSize;
+    }
+
+    /**
+     * Renders the output of pTransform, and all of its previous transforms, into pPicture. This blocks until all of the tiles are
+     * complete or pIsTerminated returns true, in which case the tiles that have not been started are skipped.
+     *
+     * @param pPicture      the picture to render into
+     * @param pTransform    the last transform in the chain
+     * @param pOverSample   the oversample to use in each dimension
+     * @param pProgress     receives the percent complete as each tile finishes, this is called from the worker threads
+     * @param pIsTerminated indicates whether the render has been terminated
+     */
+    public void render(
+            @NonNull final PictureType pPicture,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample,
+            @NonNull final IntConsumer pProgress,
+            @NonNull final BooleanSupplier pIsTerminated
+    ) {
+        render(pPicture, pTransform, pOverSample, pProgress, pIsTerminated, null);
+    }
+
+    /**
+     * Renders in the same way as render(PictureType, IBatchTransform, int, IntConsumer, BooleanSupplier) but reuses the colors
+     * held in pRenderCache where it can, and adds the colors that it renders to it, see getCachePlan.
+     *
+     * @param pPicture      the picture to render into
+     * @param pTransform    the last transform in the chain
+     * @param pOverSample   the oversample to use in each dimension
+     * @param pProgress     receives the percent complete as each tile finishes, this is called from the worker threads
+     * @param pIsTerminated indicates whether the render has been terminated
+     * @param pRenderCache  the cache, or null to render without one
+     */
+    public void render(
+            @NonNull final PictureType pPicture,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample,
+            @NonNull final IntConsumer pProgress,
+            @NonNull final BooleanSupplier pIsTerminated,
+            final RenderCache pRenderCache
+    ) {
+        Framework.logEntry(mLogger);
+        renderRegion(pPicture, pTransform, pOverSample, new Bounds(0, 0, pPicture.getWidth(), pPicture.getHeight()),
+                pProgress, pIsTerminated, pRenderCache);
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * Renders again only the tiles of pPicture that pRegion touches, leaving the rest of the picture as it was. The tiles are the
+     * same as those of render, so the pixels are identical to those that rendering the whole picture would give. The colors held in
+     * pRenderCache are used for the tiles that are rendered, but they are only added to it if every tile of the picture is
+     * rendered.
+     *
+     * @param pPicture      the picture to render into
+     * @param pTransform    the last transform in the chain
+     * @param pOverSample   the oversample to use in each dimension
+     * @param pRegion       the part of the picture to render, in pixels, this is clipped to the picture
+     * @param pProgress     receives the percent complete as each tile finishes, this is called from the worker threads
+     * @param pIsTerminated indicates whether the render has been terminated
+     * @param pRenderCache  the cache, or null to render without one
+     */
+    public void renderRegion(
+            @NonNull final PictureType pPicture,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample,
+            @NonNull final Bounds pRegion,
+            @NonNull final IntConsumer pProgress,
+            @NonNull final BooleanSupplier pIsTerminated,
+            final RenderCache pRenderCache
+    ) {
+        Framework.logEntry(mLogger);
+
+        final int tileSize;
+        final ForkJoinPool pool;
+        synchronized (this) {
+            tileSize = mTileSize;
+            pool = getForkJoinPool();
+        }
+
+        val xTiles = (pPicture.getWidth() + tileSize - 1) / tileSize;
+        val yTiles = (pPicture.getHeight() + tileSize - 1) / tileSize;
+        val xFirst = Math.max(0, Math.floorDiv(pRegion.getXMin(), tileSize));
+        val yFirst = Math.max(0, Math.floorDiv(pRegion.getYMin(), tileSize));
+        val xLast = Math.min(xTiles - 1, Math.floorDiv(pRegion.getXMax() - 1, tileSize));
+        val yLast = Math.min(yTiles - 1, Math.floorDiv(pRegion.getYMax() - 1, tileSize));
+        if (xFirst > xLast || yFirst > yLast) {
+            Framework.logExit(mLogger);
+            return;
+        }
+
+        val regionXTiles = xLast - xFirst + 1;
+        val regionTileCount = regionXTiles * (yLast - yFirst + 1);
+        val tilesDone = new AtomicInteger();
+        val plan = getCachePlan(pRenderCache, pPicture.getWidth(), pPicture.getHeight(), pTransform, pOverSample, tileSize, xTiles * yTiles);
+
+        pool.invoke(new TileRenderAction(regionTile -> {
+            if (pIsTerminated.getAsBoolean()) {
+                return;
+            }
+            val tileX = xFirst + regionTile % regionXTiles;
+            val tileY = yFirst + regionTile / regionXTiles;
+            renderTile(pPicture.getWidth(), pPicture.getHeight(), plan, pOverSample, tileSize,
+                    tileY * xTiles + tileX, tileX * tileSize, tileY * tileSize, pPicture.getHeight(), pPicture::setColors);
+            pProgress.accept(100 * tilesDone.incrementAndGet() / regionTileCount);
+        }, 0, regionTileCount));
+
+        if (!pIsTerminated.getAsBoolean()) {
+            plan.store(pRenderCache);
+        }
+
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * Whether a render of pTransform into a picture of pWidth by pHeight would reuse colors held in pRenderCache, i.e. it would not
+     * need to run all of the transforms in the chain.
+     *
+     * @param pRenderCache the cache
+     * @param pWidth       the width of the picture
+     * @param pHeight      the height of the picture
+     * @param pTransform   the last transform in the chain
+     * @param pOverSample  the oversample to use in each dimension
+     * @return true if cached colors would be used
+     */
+    public boolean isCached(
+            @NonNull final RenderCache pRenderCache,
+            final int pWidth,
+            final int pHeight,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample
+    ) {
+        final int tileSize;
+        synchronized (this) {
+            tileSize = mTileSize;
+        }
+        return getCachePlan(pRenderCache, pWidth, pHeight, pTransform, pOverSample, tileSize, 0).mCachedColors != null;
+    }
+
+    /**
+     * Renders a horizontal strip of a picture that is pWidth by pHeight into pStrip, without the picture itself ever being created.
+     * The tiles of the strip are rendered in parallel in the same way as render, so the pixels are identical to those of a picture
+     * rendered in one go. pStrip is laid out row by row in the order that an image file is written, i.e. the first row is the top
+     * row of the strip, y = pYEnd - 1, with a row length of pWidth.
+     *
+     * @param pWidth        the width of the whole picture
+     * @param pHeight       the height of the whole picture
+     * @param pTransform    the last transform in the chain
+     * @param pOverSample   the oversample to use in each dimension
+     * @param pYStart       the bottom row of the strip (inclusive)
+     * @param pYEnd         the top row of the strip (exclusive)
+     * @param pStrip        receives the packed RGB colors, must hold at least pWidth * (pYEnd - pYStart) values
+     * @param pIsTerminated indicates whether the render has been terminated
+     */
+    public void renderStrip(
+            final int pWidth,
+            final int pHeight,
+            @NonNull final IBatchTransform pTransform,
+            final int pOverSample,
+            final int pYStart,
+            final int pYEnd,
+            @NonNull final int[] pStrip,
+            @NonNull final BooleanSupplier pIsTerminated
+    ) {
+        Framework.logEntry(mLogger);
+        Framework.checkParameterGreaterThanEqual(mLogger, pYStart, 0, "pYStart");
+        Framework.checkParameterLessThanEqual(mLogger, pYEnd, pHeight, "pYEnd");
+        Framework.checkParameterGreaterThan(mLogger, pYEnd, pYStart, "pYEnd");
+
+        final int tileSize;
+        final ForkJoinPool pool;
+        synchronized (this) {
+            tileSize = mTileSize;
+            pool = getForkJoinPool();
+        }
+
+        val xTiles = (pWidth + tileSize - 1) / tileSize;
+        val yTiles = (pYEnd - pYStart + tileSize - 1) / tileSize;
+        val tileCount = xTiles * yTiles;
+        val plan = new CachePlan(TransformChain.getTransforms(pTransform), null, null, null, null, null, null);
+        final TileConsumer writeToStrip = (x, y, width, height, tile) -> {
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(tile, row * width, pStrip, (pYEnd - y - row - 1) * pWidth + x, width);
+            }
+        };
+
+        pool.invoke(new TileRenderAction(tile -> {
+            if (pIsTerminated.getAsBoolean()) {
+                return;
+            }
+            renderTile(pWidth, pHeight, plan, pOverSample, tileSize,
+                    tile, (tile % xTiles) * tileSize, pYStart + (tile / xTiles) * tileSize, pYEnd, writeToStrip);
+        }, 0, tileCount));
+
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * Receives a rendered tile, the arguments are the same as PictureType.setColors(int, int, int, int, int[]).
+     */
+    @FunctionalInterface
+    private interface TileConsumer {
+        void accept(int pX, int pY, int pWidth, int pHeight, int[] pTile);
+    }
+
+    private void renderTile(
+            final int pWidth,
+            final int pHeight,
+            final CachePlan pPlan,
+            final int pOverSample,
+            final int pTileSize,
+            final int pTile,
+            final int pXStart,
+            final int pYStart,
+            final int pYLimit,
+            final TileConsumer pConsumer
+    ) {
+        val xEnd = Math.min(pXStart + pTileSize, pWidth);
+        val yEnd = Math.min(pYStart + pTileSize, pYLimit);
+        val batch = mBatch.get();
+        val tile = getTile(pTileSize);
+
+        // the max batch size is the same for every tile so that the batch arrays are only created once per worker
+        batch.setName(pPlan.mTransforms.isEmpty() ? "" : pPlan.mTransforms.get(0).getDisplayName());
+        batch.initialize(pWidth, pHeight, this, pTileSize * pTileSize * pOverSample * pOverSample, pXStart, pYStart, xEnd, yEnd);
+        val sampleCount = (xEnd - pXStart) * (yEnd - pYStart) * pOverSample * pOverSample;
+        pPlan.createTile(pTile, sampleCount);
+        var offset = 0;
+
+        while (batch.getYCurrent() < batch.getYEnd()) {
+            batch.next(pOverSample);
+            transform(batch, pPlan.mTransforms);
+            if (pPlan.mPrefix != null) {
+                // the tail of the chain does not move the samples so the prefix sees the same positions whatever the tail does
+                val tail = getTailColors(batch.getBatchSize());
+                copyColors(batch, tail, 0);
+                Arrays.fill(batch.getR(), 0, batch.getBatchSize(), 0.0f);
+                Arrays.fill(batch.getG(), 0, batch.getBatchSize(), 0.0f);
+                Arrays.fill(batch.getB(), 0, batch.getBatchSize(), 0.0f);
+                Arrays.fill(batch.getA(), 0, batch.getBatchSize(), 0.0f);
+                transform(batch, pPlan.mPrefix);
+                copyColors(batch, pPlan.mPrefixColors[pTile], offset);
+                blend(batch, tail, 0, true);
+            } else if (pPlan.mCachedColors != null) {
+                blend(batch, pPlan.mCachedColors[pTile], offset, false);
+            }
+            if (pPlan.mOutputColors != null) {
+                copyColors(batch, pPlan.mOutputColors[pTile], offset);
+            }
+            offset += batch.getBatchSize();
+            batch.render(tile, pOverSample);
+        }
+
+        pConsumer.accept(pXStart, pYStart, xEnd - pXStart, yEnd - pYStart, tile);
+    }
+
+    private void transform(final TransformResultBatch pBatch, final List<IBatchTransform> pTransforms) {
+        for (val transform : pTransforms) {
+            if (transform.getUseTransform()) {
+                transform(pBatch, transform);
+            }
+        }
+    }
+
+    private float[] getTailColors(final int pSize) {
+        float[] colors = mTailColors.get();
+        if (colors.length < 4 * pSize) {
+            colors = new float[4 * pSize];
+            mTailColors.set(colors);
+        }
+        return colors;
+    }
+
+    /**
+     * Copies the colors of the samples in the batch into pColors, which holds r, g, b and a for each sample in turn, starting at the
+     * sample pOffset.
+     */
+    private static void copyColors(final TransformResultBatch pBatch, final float[] pColors, final int pOffset) {
+        val r = pBatch.getR();
+        val g = pBatch.getG();
+        val b = pBatch.getB();
+        val a = pBatch.getA();
+        for (int i = 0, j = 4 * pOffset; i < pBatch.getBatchSize(); i++) {
+            pColors[j++] = r[i];
+            pColors[j++] = g[i];
+            pColors[j++] = b[i];
+            pColors[j++] = a[i];
+        }
+    }
+
+    /**
+     * Combines the colors of the batch with the colors in pColors, starting at the sample pOffset, in the same way as
+     * ITransformResultBatch.setRGBA. If pColorsInFront is true the colors in pColors are in front of the batch colors, otherwise
+     * they are behind them. The result is left in the batch.
+     */
+    private static void blend(final TransformResultBatch pBatch, final float[] pColors, final int pOffset, final boolean pColorsInFront) {
+        val r = pBatch.getR();
+        val g = pBatch.getG();
+        val b = pBatch.getB();
+        val a = pBatch.getA();
+        for (int i = 0, j = 4 * pOffset; i < pBatch.getBatchSize(); i++, j += 4) {
+            if (pColorsInFront) {
+                val front = pColors[j + 3];
+                r[i] = pColors[j] + (1.0f - front) * r[i];
+                g[i] = pColors[j + 1] + (1.0f - front) * g[i];
+                b[i] = pColors[j + 2] + (1.0f - front) * b[i];
+                a[i] = front + (1.0f - front) * a[i];
+            } else {
+                val front = a[i];
+                r[i] += (1.0f - front) * pColors[j];
+                g[i] += (1.0f - front) * pColors[j + 1];
+                b[i] += (1.0f - front) * pColors[j + 2];
+                a[i] = front + (1.0f - front) * pColors[j + 3];
+            }
+        }
+    }
+
+    /**
+     * Transforms the batch on the calling thread. The parallelism in this engine comes from rendering many tiles at once so there is
+     * no benefit in splitting an individual batch any further.
+     */
+    @Override
+    public void transform(
+            @NonNull final TransformResultBatch pBatch,
+            @NonNull final IBatchTransform pTransform
+    ) {
+        pTransform.transform(pBatch, 0, pBatch.getBatchSize());
+    }
+}
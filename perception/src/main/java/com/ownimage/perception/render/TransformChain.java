@@ -0,0 +1,183 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.util.Framework;
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Turns a transform chain into the passes that are run over a batch. Each transform is normally its own pass over the whole
+ * batch, so a chain of transforms that only map the x and y of the samples, e.g. rotate then crop then polar, reads and writes
+ * every sample of the batch once per transform. Runs of consecutive transforms that are coordinate only, see
+ * IBatchTransform.isCoordinateOnly, are fused into a single FusedTransform pass that takes the batch BLOCK_SIZE samples at a time
+ * and runs every transform of the run over that block before moving on, so the block stays in the cache between the transforms.
+ * As each transform is still run over the same samples in the same order the output is identical.
+ */
+public class TransformChain {
+
+    public final static Logger mLogger = Framework.getLogger();
+
+    /**
+     * The number of samples that a FusedTransform runs each of its transforms over at a time. The positions and colors of a block
+     * are 8KB.
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    private TransformChain() {
+    }
+
+    /**
+     * Runs a number of coordinate only transforms as one pass over the batch, see TransformChain.
+     */
+    public static class FusedTransform implements IBatchTransform {
+
+        private final List<IBatchTransform> mTransforms;
+        private final String mDisplayName;
+
+        private FusedTransform(@NonNull final List<IBatchTransform> pTransforms) {
+            mTransforms = List.copyOf(pTransforms);
+            mDisplayName = mTransforms.stream().map(IBatchTransform::getDisplayName).collect(Collectors.joining("+"));
+        }
+
+        /**
+         * Gets the transforms that are fused, in the order that they are run, i.e. last transform in the chain first.
+         *
+         * @return the transforms
+         */
+        public List<IBatchTransform> getTransforms() {
+            return mTransforms;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return mDisplayName;
+        }
+
+        @Override
+        public IBatchEngine getPreferredBatchEngine() {
+            return null;
+        }
+
+        @Override
+        public IBatchTransform getPreviousTransform() {
+            return null;
+        }
+
+        @Override
+        public boolean getUseTransform() {
+            return true;
+        }
+
+        @Override
+        public void transform(final ITransformResult pRenderResult) {
+            for (val transform : mTransforms) {
+                transform.transform(pRenderResult);
+            }
+        }
+
+        @Override
+        public void transform(@NonNull final ITransformResultBatch pBatch) {
+            val batchSize = pBatch.getBatchSize();
+            IntStream.range(0, (batchSize + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel()
+                    .forEach(block -> transform(pBatch, block * BLOCK_SIZE, Math.min(batchSize, (block + 1) * BLOCK_SIZE)));
+        }
+
+        @Override
+        public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+            for (int start = pStart; start < pStop; start += BLOCK_SIZE) {
+                val stop = Math.min(pStop, start + BLOCK_SIZE);
+                for (val transform : mTransforms) {
+                    transform.transform(pBatch, start, stop);
+                }
+            }
+        }
+
+        @Override
+        public boolean isColorOnly() {
+            return mTransforms.stream().allMatch(IBatchTransform::isColorOnly);
+        }
+
+        @Override
+        public boolean isIndependentOfColor() {
+            return mTransforms.stream().allMatch(IBatchTransform::isIndependentOfColor);
+        }
+
+        @Override
+        public boolean isCoordinateOnly() {
+            return true;
+        }
+    }
+
+    /**
+     * Gets the transforms in the chain ending with pTransform, last transform first, which is the order that they are run in.
+     *
+     * @param pTransform the last transform in the chain
+     * @return the transforms
+     */
+    public static List<IBatchTransform> getTransforms(final IBatchTransform pTransform) {
+        val transforms = new ArrayList<IBatchTransform>();
+        for (IBatchTransform transform = pTransform; transform != null; transform = transform.getPreviousTransform()) {
+            transforms.add(transform);
+        }
+        return transforms;
+    }
+
+    /**
+     * Compiles the chain ending with pTransform, see compile(List).
+     *
+     * @param pTransform the last transform in the chain
+     * @return the passes
+     */
+    public static List<IBatchTransform> compile(final IBatchTransform pTransform) {
+        return compile(getTransforms(pTransform));
+    }
+
+    /**
+     * Compiles a list of transforms, last transform first, into the passes to run over a batch in that order. Transforms that are
+     * not in use are left out, and each run of two or more consecutive coordinate only transforms becomes one FusedTransform.
+     *
+     * @param pTransforms the transforms, last transform first
+     * @return the passes
+     */
+    public static List<IBatchTransform> compile(@NonNull final List<IBatchTransform> pTransforms) {
+        Framework.logEntry(mLogger);
+
+        val passes = new ArrayList<IBatchTransform>();
+        val run = new ArrayList<IBatchTransform>();
+        for (val transform : pTransforms) {
+            if (!transform.getUseTransform()) {
+                continue;
+            }
+            if (transform.isCoordinateOnly()) {
+                run.add(transform);
+                continue;
+            }
+            addRun(passes, run);
+            passes.add(transform);
+        }
+        addRun(passes, run);
+
+        Framework.logExit(mLogger);
+        return Collections.unmodifiableList(passes);
+    }
+
+    private static void addRun(final List<IBatchTransform> pPasses, final List<IBatchTransform> pRun) {
+        if (pRun.size() == 1) {
+            pPasses.add(pRun.get(0));
+        } else if (pRun.size() > 1) {
+            pPasses.add(new FusedTransform(pRun));
+        }
+        pRun.clear();
+    }
+}
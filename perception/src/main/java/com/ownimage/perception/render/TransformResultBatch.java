@@ -51,6 +51,15 @@ public class TransformResultBatch implements ITransformResultBatch {
     private int mXCurrent;
     private int mYCurrent;
 
+    /**
+     * The region of the destination image that this batch covers. By default this is the whole image, but when a batch is used to
+     * render a single tile these give the left/bottom (inclusive) and right/top (exclusive) edges of the tile.
+     */
+    private int mXStart;
+    private int mYStart;
+    private int mXEnd;
+    private int mYEnd;
+
     private Calendar mStartTime;
     private int mPixelsProcessed;
     private final RenderService mRenderService;
@@ -140,6 +149,14 @@ public class TransformResultBatch implements ITransformResultBatch {
         return mXCurrent;
     }
 
+    public int getXStart() {
+        return mXStart;
+    }
+
+    public int getXEnd() {
+        return mXEnd;
+    }
+
     public int getXMax() {
         return mXMax;
     }
@@ -156,7 +173,7 @@ public class TransformResultBatch implements ITransformResultBatch {
     @Override
     public int getPercentComplete() {
         Framework.logEntry(mLogger);
-        final int percent = (100 * mYCurrent) / mYMax;
+        final int percent = (100 * (mYCurrent - mYStart)) / (mYEnd - mYStart);
         Framework.logExit(mLogger, percent);
         return percent;
     }
@@ -165,6 +182,14 @@ public class TransformResultBatch implements ITransformResultBatch {
         return mYCurrent;
     }
 
+    public int getYStart() {
+        return mYStart;
+    }
+
+    public int getYEnd() {
+        return mYEnd;
+    }
+
     public int getYMax() {
         return mYMax;
     }
@@ -180,9 +205,9 @@ public class TransformResultBatch implements ITransformResultBatch {
         if (mYCurrent < 0)
             throw new IllegalStateException(String.format("mYCurrent (%d) must be greater than 0.", mYCurrent));
 
-        final boolean hasNext = mXCurrent < mXMax && mYCurrent < mYMax;
+        final boolean hasNext = mXCurrent < mXEnd && mYCurrent < mYEnd;
         if (hasNext) mPixelsProcessed += getBatchSize();
-        if (mXCurrent == 0 && mYCurrent == 0) mStartTime = Calendar.getInstance();
+        if (mXCurrent == mXStart && mYCurrent == mYStart) mStartTime = Calendar.getInstance();
 
         Framework.logValue(mLogger, "mXCurrent", mXCurrent);
         Framework.logValue(mLogger, "mYCurrent", mYCurrent);
@@ -202,17 +227,78 @@ public class TransformResultBatch implements ITransformResultBatch {
             @NonNull final PictureType pPicture,
             @NonNull final IBatchEngine pOwner,
             final int pMaxBatchSize
+    ) {
+        initialize(pPicture, pOwner, pMaxBatchSize, 0, 0, pPicture.getWidth(), pPicture.getHeight());
+    }
+
+    /**
+     * Initializes the batch so that it only covers a rectangular tile of the destination picture. The sample positions generated
+     * are still relative to the whole picture, so a picture rendered tile by tile is identical to one rendered in a single pass.
+     *
+     * @param pPicture      the destination picture
+     * @param pOwner        the batch engine that will generate the batch
+     * @param pMaxBatchSize the max batch size
+     * @param pXStart       the left edge of the tile (inclusive)
+     * @param pYStart       the bottom edge of the tile (inclusive)
+     * @param pXEnd         the right edge of the tile (exclusive)
+     * @param pYEnd         the top edge of the tile (exclusive)
+     */
+    public void initialize(
+            @NonNull final PictureType pPicture,
+            @NonNull final IBatchEngine pOwner,
+            final int pMaxBatchSize,
+            final int pXStart,
+            final int pYStart,
+            final int pXEnd,
+            final int pYEnd
+    ) {
+        initialize(pPicture.getWidth(), pPicture.getHeight(), pOwner, pMaxBatchSize, pXStart, pYStart, pXEnd, pYEnd);
+    }
+
+    /**
+     * Initializes the batch so that it only covers a rectangular tile of a destination picture of the given size. The picture
+     * itself is not needed to generate the batch, so this allows a tile of a picture that is never created in full to be rendered,
+     * e.g. when the output is streamed to a file a strip at a time.
+     *
+     * @param pWidth        the width of the destination picture
+     * @param pHeight       the height of the destination picture
+     * @param pOwner        the batch engine that will generate the batch
+     * @param pMaxBatchSize the max batch size
+     * @param pXStart       the left edge of the tile (inclusive)
+     * @param pYStart       the bottom edge of the tile (inclusive)
+     * @param pXEnd         the right edge of the tile (exclusive)
+     * @param pYEnd         the top edge of the tile (exclusive)
+     */
+    public void initialize(
+            final int pWidth,
+            final int pHeight,
+            @NonNull final IBatchEngine pOwner,
+            final int pMaxBatchSize,
+            final int pXStart,
+            final int pYStart,
+            final int pXEnd,
+            final int pYEnd
     ) {
         Framework.logEntry(mLogger);
         Framework.logParams(mLogger, "pMaxBatchSize", pMaxBatchSize);
+        Framework.checkParameterGreaterThanEqual(mLogger, pXStart, 0, "pXStart");
+        Framework.checkParameterGreaterThanEqual(mLogger, pYStart, 0, "pYStart");
+        Framework.checkParameterLessThanEqual(mLogger, pXEnd, pWidth, "pXEnd");
+        Framework.checkParameterLessThanEqual(mLogger, pYEnd, pHeight, "pYEnd");
+        Framework.checkParameterGreaterThan(mLogger, pXEnd, pXStart, "pXEnd");
+        Framework.checkParameterGreaterThan(mLogger, pYEnd, pYStart, "pYEnd");
 
         mCurrentOwner = pOwner;
         setMaxBatchSize(pMaxBatchSize);
 
-        mXMax = pPicture.getWidth();
-        mYMax = pPicture.getHeight();
-        mXCurrent = 0;
-        mYCurrent = 0;
+        mXMax = pWidth;
+        mYMax = pHeight;
+        mXStart = pXStart;
+        mYStart = pYStart;
+        mXEnd = pXEnd;
+        mYEnd = pYEnd;
+        mXCurrent = pXStart;
+        mYCurrent = pYStart;
         mBatchSize = 0;
         mPixelsProcessed = 0;
 
@@ -267,6 +353,45 @@ public class TransformResultBatch implements ITransformResultBatch {
         Framework.logExit(mLogger);
     }
 
+    /**
+     * Reduces the oversampled values in this batch into packed ARGB colors held in pTile. pTile is laid out row by row with a row
+     * length of the tile width, i.e. mXEnd - mXStart, and the first row is mYStart. The resulting array is suitable for
+     * PictureType.setColors(int, int, int, int, int[]).
+     *
+     * @param pTile       the array that will receive the packed colors
+     * @param pOverSample the oversample that was used to generate the batch
+     */
+    public void render(@NonNull final int[] pTile, final int pOverSample) {
+        Framework.logEntry(mLogger);
+
+        moveTo(mRenderService.getBaseBatchEngine());
+        final float divisor = pOverSample * pOverSample;
+        final int tileWidth = mXEnd - mXStart;
+
+        for (int i = 0; i < getBatchSize(); ) {
+            final int index = (mYPixel[i] - mYStart) * tileWidth + mXPixel[i] - mXStart;
+            float r = 0.0f;
+            float g = 0.0f;
+            float b = 0.0f;
+            for (int s = 0; s < pOverSample * pOverSample; s++) {
+                r += mR[i];
+                g += mG[i];
+                b += mB[i];
+                i++;
+            }
+            pTile[index] = 0xFF000000 | (toByte(r / divisor) << 16) | (toByte(g / divisor) << 8) | toByte(b / divisor);
+        }
+        Framework.logExit(mLogger);
+    }
+
+    /**
+     * Converts a color component in the range 0.0f to 1.0f to the 0 to 255 range in the same way as java.awt.Color does.
+     */
+    private static int toByte(final float pValue) {
+        final int value = (int) (pValue * 255 + 0.5);
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
     public void setBatchSize(final int pSize) {
         mBatchSize = pSize;
     }
@@ -16,6 +16,8 @@ import com.ownimage.framework.control.type.PictureType;
 import com.ownimage.framework.math.KMath;
 import com.ownimage.framework.math.RectangleSize;
 import com.ownimage.framework.persist.IPersistDB;
+import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.queue.IJob.Priority;
 import com.ownimage.framework.undo.UndoRedoBuffer;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.framework.view.event.ImmutableUIEvent;
@@ -25,11 +27,14 @@ import com.ownimage.perception.app.Services;
 import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
 import com.ownimage.perception.render.ITransformResultBatch;
+import com.ownimage.perception.render.RenderCache;
 import lombok.NonNull;
 
 import java.awt.*;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.IntStream;
 
@@ -367,10 +372,7 @@ public abstract class BaseTransform implements IGrafitti, ITransform, IControlCh
         Framework.logEntry(mLogger);
 
         IntStream.range(0, pBatch.getBatchSize()).parallel()
-                .forEach(i -> {
-                    ITransformResult rr = pBatch.getTransformResult(i);
-                    transform(rr);
-                });
+                .forEach(i -> transform(pBatch, i, i + 1));
 //        for (int i = 0; i < pBatch.getBatchSize(); i++) {
 //            final ITransformResult rr = pBatch.getTransformResult(i);
 //            transform(rr);
@@ -379,15 +381,56 @@ public abstract class BaseTransform implements IGrafitti, ITransform, IControlCh
         Framework.logExit(mLogger);
     }
 
+    /**
+     * This default implementation creates an ITransformResult for each sample and passes it to transform(ITransformResult).
+     * Transforms that are on the critical path of a render should override this and work directly on the batch arrays.
+     */
+    @Override
+    public void transform(@NonNull ITransformResultBatch pBatch, int pStart, int pStop) {
+        for (int i = pStart; i < pStop; i++) {
+            transform(pBatch.getTransformResult(i));
+        }
+    }
+
     @Override
     public void refreshInputPreview() {
         Framework.logEntry(mLogger);
         Services.getServices().getRenderService()
                 .getRenderJobBuilder("BaseTransform::refreshInputPreview", mInputPreviewImage, mPreviousTransform)
+                .withPriority(Priority.HIGH)
+                .withProgressive(true)
                 .build()
                 .run();
     }
 
+    /**
+     * Gets a render cache key made from the values of the controls and the object returned by getRenderCacheState, which is compared
+     * by identity. A transform is only cached if it overrides getRenderCacheKey to return this, which it should only do once it
+     * has been checked that its output depends on nothing else, apart from the properties, which the RenderCache already allows
+     * for.
+     *
+     * @return the key
+     */
+    protected Optional<Object> getRenderCacheKeyFromControls() {
+        try {
+            PersistDB db = new PersistDB();
+            mContainer.write(db, "");
+            return Optional.of(Arrays.asList(getClass(), db, RenderCache.identity(getRenderCacheState())));
+        } catch (IOException pEx) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the state, other than the values of the controls, that the output of the transform depends on. This must be replaced,
+     * rather than changed, whenever the state changes as it is compared by identity in getRenderCacheKeyFromControls.
+     *
+     * @return the state, or null if there is none
+     */
+    protected Object getRenderCacheState() {
+        return null;
+    }
+
     @Override
     public void write(IPersistDB pDB, String pId) throws IOException {
         pDB.write(pId + ".name", getPropertyName());
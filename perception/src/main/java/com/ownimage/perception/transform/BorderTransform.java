@@ -14,9 +14,11 @@ import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 import lombok.NonNull;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class BorderTransform extends BaseTransform {
@@ -91,4 +93,36 @@ public class BorderTransform extends BaseTransform {
         Framework.logExit(mLogger);
     }
 
+    @Override
+    public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] x = pBatch.getX();
+        final double[] y = pBatch.getY();
+        final double bottom = mBottom;
+        final double top = mTop;
+        final double left = mLeft;
+        final double right = mRight;
+        final float[] color = mBorderColor.getRGBComponents(null);
+
+        for (int i = pStart; i < pStop; i++) {
+            final double xIn = x[i];
+            final double yIn = y[i];
+
+            if (yIn < bottom || yIn > top || xIn < left || xIn > right) {
+                pBatch.setRGBA(i, color);
+            }
+
+            x[i] = (xIn - left) / (right - left);
+            y[i] = (yIn - bottom) / (top - bottom);
+        }
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -28,6 +28,9 @@ import com.ownimage.perception.app.Services;
 import com.ownimage.perception.pixelMap.EqualizeValues;
 import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.immutable.LineRaster;
+import com.ownimage.perception.pixelMap.immutable.PixelMap;
+import com.ownimage.perception.pixelMap.immutable.SegmentGrid;
 import com.ownimage.perception.pixelMap.services.Config;
 import com.ownimage.perception.pixelMap.services.PixelMapActionService;
 import com.ownimage.perception.pixelMap.services.PixelMapApproximationService;
@@ -69,6 +72,14 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
         Square, Straight, Curved
     }
 
+    /**
+     * How the lines are drawn. PerSample searches for the lines near each sample; Raster draws the lines once into a LineRaster
+     * which each sample then looks up, which is faster when there are many more samples than there are pixels on the lines.
+     */
+    public enum LineRenderer {
+        PerSample, Raster
+    }
+
     public final static Logger mLogger = Framework.getLogger();
     public final static long serialVersionUID = 1L;
 
@@ -126,6 +137,10 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
             new ColorControl("Line Color", "lineColor", getContainer(), Color.BLACK);
     private final DoubleControl mLineOpacity =
             new DoubleControl("Line Opacity", "lineOpacity", getContainer(), 1.0d);
+    private final ObjectControl<LineRenderer> mLineRenderer =
+            new ObjectControl<>("Line Renderer", "lineRenderer", getContainer(), LineRenderer.PerSample, LineRenderer.values());
+    private final IntegerControl mLineRasterScale =
+            new IntegerControl("Line Raster Scale", "lineRasterScale", getContainer(), 4, 1, 16, 1);
 
     private final IntegerControl mLongLineLength =
             new IntegerControl("Long Line Length", "longLineLength", getContainer(), 50, 1, 500, 10);
@@ -164,6 +179,10 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
             new DoubleControl("Shadow Opacity", "shadowOpacity", getContainer(), 1.0d);
 
     private ImmutablePixelMap mPixelMap; // this is the picture from the file processed for edges
+    // the SegmentGrid and LineRasters of mPixelMap, or of an earlier version that they are made from again when mPixelMap changes
+    private volatile SegmentGrid mSegmentGrid;
+    private volatile LineRaster mLineRaster;
+    private volatile LineRaster mShadowRaster;
 
     public CannyEdgeTransform(Perception pPerception) {
         super("Canny Edge", "cannyEdge");
@@ -467,6 +486,8 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
         mShortLineThickness.setVisible(showLines);
         mShowShadow.setVisible(showLines);
         mEqualize.setVisible(showLines);
+        mLineRenderer.setVisible(showLines);
+        mLineRasterScale.setVisible(showLines && mLineRenderer.getValue() == LineRenderer.Raster);
 
         boolean showShadow = mShowShadow.getValue() && mShowLines.getValue();
         mShadowColor.setVisible(showShadow);
@@ -573,7 +594,13 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
 
     @Override
     public void transform(@NonNull ITransformResult pRenderResult) {
-            getPixelMap().ifPresent(pixelMap -> pixelMapTransformService.transform(pixelMap, this, pRenderResult));
+            getPixelMap().ifPresent(pixelMap -> {
+                if (mLineRenderer.getValue() == LineRenderer.Raster) {
+                    transformWithLineRaster(pixelMap, pRenderResult);
+                } else {
+                    pixelMapTransformService.transform(pixelMap, this, pRenderResult);
+                }
+            });
 
             float whiteFade = mWhiteFade.getValue().floatValue();
             if (whiteFade != 0.0f) {
@@ -583,4 +610,104 @@ public class CannyEdgeTransform extends BaseTransform implements IPixelMapTransf
             }
     }
 
+    private void transformWithLineRaster(ImmutablePixelMap pPixelMap, ITransformResult pRenderResult) {
+        var point = pRenderResult.getPoint();
+        var color = pixelMapTransformService.transformGetPixelColor(pPixelMap, this, point, pRenderResult.getColor());
+        if (getShowLines()) {
+            color = pixelMapTransformService.transformGetLineColor(pPixelMap, this, point, color, getLineRaster(pPixelMap));
+        }
+        if (getShowShadow()) {
+            color = pixelMapTransformService.getMaxiLineShadowColor(pPixelMap, this, point, color, getShadowRaster(pPixelMap));
+        }
+        pRenderResult.setColor(color);
+    }
+
+    /**
+     * Gets the lines drawn into a LineRaster, drawing them again only if the PixelMap or the line controls have changed since
+     * they were last drawn.
+     */
+    private LineRaster getLineRaster(ImmutablePixelMap pPixelMap) {
+        var lineRaster = mLineRaster;
+        if (lineRaster == null || !lineRaster.isFor(pPixelMap, this, 1.0d, false, mLineRasterScale.getValue())) {
+            synchronized (this) {
+                lineRaster = mLineRaster;
+                if (lineRaster == null || !lineRaster.isFor(pPixelMap, this, 1.0d, false, mLineRasterScale.getValue())) {
+                    lineRaster = updateLineRaster(lineRaster, pPixelMap, 1.0d, false);
+                    mLineRaster = lineRaster;
+                }
+            }
+        }
+        return lineRaster;
+    }
+
+    private LineRaster getShadowRaster(ImmutablePixelMap pPixelMap) {
+        var shadowRaster = mShadowRaster;
+        var multiplier = getShadowThickness();
+        if (shadowRaster == null || !shadowRaster.isFor(pPixelMap, this, multiplier, true, mLineRasterScale.getValue())) {
+            synchronized (this) {
+                shadowRaster = mShadowRaster;
+                if (shadowRaster == null || !shadowRaster.isFor(pPixelMap, this, multiplier, true, mLineRasterScale.getValue())) {
+                    shadowRaster = updateLineRaster(shadowRaster, pPixelMap, multiplier, true);
+                    mShadowRaster = shadowRaster;
+                }
+            }
+        }
+        return shadowRaster;
+    }
+
+    /**
+     * Draws the lines of the PixelMap. If the LineRaster was drawn in the same way from an earlier version of the PixelMap, only the
+     * parts that the changed PixelChains reach are drawn again.
+     */
+    private LineRaster updateLineRaster(LineRaster pLineRaster, ImmutablePixelMap pPixelMap, double pMultiplier, boolean pThickOnly) {
+        var scale = mLineRasterScale.getValue();
+        if (pLineRaster != null
+                && pLineRaster.isFor(pLineRaster.getPixelMap(), this, pMultiplier, pThickOnly, scale)
+                && getSegmentGrid(pPixelMap).isNumberedAs(pLineRaster.getSegmentGrid())) {
+            var changed = pixelMapService.getChangedPixelChains(pLineRaster.getPixelMap(), pPixelMap);
+            return pLineRaster.withChanges(pPixelMap, this, changed._1, changed._2);
+        }
+        return new LineRaster(pPixelMap, this, pMultiplier, pThickOnly, scale);
+    }
+
+    /**
+     * Gets the SegmentGrid of the PixelMap. The grid of each new version of the PixelMap is made from the grid of the version before
+     * with SegmentGrid.withChanges, so an edit does not build the grid of the whole PixelMap again.
+     */
+    @Override
+    public SegmentGrid getSegmentGrid(@NonNull PixelMap pPixelMap) {
+        var segmentGrid = mSegmentGrid;
+        if (segmentGrid != null && segmentGrid.isFor(pPixelMap)) {
+            return segmentGrid;
+        }
+        synchronized (this) {
+            if (pPixelMap != mPixelMap) {
+                return pPixelMap.segmentGrid();
+            }
+            segmentGrid = mSegmentGrid;
+            if (segmentGrid == null) {
+                segmentGrid = pPixelMap.segmentGrid();
+            } else if (!segmentGrid.isFor(pPixelMap)) {
+                var changed = pixelMapService.getChangedPixelChains(segmentGrid.getPixelMap(), pPixelMap);
+                segmentGrid = SegmentGrid.withChanges(segmentGrid, pPixelMap, changed._1, changed._2);
+            }
+            mSegmentGrid = segmentGrid;
+            return segmentGrid;
+        }
+    }
+
+    @Override
+    protected Object getRenderCacheState() {
+        return mPixelMap;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
+
+    @Override
+    public boolean isColorOnly() {
+        return true;
+    }
 }
@@ -12,10 +12,14 @@ import com.ownimage.framework.math.KMath;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 import lombok.NonNull;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class CircleMaskTransform extends BaseTransform {
@@ -88,4 +92,62 @@ public class CircleMaskTransform extends BaseTransform {
         }
         Framework.logExit(mLogger);
     }
+
+    @Override
+    public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] x = pBatch.getX();
+        final double[] y = pBatch.getY();
+        final double radius = mRadius;
+        final double blend = mBlend;
+        final Color c = mColor.getValue();
+        final float[] color = c.getRGBComponents(null);
+        // these are not rounded to 8 bits, as the Color(float, float, float, float) that the per sample transform creates keeps
+        // the float components that it is given and returns them from getRGBComponents
+        final float r = c.getRed() / 256.0f;
+        final float g = c.getGreen() / 256.0f;
+        final float b = c.getBlue() / 256.0f;
+
+        for (int i = pStart; i < pStop; i++) {
+            final double dx = x[i] - 0.5d;
+            final double dy = y[i] - 0.5d;
+            final double length = Math.sqrt(dx * dx + dy * dy);
+
+            if (length > radius) {
+                pBatch.setRGBA(i, color);
+
+            } else if (length > blend) {
+                final double d = 1.0d - (length - blend) / (radius - blend);
+                pBatch.setRGBA(i, r, g, b, (float) KMath.sigma(d));
+            }
+        }
+    }
+
+    @Override
+    public boolean isColorOnly() {
+        return true;
+    }
+
+    @Override
+    public boolean isIndependentOfColor() {
+        return true;
+    }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(@NonNull final BatchKernel pKernel) {
+        final Color c = mColor.getValue();
+        final float[] color = c.getRGBComponents(null);
+        pKernel.setOperation(BatchKernel.CIRCLE_MASK, mRadius, mBlend, color[0], color[1], color[2], color[3],
+                c.getRed() / 256.0f, c.getGreen() / 256.0f, c.getBlue() / 256.0f);
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
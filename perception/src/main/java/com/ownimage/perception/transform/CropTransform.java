@@ -16,10 +16,14 @@ import com.ownimage.framework.math.Point;
 import com.ownimage.framework.math.Rectangle;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 import lombok.NonNull;
 import lombok.val;
 
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class CropTransform extends BaseTransform implements IControlValidator {
@@ -163,6 +167,21 @@ public class CropTransform extends BaseTransform implements IControlValidator {
         Framework.logExit(mLogger);
     }
 
+    @Override
+    public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] x = pBatch.getX();
+        final double[] y = pBatch.getY();
+        final double left = mLeft;
+        final double bottom = mBottom;
+        final double width = mRight - mLeft;
+        final double height = mTop - mBottom;
+
+        for (int i = pStart; i < pStop; i++) {
+            x[i] = left + x[i] * width;
+            y[i] = bottom + y[i] * height;
+        }
+    }
+
     @Override
     public boolean validateControl(final Object pControl) {
         final boolean rv = mBottomControl.getValidateValue() < mTopControl.getValidateValue() //
@@ -170,4 +189,24 @@ public class CropTransform extends BaseTransform implements IControlValidator {
         return rv;
     }
 
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(@NonNull final BatchKernel pKernel) {
+        pKernel.setOperation(BatchKernel.CROP, mLeft, mBottom, mRight - mLeft, mTop - mBottom);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -10,17 +10,24 @@ import com.ownimage.framework.control.control.BooleanControl;
 import com.ownimage.framework.control.control.GrafittiHelper;
 import com.ownimage.framework.control.control.IControl;
 import com.ownimage.framework.control.control.IntegerControl;
+import com.ownimage.framework.control.control.ObjectControl;
 import com.ownimage.framework.control.control.PictureControl;
 import com.ownimage.framework.control.type.IntegerMetaType;
 import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.control.type.PictureView;
 import com.ownimage.framework.math.RectangleSize;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
 import com.ownimage.perception.app.Services;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
+import com.ownimage.perception.transform.sampling.Sampler;
+import com.ownimage.perception.transform.sampling.TiledRaster;
+import lombok.NonNull;
 
 import java.awt.*;
 import java.io.File;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class ImageLoadTransform extends BaseTransform {
@@ -39,6 +46,14 @@ public class ImageLoadTransform extends BaseTransform {
     private final BooleanControl mSmooth = new BooleanControl("Smooth", "smooth", getContainer(), false);
     private final BooleanControl mReshape = new BooleanControl("Reshape", "reshape", getContainer(), false);
     private final int mCurrentPasses = -1;
+    // a Sampler other than Nearest reads a tiled copy of the source picture, which takes as much memory again as the picture
+    private final ObjectControl<Sampler> mSampler =
+            new ObjectControl<>("Sampling", "sampling", getContainer(), Sampler.Nearest, Sampler.values());
+
+    private volatile TiledRaster mRaster;
+    // the buffers for sampling the raster, kept per thread so that sampling does not allocate
+    private final ThreadLocal<float[]> mRGB = ThreadLocal.withInitial(() -> new float[3]);
+    private final ThreadLocal<double[]> mWeights = ThreadLocal.withInitial(() -> new double[Sampler.WEIGHTS_LENGTH]);
 
     public ImageLoadTransform(final Perception pPerception, final File pFile) {
         super("Image Load", "imageLoad");
@@ -63,8 +78,9 @@ public class ImageLoadTransform extends BaseTransform {
     public void resizeInputPreview(final int pPreviewSize) {
         final RectangleSize size = new RectangleSize(mSourcePicture.getValue()).scaleToSquare(pPreviewSize);
         final PictureType preview = new PictureType(size);
+        final PictureView source = mSourcePicture.getValue().getView();
         preview.setColorDouble(
-                (x, y) -> mSourcePicture.getValue().getColor(x, y)
+                (x, y) -> source.getColor(x, y)
                         .orElseGet(() -> Services.getServices().getProperties().getColorOOB())
         );
         getPreviewImage().setValue(preview);
@@ -74,6 +90,9 @@ public class ImageLoadTransform extends BaseTransform {
     public void controlChangeEvent(final IControl pControl, final boolean pIsMutating) {
         Framework.logEntry(mLogger);
         getPreviewImage().drawGrafitti();
+        if ((pControl == mSampler || pControl == m360) && !pIsMutating) {
+            refreshOutputPreview();
+        }
         Framework.logExit(mLogger);
     }
 
@@ -299,12 +318,56 @@ public class ImageLoadTransform extends BaseTransform {
         throw new IllegalStateException("Cannot setPreviousTransform on an ImageLoadTransform");
     }
 
+    /**
+     * Gets the raster of the source picture that is sampled by the render. This is only recreated if the source picture, the 360
+     * setting or the Sampler has changed. The source picture is only copied into tiles for a Sampler that reads more than one
+     * pixel, Nearest reads the pixels of the picture itself.
+     */
+    private TiledRaster getRaster() {
+        final PictureView source = mSourcePicture.getValue().getView();
+        final boolean is360 = m360.getValue() || source.is360();
+        final boolean tiled = mSampler.getValue().getRadius() > 0;
+        final TiledRaster raster = mRaster;
+        if (raster != null && raster.isFor(source, is360, tiled)) {
+            return raster;
+        }
+        return createRaster(source, is360, tiled);
+    }
+
+    private synchronized TiledRaster createRaster(final PictureView pSource, final boolean pIs360, final boolean pTiled) {
+        if (mRaster == null || !mRaster.isFor(pSource, pIs360, pTiled)) {
+            mRaster = new TiledRaster(pSource, pIs360, pTiled);
+        }
+        return mRaster;
+    }
+
     @Override
     public void transform(final ITransformResult pRenderResult) {
-        final double x = pRenderResult.getX();
-        final double y = pRenderResult.getY();
-        final Color c = mSourcePicture.getValue().getColor(x, y).orElseGet(() -> Services.getServices().getProperties().getColorOOB());
-        pRenderResult.setColor(c);
+        final float[] rgb = mRGB.get();
+        if (getRaster().sample(mSampler.getValue(), pRenderResult.getX(), pRenderResult.getY(), rgb, mWeights.get())) {
+            pRenderResult.setRGBA(rgb[0], rgb[1], rgb[2], 1.0f);
+        } else {
+            pRenderResult.setColor(Services.getServices().getProperties().getColorOOB());
+        }
+    }
+
+    @Override
+    public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final TiledRaster raster = getRaster();
+        final Sampler sampler = mSampler.getValue();
+        final float[] oob = Services.getServices().getProperties().getColorOOB().getRGBComponents(null);
+        final float[] rgb = mRGB.get();
+        final double[] weights = mWeights.get();
+        final double[] xs = pBatch.getX();
+        final double[] ys = pBatch.getY();
+
+        for (int i = pStart; i < pStop; i++) {
+            if (raster.sample(sampler, xs[i], ys[i], rgb, weights)) {
+                pBatch.setRGBA(i, rgb[0], rgb[1], rgb[2], 1.0f);
+            } else {
+                pBatch.setRGBA(i, oob);
+            }
+        }
     }
 
     // public void open(final File pFile) throws PerceptionException {
@@ -405,4 +468,24 @@ public class ImageLoadTransform extends BaseTransform {
     @Override
     public void refreshInputPreview() {
     }
+
+    @Override
+    protected Object getRenderCacheState() {
+        return mSourcePicture.getValue();
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
+
+    @Override
+    public boolean isColorOnly() {
+        return true;
+    }
+
+    @Override
+    public boolean isIndependentOfColor() {
+        return true;
+    }
 }
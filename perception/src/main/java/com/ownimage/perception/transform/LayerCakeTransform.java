@@ -13,9 +13,12 @@ import com.ownimage.framework.control.type.DoubleMetaType.DisplayType;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
 import lombok.NonNull;
 
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class LayerCakeTransform extends BaseTransform {
@@ -96,4 +99,26 @@ public class LayerCakeTransform extends BaseTransform {
         pRenderResult.setPoint(new Point(x, y));
         Framework.logExit(mLogger);
     }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(@NonNull final BatchKernel pKernel) {
+        pKernel.setOperation(BatchKernel.LAYER_CAKE, mCutOffHeight,
+                mHalfWidth.getValue() ? 1.0d : 0.0d, mMirrorTop.getValue() ? 1.0d : 0.0d, m180Top.getValue() ? 1.0d : 0.0d);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
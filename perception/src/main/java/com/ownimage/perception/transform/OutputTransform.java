@@ -11,6 +11,7 @@ import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
 import com.ownimage.perception.render.ITransformResult;
 
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class OutputTransform extends BaseTransform {
@@ -171,4 +172,9 @@ public class OutputTransform extends BaseTransform {
     @Override
     public void transform(final ITransformResult pRenderResult) {
     }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -14,9 +14,13 @@ import com.ownimage.framework.math.PolarCoordinates;
 import com.ownimage.framework.math.RTheta;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,4 +77,58 @@ public class PolarTransform extends BaseTransform {
         }
     }
 
+    @Override
+    public void transform(final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] x = pBatch.getX();
+        final double[] y = pBatch.getY();
+        final double rotate = mRotate;
+        final float[] color = mColor.getValue().getRGBComponents(null);
+
+        for (int i = pStart; i < pStop; i++) {
+            // this is PolarCoordinates.getCircleInUnitSquare().getPolarCoordinate(...) without the intermediate objects
+            final double dx = x[i] - 0.5d;
+            final double dy = y[i] - 0.5d;
+            final double r = Math.sqrt(dx * dx + dy * dy) / 0.5d;
+
+            double theta = Math.atan(dx / dy);
+            if (dy < 0) {
+                theta = theta + Math.PI;
+            }
+            if (theta < 0) {
+                theta += 2.0 * Math.PI;
+            }
+            if (theta > 2 * Math.PI) {
+                theta -= 2.0 * Math.PI;
+            }
+
+            if (r < 1.0) {
+                x[i] = mod1(rotate + theta / (2.0 * Math.PI));
+                y[i] = r;
+            } else {
+                pBatch.setRGBA(i, color);
+            }
+        }
+    }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(final BatchKernel pKernel) {
+        final float[] color = mColor.getValue().getRGBComponents(null);
+        pKernel.setOperation(BatchKernel.POLAR, mRotate, color[0], color[1], color[2], color[3]);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -10,10 +10,13 @@ import com.ownimage.framework.control.control.GrafittiHelper;
 import com.ownimage.framework.logging.FrameworkLogger;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
 import lombok.NonNull;
 
 import java.util.Arrays;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -96,4 +99,25 @@ public class QuadSpaceTransform extends BaseTransform {
 
         Framework.logExit(mLogger);
     }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(@NonNull final BatchKernel pKernel) {
+        pKernel.setOperation(BatchKernel.QUAD_SPACE, mDividers);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -16,9 +16,13 @@ import com.ownimage.framework.math.KMath;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class RotateTransform extends BaseTransform {
@@ -169,4 +173,63 @@ public class RotateTransform extends BaseTransform {
         }
     }
 
+    @Override
+    public void transform(final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] x = pBatch.getX();
+        final double[] y = pBatch.getY();
+        final double rotate = mRotate;
+
+        if (!mPointRotate) {
+            for (int i = pStart; i < pStop; i++) {
+                x[i] = KMath.mod1(x[i] + rotate);
+            }
+            return;
+        }
+
+        final double scale = mExtend ? mScale : 1.0d;
+        final double cos = Math.cos(rotate);
+        final double sin = Math.sin(rotate);
+        final float[] oob = mOOBColorControl.getValue().getRGBComponents(null);
+
+        for (int i = pStart; i < pStop; i++) {
+            final double dx = (x[i] - 0.5d) * scale;
+            final double dy = (y[i] - 0.5d) * scale;
+            final double outX = 0.5d + (dx * cos - dy * sin);
+            final double outY = 0.5d + (dy * cos + dx * sin);
+
+            // same test as Point.isInsideUnitSquare()
+            if (!(0 <= outX && outX <= 1.0d && 0 < outY && outY <= 1.0d)) {
+                pBatch.setRGBA(i, oob);
+            }
+            x[i] = outX;
+            y[i] = outY;
+        }
+    }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(final BatchKernel pKernel) {
+        if (!mPointRotate) {
+            pKernel.setOperation(BatchKernel.ROTATE_LINEAR, mRotate);
+            return true;
+        }
+        final double scale = mExtend ? mScale : 1.0d;
+        final float[] oob = mOOBColorControl.getValue().getRGBComponents(null);
+        pKernel.setOperation(BatchKernel.ROTATE_POINT, scale, Math.cos(mRotate), Math.sin(mRotate), oob[0], oob[1], oob[2], oob[3]);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -16,6 +16,7 @@ import com.ownimage.perception.render.ITransformResult;
 import lombok.NonNull;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class RuleOfThirdsTransform extends BaseTransform {
@@ -210,4 +211,13 @@ public class RuleOfThirdsTransform extends BaseTransform {
         Framework.logExit(mLogger);
     }
 
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
@@ -13,8 +13,10 @@ import com.ownimage.framework.math.RTheta;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
 import com.ownimage.perception.render.ITransformResult;
+import com.ownimage.perception.render.ITransformResultBatch;
 import lombok.NonNull;
 
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class SoftSquarePolarTransform extends BaseTransform {
@@ -105,4 +107,66 @@ public class SoftSquarePolarTransform extends BaseTransform {
         Framework.logExit(mLogger);
     }
 
+    /**
+     * This is the same calculation as map(Point) but working on primitives so that no objects are created per sample.
+     */
+    @Override
+    public void transform(@NonNull final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        final double[] xs = pBatch.getX();
+        final double[] ys = pBatch.getY();
+        final double power = mPower;
+        final double rotate = mRotate;
+        final double piOver2 = Math.PI / 2.0d;
+
+        for (int i = pStart; i < pStop; i++) {
+            final double x = xs[i];
+            final double y = ys[i];
+
+            final double thetaAB = x * piOver2;
+            final double thetaBC = piOver2 + (1.0d - y) * piOver2;
+            final double thetaCD = 2 * piOver2 + (1.0d - x) * piOver2;
+            final double thetaDA = 3 * piOver2 + y * piOver2;
+
+            final double reciprocalAB = 1.0d / Math.pow(length(x - x, 1.0d - y), power);
+            final double reciprocalBC = 1.0d / Math.pow(length(1.0d - x, y - y), power);
+            final double reciprocalCD = 1.0d / Math.pow(length(x - x, 0.0d - y), power);
+            final double reciprocalDA = 1.0d / Math.pow(length(0.0d - x, y - y), power);
+            final double reciprocalCenter = 1.0d / Math.pow(length(x - 0.5d, y - 0.5d), power);
+
+            final double sumOfReciprocals = reciprocalCenter + reciprocalAB + reciprocalBC + reciprocalCD + reciprocalDA;
+
+            final double targetX = Math.sin(thetaAB) * reciprocalAB + Math.sin(thetaBC) * reciprocalBC
+                    + Math.sin(thetaCD) * reciprocalCD + Math.sin(thetaDA) * reciprocalDA;
+            final double targetY = Math.cos(thetaAB) * reciprocalAB + Math.cos(thetaBC) * reciprocalBC
+                    + Math.cos(thetaCD) * reciprocalCD + Math.cos(thetaDA) * reciprocalDA;
+
+            double theta = Math.atan(targetX / targetY);
+            if (targetY < 0) {
+                theta = theta + Math.PI;
+            }
+            if (theta < 0) {
+                theta += 2.0 * Math.PI;
+            }
+            if (theta > 2 * Math.PI) {
+                theta -= 2.0 * Math.PI;
+            }
+
+            xs[i] = mod1(mod1(theta / (2 * Math.PI)) + rotate - 1.0d / 8.0d);
+            ys[i] = mod1((reciprocalAB + reciprocalBC + reciprocalCD + reciprocalDA) / sumOfReciprocals);
+        }
+    }
+
+    private static double length(final double pX, final double pY) {
+        return Math.sqrt(pX * pX + pY * pY);
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
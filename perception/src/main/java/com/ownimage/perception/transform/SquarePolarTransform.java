@@ -10,9 +10,12 @@ import com.ownimage.framework.control.control.GrafittiHelper;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
+import com.ownimage.perception.render.BatchKernel;
+import com.ownimage.perception.render.IBatchEngine;
 import com.ownimage.perception.render.ITransformResult;
 import lombok.NonNull;
 
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -90,4 +93,25 @@ public class SquarePolarTransform extends BaseTransform {
         Framework.logExit(mLogger);
     }
 
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return getPerception().getRenderService().getOpenCLBatchEngine();
+    }
+
+    @Override
+    public boolean setKernelOperation(@NonNull final BatchKernel pKernel) {
+        final float[] oob = getProperties().getColorOOB().getRGBComponents(null);
+        pKernel.setOperation(BatchKernel.SQUARE_POLAR, Math.toRadians(mRotate), oob[0], oob[1], oob[2], oob[3]);
+        return true;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
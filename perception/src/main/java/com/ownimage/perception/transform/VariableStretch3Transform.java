@@ -17,6 +17,7 @@ import com.ownimage.framework.util.Framework;
 import com.ownimage.perception.app.Perception;
 import com.ownimage.perception.render.ITransformResult;
 
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class VariableStretch3Transform extends BaseTransform implements IControlValidator {
@@ -224,4 +225,14 @@ public class VariableStretch3Transform extends BaseTransform implements IControl
             return false;
         }
     }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return true;
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
 }
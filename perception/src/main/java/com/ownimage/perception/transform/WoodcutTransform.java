@@ -14,6 +14,7 @@ import com.ownimage.perception.render.ITransformResult;
 import lombok.NonNull;
 
 import java.awt.*;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -103,4 +104,24 @@ public class WoodcutTransform extends BaseTransform {
         }
         Framework.logExit(mLogger);
     }
+
+    @Override
+    protected Object getRenderCacheState() {
+        return mEtchPicture.getValue();
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return getRenderCacheKeyFromControls();
+    }
+
+    @Override
+    public boolean isColorOnly() {
+        return true;
+    }
+
+    @Override
+    public boolean isIndependentOfColor() {
+        return true;
+    }
 }
@@ -0,0 +1,49 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.cannyEdge;
+
+import lombok.NonNull;
+
+/**
+ * The contrast normalization of the Canny edge detectors, which linearizes the histogram of the luminance, i.e. remaps each
+ * luminance so that the luminances from 0 to 255 are used equally often.
+ */
+public class CannyContrast {
+
+    private CannyContrast() {
+    }
+
+    /**
+     * Normalizes the contrast of pLuminance into pNormalized, which can be pLuminance itself.
+     *
+     * @param pLuminance  the luminance, each from 0 to 255
+     * @param pNormalized the array the normalized luminance is written to, this must be at least as long as pLuminance
+     * @return pNormalized
+     */
+    public static int[] normalize(@NonNull final int[] pLuminance, @NonNull final int[] pNormalized) {
+        final long[] histogram = new long[256];
+        for (final int luminance : pLuminance) {
+            histogram[luminance]++;
+        }
+
+        final long[] remap = new long[256];
+        long sum = 0;
+        long j = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            final long target = sum * 255 / pLuminance.length;
+            for (long k = j + 1; k <= target; k++) {
+                remap[(int) k] = i;
+            }
+            j = target;
+        }
+
+        for (int i = 0; i < pLuminance.length; i++) {
+            pNormalized[i] = (int) remap[pLuminance[i]];
+        }
+        return pNormalized;
+    }
+}
@@ -289,24 +289,6 @@ public class CannyEdgeDetector implements ICannyEdgeDetector {
      * @see com.ownimage.perception.transform.cannyEdge.ICannyEdgeDetector#getHighThreshold()
      */
 
-    private void follow(final int x1, final int y1, final int i1, final int threshold) {
-        final int x0 = x1 == 0 ? x1 : x1 - 1;
-        final int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        final int y0 = y1 == 0 ? y1 : y1 - 1;
-        final int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-        data[i1] = magnitude[i1];
-        for (int x = x0; x <= x2; x++) {
-            for (int y = y0; y <= y2; y++) {
-                final int i2 = x + y * width;
-                if ((y != y1 || x != x1) && data[i2] == 0 && magnitude[i2] >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
-                }
-            }
-        }
-    }
-
     /*
      * (non-Javadoc)
      *
@@ -478,15 +460,7 @@ public class CannyEdgeDetector implements ICannyEdgeDetector {
         // to separate these functions.
         Arrays.fill(data, 0);
 
-        int offset = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (data[offset] == 0 && magnitude[offset] >= high) {
-                    follow(x, y, offset, low);
-                }
-                offset++;
-            }
-        }
+        new CannyHysteresis(magnitude, data, width, height, low, high).perform();
     }
 
     /*
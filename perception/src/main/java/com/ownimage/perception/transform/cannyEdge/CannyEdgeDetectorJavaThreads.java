@@ -7,9 +7,9 @@ package com.ownimage.perception.transform.cannyEdge;
 
 import com.ownimage.framework.control.control.IProgressObserver;
 import com.ownimage.framework.control.type.IPictureSource;
-import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.control.type.PictureView;
 import com.ownimage.framework.util.Framework;
-import com.ownimage.perception.app.Properties;
 import com.ownimage.perception.app.Services;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
 import com.ownimage.perception.pixelMap.services.Config;
@@ -19,7 +19,11 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.awt.*;
-import java.util.logging.Level;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 /**
@@ -76,18 +80,21 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
 
     private final static Logger mLogger = Framework.getLogger();
 
-    private final static float GAUSSIAN_CUT_OFF = 0.005f;
-    private final static float MAGNITUDE_SCALE = 100F;
-    private final static float MAGNITUDE_LIMIT = 1000F;
-    private final static int MAGNITUDE_MAX = (int) (MAGNITUDE_SCALE * MAGNITUDE_LIMIT);
+    private final static float MAGNITUDE_SCALE = CannyGradients.MAGNITUDE_SCALE;
+
+    /**
+     * The pool that all of the stages are run on, shared by all of the detectors.
+     */
+    private static ForkJoinPool mForkJoinPool;
 
     // fields
 
     private int height;
     private int width;
     private int picsize;
-    private int[][] mData;
-    private int[][] mMagnitude;
+    // row major, i.e. index x + y * width
+    private int[] mData;
+    private int[] mMagnitude;
     private IPictureSource sourceImage;
     private ImmutablePixelMap edgeData;
 
@@ -97,11 +104,6 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
     private int gaussianKernelWidth;
     private boolean contrastNormalized;
 
-    private float[][] mXConv;
-    private float[][] mYConv;
-    private float[][] mXGradient;
-    private float[][] mYGradient;
-
     private final CannyEdgeTransform mTransform;
     // private final ProgressMonitor mProgressMonitor;
     private boolean mShowProgress;
@@ -135,164 +137,68 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
 
     // accessors
 
-    private void computeGradients(final float kernelRadius, final int kernelWidth) {
-
-        // generate the gaussian convolution masks
-        final float kernel[] = new float[kernelWidth];
-        final float diffKernel[] = new float[kernelWidth];
-        int kwidth;
-        for (kwidth = 0; kwidth < kernelWidth; kwidth++) {
-            final float g1 = gaussian(kwidth, kernelRadius);
-            if (g1 <= GAUSSIAN_CUT_OFF && kwidth >= 2) {
-                break;
+    /**
+     * Runs pStage for each value from 0 (inclusive) to pCount (exclusive) on the shared pool, and waits for them all to finish.
+     * The values are skipped once the detector has been stopped.
+     */
+    private void runInParallel(final int pCount, final IntConsumer pStage) {
+        getForkJoinPool().invoke(new StageAction(i -> {
+            if (getKeepRunning()) {
+                pStage.accept(i);
             }
-            final float g2 = gaussian(kwidth - 0.5f, kernelRadius);
-            final float g3 = gaussian(kwidth + 0.5f, kernelRadius);
-            kernel[kwidth] = (g1 + g2 + g3) / 3f / (2f * (float) Math.PI * kernelRadius * kernelRadius);
-            diffKernel[kwidth] = g3 - g2;
-        }
-
-        int initX = kwidth - 1;
-        int maxX = width - (kwidth - 1);
-        int initY = kwidth - 1;
-        int maxY = height - (kwidth - 1);
-
-        // perform convolution in mX and mY directions
-        // TODO need to check this against the algorithm
-        for (int x = 0; x < width; x++) {
-            showProgressBar("Computing Gradients ...", 0.1f * (x - initX) / (maxX - initX));
-            for (int y = initY; y < maxY; y++) {
-                float sumX = getData(x, y) * kernel[0];
-                float sumY = sumX;
-                int xOffset = 1;
-                int yOffset = 1;
-                for (; xOffset < kwidth; ) {
-                    sumY += kernel[xOffset] * (getData(x, y - yOffset) + getData(x, y + yOffset));
-                    sumX += kernel[xOffset] * (getData(x - xOffset, y) + getData(x + xOffset, y));
-                    yOffset++;
-                    xOffset++;
-                }
+        }, 0, pCount));
+    }
 
-                setXConv(x, y, sumX);
-                setYConv(x, y, sumY);
+    private static synchronized ForkJoinPool getForkJoinPool() {
+        final int threadCount = Services.getServices().getProperties().getRenderThreadPoolSize();
+        if (mForkJoinPool == null || mForkJoinPool.getParallelism() != threadCount) {
+            if (mForkJoinPool != null) {
+                mForkJoinPool.shutdown();
             }
-
+            mForkJoinPool = new ForkJoinPool(threadCount);
         }
+        return mForkJoinPool;
+    }
 
-        for (int x = 0; x < width; x++) {
-            showProgressBar("Computing Gradients ...", 0.1f + 0.1f * (x - initX) / (maxX - initX));
-            for (int y = initY; y < maxY; y++) {
-                float sum = 0f;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (getYConv(x - i, y) - getYConv(x + i, y));
-                }
+    private static class StageAction extends RecursiveAction {
 
-                setXGradient(x, y, sum);
-            }
+        private final IntConsumer mStage;
+        private final int mStart;
+        private final int mStop;
 
+        private StageAction(final IntConsumer pStage, final int pStart, final int pStop) {
+            mStage = pStage;
+            mStart = pStart;
+            mStop = pStop;
         }
 
-        for (int x = 0; x < width - 1; x++) {
-            showProgressBar("Computing Gradients ...", 0.2f + 0.1f * (x - kwidth) / (width - 2 * kwidth));
-            for (int y = initY; y < maxY; y++) {
-                float sum = 0.0f;
-                int yOffset = 1;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (getXConv(x, y - yOffset) - getXConv(x, y + yOffset));
-                    yOffset++;
+        @Override
+        protected void compute() {
+            if (mStop - mStart <= 1) {
+                for (int i = mStart; i < mStop; i++) {
+                    mStage.accept(i);
                 }
-
-                setYGradient(x, y, sum);
+            } else {
+                final int half = (mStart + mStop) / 2;
+                invokeAll(new StageAction(mStage, mStart, half), new StageAction(mStage, half, mStop));
             }
-
-        }
-
-        initX = 0;// kwidth;
-        maxX = width - 1;// kwidth;
-        initY = kwidth;
-        maxY = height - kwidth;
-        final Properties properties = Services.getServices().getProperties();
-
-        class NonMaximalSupressionThread extends Thread {
-            private final int mInitX;
-            private final int mMaxX;
-            private final int mInitY;
-            private final int mMaxY;
-            private final int mStepX;
-
-            public NonMaximalSupressionThread(final int pInitX, final int pMaxX, final int pInitY, final int pMaxY, final int pStepX) {
-                super();
-                mInitX = pInitX;
-                mMaxX = pMaxX;
-                mInitY = pInitY;
-                mMaxY = pMaxY;
-                mStepX = pStepX;
-            }
-
-            @Override
-            public void run() {
-                CannyEdgeDetectorJavaThreads.this.nonMaximalSupression(mInitX, mMaxX, mInitY, mMaxY, mStepX);
-            }
-        }
-
-        if (properties.useJTP()) {
-            final int threadCount = properties.getRenderThreadPoolSize(); // TODO looks like this could be better
-            final Thread threads[] = new Thread[threadCount];
-
-            for (int i = 0; i < threadCount; i++) {
-                final NonMaximalSupressionThread runnable;
-                runnable = new NonMaximalSupressionThread(initX + i, maxX, initY, maxY, threadCount);
-                runnable.setName("CannyEdgeDetectorJavaThreads NMS Thread: " + i);
-                runnable.start();
-                threads[i] = runnable;
-            }
-
-            for (int i = 0; i < threadCount; i++) {
-                try {
-                    threads[i].join();
-                } catch (final InterruptedException pEx) {
-                    mLogger.warning("Interruped");
-                    if (mLogger.isLoggable(Level.FINE)) {
-                        mLogger.fine(FrameworkLogger.throwableToString(pEx));
-                    }
-                }
-            }
-        } else {
-            nonMaximalSupression(initX, maxX, initY, maxY, 1);
         }
+    }
 
+    private void computeGradients(final float kernelRadius, final int kernelWidth) {
+        final CannyGradients gradients = new CannyGradients(mData, width, height, kernelRadius, kernelWidth, mMagnitude);
+        final int stripCount = gradients.getStripCount();
+        final AtomicInteger stripsDone = new AtomicInteger();
+        runInParallel(stripCount, strip -> {
+            gradients.computeStrip(strip);
+            showProgressBar("Computing Gradients ...", (float) stripsDone.incrementAndGet() / stripCount);
+        });
     }
 
     @Override
     public void dispose() {
     }
 
-    private void follow(final int x1, final int y1, final int i1, final int threshold) {
-        final int x0 = x1 == 0 ? x1 : x1 - 1;
-        final int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        final int y0 = y1 == 0 ? y1 : y1 - 1;
-        final int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-        setData(x1, y1, getMagnitude(x1, y1));
-        for (int x = x0; x <= x2; x++) {
-            for (int y = y0; y <= y2; y++) {
-                final int i2 = x + y * width;
-                if ((y != y1 || x != x1) && getData(x, y) == 0 && getMagnitude(x, y) >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
-                }
-            }
-        }
-    }
-
-    private float gaussian(final float x, final float sigma) {
-        return (float) Math.exp(-(x * x) / (2f * sigma * sigma));
-    }
-
-    private int getData(final int pX, final int pY) {
-        return mData[getX(pX)][pY];
-    }
-
     /**
      * Obtains an mData containing the edges detected during the last call to the process method. The buffered mData is an opaque
      * mData of type BufferedImage.TYPE_INT_ARGB in which edge pixels are white and all other pixels are black.
@@ -355,10 +261,6 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         return lowThreshold;
     }
 
-    private int getMagnitude(final int pX, final int pY) {
-        return mMagnitude[getX(pX)][pY];
-    }
-
     /**
      * The mData that provides the luminance data used by this detector to generate edges.
      *
@@ -374,53 +276,10 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         return pX < 0 ? 0 : pX > width - 1 ? width - 1 : pX;
     }
 
-    // methods
-
-    private float getXConv(final int pX, final int pY) {
-        return mXConv[getX(pX)][pY];
-    }
-
-    // private utility methods
-
-    private float getXGradient(final int pX, final int pY) {
-        return mXGradient[getX(pX)][pY];
-    }
-
-    // NOTE: The elements of the method below (specifically the technique for
-    // non-maximal suppression and the technique for gradient computation)
-    // are derived from an implementation posted in the following forum (with the
-    // clear intent of others using the code):
-    // http://forum.java.sun.com/thread.jspa?threadID=546211&start=45&tstart=0
-    // My code effectively mimics the algorithm exhibited above.
-    // Since I don't know the providence of the code that was posted it is a
-    // possibility (though I think a very remote one) that this code violates
-    // someone's intellectual property rights. If this concerns you feel free to
-    // contact me for an alternative, though less efficient, implementation.
-
-    private float getYConv(final int pX, final int pY) {
-        return mYConv[getX(pX)][pY];
-    }
-
-    private float getYGradient(final int pX, final int pY) {
-        return mYGradient[getX(pX)][pY];
-    }
-
-    // NOTE: It is quite feasible to replace the implementation of this method
-    // with one which only loosely approximates the hypot function. I've tested
-    // simple approximations such as Math.abs(mX) + Math.abs(mY) and they work fine.
-    private float hypot(final float x, final float y) {
-        return (float) Math.hypot(x, y);
-    }
-
     private void initArrays() {
-        if (mData == null || mData.length != width || mData[0].length != height) {
-            mData = new int[width][height];
-            mMagnitude = new int[width][height];
-
-            mXConv = new float[width][height];
-            mYConv = new float[width][height];
-            mXGradient = new float[width][height];
-            mYGradient = new float[width][height];
+        if (mData == null || mData.length != picsize) {
+            mData = new int[picsize];
+            mMagnitude = new int[picsize];
         }
     }
 
@@ -440,115 +299,28 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         return Math.round(0.299f * r + 0.587f * g + 0.114f * b);
     }
 
-    private void nonMaximalSupression(final int pInitX, final int pMaxX, final int pInitY, final int pMaxY, final int pStepX) {
-        for (int y = pInitY; y < pMaxY; y++) {
-            showProgressBar("Performaing Non Maximal Supression ...", 0.3f + 0.7f * (y - pInitY) / (pMaxY - pInitY));
-            for (int x = pInitX; x < pMaxX; x += pStepX) {
-
-                final float xGrad = getXGradient(x, y);
-                final float yGrad = getYGradient(x, y);
-                final float gradMag = hypot(xGrad, yGrad);
-
-                // perform non-maximal supression
-                final float nMag = hypot(getXGradient(x, y - 1), getYGradient(x, y - 1));
-                final float sMag = hypot(getXGradient(x, y + 1), getYGradient(x, y + 1));
-                final float wMag = hypot(getXGradient(x - 1, y), getYGradient(x - 1, y));
-                final float eMag = hypot(getXGradient(x + 1, y), getYGradient(x + 1, y));
-                final float neMag = hypot(getXGradient(x + 1, y - 1), getYGradient(x + 1, y - 1));
-                final float seMag = hypot(getXGradient(x + 1, y + 1), getYGradient(x + 1, y + 1));
-                final float swMag = hypot(getXGradient(x - 1, y + 1), getYGradient(x - 1, y + 1));
-                final float nwMag = hypot(getXGradient(x - 1, y - 1), getYGradient(x - 1, y - 1));
-                float tmp;
-                /*
-                 * An explanation of what's happening here, for those who want to understand the source: This performs the
-                 * "non-maximal supression" phase of the Canny edge detection in which we need to compare the gradient magnitude to
-                 * that in the direction of the gradient; only if the value is a local maximum do we consider the point as an edge
-                 * candidate.
-                 *
-                 * We need to break the comparison into a number of different cases depending on the gradient direction so that the
-                 * appropriate values can be used. To avoid computing the gradient direction, we use two simple comparisons: first
-                 * we check that the partial derivatives have the same sign (1) and then we check which is larger (2). As a
-                 * consequence, we have reduced the problem to one of four identical cases that each test the central gradient
-                 * magnitude against the values at two points with 'identical support'; what this means is that the geometry
-                 * required to accurately interpolate the magnitude of gradient function at those points has an identical geometry
-                 * (upto right-angled-rotation/reflection).
-                 *
-                 * When comparing the central gradient to the two interpolated values, we avoid performing any divisions by
-                 * multiplying both sides of each inequality by the greater of the two partial derivatives. The common comparand is
-                 * stored in a temporary variable (3) and reused in the mirror case (4).
-                 */
-                if (xGrad * yGrad <= 0 /* (1) */
-                        ? Math.abs(xGrad) >= Math.abs(yGrad) /* (2) */
-                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /* (3) */
-                        && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /* (4) */
-                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /* (3) */
-                        && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /* (4) */
-                        : Math.abs(xGrad) >= Math.abs(yGrad) /* (2) */
-                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /* (3) */
-                        && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /* (4) */
-                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /* (3) */
-                        && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /* (4) */
-                ) {
-                    setMagnitude(x, y, gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag));
-                    // NOTE: The orientation of the edge is not employed by this
-                    // implementation. It is a simple matter to compute it at
-                    // this point as: Math.atan2(yGrad, xGrad);
-                } else {
-                    setMagnitude(x, y, 0);
-                }
-            }
-        }
-    }
-
-    private void normalizeContrast() {
-        final long[] histogram = new long[256];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                histogram[getData(x, y)]++;
-            }
-        }
-
-        final long[] remap = new long[256];
-        long sum = 0;
-        long j = 0;
-        for (int i = 0; i < histogram.length; i++) {
-            sum += histogram[i];
-            final long target = sum * 255 / picsize;
-            for (long k = j + 1; k <= target; k++) {
-                remap[(int) k] = i;
-            }
-            j = target;
-        }
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                setData(x, y, (int) remap[getData(x, y)]);
-            }
-        }
-    }
-
     private void performHysteresis(final int low, final int high) {
         // NOTE: this implementation reuses the data array to store both
         // luminance data from the mData, and edge intensity from the processing.
         // This is done for memory efficiency, other implementations may wish
         // to separate these functions.
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                setData(x, y, 0);
-            }
-        }
+        Arrays.fill(mData, 0);
 
-        int offset = 0;
-        for (int y = 0; y < height; y++) {
-            showProgressBar("Performing Hysteresis ...", (float) y / height);
-            for (int x = 0; x < width; x++) {
+        final CannyHysteresis hysteresis = new CannyHysteresis(mMagnitude, mData, width, height, low, high);
+        final int stripCount = hysteresis.getStripCount();
+        runInParallel(stripCount, hysteresis::labelStrip);
+        if (!showProgressBar("Performing Hysteresis ...", 0.25f)) return;
+        hysteresis.mergeStrips();
+        runInParallel(stripCount, hysteresis::flattenStrip);
+        if (!showProgressBar("Performing Hysteresis ...", 0.5f)) return;
+        hysteresis.groupComponents();
 
-                if (getData(x, y) == 0 && getMagnitude(x, y) >= high) {
-                    follow(x, y, offset, low);
-                }
-                offset++;
-            }
-        }
+        final int batchCount = hysteresis.getBatchCount();
+        final AtomicInteger batchesDone = new AtomicInteger();
+        runInParallel(batchCount, batch -> {
+            hysteresis.followBatch(batch);
+            showProgressBar("Performing Hysteresis ...", 0.5f + 0.5f * batchesDone.incrementAndGet() / batchCount);
+        });
     }
 
     @Override
@@ -576,7 +348,7 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
 
             if (getKeepRunning()) {
                 if (contrastNormalized) {
-                    normalizeContrast();
+                    CannyContrast.normalize(mData, mData);
                 }
             }
             // stopWatch.logLapTime(Level.INFO, "normalizeContrast");
@@ -612,20 +384,26 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         }
     }
 
+    /**
+     * Reads the luminance of the source a strip of rows at a time on the shared pool. The rows are copied out of a PictureView of
+     * the source, which unlike PictureType.getColor is not synchronized and creates no objects.
+     */
     private void readLuminance() {
-        for (int x = 0; x < width; x++) {
-            if (!showProgressBar("Reading Luminance ...", (float) x / width)) return;
-
-            for (int y = 0; y < height; y++) {
-
-                final Color c = sourceImage.getColor(x, y).orElseGet(() -> Services.getServices().getProperties().getColorOOB());
-                final int r = c.getRed();
-                final int g = c.getGreen();
-                final int b = c.getBlue();
-                setData(x, y, luminance(r, g, b));
+        final PictureView view = getSourceView();
+        final int stripCount = (height + CannyGradients.STRIP_HEIGHT - 1) / CannyGradients.STRIP_HEIGHT;
+        final AtomicInteger stripsDone = new AtomicInteger();
+        runInParallel(stripCount, strip -> {
+            final int[] row = new int[width];
+            final int yEnd = Math.min(height, (strip + 1) * CannyGradients.STRIP_HEIGHT);
+            for (int y = strip * CannyGradients.STRIP_HEIGHT; y < yEnd; y++) {
+                view.getRow(y, row);
+                for (int x = 0; x < width; x++) {
+                    final int argb = row[x];
+                    setData(x, y, luminance((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff));
+                }
             }
-        }
-
+            showProgressBar("Reading Luminance ...", (float) stripsDone.incrementAndGet() / stripCount);
+        });
         // int type = sourceImage.getType();
         // if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
         // int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
@@ -680,8 +458,27 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         this.contrastNormalized = contrastNormalized;
     }
 
+    /**
+     * Gets a view of the source image, copying the source into a PictureType if it is neither a PictureType nor a PictureView.
+     */
+    private PictureView getSourceView() {
+        if (sourceImage instanceof PictureView) {
+            return (PictureView) sourceImage;
+        }
+        if (sourceImage instanceof PictureType) {
+            return ((PictureType) sourceImage).getView();
+        }
+        final PictureType copy = new PictureType(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                copy.setColor(x, y, sourceImage.getColor(x, y).orElseGet(() -> Services.getServices().getProperties().getColorOOB()));
+            }
+        }
+        return copy.getView();
+    }
+
     private void setData(final int pX, final int pY, final int pValue) {
-        mData[pX][pY] = pValue;
+        mData[pX + pY * width] = pValue;
     }
 
     /**
@@ -760,10 +557,6 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         lowThreshold = threshold;
     }
 
-    private void setMagnitude(final int pX, final int pY, final int pValue) {
-        mMagnitude[pX][pY] = pValue;
-    }
-
     private void setShowProgress(final boolean pShowProgress) {
         mShowProgress = pShowProgress;
     }
@@ -779,22 +572,6 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
         sourceImage = image;
     }
 
-    private void setXConv(final int pX, final int pY, final float pValue) {
-        mXConv[pX][pY] = pValue;
-    }
-
-    private void setXGradient(final int pX, final int pY, final float pValue) {
-        mXGradient[pX][pY] = pValue;
-    }
-
-    private void setYConv(final int pX, final int pY, final float pValue) {
-        mYConv[pX][pY] = pValue;
-    }
-
-    private void setYGradient(final int pX, final int pY, final float pValue) {
-        mYGradient[pX][pY] = pValue;
-    }
-
     private boolean showProgress() {
         return mShowProgress;
     }
@@ -814,14 +591,12 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
     }
 
     private void thresholdEdges() {
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                setData(x, y, getData(x, y) > 0 ? -1 : 0xff000000);
-            }
+        for (int i = 0; i < picsize; i++) {
+            mData[i] = mData[i] > 0 ? -1 : 0xff000000;
         }
     }
 
-    private void writeEdges(final int pixels[][]) {
+    private void writeEdges(final int pixels[]) {
         // TODO this looks the same across all of the implementations
         // NOTE: There is currently no mechanism for obtaining the edge data
         // in any other format other than an INT_ARGB type BufferedImage.
@@ -834,7 +609,7 @@ public class CannyEdgeDetectorJavaThreads implements ICannyEdgeDetector {
             if (!showProgressBar("Writing Edges ...", (float) x / width)) return;
             for (int y = 0; y < height; y++) {
 
-                final boolean col = pixels[x][y] == -1;
+                final boolean col = pixels[x + y * width] == -1;
                 // Color c = new Color(col);
                 var pixel = pixelMapService.getPixelAt(edgeData, x, y);
                 edgeData = pixelMapService.setEdge(edgeData, pixel, col, tolerance, lineCurvePreference);
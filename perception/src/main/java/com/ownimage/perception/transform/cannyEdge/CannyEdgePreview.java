@@ -0,0 +1,218 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.cannyEdge;
+
+import com.ownimage.framework.control.type.IPictureSource;
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.control.type.PictureView;
+import com.ownimage.framework.util.Framework;
+import com.ownimage.perception.app.Services;
+import lombok.NonNull;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Detects the edges for the preview of the GenerateEdgesDialog. The luminance of the source is read once and halved into a pyramid
+ * of levels, so that the controls can be tuned on a smaller level, whose edges are then drawn at the size of the source. The
+ * magnitudes of the last level, kernel and contrast setting are kept, so when only the thresholds change just the hysteresis is
+ * run again. The gradients and hysteresis are those of CannyGradients and CannyHysteresis, so level 0 gives the same edges as
+ * CannyEdgeDetectorJavaThreads. These are the edges before they are thinned: PixelMapApproximationService.actionProcess thins the
+ * edges of the detector to lines one pixel wide when the PixelMap is made, which the preview does not do, so an edge can show
+ * wider in the preview than it is in the PixelMap.
+ * <p>
+ * At level n the kernel radius is divided by 2^n, so that the kernel covers the same part of the source, and as the magnitudes
+ * of an edge grow as the kernel radius shrinks the thresholds are multiplied by 2^n, so the edges found approximate those of
+ * level 0.
+ */
+public class CannyEdgePreview {
+
+    public final static Logger mLogger = Framework.getLogger();
+
+    public final static int MAX_LEVEL = 3;
+
+    private IPictureSource mSource;
+    // the luminance of each level, index x + y * width, level 0 being the source
+    private final List<int[]> mLuminance = new ArrayList<>();
+    private final List<Integer> mWidth = new ArrayList<>();
+    private final List<Integer> mHeight = new ArrayList<>();
+
+    private int mMagnitudeLevel = -1;
+    private float mMagnitudeKernelRadius;
+    private int mMagnitudeKernelWidth;
+    private boolean mMagnitudeContrastNormalized;
+    private int[] mMagnitude;
+
+    /**
+     * Sets the source, which is read straight away, so it should only be set once it has been rendered. The levels and magnitudes
+     * of the previous source are dropped. A PictureType or PictureView is read a strip of rows at a time in parallel, as
+     * CannyEdgeDetectorJavaThreads reads it, rather than a pixel at a time through the synchronized getColor.
+     *
+     * @param pSource the source
+     */
+    public synchronized void setSource(@NonNull final IPictureSource pSource) {
+        Framework.logEntry(mLogger);
+
+        final int width = pSource.getWidth();
+        final int height = pSource.getHeight();
+        final int[] luminance = new int[width * height];
+        PictureView view = null;
+        if (pSource instanceof PictureView) {
+            view = (PictureView) pSource;
+        } else if (pSource instanceof PictureType) {
+            view = ((PictureType) pSource).getView();
+        }
+        if (view != null) {
+            final PictureView source = view;
+            final int stripCount = (height + CannyGradients.STRIP_HEIGHT - 1) / CannyGradients.STRIP_HEIGHT;
+            IntStream.range(0, stripCount).parallel().forEach(strip -> {
+                final int[] row = new int[width];
+                final int yEnd = Math.min(height, (strip + 1) * CannyGradients.STRIP_HEIGHT);
+                for (int y = strip * CannyGradients.STRIP_HEIGHT; y < yEnd; y++) {
+                    source.getRow(y, row);
+                    for (int x = 0; x < width; x++) {
+                        final int argb = row[x];
+                        luminance[x + y * width] = luminance((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff);
+                    }
+                }
+            });
+        } else {
+            final Color oob = Services.getServices().getProperties().getColorOOB();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    final Color c = pSource.getColor(x, y).orElse(oob);
+                    luminance[x + y * width] = luminance(c.getRed(), c.getGreen(), c.getBlue());
+                }
+            }
+        }
+
+        mSource = pSource;
+        mLuminance.clear();
+        mWidth.clear();
+        mHeight.clear();
+        mLuminance.add(luminance);
+        mWidth.add(width);
+        mHeight.add(height);
+        mMagnitudeLevel = -1;
+        mMagnitude = null;
+
+        Framework.logExit(mLogger);
+    }
+
+    public synchronized boolean hasSource() {
+        return mSource != null;
+    }
+
+    public synchronized int getWidth(final int pLevel) {
+        buildLevels(pLevel);
+        return mWidth.get(pLevel);
+    }
+
+    public synchronized int getHeight(final int pLevel) {
+        buildLevels(pLevel);
+        return mHeight.get(pLevel);
+    }
+
+    /**
+     * Gets the edges of a level, working out the magnitudes only if the level, kernel or contrast setting have changed since the
+     * last call.
+     *
+     * @param pLevel              the level, from 0 to MAX_LEVEL
+     * @param pKernelRadius       the kernel radius at level 0
+     * @param pKernelWidth        the maximum kernel width
+     * @param pContrastNormalized whether the contrast is normalized
+     * @param pLowThreshold       the low threshold at level 0
+     * @param pHighThreshold      the high threshold at level 0
+     * @return whether each pixel of the level is an edge before the edges are thinned, index x + y * getWidth(pLevel)
+     */
+    public synchronized boolean[] getEdges(
+            final int pLevel,
+            final float pKernelRadius,
+            final int pKernelWidth,
+            final boolean pContrastNormalized,
+            final float pLowThreshold,
+            final float pHighThreshold
+    ) {
+        if (mSource == null) {
+            throw new IllegalStateException("setSource must be called before getEdges.");
+        }
+        if (pLevel < 0 || pLevel > MAX_LEVEL) {
+            throw new IllegalArgumentException("pLevel must be from 0 to " + MAX_LEVEL + ".");
+        }
+        Framework.logEntry(mLogger);
+
+        buildLevels(pLevel);
+        final int width = mWidth.get(pLevel);
+        final int height = mHeight.get(pLevel);
+        final int scale = 1 << pLevel;
+
+        if (mMagnitude == null || mMagnitudeLevel != pLevel || mMagnitudeKernelRadius != pKernelRadius
+                || mMagnitudeKernelWidth != pKernelWidth || mMagnitudeContrastNormalized != pContrastNormalized) {
+            final int[] luminance = pContrastNormalized
+                    ? CannyContrast.normalize(mLuminance.get(pLevel), new int[mLuminance.get(pLevel).length])
+                    : mLuminance.get(pLevel);
+            final int[] magnitude = new int[width * height];
+            final CannyGradients gradients = new CannyGradients(luminance, width, height, pKernelRadius / scale, pKernelWidth, magnitude);
+            IntStream.range(0, gradients.getStripCount()).parallel().forEach(gradients::computeStrip);
+            mMagnitude = magnitude;
+            mMagnitudeLevel = pLevel;
+            mMagnitudeKernelRadius = pKernelRadius;
+            mMagnitudeKernelWidth = pKernelWidth;
+            mMagnitudeContrastNormalized = pContrastNormalized;
+        }
+
+        final int low = Math.round(pLowThreshold * CannyGradients.MAGNITUDE_SCALE * scale);
+        final int high = Math.round(pHighThreshold * CannyGradients.MAGNITUDE_SCALE * scale);
+        final int[] data = new int[width * height];
+        final CannyHysteresis hysteresis = new CannyHysteresis(mMagnitude, data, width, height, low, high);
+        IntStream.range(0, hysteresis.getStripCount()).parallel().forEach(hysteresis::labelStrip);
+        hysteresis.mergeStrips();
+        IntStream.range(0, hysteresis.getStripCount()).parallel().forEach(hysteresis::flattenStrip);
+        hysteresis.groupComponents();
+        IntStream.range(0, hysteresis.getBatchCount()).parallel().forEach(hysteresis::followBatch);
+
+        final boolean[] edges = new boolean[width * height];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = data[i] > 0;
+        }
+
+        Framework.logExit(mLogger);
+        return edges;
+    }
+
+    private static int luminance(final float pRed, final float pGreen, final float pBlue) {
+        return Math.round(0.299f * pRed + 0.587f * pGreen + 0.114f * pBlue);
+    }
+
+    /**
+     * Adds the levels up to pLevel, each the average of each 2x2 block of the level above, rounding the width and height up.
+     */
+    private void buildLevels(final int pLevel) {
+        while (mLuminance.size() <= pLevel) {
+            final int[] above = mLuminance.get(mLuminance.size() - 1);
+            final int aboveWidth = mWidth.get(mWidth.size() - 1);
+            final int aboveHeight = mHeight.get(mHeight.size() - 1);
+            final int width = (aboveWidth + 1) / 2;
+            final int height = (aboveHeight + 1) / 2;
+            final int[] luminance = new int[width * height];
+            for (int y = 0; y < height; y++) {
+                final int y0 = 2 * y * aboveWidth;
+                final int y1 = Math.min(2 * y + 1, aboveHeight - 1) * aboveWidth;
+                for (int x = 0; x < width; x++) {
+                    final int x0 = 2 * x;
+                    final int x1 = Math.min(2 * x + 1, aboveWidth - 1);
+                    luminance[x + y * width] = (above[y0 + x0] + above[y0 + x1] + above[y1 + x0] + above[y1 + x1] + 2) / 4;
+                }
+            }
+            mLuminance.add(luminance);
+            mWidth.add(width);
+            mHeight.add(height);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.cannyEdge;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * The gradient stage of CannyEdgeDetectorJavaThreads, i.e. the Gaussian convolutions in x and y, the gradients of those and the
+ * non maximal supression that gives the magnitude of each pixel. The luminance and magnitude are flat row major arrays, index
+ * x + y * width, and the picture is worked on in strips of STRIP_HEIGHT rows so that the strips can be run in parallel. Each strip
+ * works out the convolutions and gradients that it needs, including the rows above and below it that the vertical passes read,
+ * in a workspace of its own, so the intermediate values are never held for the whole picture and the rows that are being worked
+ * on stay in the cache. Each pass runs along the rows, and the kernel offsets are the outer loop, so the inner loops read and
+ * write consecutive values.
+ * <p>
+ * Every value is worked out with the same float operations, in the same order, as the per pixel code that this replaces, so the
+ * magnitudes are identical; only the pixel columns are clamped to the picture and the rows outside those that the kernel fits
+ * in are left as 0.
+ */
+public class CannyGradients {
+
+    public final static float MAGNITUDE_SCALE = 100F;
+    public final static int STRIP_HEIGHT = 32;
+
+    private final static float GAUSSIAN_CUT_OFF = 0.005f;
+    private final static float MAGNITUDE_LIMIT = 1000F;
+    private final static int MAGNITUDE_MAX = (int) (MAGNITUDE_SCALE * MAGNITUDE_LIMIT);
+
+    private final int[] mData;
+    private final int[] mMagnitude;
+    private final int mWidth;
+    private final int mHeight;
+
+    private final float[] mKernel;
+    private final float[] mDiffKernel;
+    private final int mKWidth;
+
+    private final ThreadLocal<Workspace> mWorkspace;
+
+    /**
+     * The rows that one strip works out, each held as a flat array of rows.
+     */
+    private static class Workspace {
+        private final float[] mXConv;
+        private final float[] mYConv;
+        private final float[] mXGradient;
+        private final float[] mYGradient;
+        private final float[] mGradMag;
+
+        private Workspace(final int pWidth, final int pKWidth) {
+            mXConv = new float[pWidth * (STRIP_HEIGHT + 2 * pKWidth)];
+            mYConv = new float[pWidth * (STRIP_HEIGHT + 2)];
+            mXGradient = new float[pWidth * (STRIP_HEIGHT + 2)];
+            mYGradient = new float[pWidth * (STRIP_HEIGHT + 2)];
+            mGradMag = new float[pWidth * (STRIP_HEIGHT + 2)];
+        }
+    }
+
+    /**
+     * Creates the gradient stage for a picture.
+     *
+     * @param pData         the luminance of each pixel, index x + y * pWidth
+     * @param pWidth        the width of the picture
+     * @param pHeight       the height of the picture
+     * @param pKernelRadius the radius of the Gaussian kernel
+     * @param pKernelWidth  the maximum width of the Gaussian kernel, at least 2
+     * @param pMagnitude    receives the magnitude of each pixel, index x + y * pWidth
+     */
+    public CannyGradients(
+            @NonNull final int[] pData,
+            final int pWidth,
+            final int pHeight,
+            final float pKernelRadius,
+            final int pKernelWidth,
+            @NonNull final int[] pMagnitude
+    ) {
+        if (pData.length < pWidth * pHeight || pMagnitude.length < pWidth * pHeight) {
+            throw new IllegalArgumentException("pData and pMagnitude must hold pWidth * pHeight values");
+        }
+        mData = pData;
+        mMagnitude = pMagnitude;
+        mWidth = pWidth;
+        mHeight = pHeight;
+
+        // generate the gaussian convolution masks
+        mKernel = new float[pKernelWidth];
+        mDiffKernel = new float[pKernelWidth];
+        int kwidth;
+        for (kwidth = 0; kwidth < pKernelWidth; kwidth++) {
+            final float g1 = gaussian(kwidth, pKernelRadius);
+            if (g1 <= GAUSSIAN_CUT_OFF && kwidth >= 2) {
+                break;
+            }
+            final float g2 = gaussian(kwidth - 0.5f, pKernelRadius);
+            final float g3 = gaussian(kwidth + 0.5f, pKernelRadius);
+            mKernel[kwidth] = (g1 + g2 + g3) / 3f / (2f * (float) Math.PI * pKernelRadius * pKernelRadius);
+            mDiffKernel[kwidth] = g3 - g2;
+        }
+        mKWidth = kwidth;
+        mWorkspace = ThreadLocal.withInitial(() -> new Workspace(mWidth, mKWidth));
+    }
+
+    private static float gaussian(final float x, final float sigma) {
+        return (float) Math.exp(-(x * x) / (2f * sigma * sigma));
+    }
+
+    public int getStripCount() {
+        return (mHeight + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+    }
+
+    /**
+     * Works out the magnitudes of the rows of one strip. Different strips can be worked out at the same time on different threads.
+     *
+     * @param pStrip the strip, from 0 to getStripCount() - 1
+     */
+    public void computeStrip(final int pStrip) {
+        final int y0 = pStrip * STRIP_HEIGHT;
+        final int y1 = Math.min(mHeight, y0 + STRIP_HEIGHT);
+        Arrays.fill(mMagnitude, y0 * mWidth, y1 * mWidth, 0);
+
+        // the rows that the non maximal supression is done for
+        final int nmsStart = Math.max(y0, mKWidth);
+        final int nmsEnd = Math.min(y1, mHeight - mKWidth);
+        if (nmsStart >= nmsEnd) {
+            return;
+        }
+
+        final Workspace workspace = mWorkspace.get();
+        // the gradients are needed one row either side, and the x convolution a further kwidth - 1 rows either side of those
+        final int gradStart = nmsStart - 1;
+        final int gradEnd = nmsEnd + 1;
+        final int xConvStart = gradStart - (mKWidth - 1);
+        final int xConvEnd = gradEnd + (mKWidth - 1);
+
+        for (int y = xConvStart; y < xConvEnd; y++) {
+            xConv(y, workspace.mXConv, (y - xConvStart) * mWidth);
+        }
+        for (int y = gradStart; y < gradEnd; y++) {
+            final int offset = (y - gradStart) * mWidth;
+            yConv(y, workspace.mYConv, offset);
+            xGradient(workspace.mYConv, offset, workspace.mXGradient);
+            yGradient(workspace.mXConv, (y - xConvStart) * mWidth, workspace.mYGradient, offset);
+            for (int x = 0; x < mWidth; x++) {
+                workspace.mGradMag[offset + x] = hypot(workspace.mXGradient[offset + x], workspace.mYGradient[offset + x]);
+            }
+        }
+        for (int y = nmsStart; y < nmsEnd; y++) {
+            nonMaximalSupression(y, workspace, (y - gradStart) * mWidth);
+        }
+    }
+
+    /**
+     * Whether row y is one that the convolutions are worked out for, the other rows are 0.
+     */
+    private boolean isConvolved(final int y) {
+        return y >= mKWidth - 1 && y < mHeight - (mKWidth - 1);
+    }
+
+    private void xConv(final int y, final float[] pXConv, final int pOffset) {
+        if (!isConvolved(y)) {
+            Arrays.fill(pXConv, pOffset, pOffset + mWidth, 0.0f);
+            return;
+        }
+        final int row = y * mWidth;
+        final int last = mWidth - 1;
+        for (int x = 0; x < mWidth; x++) {
+            pXConv[pOffset + x] = mData[row + x] * mKernel[0];
+        }
+        for (int i = 1; i < mKWidth; i++) {
+            final float k = mKernel[i];
+            for (int x = 0; x < mWidth; x++) {
+                final int xm = x - i < 0 ? 0 : x - i;
+                final int xp = x + i > last ? last : x + i;
+                pXConv[pOffset + x] += k * (mData[row + xm] + mData[row + xp]);
+            }
+        }
+    }
+
+    private void yConv(final int y, final float[] pYConv, final int pOffset) {
+        // rows that have gradients are always convolved
+        final int row = y * mWidth;
+        for (int x = 0; x < mWidth; x++) {
+            pYConv[pOffset + x] = mData[row + x] * mKernel[0];
+        }
+        for (int i = 1; i < mKWidth; i++) {
+            final float k = mKernel[i];
+            final int above = row - i * mWidth;
+            final int below = row + i * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                pYConv[pOffset + x] += k * (mData[above + x] + mData[below + x]);
+            }
+        }
+    }
+
+    private void xGradient(final float[] pYConv, final int pOffset, final float[] pXGradient) {
+        final int last = mWidth - 1;
+        Arrays.fill(pXGradient, pOffset, pOffset + mWidth, 0.0f);
+        for (int i = 1; i < mKWidth; i++) {
+            final float k = mDiffKernel[i];
+            for (int x = 0; x < mWidth; x++) {
+                final int xm = x - i < 0 ? 0 : x - i;
+                final int xp = x + i > last ? last : x + i;
+                pXGradient[pOffset + x] += k * (pYConv[pOffset + xm] - pYConv[pOffset + xp]);
+            }
+        }
+    }
+
+    private void yGradient(final float[] pXConv, final int pXConvOffset, final float[] pYGradient, final int pOffset) {
+        // the last column has no y gradient
+        final int width = mWidth - 1;
+        Arrays.fill(pYGradient, pOffset, pOffset + mWidth, 0.0f);
+        for (int i = 1; i < mKWidth; i++) {
+            final float k = mDiffKernel[i];
+            final int above = pXConvOffset - i * mWidth;
+            final int below = pXConvOffset + i * mWidth;
+            for (int x = 0; x < width; x++) {
+                pYGradient[pOffset + x] += k * (pXConv[above + x] - pXConv[below + x]);
+            }
+        }
+    }
+
+    // NOTE: It is quite feasible to replace the implementation of this method
+    // with one which only loosely approximates the hypot function. I've tested
+    // simple approximations such as Math.abs(mX) + Math.abs(mY) and they work fine.
+    private static float hypot(final float x, final float y) {
+        return (float) Math.hypot(x, y);
+    }
+
+    // NOTE: The elements of the method below (specifically the technique for
+    // non-maximal suppression and the technique for gradient computation)
+    // are derived from an implementation posted in the following forum (with the
+    // clear intent of others using the code):
+    // http://forum.java.sun.com/thread.jspa?threadID=546211&start=45&tstart=0
+    // My code effectively mimics the algorithm exhibited above.
+    // Since I don't know the providence of the code that was posted it is a
+    // possibility (though I think a very remote one) that this code violates
+    // someone's intellectual property rights. If this concerns you feel free to
+    // contact me for an alternative, though less efficient, implementation.
+    private void nonMaximalSupression(final int y, final Workspace pWorkspace, final int pOffset) {
+        final float[] xGradient = pWorkspace.mXGradient;
+        final float[] yGradient = pWorkspace.mYGradient;
+        final float[] mag = pWorkspace.mGradMag;
+        final int north = pOffset - mWidth;
+        final int south = pOffset + mWidth;
+        final int row = y * mWidth;
+
+        // the last column is left as 0
+        for (int x = 0; x < mWidth - 1; x++) {
+            final int w = x == 0 ? 0 : x - 1;
+            final int e = x + 1;
+
+            final float xGrad = xGradient[pOffset + x];
+            final float yGrad = yGradient[pOffset + x];
+            final float gradMag = mag[pOffset + x];
+
+            final float nMag = mag[north + x];
+            final float sMag = mag[south + x];
+            final float wMag = mag[pOffset + w];
+            final float eMag = mag[pOffset + e];
+            final float neMag = mag[north + e];
+            final float seMag = mag[south + e];
+            final float swMag = mag[south + w];
+            final float nwMag = mag[north + w];
+            float tmp;
+            // see CannyEdgeDetector.computeGradients for an explanation of the comparisons
+            if (xGrad * yGrad <= 0 /* (1) */
+                    ? Math.abs(xGrad) >= Math.abs(yGrad) /* (2) */
+                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /* (3) */
+                    && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /* (4) */
+                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /* (3) */
+                    && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /* (4) */
+                    : Math.abs(xGrad) >= Math.abs(yGrad) /* (2) */
+                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /* (3) */
+                    && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /* (4) */
+                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /* (3) */
+                    && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /* (4) */
+            ) {
+                mMagnitude[row + x] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.cannyEdge;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The hysteresis stage of the Canny edge detectors. Starting from each pixel whose magnitude is at least the high threshold, in
+ * row major order, a path is followed through the neighbouring pixels whose magnitude is at least the low threshold, marking each
+ * pixel on the path with its magnitude. The magnitude and data are flat row major arrays, index x + y * width.
+ * <p>
+ * A path only ever steps between pixels that are 8 connected and at least the low threshold, so paths that start in different
+ * connected components of those pixels never meet. The components are labelled with a union find, strip by strip in parallel and
+ * then merging the rows where the strips meet, and then the paths of each component are followed in parallel with the other
+ * components, in the same row major order as before. The marked pixels are therefore identical to following every path in turn,
+ * and the paths are followed in a loop rather than by recursion, so long edges cannot overflow the stack.
+ * <p>
+ * The stages are labelStrip and then mergeStrips, flattenStrip and then groupComponents, and then followBatch, and the strips and
+ * batches of each stage can be run in parallel; perform runs them all in turn.
+ */
+public class CannyHysteresis {
+
+    public final static int STRIP_HEIGHT = 64;
+
+    /**
+     * The number of paths that a batch of components is made up to before a new batch is started.
+     */
+    public final static int SEEDS_PER_BATCH = 1024;
+
+    private final int[] mMagnitude;
+    private final int[] mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mLow;
+    private final int mHigh;
+    private final int mCandidate;
+
+    // the parent of each pixel in the union find, or -1 for pixels that no path can reach
+    private final int[] mParent;
+    // the starts of the paths in each strip, each as the component in the high int and the pixel in the low int
+    private final long[][] mStripSeeds;
+    private long[] mSeeds;
+    private int[] mBatchStart;
+
+    /**
+     * Creates the hysteresis stage for a picture.
+     *
+     * @param pMagnitude the magnitude of each pixel, index x + y * pWidth
+     * @param pData      receives the magnitude of each pixel that is on an edge, and 0 elsewhere; this must be all 0 to start with
+     * @param pWidth     the width of the picture
+     * @param pHeight    the height of the picture
+     * @param pLow       the low threshold, in the same scale as the magnitudes
+     * @param pHigh      the high threshold, in the same scale as the magnitudes
+     */
+    public CannyHysteresis(
+            @NonNull final int[] pMagnitude,
+            @NonNull final int[] pData,
+            final int pWidth,
+            final int pHeight,
+            final int pLow,
+            final int pHigh
+    ) {
+        if (pMagnitude.length != pWidth * pHeight || pData.length != pWidth * pHeight) {
+            throw new IllegalArgumentException("pMagnitude and pData must have pWidth * pHeight values.");
+        }
+
+        mMagnitude = pMagnitude;
+        mData = pData;
+        mWidth = pWidth;
+        mHeight = pHeight;
+        // a pixel with no magnitude is never marked, so a path that was allowed onto one could walk back and forth for ever
+        mLow = Math.max(1, pLow);
+        mHigh = pHigh;
+        mCandidate = Math.min(mLow, mHigh);
+        mParent = new int[pWidth * pHeight];
+        mStripSeeds = new long[getStripCount()][];
+    }
+
+    public int getStripCount() {
+        return (mHeight + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+    }
+
+    /**
+     * Gets the number of batches that followBatch can be called with, once groupComponents has been run.
+     *
+     * @return the number of batches
+     */
+    public int getBatchCount() {
+        return mBatchStart.length - 1;
+    }
+
+    /**
+     * Runs all of the stages in turn on the calling thread.
+     */
+    public void perform() {
+        for (int strip = 0; strip < getStripCount(); strip++) {
+            labelStrip(strip);
+        }
+        mergeStrips();
+        for (int strip = 0; strip < getStripCount(); strip++) {
+            flattenStrip(strip);
+        }
+        groupComponents();
+        for (int batch = 0; batch < getBatchCount(); batch++) {
+            followBatch(batch);
+        }
+    }
+
+    /**
+     * Labels the components of a strip as though the strip were the whole picture. This only reads and writes the pixels of the
+     * strip, so the strips can be labelled in parallel.
+     *
+     * @param pStrip the strip
+     */
+    public void labelStrip(final int pStrip) {
+        final int yStart = pStrip * STRIP_HEIGHT;
+        final int yStop = Math.min(mHeight, yStart + STRIP_HEIGHT);
+        for (int y = yStart; y < yStop; y++) {
+            for (int x = 0, i = y * mWidth; x < mWidth; x++, i++) {
+                if (mMagnitude[i] < mCandidate) {
+                    mParent[i] = -1;
+                    continue;
+                }
+                mParent[i] = i;
+                if (x > 0) {
+                    union(i, i - 1);
+                }
+                if (y > yStart) {
+                    unionAbove(x, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins the components that meet across the first row of each strip. This is run once all of the strips are labelled.
+     */
+    public void mergeStrips() {
+        for (int strip = 1; strip < getStripCount(); strip++) {
+            final int y = strip * STRIP_HEIGHT;
+            for (int x = 0, i = y * mWidth; x < mWidth; x++, i++) {
+                if (mParent[i] != -1) {
+                    unionAbove(x, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Points each pixel of a strip straight at the root of its component, and collects the paths that start in the strip. This
+     * only writes the pixels of the strip, and the roots do not change, so the strips can be flattened in parallel.
+     *
+     * @param pStrip the strip
+     */
+    public void flattenStrip(final int pStrip) {
+        final int start = pStrip * STRIP_HEIGHT * mWidth;
+        final int stop = Math.min(mHeight, (pStrip + 1) * STRIP_HEIGHT) * mWidth;
+        int seedCount = 0;
+        for (int i = start; i < stop; i++) {
+            if (mParent[i] != -1) {
+                int root = mParent[i];
+                while (mParent[root] != root) {
+                    root = mParent[root];
+                }
+                mParent[i] = root;
+                if (mMagnitude[i] >= mHigh) {
+                    seedCount++;
+                }
+            }
+        }
+
+        final long[] seeds = new long[seedCount];
+        int seed = 0;
+        for (int i = start; i < stop; i++) {
+            if (mParent[i] != -1 && mMagnitude[i] >= mHigh) {
+                seeds[seed++] = (long) mParent[i] << 32 | i;
+            }
+        }
+        mStripSeeds[pStrip] = seeds;
+    }
+
+    /**
+     * Sorts the paths by component, keeping the paths of each component in row major order, and splits the components into the
+     * batches that are followed. This is run once all of the strips are flattened.
+     */
+    public void groupComponents() {
+        mSeeds = Arrays.stream(mStripSeeds).flatMapToLong(Arrays::stream).toArray();
+        Arrays.parallelSort(mSeeds);
+
+        final ArrayList<Integer> batchStart = new ArrayList<>();
+        batchStart.add(0);
+        for (int seed = 1; seed < mSeeds.length; seed++) {
+            final boolean newComponent = mSeeds[seed] >>> 32 != mSeeds[seed - 1] >>> 32;
+            if (newComponent && seed - batchStart.get(batchStart.size() - 1) >= SEEDS_PER_BATCH) {
+                batchStart.add(seed);
+            }
+        }
+        batchStart.add(mSeeds.length);
+        mBatchStart = batchStart.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Follows the paths of a batch of components. The paths only read and write the pixels of their own components, so the batches
+     * can be followed in parallel.
+     *
+     * @param pBatch the batch
+     */
+    public void followBatch(final int pBatch) {
+        for (int seed = mBatchStart[pBatch]; seed < mBatchStart[pBatch + 1]; seed++) {
+            final int i = (int) mSeeds[seed];
+            if (mData[i] == 0 && mMagnitude[i] >= mHigh) {
+                follow(i);
+            }
+        }
+    }
+
+    private void follow(final int pIndex) {
+        int i1 = pIndex;
+        while (i1 != -1) {
+            final int x1 = i1 % mWidth;
+            final int y1 = i1 / mWidth;
+            final int x0 = x1 == 0 ? x1 : x1 - 1;
+            final int x2 = x1 == mWidth - 1 ? x1 : x1 + 1;
+            final int y0 = y1 == 0 ? y1 : y1 - 1;
+            final int y2 = y1 == mHeight - 1 ? y1 : y1 + 1;
+
+            mData[i1] = mMagnitude[i1];
+            int next = -1;
+            search:
+            for (int x = x0; x <= x2; x++) {
+                for (int y = y0; y <= y2; y++) {
+                    final int i2 = x + y * mWidth;
+                    if ((y != y1 || x != x1) && mData[i2] == 0 && mMagnitude[i2] >= mLow) {
+                        next = i2;
+                        break search;
+                    }
+                }
+            }
+            i1 = next;
+        }
+    }
+
+    private void unionAbove(final int pX, final int pIndex) {
+        final int above = pIndex - mWidth;
+        if (pX > 0) {
+            union(pIndex, above - 1);
+        }
+        union(pIndex, above);
+        if (pX < mWidth - 1) {
+            union(pIndex, above + 1);
+        }
+    }
+
+    private void union(final int pIndex1, final int pIndex2) {
+        if (mParent[pIndex2] == -1) {
+            return;
+        }
+        final int root1 = find(pIndex1);
+        final int root2 = find(pIndex2);
+        if (root1 < root2) {
+            mParent[root2] = root1;
+        } else if (root2 < root1) {
+            mParent[root1] = root2;
+        }
+    }
+
+    private int find(final int pIndex) {
+        int i = pIndex;
+        while (mParent[i] != i) {
+            mParent[i] = mParent[mParent[i]];
+            i = mParent[i];
+        }
+        return i;
+    }
+}
@@ -30,16 +30,10 @@ import com.ownimage.framework.view.event.ImmutableUIEvent;
 import com.ownimage.framework.view.factory.ViewFactory;
 import com.ownimage.perception.app.Properties;
 import com.ownimage.perception.app.Services;
-import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
-import com.ownimage.perception.pixelMap.services.Config;
-import com.ownimage.perception.pixelMap.services.PixelMapService;
-import com.ownimage.perception.pixelMap.services.PixelService;
 import com.ownimage.perception.transform.CannyEdgeTransform;
 import com.ownimage.perception.transform.CropTransform;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.awt.*;
 import java.util.logging.Logger;
@@ -51,10 +45,6 @@ import static com.ownimage.framework.control.container.NullContainer.NullContain
  */
 public class GenerateEdgesDialog extends Container implements IUIEventListener, IControlValidator {
 
-    private static ApplicationContext context = new AnnotationConfigApplicationContext(Config.class);
-    private static PixelMapService pixelMapService = context.getBean(PixelMapService.class);
-    private static PixelService pixelService = context.getBean(PixelService.class);
-
     public final static Logger mLogger = Framework.getLogger();
     public final static long serialVersionUID = 1L;
 
@@ -62,8 +52,8 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
 
     private final CannyEdgeTransform mTransform;
     private final PictureControl mPreviewPicture;
-    private PictureControl mInputPictureControl;
     private final IntegerControl mPreviewSize;
+    private final IntegerControl mPreviewLevel;
 
     private final IntegerControl mPreviewPositionX;
     private final IntegerControl mPreviewPositionY;
@@ -80,6 +70,7 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
     private IntegerPoint mDragStart = IntegerPoint.IntegerPoint00;
 
     private final IRunWhenDirty mDetector;
+    private final CannyEdgePreview mEdgePreview = new CannyEdgePreview();
 
     public GenerateEdgesDialog(
             @NonNull CannyEdgeTransform pParent,
@@ -93,6 +84,8 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
         mPreviewContainer = new Container("Preview Container", "previewContainer", this, this);
         mPreviewSize = new IntegerControl("Preview Size", "previewSize", mPreviewContainer, getDefaultSize(), 100, 1000, 50);
         mPreviewSize.addControlChangeListener(this);
+        mPreviewLevel = new IntegerControl("Preview Level", "previewLevel", mPreviewContainer, 0, 0, CannyEdgePreview.MAX_LEVEL, 1);
+        mPreviewLevel.addControlChangeListener(this);
         mPreviewPicture = new PictureControl("Preview", "preview", mPreviewContainer, new PictureType(getDefaultSize(), getDefaultSize()));
         mPreviewPicture.setUIListener(this);
 
@@ -135,7 +128,7 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
                 updatePreview();
             }
             if (pControl.isOneOf(mHighThreshold, mLowThreshold, mGaussianKernelRadius,
-                    mGaussianKernelWidth, mContrastNormalized)) {
+                    mGaussianKernelWidth, mContrastNormalized, mPreviewLevel)) {
                 mDetector.markDirty();
             }
         }
@@ -159,23 +152,26 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
         return view;
     }
 
-    private void generatePreviewPictureFromData(ImmutablePixelMap pPixelMap) {
-        //SplitTimer.split("generatePreviewPictureFromData(final PixelMap pPixelMap) start");
-        int size = getSize();
+    private void generatePreviewPicture(boolean[] pEdges, int pLevel) {
+        // the preview is the size of the source that the edges came from, which the preview size may have moved on from
+        int width = mEdgePreview.getWidth(0);
+        int height = mEdgePreview.getHeight(0);
+        int levelWidth = mEdgePreview.getWidth(pLevel);
 
         PictureType preview;
-        if (mPreviewPicture == null || mPreviewPicture.getWidth() != size
-                || mPreviewPicture.getWidth() != size) {
-            preview = new PictureType(size, size);
+        if (mPreviewPicture == null || mPreviewPicture.getWidth() != width
+                || mPreviewPicture.getHeight() != height) {
+            preview = new PictureType(width, height);
         } else {
             preview = mPreviewPicture.getValue().createCompatible();
         }
 
         Color foreground = getProperties().getPixelMapFGColor();
         Color background = getProperties().getPixelMapBGColor();
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                if (pixelService.isEdge(pPixelMap, pixelMapService.getPixelAt(pPixelMap,x, y))) {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                // each pixel of the level covers 2^level pixels of the preview each way
+                if (pEdges[(x >> pLevel) + (y >> pLevel) * levelWidth]) {
                     preview.setColor(x, y, foreground);
                 } else {
                     preview.setColor(x, y, background);
@@ -183,7 +179,6 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
             }
         }
         mPreviewPicture.setValue(preview);
-        //SplitTimer.split("generatePreviewPictureFromData(final PixelMap pPixelMap) end");
     }
 
     private int getDefaultSize() {
@@ -251,13 +246,16 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
         SplitTimer.split("updatePreview() start");
         int size = getSize();
         PictureType inputPicture = new PictureType(size, size);
-        mInputPictureControl = new PictureControl("InputPicture", "inputPicture", NullContainer, inputPicture);
+        PictureControl inputPictureControl = new PictureControl("InputPicture", "inputPicture", NullContainer, inputPicture);
         CropTransform crop = new CropTransform(Services.getServices().getPerception(), true);
         crop.setPreviousTransform(getTransform().getPreviousTransform());
         crop.setCrop(getPreviewRectangle());
         Services.getServices().getRenderService().
-                getRenderJobBuilder("GenerateEdgesDialog::updatePreview", mInputPictureControl, crop)
-                .withCompleteAction(this::runDetector)
+                getRenderJobBuilder("GenerateEdgesDialog::updatePreview", inputPictureControl, crop)
+                .withCompleteAction(() -> {
+                    mEdgePreview.setSource(inputPictureControl.getValue());
+                    runDetector();
+                })
                 .build()
                 .run();
         mLogger.info(() -> "ExecuteQueue depth:" + ExecuteQueue.getInstance().getDepth());
@@ -267,22 +265,24 @@ public class GenerateEdgesDialog extends Container implements IUIEventListener,
 
     private void runDetector() {
         SplitTimer.split("updatePreview(final PictureType pInputPicture) start");
-        ICannyEdgeDetector detector = createCannyEdgeDetector(CannyEdgeDetectorFactory.Type.OPENCL);
-        try {
-            detector.setSourceImage(mInputPictureControl.getValue());
-            detector.process(null);
-
-            if (detector.getKeepRunning()) {
-                // only set the mData if the detector was allowed to finish
-                generatePreviewPictureFromData(detector.getEdgeData());
-                // mPreviewControl.getValue().setValue(mPreviewPicture);
-            }
-        } finally {
-            if (detector != null) {
-                detector.dispose();
+        // held so that the source cannot change between working out the edges and drawing them
+        synchronized (mEdgePreview) {
+            if (!mEdgePreview.hasSource()) {
+                return;
             }
-            SplitTimer.split("updatePreview(final PictureType pInputPicture) end");
+            // the edges are worked out on a level of the preview pyramid, and only the thresholds changing just reruns the hysteresis
+            int level = mPreviewLevel.getValue();
+            boolean[] edges = mEdgePreview.getEdges(
+                    level,
+                    mGaussianKernelRadius.getValue().floatValue(),
+                    mGaussianKernelWidth.getValue(),
+                    mContrastNormalized.getValue(),
+                    mLowThreshold.getValue().floatValue() / 100.0f,
+                    mHighThreshold.getValue().floatValue() / 100.0f
+            );
+            generatePreviewPicture(edges, level);
         }
+        SplitTimer.split("updatePreview(final PictureType pInputPicture) end");
     }
 
     @Override
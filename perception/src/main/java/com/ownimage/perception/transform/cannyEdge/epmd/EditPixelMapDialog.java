@@ -23,6 +23,7 @@ import com.ownimage.framework.control.control.PictureControl;
 import com.ownimage.framework.control.event.IControlValidator;
 import com.ownimage.framework.control.layout.HFlowLayout;
 import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.math.Bounds;
 import com.ownimage.framework.math.Point;
 import com.ownimage.framework.math.Rectangle;
 import com.ownimage.framework.undo.UndoRedoBuffer;
@@ -50,6 +51,7 @@ import com.ownimage.perception.pixelMap.services.Config;
 import com.ownimage.perception.pixelMap.services.PixelChainService;
 import com.ownimage.perception.pixelMap.services.PixelMapActionService;
 import com.ownimage.perception.pixelMap.services.PixelMapService;
+import com.ownimage.perception.pixelMap.services.PixelMapTransformService;
 import com.ownimage.perception.pixelMap.services.PixelService;
 import com.ownimage.perception.transform.CannyEdgeTransform;
 import com.ownimage.perception.transform.CropTransform;
@@ -63,6 +65,7 @@ import java.awt.datatransfer.StringSelection;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
@@ -83,6 +86,7 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
     private static final PixelService pixelService = context.getBean(PixelService.class);
     private static final PixelMapActionService pixelMapActionService = context.getBean(PixelMapActionService.class);
     private static final PixelChainService pixelChainService = context.getBean(PixelChainService.class);
+    private static final PixelMapTransformService pixelMapTransformService = context.getBean(PixelMapTransformService.class);
     private final ActionControl mOkAction;
     private final ActionControl mCancelAction;
     private final CannyEdgeTransform mCannyEdgeTransform;
@@ -176,6 +180,13 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
     private XY mMouseDragLastPixel = null;
     private Id mSavepointId;
     private boolean mAutoUpdateCurvesDirty = false;
+    // the PixelMap and view that the preview was last rendered with, see updateChangedCurves
+    private ImmutablePixelMap mRenderedPixelMap;
+    private List<Object> mRenderedViewSettings;
+    // the renders of the preview that have been submitted, and the parts of the preview that they have not yet completed
+    private int mRenderCount = 0;
+    private Bounds mPendingDirtyRegion;
+    private boolean mPendingFullRender = false;
 
     public EditPixelMapDialog(@NotNull CannyEdgeTransform pTransform) {
         super("Edit PixelMap Dialog", "pixelMapEditor", Services.getServices().getUndoRedoBuffer());
@@ -264,11 +275,70 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
                 PictureType pictureType = new PictureType(getPreviewSize(), getPreviewSize());
                 mPictureControl.setValue(pictureType);
             }
-            Services.getServices().getRenderService()
-                    .getRenderJobBuilder("EditPixelMapDialog::updateCurves", mPictureControl, mCropTransform)
-                    .withAllowTerminate(false)
-                    .build()
-                    .run();
+            mRenderedPixelMap = getPixelMap();
+            mRenderedViewSettings = getViewSettings();
+            renderPreview(null);
+        }
+    }
+
+    /**
+     * Updates the curves after the PixelMap has been edited. Only the part of the preview that the lines of the changed PixelChains
+     * cover, before and after the edit, is rendered again. The whole preview is rendered if the view has changed since the last
+     * render, or if the pixels are shown, as these can change without any PixelChain changing.
+     */
+    private void updateChangedCurves() {
+        if (!mCannyEdgeTransform.isInitialized() || mRenderedPixelMap == null || mCannyEdgeTransform.getShowPixels()
+                || !getViewSettings().equals(mRenderedViewSettings) || getPreviewSize() != mPictureControl.getWidth()) {
+            updateCurves();
+            return;
+        }
+
+        mAutoUpdateCurvesDirty = false;
+        var changed = pixelMapTransformService.getChangedBounds(mRenderedPixelMap, getPixelMap(), mCannyEdgeTransform);
+        mCannyEdgeTransform.setPixelMap(getPixelMap());
+        mRenderedPixelMap = getPixelMap();
+        changed.map(this::UHVWtoPreview)
+                .filter(region -> region.getWidth() > 0 && region.getHeight() > 0)
+                .ifPresent(this::renderPreview);
+    }
+
+    /**
+     * The settings that the crop of the preview depends on.
+     */
+    private List<Object> getViewSettings() {
+        return List.of(getViewOriginX(), getViewOriginY(), getZoomInt(), getPreviewSize(), mShowCurves.getValue() && !mMutating);
+    }
+
+    /**
+     * Submits a render of the preview. As a render that is still queued is cancelled when the next is submitted, the region of each
+     * render that has not completed is added to the next, and if a render of the whole preview has not completed then the next
+     * render is of the whole preview too.
+     *
+     * @param pDirtyRegion the part of the preview to render, in pixels, or null to render all of it
+     */
+    private synchronized void renderPreview(Bounds pDirtyRegion) {
+        mPendingFullRender |= pDirtyRegion == null;
+        mPendingDirtyRegion = mPendingFullRender ? null
+                : mPendingDirtyRegion == null ? pDirtyRegion
+                : new Bounds(
+                Math.min(mPendingDirtyRegion.getXMin(), pDirtyRegion.getXMin()),
+                Math.min(mPendingDirtyRegion.getYMin(), pDirtyRegion.getYMin()),
+                Math.max(mPendingDirtyRegion.getXMax(), pDirtyRegion.getXMax()),
+                Math.max(mPendingDirtyRegion.getYMax(), pDirtyRegion.getYMax()));
+        int renderCount = ++mRenderCount;
+        Services.getServices().getRenderService()
+                .getRenderJobBuilder("EditPixelMapDialog::updateCurves", mPictureControl, mCropTransform)
+                .withAllowTerminate(false)
+                .withDirtyRegion(mPendingDirtyRegion)
+                .withCompleteAction(() -> renderPreviewComplete(renderCount))
+                .build()
+                .run();
+    }
+
+    private synchronized void renderPreviewComplete(int pRenderCount) {
+        if (pRenderCount == mRenderCount) {
+            mPendingFullRender = false;
+            mPendingDirtyRegion = null;
         }
     }
 
@@ -349,7 +419,7 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
             }
             if (pControl.isOneOf(mAutoUpdateCurves)) {
                 if (mAutoUpdateCurvesDirty) {
-                    updateCurves();
+                    updateChangedCurves();
                 }
             }
             if (pControl.isOneOf(mShowGraffiti, mShowEdges, mEdgesOpacity, mNodeColor, mEdgeColor)) {
@@ -510,6 +580,23 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
         return new Point(x, y);
     }
 
+    /**
+     * Converts a rectangle in UHVW to the pixels of the preview that it touches, widened by a pixel for the oversampling.
+     */
+    private Bounds UHVWtoPreview(Rectangle pUHVW) {
+        double scaleX = (double) getZoomInt() * getPreviewSize() / getWidth();
+        double scaleY = (double) getZoomInt() * getPreviewSize() / getHeight();
+        int xMin = toPreviewPixel(Math.floor((pUHVW.getLeft() * getHeight() - getViewOriginX()) * scaleX) - 1);
+        int yMin = toPreviewPixel(Math.floor((pUHVW.getBottom() * getHeight() - getViewOriginY()) * scaleY) - 1);
+        int xMax = toPreviewPixel(Math.ceil((pUHVW.getRight() * getHeight() - getViewOriginX()) * scaleX) + 1);
+        int yMax = toPreviewPixel(Math.ceil((pUHVW.getTop() * getHeight() - getViewOriginY()) * scaleY) + 1);
+        return new Bounds(xMin, yMin, xMax, yMax);
+    }
+
+    private int toPreviewPixel(double pValue) {
+        return (int) Math.max(0.0d, Math.min(getPreviewSize(), pValue));
+    }
+
     private Optional<Pixel> eventToPixel(IUIEvent pEvent) {
         return eventXYToPixel(pEvent.getX(), pEvent.getY());
     }
@@ -552,7 +639,7 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
 
     private void autoUpdateCurves() {
         if (mAutoUpdateCurves.getValue()) {
-            updateCurves();
+            updateChangedCurves();
         } else {
             mAutoUpdateCurvesDirty = true;
             drawGraffiti();
@@ -1088,7 +1175,7 @@ public class EditPixelMapDialog extends Container implements IUIEventListener, I
         }
 
         private boolean update(boolean mB) {
-            EditPixelMapDialog.this.updateCurves();
+            EditPixelMapDialog.this.updateChangedCurves();
             EditPixelMapDialog.this.drawGraffiti();
             return mB;
         }
@@ -0,0 +1,92 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.sampling;
+
+/**
+ * The Sampler defines how a colour is reconstructed from the pixels of a source picture at a point that does not fall exactly on a
+ * pixel. Apart from Nearest each of these is a separable filter; the radius is the number of pixels either side of the point that
+ * contribute to the result.
+ */
+public enum Sampler {
+
+    Nearest(0) {
+        @Override
+        public double weight(final double pDistance) {
+            return Math.abs(pDistance) < 0.5d ? 1.0d : 0.0d;
+        }
+    },
+
+    Bilinear(1) {
+        @Override
+        public double weight(final double pDistance) {
+            final double d = Math.abs(pDistance);
+            return d < 1.0d ? 1.0d - d : 0.0d;
+        }
+    },
+
+    /**
+     * Catmull-Rom cubic, i.e. the cubic convolution kernel with a = -0.5.
+     */
+    Bicubic(2) {
+        @Override
+        public double weight(final double pDistance) {
+            final double d = Math.abs(pDistance);
+            if (d < 1.0d) {
+                return (1.5d * d - 2.5d) * d * d + 1.0d;
+            }
+            if (d < 2.0d) {
+                return ((-0.5d * d + 2.5d) * d - 4.0d) * d + 2.0d;
+            }
+            return 0.0d;
+        }
+    },
+
+    /**
+     * Lanczos with a window of 3 pixels.
+     */
+    Lanczos(3) {
+        @Override
+        public double weight(final double pDistance) {
+            final double d = Math.abs(pDistance);
+            if (d < 1.0e-9d) {
+                return 1.0d;
+            }
+            if (d >= 3.0d) {
+                return 0.0d;
+            }
+            final double piD = Math.PI * d;
+            return 3.0d * Math.sin(piD) * Math.sin(piD / 3.0d) / (piD * piD);
+        }
+    };
+
+    /**
+     * The largest radius of any of the Samplers.
+     */
+    public final static int MAX_RADIUS = 3;
+
+    /**
+     * The length of the buffer of weights that TiledRaster.sample needs, i.e. 2 * MAX_RADIUS weights for each of x and y.
+     */
+    public final static int WEIGHTS_LENGTH = 4 * MAX_RADIUS;
+
+    private final int mRadius;
+
+    Sampler(final int pRadius) {
+        mRadius = pRadius;
+    }
+
+    public int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Gets the weight given to a pixel whose centre is pDistance pixels from the point being sampled.
+     *
+     * @param pDistance the distance in pixels
+     * @return the weight
+     */
+    public abstract double weight(double pDistance);
+}
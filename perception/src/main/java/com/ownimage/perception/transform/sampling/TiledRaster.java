@@ -0,0 +1,223 @@
+/*
+ *  This code is part of the Perception programme.
+ *
+ *  All code copyright (c) 2018 ownimage.co.uk, Keith Hart
+ */
+package com.ownimage.perception.transform.sampling;
+
+import com.ownimage.framework.control.type.PictureView;
+import com.ownimage.framework.util.Framework;
+import lombok.NonNull;
+
+import java.util.logging.Logger;
+
+/**
+ * The TiledRaster samples a picture. A tiled raster holds a copy of the picture as packed ARGB ints in square tiles of TILE_SIZE x
+ * TILE_SIZE pixels, so that the neighbourhood of pixels read by a Sampler is close together in memory whichever direction the
+ * samples are moving in. The copy takes 4 bytes per pixel, i.e. as much again as a TYPE_INT_ARGB picture, so it is only worth making
+ * for a Sampler that reads more than one pixel per sample. A raster that is not tiled holds no copy and reads the pixels of the
+ * PictureView. Either is immutable once created and so can be read from any number of threads without synchronization.
+ * <p>
+ * The coordinates are the same as PictureType, i.e. y = 0 is the bottom row. For a 360 raster x wraps round, otherwise the pixels
+ * beyond the left and right edges are taken to be the same as the edge pixels; the same is true of the top and bottom edges.
+ */
+public class TiledRaster {
+
+    private final static Logger mLogger = Framework.getLogger();
+
+    private final static int TILE_SHIFT = 5;
+    private final static int TILE_SIZE = 1 << TILE_SHIFT;
+    private final static int TILE_MASK = TILE_SIZE - 1;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mXTiles;
+    private final boolean mIs360;
+    private final PictureView mView;
+    // the tiles, or null if the pixels are read from mView
+    private final int[] mPixels;
+
+    /**
+     * Instantiates a new tiled raster from the pixels of the view.
+     *
+     * @param pView  the source of the pixels
+     * @param pIs360 whether x should wrap round, this can be set even if the view itself is not 360
+     */
+    public TiledRaster(@NonNull final PictureView pView, final boolean pIs360) {
+        this(pView, pIs360, true);
+    }
+
+    /**
+     * Instantiates a new raster that reads the pixels of the view, copying them into tiles only if pTiled is set.
+     *
+     * @param pView  the source of the pixels
+     * @param pIs360 whether x should wrap round, this can be set even if the view itself is not 360
+     * @param pTiled whether to copy the pixels into tiles
+     */
+    public TiledRaster(@NonNull final PictureView pView, final boolean pIs360, final boolean pTiled) {
+        Framework.logEntry(mLogger);
+
+        mView = pView;
+        mWidth = pView.getWidth();
+        mHeight = pView.getHeight();
+        mIs360 = pIs360;
+        mXTiles = (mWidth + TILE_MASK) >> TILE_SHIFT;
+        if (pTiled) {
+            final int yTiles = (mHeight + TILE_MASK) >> TILE_SHIFT;
+            mPixels = new int[(mXTiles * yTiles) << (2 * TILE_SHIFT)];
+            int[] row = null;
+            for (int y = 0; y < mHeight; y++) {
+                row = pView.getRow(y, row);
+                for (int x = 0; x < mWidth; x++) {
+                    mPixels[index(x, y)] = row[x];
+                }
+            }
+        } else {
+            mPixels = null;
+        }
+
+        Framework.logExit(mLogger);
+    }
+
+    private int index(final int pX, final int pY) {
+        return (((pY >> TILE_SHIFT) * mXTiles + (pX >> TILE_SHIFT)) << (2 * TILE_SHIFT)) + ((pY & TILE_MASK) << TILE_SHIFT) + (pX & TILE_MASK);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public boolean is360() {
+        return mIs360;
+    }
+
+    public boolean isTiled() {
+        return mPixels != null;
+    }
+
+    /**
+     * Indicates whether this raster was made from the view in the same way as the arguments would make it.
+     *
+     * @param pView  the view
+     * @param pIs360 whether x wraps round
+     * @param pTiled whether the pixels are copied into tiles
+     * @return true if the raster can be used in place of new TiledRaster(pView, pIs360, pTiled)
+     */
+    public boolean isFor(final PictureView pView, final boolean pIs360, final boolean pTiled) {
+        return mView == pView && mIs360 == pIs360 && isTiled() == pTiled;
+    }
+
+    /**
+     * Indicates whether the (x, y) coordinate is inside the picture. For a 360 raster any x is inside.
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return true if the coordinate is inside the picture
+     */
+    public boolean contains(final int pX, final int pY) {
+        return 0 <= pY && pY < mHeight && (mIs360 || (0 <= pX && pX < mWidth));
+    }
+
+    /**
+     * Gets the packed ARGB color at the (x, y) coordinate. Coordinates outside of the picture are wrapped or clamped to the edge as
+     * described in the class comment.
+     *
+     * @param pX the x
+     * @param pY the y
+     * @return the packed ARGB color
+     */
+    public int getARGB(final int pX, final int pY) {
+        final int x = mIs360 ? Math.floorMod(pX, mWidth) : Math.max(0, Math.min(mWidth - 1, pX));
+        final int y = Math.max(0, Math.min(mHeight - 1, pY));
+        return mPixels != null ? mPixels[index(x, y)] : mView.getARGB(x, y);
+    }
+
+    /**
+     * Samples the raster at the (x, y) coordinate, where x and y are in the range 0.0d to 1.0d, and puts the red, green and blue
+     * components, in the range 0.0f to 1.0f, into pRGB. The alpha of the source pixels is ignored.
+     * <p>
+     * Whether the point is inside the picture is decided in the same way for every Sampler, i.e. the pixel at ((int) (x * width),
+     * (int) (y * height)) must be inside, so changing the Sampler does not change the shape of the picture. The Nearest Sampler
+     * returns exactly that pixel.
+     *
+     * @param pSampler the sampler
+     * @param pX       the x
+     * @param pY       the y
+     * @param pRGB     the destination for the components, at least 3 long
+     * @param pWeights a buffer for the filter weights, at least Sampler.WEIGHTS_LENGTH long, this is passed in so that the caller
+     *                 can reuse it between samples
+     * @return false if the point is outside the picture, in which case pRGB is not changed
+     */
+    public boolean sample(
+            @NonNull final Sampler pSampler,
+            final double pX,
+            final double pY,
+            @NonNull final float[] pRGB,
+            @NonNull final double[] pWeights
+    ) {
+        final int nearestX = (int) (pX * mWidth);
+        final int nearestY = (int) (pY * mHeight);
+        if (!contains(nearestX, nearestY)) {
+            return false;
+        }
+
+        final int radius = pSampler.getRadius();
+        if (radius == 0) {
+            final int argb = getARGB(nearestX, nearestY);
+            pRGB[0] = ((argb >> 16) & 0xFF) / 255.0f;
+            pRGB[1] = ((argb >> 8) & 0xFF) / 255.0f;
+            pRGB[2] = (argb & 0xFF) / 255.0f;
+            return true;
+        }
+
+        // the centre of pixel i is at (i + 0.5) / width
+        final double fx = pX * mWidth - 0.5d;
+        final double fy = pY * mHeight - 0.5d;
+        final int x0 = (int) Math.floor(fx) - radius + 1;
+        final int y0 = (int) Math.floor(fy) - radius + 1;
+        final int taps = 2 * radius;
+
+        double xWeightSum = 0.0d;
+        double yWeightSum = 0.0d;
+        for (int i = 0; i < taps; i++) {
+            pWeights[i] = pSampler.weight(fx - (x0 + i));
+            pWeights[taps + i] = pSampler.weight(fy - (y0 + i));
+            xWeightSum += pWeights[i];
+            yWeightSum += pWeights[taps + i];
+        }
+
+        double r = 0.0d;
+        double g = 0.0d;
+        double b = 0.0d;
+        for (int j = 0; j < taps; j++) {
+            double rowR = 0.0d;
+            double rowG = 0.0d;
+            double rowB = 0.0d;
+            for (int i = 0; i < taps; i++) {
+                final int argb = getARGB(x0 + i, y0 + j);
+                final double w = pWeights[i];
+                rowR += w * ((argb >> 16) & 0xFF);
+                rowG += w * ((argb >> 8) & 0xFF);
+                rowB += w * (argb & 0xFF);
+            }
+            final double w = pWeights[taps + j];
+            r += w * rowR;
+            g += w * rowG;
+            b += w * rowB;
+        }
+
+        final double scale = 1.0d / (xWeightSum * yWeightSum * 255.0d);
+        pRGB[0] = clamp(r * scale);
+        pRGB[1] = clamp(g * scale);
+        pRGB[2] = clamp(b * scale);
+        return true;
+    }
+
+    private static float clamp(final double pValue) {
+        return (float) Math.max(0.0d, Math.min(1.0d, pValue));
+    }
+}
@@ -0,0 +1,134 @@
+package com.ownimage.perception.app;
+
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRenderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setViewFactory() {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    public void getTransformFile_00() {
+        // GIVEN WHEN
+        final File actual = BatchRender.getTransformFile(new File("/images/NY2.jpg"));
+        // THEN
+        assertEquals(new File("/images/NY2.transform"), actual);
+    }
+
+    @Test
+    public void getOutputFile_00() throws IOException {
+        // GIVEN an image with a .transform file and no output directory
+        final File image = mFolder.newFile("NY2.jpg");
+        mFolder.newFile("NY2.transform");
+        final BatchRender underTest = new BatchRender(new String[]{image.getPath()});
+        // WHEN
+        final File actual = underTest.getOutputFile(image);
+        // THEN the output goes next to the image
+        assertEquals(new File(mFolder.getRoot(), "NY2-transform.jpg"), actual);
+    }
+
+    @Test
+    public void getOutputFile_01() throws IOException {
+        // GIVEN
+        final File image = mFolder.newFile("NY2.jpg");
+        mFolder.newFile("NY2.transform");
+        final File output = new File(mFolder.getRoot(), "out");
+        final BatchRender underTest = new BatchRender(new String[]{"-o", output.getPath(), "-j", "2", image.getPath()});
+        // WHEN
+        final File actual = underTest.getOutputFile(image);
+        // THEN the output directory is created and used
+        assertEquals(new File(output, "NY2-transform.jpg"), actual);
+        assertEquals(true, output.isDirectory());
+    }
+
+    @Test
+    public void run_00() throws IOException {
+        // GIVEN a blue image with a .transform file that puts a red border on its left and top
+        final File image = new File(mFolder.getRoot(), "Blue.png");
+        final BufferedImage blue = new BufferedImage(48, 32, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < blue.getWidth(); x++) {
+            for (int y = 0; y < blue.getHeight(); y++) {
+                blue.setRGB(x, y, Color.BLUE.getRGB());
+            }
+        }
+        ImageIO.write(blue, "png", image);
+        Files.write(new File(mFolder.getRoot(), "Blue.transform").toPath(), Arrays.asList(
+                "transform.0.name=imageLoad",
+                "transform.1.name=border",
+                "transform.1.border.left=0.25",
+                "transform.1.border.top=0.75",
+                "transform.1.border.color=" + Color.RED.getRGB()
+        ));
+        final BatchRender underTest = new BatchRender(new String[]{"-s", "1", "-q", "1.0", image.getPath()});
+        // WHEN
+        final int failures = underTest.run();
+        // THEN the image is saved at the size of the transform with the border where the .transform file puts it
+        assertEquals(0, failures);
+        final BufferedImage actual = ImageIO.read(underTest.getOutputFile(image));
+        assertEquals(48, actual.getWidth());
+        assertEquals(32, actual.getHeight());
+        assertColor(Color.RED, actual.getRGB(4, 28));
+        assertColor(Color.RED, actual.getRGB(40, 2));
+        assertColor(Color.BLUE, actual.getRGB(40, 28));
+        assertColor(Color.BLUE, actual.getRGB(20, 16));
+    }
+
+    private static void assertColor(final Color pExpected, final int pActual) {
+        // the output is a jpg so the colors are only close
+        final Color actual = new Color(pActual);
+        final String message = "expected " + pExpected + " but was " + actual;
+        assertTrue(message, Math.abs(pExpected.getRed() - actual.getRed()) < 24);
+        assertTrue(message, Math.abs(pExpected.getGreen() - actual.getGreen()) < 24);
+        assertTrue(message, Math.abs(pExpected.getBlue() - actual.getBlue()) < 24);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noTransform_00() throws IOException {
+        // GIVEN an image without a .transform file
+        final File image = mFolder.newFile("Newcastle.jpg");
+        // WHEN
+        new BatchRender(new String[]{image.getPath()});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_emptyDirectory_00() throws IOException {
+        // GIVEN a directory where the file with the matching stem is not an image
+        mFolder.newFile("NY2.transform");
+        mFolder.newFile("NY2.txt");
+        // WHEN
+        new BatchRender(new String[]{mFolder.getRoot().getPath()});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_badOption_00() throws IOException {
+        // GIVEN
+        final File image = mFolder.newFile("NY2.jpg");
+        mFolder.newFile("NY2.transform");
+        // WHEN
+        new BatchRender(new String[]{"-w", "0", image.getPath()});
+    }
+}
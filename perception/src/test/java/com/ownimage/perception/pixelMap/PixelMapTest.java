@@ -75,9 +75,9 @@ public class PixelMapTest {
         var result = pixelMapApproximationService.process01_reset(underTest, null);
         val end = Instant.now();
         // THEN
-        Assert.assertEquals(new Byte((byte) 0), result.data().get(1, 1));
+        Assert.assertEquals((byte) 0, result.data().get(1, 1));
         val duration = Duration.between(start, end);
-        Assert.assertEquals(1, result.data().size());
+        Assert.assertEquals(0, result.data().size());
     }
 
     @Test
@@ -90,7 +90,7 @@ public class PixelMapTest {
         var result = pixelMapApproximationService.process01_reset(underTest, null);
         val end = Instant.now();
         // THEN
-        Assert.assertEquals(Byte.valueOf(EDGE), result.data().get(1, 1));
+        Assert.assertEquals(EDGE, result.data().get(1, 1));
         val duration = Duration.between(start, end);
         Assert.assertEquals(1, result.data().size());
     }
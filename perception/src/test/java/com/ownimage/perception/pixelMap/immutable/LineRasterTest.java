@@ -0,0 +1,59 @@
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import com.ownimage.perception.pixelMap.Utility;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class LineRasterTest {
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Test
+    public void withChanges_00() {
+        // GIVEN the lines of a map drawn into LineRasters, and the map with one of its lines made thick
+        final ImmutablePixelMap pixelMap = SegmentGridTest.createLines(160, 96);
+        final ImmutablePixelMap edited = SegmentGridTest.thickenFirstLine(pixelMap);
+        final SegmentGrid previousGrid = new SegmentGrid(pixelMap);
+        final SegmentGrid grid = SegmentGridTest.withChanges(previousGrid, edited);
+        final IPixelMapTransformSource transformSource = mock(IPixelMapTransformSource.class,
+                delegatesTo(Utility.getDefaultTransformSource(1000)));
+        doReturn(25).when(transformSource).getLineEndLengthPercent();
+        doReturn(previousGrid).when(transformSource).getSegmentGrid(pixelMap);
+        doReturn(grid).when(transformSource).getSegmentGrid(edited);
+        final var changed = SegmentGridTest.pixelMapService.getChangedPixelChains(pixelMap, edited);
+        for (boolean thickOnly : new boolean[]{false, true}) {
+            final LineRaster previous = new LineRaster(pixelMap, transformSource, 80.0d, thickOnly, 2);
+            // WHEN
+            final LineRaster actual = previous.withChanges(edited, transformSource, changed._1, changed._2);
+            // THEN it is the same as drawing all of the lines of the edited map again
+            final LineRaster expected = new LineRaster(edited, transformSource, 80.0d, thickOnly, 2);
+            assertTrue(actual.isFor(edited, transformSource, 80.0d, thickOnly, 2));
+            assertSame(grid, actual.getSegmentGrid());
+            var covered = 0;
+            for (int x = 0; x < 2 * edited.width(); x++) {
+                for (int y = 0; y < 2 * edited.height(); y++) {
+                    final double ux = (x + 0.5d) / (2 * edited.height());
+                    final double uy = (y + 0.5d) / (2 * edited.height());
+                    final String message = "x=" + x + " y=" + y + " thickOnly=" + thickOnly;
+                    assertEquals(message, expected.getCoverage(ux, uy), actual.getCoverage(ux, uy), 0.0d);
+                    assertSame(message, expected.getPixelChain(ux, uy), actual.getPixelChain(ux, uy));
+                    covered += actual.getCoverage(ux, uy) > 0.0d ? 1 : 0;
+                }
+            }
+            assertTrue(covered > 0);
+        }
+    }
+}
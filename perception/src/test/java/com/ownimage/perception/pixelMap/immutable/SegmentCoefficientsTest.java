@@ -0,0 +1,188 @@
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.framework.math.LineSegment;
+import com.ownimage.framework.math.Point;
+import com.ownimage.perception.pixelMap.IPixelChain;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import com.ownimage.perception.pixelMap.Utility;
+import io.vavr.Tuple2;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentCoefficientsTest {
+
+    private static final String[] INPUT = {
+            "                    ",
+            "   NEEE             ",
+            "       EE           ",
+            "         E          ",
+            "          E    N    ",
+            "          E     E   ",
+            "         E       E  ",
+            "       EE        E  ",
+            "   NEEE         E   ",
+            "               N    ",
+            "                    ",
+            "  NEEEEEEEEEEEEEEN  ",
+            "                    ",
+    };
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * Gets the segments of the chains, and for each of them a curve and a straight line between the same vertexes, so that both
+     * kinds of segment are tested whatever the approximation gives.
+     */
+    private static List<Tuple2<PixelChain, Segment>> getSegments(final PixelMap pPixelMap, final boolean pThick) {
+        var result = new ArrayList<Tuple2<PixelChain, Segment>>();
+        for (var original : pPixelMap.pixelChains().toCollection()) {
+            PixelChain pixelChain = pThick ? original.withThickness(IPixelChain.Thickness.Thick) : original;
+            pixelChain.streamSegments().forEach(segment -> {
+                result.add(new Tuple2<>(pixelChain, segment));
+                var p0 = segment.getStartUHVWPoint(pixelChain);
+                var p2 = segment.getEndUHVWPoint(pixelChain);
+                var p1 = p0.add(p2).multiply(0.5d).add(new Point(p0.getY() - p2.getY(), p2.getX() - p0.getX()).multiply(0.3d));
+                var a = p0.add(p2).minus(p1.multiply(2.0d));
+                var b = p1.minus(p0).multiply(2.0d);
+                var curve = ImmutableCurveSegment.of(segment.getSegmentIndex(), segment.getStartPosition(), new Point(a.getX(), a.getY()), new Point(b.getX(), b.getY()), p1);
+                result.add(new Tuple2<>(pixelChain, curve));
+                result.add(new Tuple2<>(pixelChain, ImmutableStraightSegment.of(segment.getSegmentIndex(), segment.getStartPosition(), new LineSegment(p0, p2))));
+            });
+        }
+        return result;
+    }
+
+    @Test
+    public void distances_00() {
+        // GIVEN both curves and straight lines
+        var pixelMap = Utility.createMap(INPUT, true);
+        var height = pixelMap.height();
+        var curves = 0;
+        var straights = 0;
+        var workspace = new SegmentCoefficients.Workspace();
+        for (var tuple : getSegments(pixelMap, false)) {
+            var pixelChain = tuple._1;
+            var segment = tuple._2;
+            curves += segment instanceof CurveSegment ? 1 : 0;
+            straights += segment instanceof StraightSegment ? 1 : 0;
+            // WHEN
+            var underTest = segment.getCoefficients(pixelMap, pixelChain);
+            // THEN the distances are exactly those that the Segment gives
+            for (int x = 0; x < 4 * pixelMap.width(); x++) {
+                for (int y = 0; y < 4 * height; y++) {
+                    var point = new Point((x + 0.5d) / (4 * height), (y + 0.5d) / (4 * height));
+                    assertEquals(segment.distance(pixelMap, pixelChain, point), underTest.distance(point.getX(), point.getY(), workspace), 0.0d);
+                }
+            }
+        }
+        assertTrue(curves > 0);
+        assertTrue(straights > 0);
+    }
+
+    @Test
+    public void distances_01() {
+        // GIVEN
+        var pixelMap = Utility.createMap(INPUT, true);
+        var curve = getSegments(pixelMap, false).stream().filter(t -> t._2 instanceof CurveSegment).findFirst().orElseThrow();
+        var pixelChain = curve._1;
+        var segment = curve._2;
+        var points = new Point[]{new Point(0.1d, 0.2d), new Point(0.35d, 0.4d), new Point(1.0d, 0.0d), pixelChain.getUHVWPoint(pixelMap, 1)};
+        var x = new double[points.length];
+        var y = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            x[i] = points[i].getX();
+            y[i] = points[i].getY();
+        }
+        var lambda = new double[points.length];
+        var distance = new double[points.length];
+        // WHEN
+        segment.getCoefficients(pixelMap, pixelChain).distances(x, y, points.length, lambda, distance, new SegmentCoefficients.Workspace().getCubic());
+        // THEN
+        for (int i = 0; i < points.length; i++) {
+            assertEquals(segment.closestLambda(pixelMap, pixelChain, points[i]), lambda[i], 0.0d);
+            assertEquals(segment.distance(pixelMap, pixelChain, points[i]), distance[i], 0.0d);
+        }
+    }
+
+    @Test
+    public void closerThanActual_00() {
+        // GIVEN thick lines so that the thickness envelope is used
+        var pixelMap = Utility.createMap(INPUT, true);
+        IPixelMapTransformSource transformSource = Utility.getDefaultTransformSource(100);
+        var workspace = new SegmentCoefficients.Workspace();
+        var multiplier = 3.0d;
+        var hits = 0;
+        for (var tuple : getSegments(pixelMap, true)) {
+            var pixelChain = tuple._1;
+            var segment = tuple._2;
+            // WHEN
+            var underTest = segment.getCoefficients(pixelMap, pixelChain);
+            // THEN
+            for (int x = 0; x < 4 * pixelMap.width(); x++) {
+                for (int y = 0; y < 4 * pixelMap.height(); y++) {
+                    var point = new Point((x + 0.5d) / (4 * pixelMap.height()), (y + 0.5d) / (4 * pixelMap.height()));
+                    var expected = segment.closerThanActual(pixelMap, pixelChain, transformSource, point, multiplier);
+                    assertEquals(point.toString(), expected, underTest.closerThanActual(transformSource, point.getX(), point.getY(), multiplier, workspace));
+                    hits += expected ? 1 : 0;
+                }
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void calcError_00() {
+        // GIVEN
+        var pixelMap = Utility.createMap(INPUT, true);
+        for (var tuple : getSegments(pixelMap, false)) {
+            var pixelChain = tuple._1;
+            var segment = tuple._2;
+            var expected = 0.0d;
+            for (int i = segment.getStartIndex(pixelChain); i <= segment.getEndIndex(pixelChain); i++) {
+                var distance = segment.distance(pixelMap, pixelChain, pixelChain.getUHVWPoint(pixelMap, i));
+                expected += distance * distance;
+            }
+            // WHEN
+            var actual = segment.calcError(pixelMap, pixelChain);
+            // THEN
+            assertEquals(expected, actual, 0.0d);
+        }
+    }
+
+    @Test
+    public void getLambdaRange_00() {
+        // GIVEN both curves and straight lines, and y ranges that miss them, cross them and hold them
+        var pixelMap = Utility.createMap(INPUT, true);
+        var steps = 1000;
+        var found = 0;
+        for (var tuple : getSegments(pixelMap, false)) {
+            var underTest = tuple._2.getCoefficients(pixelMap, tuple._1);
+            for (int band = -1; band < 14; band++) {
+                var minY = band * 0.1d;
+                var maxY = minY + 0.13d;
+                // WHEN
+                var actual = underTest.getLambdaRange(minY, maxY);
+                // THEN every point in the y range is in the range of lambda
+                for (int step = 0; step <= steps; step++) {
+                    var lambda = (double) step / steps;
+                    var y = underTest.getY(lambda);
+                    if (minY <= y && y <= maxY) {
+                        assertTrue(actual != null && actual[0] - 1.0e-9d <= lambda && lambda <= actual[1] + 1.0e-9d);
+                        found++;
+                    }
+                }
+            }
+        }
+        assertTrue(found > 0);
+    }
+}
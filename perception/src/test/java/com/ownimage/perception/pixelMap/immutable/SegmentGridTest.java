@@ -0,0 +1,141 @@
+package com.ownimage.perception.pixelMap.immutable;
+
+import com.ownimage.framework.math.Point;
+import com.ownimage.perception.pixelMap.IPixelChain;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
+import com.ownimage.perception.pixelMap.Utility;
+import com.ownimage.perception.pixelMap.services.Config;
+import com.ownimage.perception.pixelMap.services.PixelMapService;
+import io.vavr.Tuple2;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentGridTest {
+
+    static final PixelMapService pixelMapService = new AnnotationConfigApplicationContext(Config.class).getBean(PixelMapService.class);
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * Creates a map with short lines across it, every eight rows and every forty columns.
+     */
+    static ImmutablePixelMap createLines(final int pWidth, final int pHeight) {
+        final String[] input = new String[pHeight];
+        final char[] blank = new char[pWidth];
+        Arrays.fill(blank, ' ');
+        for (int y = 0; y < pHeight; y++) {
+            final char[] row = blank.clone();
+            if (y % 8 == 4) {
+                for (int x = 4; x + 24 < pWidth; x += 40) {
+                    Arrays.fill(row, x, x + 24, 'E');
+                    row[x] = 'N';
+                    row[x + 23] = 'N';
+                }
+            }
+            input[y] = new String(row);
+        }
+        return Utility.createMap(input, true);
+    }
+
+    /**
+     * Makes the first line of the map thick, as an edit in the editor would.
+     */
+    static ImmutablePixelMap thickenFirstLine(final ImmutablePixelMap pPixelMap) {
+        final ImmutablePixelChain first = pPixelMap.pixelChains().stream()
+                .filter(pc -> pc.pixels().firstElement().orElseThrow().getY() == 4)
+                .filter(pc -> pc.pixels().stream().anyMatch(p -> p.getX() == 4))
+                .findFirst().orElseThrow();
+        return pixelMapService.pixelChainsReplaceAll(pPixelMap,
+                List.of(new Tuple2<>(first, first.withThickness(IPixelChain.Thickness.Thick))));
+    }
+
+    static SegmentGrid withChanges(final SegmentGrid pPrevious, final ImmutablePixelMap pPixelMap) {
+        final Tuple2<List<ImmutablePixelChain>, List<ImmutablePixelChain>> changed =
+                pixelMapService.getChangedPixelChains(pPrevious.getPixelMap(), pPixelMap);
+        return SegmentGrid.withChanges(pPrevious, pPixelMap, changed._1, changed._2);
+    }
+
+    private static void assertSameLines(final SegmentGrid pExpected, final SegmentGrid pActual, final PixelMap pPixelMap) {
+        final IPixelMapTransformSource transformSource = Utility.getDefaultTransformSource(1000);
+        final int[] hits = new int[2];
+        for (boolean thickOnly : new boolean[]{false, true}) {
+            for (int x = 0; x < 2 * pPixelMap.width(); x++) {
+                for (int y = 0; y < 2 * pPixelMap.height(); y++) {
+                    final Point uhvw = new Point((x + 0.5d) / (2 * pPixelMap.height()), (y + 0.5d) / (2 * pPixelMap.height()));
+                    final int expected = pExpected.findAnyCloserThan(transformSource, uhvw, 0.05d, 40.0d, thickOnly);
+                    final int actual = pActual.findAnyCloserThan(transformSource, uhvw, 0.05d, 40.0d, thickOnly);
+                    final String message = "x=" + x + " y=" + y + " thickOnly=" + thickOnly;
+                    assertEquals(message, expected == -1, actual == -1);
+                    if (expected != -1) {
+                        hits[thickOnly ? 1 : 0]++;
+                        assertEquals(message, pExpected.getPixelChain(expected).thickness(), pActual.getPixelChain(actual).thickness());
+                    }
+                }
+            }
+        }
+        assertTrue(hits[0] > hits[1]);
+    }
+
+    @Test
+    public void withChanges_00() {
+        // GIVEN the grid of a map, and the map with one of its lines made thick
+        final ImmutablePixelMap pixelMap = createLines(160, 96);
+        final SegmentGrid previous = new SegmentGrid(pixelMap);
+        final ImmutablePixelMap edited = thickenFirstLine(pixelMap);
+        // WHEN
+        final SegmentGrid actual = withChanges(previous, edited);
+        // THEN it finds the same lines as a grid built from scratch, and the old grid still finds the old lines
+        assertTrue(actual.isFor(edited));
+        assertTrue(actual.isNumberedAs(previous));
+        assertSameLines(new SegmentGrid(edited), actual, edited);
+        assertSameLines(new SegmentGrid(pixelMap), previous, pixelMap);
+        final Point onThickLine = new Point(16.0d / 96, 4.5d / 96);
+        assertNotEquals(-1, actual.findAnyCloserThan(Utility.getDefaultTransformSource(1000), onThickLine, 0.05d, 40.0d, true));
+        assertEquals(new SegmentGrid(edited).getEntries().length, actual.getEntries().length);
+    }
+
+    @Test
+    public void withChanges_01() {
+        // GIVEN a grid that has already been changed once
+        final ImmutablePixelMap pixelMap = createLines(160, 96);
+        final SegmentGrid previous = new SegmentGrid(pixelMap);
+        final ImmutablePixelMap edited = thickenFirstLine(pixelMap);
+        withChanges(previous, edited);
+        final ImmutablePixelMap other = pixelMapService.pixelChainsReplaceAll(pixelMap, List.of(
+                new Tuple2<>(pixelMap.pixelChains().stream().findFirst().orElseThrow(),
+                        pixelMap.pixelChains().stream().findFirst().orElseThrow().withThickness(IPixelChain.Thickness.None))));
+        // WHEN it is changed in another way
+        final SegmentGrid actual = withChanges(previous, other);
+        // THEN the new grid has its own log of entries, and finds the same lines as a grid built from scratch
+        assertTrue(!actual.isNumberedAs(previous));
+        assertSameLines(new SegmentGrid(other), actual, other);
+    }
+
+    @Test
+    public void withChanges_02() {
+        // GIVEN maps of two sizes with the same line made thick
+        final ImmutablePixelMap small = createLines(160, 96);
+        final ImmutablePixelMap large = createLines(640, 384);
+        final SegmentGrid smallGrid = new SegmentGrid(small);
+        final SegmentGrid largeGrid = new SegmentGrid(large);
+        // WHEN
+        final SegmentGrid smallActual = withChanges(smallGrid, thickenFirstLine(small));
+        final SegmentGrid largeActual = withChanges(largeGrid, thickenFirstLine(large));
+        // THEN the same blocks are packed again whatever the size of the map, and the rest are shared with the previous grid
+        final int repacked = smallActual.countBlocksNotSharedWith(smallGrid);
+        assertNotEquals(0, repacked);
+        assertEquals(repacked, largeActual.countBlocksNotSharedWith(largeGrid));
+    }
+}
@@ -0,0 +1,70 @@
+package com.ownimage.perception.pixelMap.services;
+
+import com.ownimage.perception.pixelMap.Utility;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PixelChainApproximationCacheTest {
+
+    @BeforeAll
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    private ImmutablePixelMap createMap() {
+        String[] input = {
+                "                ",
+                "  NEEEEEEEN     ",
+                "                ",
+                "   NEEEEEN      ",
+                "                ",
+                "    NEEEN       ",
+        };
+        return Utility.createMap(input, true);
+    }
+
+    @Test
+    public void get_00() {
+        // GIVEN a PixelChain that is held as approximated
+        var pixelMap = createMap();
+        var pixelChain = pixelMap.pixelChains().stream().findFirst().orElseThrow();
+        var underTest = new PixelChainApproximationCache();
+        underTest.putApproximated(pixelMap, pixelChain, 0.1d);
+        // WHEN
+        var approximated = underTest.getApproximated(pixelMap, pixelChain, 0.1d);
+        var refined = underTest.getRefined(pixelMap, pixelChain, 0.1d, 1.2d);
+        // THEN it is only held as approximated
+        assertTrue(approximated.isPresent());
+        assertEquals(pixelChain.segments().toVector(), approximated.get().segments().toVector());
+        assertFalse(refined.isPresent());
+    }
+
+    @Test
+    public void setBudget_00() {
+        // GIVEN three PixelChains that are held
+        var pixelMap = createMap();
+        List<ImmutablePixelChain> pixelChains = new ArrayList<>(pixelMap.pixelChains().toCollection());
+        assertEquals(3, pixelChains.size());
+        var underTest = new PixelChainApproximationCache();
+        pixelChains.forEach(pc -> underTest.putApproximated(pixelMap, pc, 0.1d));
+        var size = underTest.getSize();
+        underTest.getApproximated(pixelMap, pixelChains.get(0), 0.1d);
+        // WHEN the budget is cut to less than they take
+        underTest.setBudget(size - 1);
+        // THEN the least recently used PixelChain is dropped
+        assertEquals(2, underTest.size());
+        assertTrue(underTest.getSize() < size);
+        assertTrue(underTest.getApproximated(pixelMap, pixelChains.get(0), 0.1d).isPresent());
+        assertFalse(underTest.getApproximated(pixelMap, pixelChains.get(1), 0.1d).isPresent());
+    }
+}
@@ -1,6 +1,7 @@
 package com.ownimage.perception.pixelMap.services;
 
 import com.ownimage.framework.util.StrongReference;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
 import com.ownimage.perception.pixelMap.Utility;
 import com.ownimage.perception.pixelMap.immutable.ImmutableIXY;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
@@ -23,9 +24,19 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class PixelMapActionServiceTest {
 
@@ -113,6 +124,71 @@ public class PixelMapActionServiceTest {
         return pixelMap;
     }
 
+    private IPixelMapTransformSource createTransformSource(ImmutablePixelMap pixelMap, double lineTolerance) {
+        var transformSource = mock(IPixelMapTransformSource.class, delegatesTo(Utility.getDefaultTransformSource(pixelMap.height())));
+        doReturn(lineTolerance).when(transformSource).getLineTolerance();
+        return transformSource;
+    }
+
+    private IPixelMapTransformSource createTransformSource(ImmutablePixelMap pixelMap, double lineTolerance, double lineCurvePreference) {
+        var transformSource = createTransformSource(pixelMap, lineTolerance);
+        doReturn(lineCurvePreference).when(transformSource).getLineCurvePreference();
+        return transformSource;
+    }
+
+    private int countSegments(ImmutablePixelMap pixelMap) {
+        return pixelMap.pixelChains().stream().mapToInt(pc -> pc.segments().size()).sum();
+    }
+
+    private List<String> describeSegments(ImmutablePixelMap pixelMap) {
+        return pixelMap.pixelChains().stream()
+                .map(pc -> pc.segments().toVector().toString())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void actionReapproximate_00() {
+        // GIVEN a map that has been approximated for a tolerance
+        var pixelMap = createMap();
+        var approximated = underTest.actionReapproximate(pixelMap, createTransformSource(pixelMap, 3.0d));
+        // WHEN it is approximated for the same tolerance again
+        var actual = underTest.actionReapproximate(approximated, createTransformSource(pixelMap, 3.0d));
+        // THEN nothing changes
+        assertSame(approximated, actual);
+    }
+
+    @Test
+    public void actionReapproximate_01() {
+        // GIVEN a map that has been approximated for a tolerance and then for another
+        var pixelMap = createMap();
+        var approximated = underTest.actionReapproximate(pixelMap, createTransformSource(pixelMap, 3.0d));
+        var other = underTest.actionReapproximate(approximated, createTransformSource(pixelMap, 0.5d));
+        assertNotEquals(describeSegments(approximated), describeSegments(other));
+        // WHEN the tolerance is moved back
+        var actual = underTest.actionReapproximate(other, createTransformSource(pixelMap, 3.0d));
+        // THEN the segments are those of the first approximation, and the segmentIndex matches them
+        assertEquals(describeSegments(approximated), describeSegments(actual));
+        assertEquals(approximated.pixelChains().size(), actual.pixelChains().size());
+        assertEquals(pixelMapTestSupport.countUniquePixelChainsAndSegmentsInIndex(actual.withSegmentIndexDeferred(true)),
+                pixelMapTestSupport.countUniquePixelChainsAndSegmentsInIndex(actual));
+    }
+
+    @Test
+    public void actionReapproximate_02() {
+        // GIVEN a map that has been approximated for a tolerance and line curve preference
+        var pixelMap = createMap();
+        var approximated = underTest.actionReapproximate(pixelMap, createTransformSource(pixelMap, 3.0d, 1.2d));
+        var pixelChainService = spy(context.getBean(PixelChainService.class));
+        underTest.setPixelChainService(pixelChainService);
+        // WHEN only the line curve preference is changed
+        var actual = underTest.actionReapproximate(approximated, createTransformSource(pixelMap, 3.0d, 3.5d));
+        // THEN the PixelChains are refined from the approximations that are held, and the segmentCount moves with the segments
+        verify(pixelChainService, never()).approximate(any(), any(), anyDouble());
+        verify(pixelChainService, times(pixelMap.pixelChains().size())).refine(any(), any(), anyDouble());
+        assertEquals(countSegments(actual) - countSegments(approximated), actual.segmentCount() - approximated.segmentCount());
+    }
+
     @ParameterizedTest
     @MethodSource("com.ownimage.perception.pixelMap.Utility#testColors")
     public void actionSetPixelChainChangeColor_00(@NotNull Color color) {
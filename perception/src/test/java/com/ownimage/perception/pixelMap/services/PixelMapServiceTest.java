@@ -2,21 +2,34 @@ package com.ownimage.perception.pixelMap.services;
 
 import com.ownimage.framework.persist.PersistDB;
 import com.ownimage.framework.persist.SortedProperties;
+import com.ownimage.framework.util.immutable.ImmutableSet;
+import com.ownimage.framework.util.immutable.ImmutableVectorClone;
+import com.ownimage.perception.pixelMap.IPixelChain;
 import com.ownimage.perception.pixelMap.Utility;
+import com.ownimage.perception.pixelMap.immutable.CurveSegment;
 import com.ownimage.perception.pixelMap.immutable.ImmutableIXY;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelChain;
 import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
 import com.ownimage.perception.pixelMap.immutable.Pixel;
 import com.ownimage.perception.pixelMap.immutable.PixelChain;
+import com.ownimage.perception.pixelMap.immutable.Segment;
+import com.ownimage.perception.pixelMap.immutable.StraightSegment;
+import com.ownimage.perception.pixelMap.immutable.Vertex;
+import io.vavr.Tuple2;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.LogManager;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -57,6 +70,110 @@ public class PixelMapServiceTest {
         return underTest.read(db, "transform.2.cannyEdge");
     }
 
+    private ImmutablePixelMap createProcessedMap() {
+        String[] input = {
+                "           ",
+                "    E      ",
+                "   E E  E  ",
+                "   E E  E  ",
+                "   E E  E  ",
+                "    E   E  ",
+                "  EEEEEE   ",
+                "           ",
+        };
+        var pixelMap = Utility.createMap(input, false);
+        var transformSource = Utility.getDefaultTransformSource(input.length);
+        double tolerance = transformSource.getLineTolerance() / transformSource.getHeight();
+        double lineCurvePreference = transformSource.getLineCurvePreference();
+        return context.getBean(PixelMapApproximationService.class)
+                .actionProcess(pixelMap, tolerance, lineCurvePreference, null);
+    }
+
+    /**
+     * Describes the segmentIndex cell by cell, as the PixelChains that are read are not the same objects as those that were
+     * written.
+     */
+    private List<String> describeSegmentIndex(ImmutablePixelMap pixelMap) {
+        var cells = new ArrayList<String>();
+        for (int x = 0; x < pixelMap.width(); x++) {
+            for (int y = 0; y < pixelMap.height(); y++) {
+                var cell = pixelMap.currentSegmentIndex().getOptional(x, y).stream()
+                        .flatMap(ImmutableSet::stream)
+                        .map(t -> describe(t._1) + "#" + t._2.getSegmentIndex())
+                        .sorted()
+                        .collect(Collectors.joining(","));
+                cells.add(x + "," + y + ":" + cell);
+            }
+        }
+        return cells;
+    }
+
+    @Test
+    public void read_01() throws IOException {
+        // GIVEN
+        var pixelMap = createProcessedMap();
+        var db = new SortedProperties();
+        underTest.write(pixelMap, db, "test");
+        // WHEN
+        var actual = underTest.read(db, "test");
+        // THEN the segmentIndex is left to be built, and is the same as the one that was written once it is
+        assertTrue(actual.segmentIndexDeferred());
+        assertEquals(describeSegmentIndex(pixelMap), describeSegmentIndex(actual));
+    }
+
+    @Test
+    public void read_02() throws IOException {
+        // GIVEN
+        var pixelMap = createProcessedMap();
+        var db = new SortedProperties();
+        underTest.write(pixelMap, db, "test");
+        var read = underTest.read(db, "test");
+        var chain = read.pixelChains().stream().findFirst().orElseThrow();
+        var written = pixelMap.pixelChains().stream().filter(pc -> describe(pc).equals(describe(chain))).findFirst().orElseThrow();
+        // WHEN the first change is made
+        var actual = underTest.pixelChainRemove(read, chain);
+        // THEN the segmentIndex is built so that it can be changed
+        assertFalse(actual.segmentIndexDeferred());
+        assertEquals(describeSegmentIndex(underTest.pixelChainRemove(pixelMap, written)), describeSegmentIndex(actual));
+    }
+
+    @Test
+    public void pixelChainsReplaceAll_00() {
+        // GIVEN one PixelChain that is changed and others that are replaced by copies with the same content
+        var pixelMap = createProcessedMap();
+        var pixelChains = new ArrayList<>(pixelMap.pixelChains().toCollection());
+        var replacements = new ArrayList<Tuple2<ImmutablePixelChain, ImmutablePixelChain>>();
+        replacements.add(new Tuple2<>(pixelChains.get(0), pixelChains.get(0).withThickness(IPixelChain.Thickness.Thick)));
+        pixelChains.stream().skip(1).forEach(pc -> replacements.add(new Tuple2<>(pc, ImmutablePixelChain.copyOf(pc)
+                .withSegments(new ImmutableVectorClone<Segment>().addAll(pc.segments().toVector())))));
+        // WHEN
+        var actual = underTest.pixelChainsReplaceAll(pixelMap, replacements);
+        // THEN only the changed PixelChain is replaced, and the segmentIndex is the same as one built from scratch
+        assertEquals(pixelChains.size(), actual.pixelChains().size());
+        assertEquals(pixelMap.segmentCount(), actual.segmentCount());
+        pixelChains.stream().skip(1).forEach(pc -> assertTrue(actual.pixelChains().contains(pc)));
+        assertFalse(actual.pixelChains().contains(pixelChains.get(0)));
+        var rebuilt = actual.withSegmentIndexDeferred(true);
+        assertEquals(describeSegmentIndex(rebuilt), describeSegmentIndex(actual));
+        var pixelMapTestSupport = new PixelMapTestSupport();
+        assertEquals(pixelMapTestSupport.countUniquePixelChainsAndSegmentsInIndex(rebuilt),
+                pixelMapTestSupport.countUniquePixelChainsAndSegmentsInIndex(actual));
+    }
+
+    @Test
+    public void pixelChainsReplaceAll_01() {
+        // GIVEN PixelChains that are all replaced by copies with the same content
+        var pixelMap = createProcessedMap();
+        var replacements = pixelMap.pixelChains().stream()
+                .map(pc -> new Tuple2<>(pc, ImmutablePixelChain.copyOf(pc)
+                        .withVertexes(new ImmutableVectorClone<Vertex>().addAll(pc.vertexes().toVector()))))
+                .collect(Collectors.toList());
+        // WHEN
+        var actual = underTest.pixelChainsReplaceAll(pixelMap, replacements);
+        // THEN nothing changes
+        assertSame(pixelMap, actual);
+    }
+
     @Test
     public void write() throws IOException {
         // GIVEN
@@ -73,6 +190,80 @@ public class PixelMapServiceTest {
         assertEquals(88768, actual.data().size());
     }
 
+    /**
+     * Describes everything that is written of a PixelChain, as LineSegment has no equals.
+     */
+    private String describe(PixelChain pixelChain) {
+        var segments = pixelChain.segments().stream()
+                .map(s -> s instanceof StraightSegment
+                        ? "S" + s.getSegmentIndex() + ":" + s.getStartPosition() + ":" + ((StraightSegment) s).getLineSegment().getA()
+                        + ((StraightSegment) s).getLineSegment().getB()
+                        : "C" + s.getSegmentIndex() + ":" + s.getStartPosition() + ":" + ((CurveSegment) s).getA()
+                        + ((CurveSegment) s).getB() + ((CurveSegment) s).getP1())
+                .collect(Collectors.joining(","));
+        return pixelChain.pixels().toVector() + "|" + pixelChain.vertexes().toVector() + "|" + segments + "|"
+                + pixelChain.length() + "|" + pixelChain.thickness() + "|" + pixelChain.color();
+    }
+
+    /**
+     * Describes everything that is written of a PixelMap, so that only one PixelMap needs to be held at a time.
+     */
+    private List<String> describeAll(ImmutablePixelMap pixelMap) {
+        var description = pixelMap.pixelChains().stream().map(this::describe).sorted().collect(Collectors.toList());
+        description.add("nodes=" + pixelMap.nodes().size() + ", segmentCount=" + pixelMap.segmentCount());
+        var data = new StringBuilder();
+        for (int y = 0; y < pixelMap.height(); y++) {
+            for (int x = 0; x < pixelMap.width(); x++) {
+                data.append((char) pixelMap.data().get(x, y));
+            }
+        }
+        description.add(data.toString());
+        return description;
+    }
+
+    private List<String> writeNY2(SortedProperties db, String id) throws IOException {
+        var pixelMap = readPixelMap();
+        underTest.write(pixelMap, db, id);
+        return describeAll(pixelMap);
+    }
+
+    @Test
+    public void write_01() throws IOException {
+        // GIVEN
+        var db = new SortedProperties();
+        var id = "test";
+        // WHEN
+        var expected = writeNY2(db, id);
+        // THEN only the binary format is written, and everything in it is read back
+        assertNull(db.read(id + ".data"));
+        assertNull(db.read(id + ".objects"));
+        assertTrue(underTest.canRead(db, id));
+        assertEquals(expected, describeAll(underTest.read(db, id)));
+    }
+
+    @Test
+    public void write_02() throws IOException {
+        // GIVEN
+        var pixelMap = readPixelMap();
+        var db = new SortedProperties();
+        // WHEN
+        underTest.write(pixelMap, db, "test");
+        // THEN it is much smaller than the Java serialized form
+        var is = getClass().getResourceAsStream("NY2.transform");
+        var legacy = new PersistDB(is);
+        var legacyLength = legacy.read("transform.2.cannyEdge.data").length() + legacy.read("transform.2.cannyEdge.objects").length();
+        assertTrue(db.read("test.pixelMap").length() * 2 < legacyLength);
+    }
+
+    @Test(expected = IOException.class)
+    public void PixelMapFormat_read_00() throws IOException {
+        // GIVEN bytes of a later version
+        var bytes = PixelMapFormat.write(Utility.createMap(10, 10));
+        bytes[7] = (byte) (PixelMapFormat.VERSION + 1);
+        // WHEN
+        PixelMapFormat.read(bytes);
+    }
+
     @Test
     public void nodeAdd_00() {
         // GIVEN
@@ -145,4 +336,44 @@ public class PixelMapServiceTest {
         assertTrue(pixelService.isEdge(actual, position));
         assertFalse(pixelService.isNode(actual, position));
     }
+
+    @Test
+    public void pixelChainsAddAll_00() {
+        // GIVEN
+        String[] input = {
+                "           ",
+                "    E      ",
+                "   E E  E  ",
+                "   E E  E  ",
+                "   E E  E  ",
+                "    E   E  ",
+                "  EEEEEE   ",
+                "           ",
+        };
+        var pixelMap = Utility.createMap(input, false);
+        var transformSource = Utility.getDefaultTransformSource(input.length);
+        double tolerance = transformSource.getLineTolerance() / transformSource.getHeight();
+        double lineCurvePreference = transformSource.getLineCurvePreference();
+        pixelMap = context.getBean(PixelMapApproximationService.class)
+                .actionProcess(pixelMap, tolerance, lineCurvePreference, null);
+        var chains = pixelMap.pixelChains().toCollection();
+        var cleared = underTest.pixelChainsClear(pixelMap);
+        var expected = cleared;
+        for (var chain : chains) {
+            expected = underTest.pixelChainAdd(expected, chain);
+        }
+        // WHEN
+        var actual = underTest.pixelChainsAddAll(cleared, chains);
+        // THEN the single merge gives the same result as adding the chains one at a time
+        assertTrue(chains.size() > 1);
+        assertEquals(expected.pixelChains().toCollection(), actual.pixelChains().toCollection());
+        assertEquals(expected.segmentCount(), actual.segmentCount());
+        for (int x = 0; x < pixelMap.width(); x++) {
+            for (int y = 0; y < pixelMap.height(); y++) {
+                assertEquals(
+                        expected.segmentIndex().getOptional(x, y).map(ImmutableSet::toCollection),
+                        actual.segmentIndex().getOptional(x, y).map(ImmutableSet::toCollection));
+            }
+        }
+    }
 }
@@ -16,7 +16,7 @@ public class PixelMapTestSupport {
         var segments = new HashSet<Segment>();
         IntStream.range(0, pixelMap.width())
                 .forEach(x -> IntStream.range(0, pixelMap.height())
-                        .mapToObj(y -> pixelMap.segmentIndex().getOptional(x, y))
+                        .mapToObj(y -> pixelMap.currentSegmentIndex().getOptional(x, y))
                         .filter(s -> s.isPresent())
                         .flatMap(s -> s.get().stream())
                         .forEach(t2 -> {
@@ -1,23 +1,33 @@
 package com.ownimage.perception.pixelMap.services;
 
+import com.ownimage.framework.math.Point;
 import com.ownimage.framework.util.StrongReference;
 import com.ownimage.perception.pixelMap.IPixelChain;
+import com.ownimage.perception.pixelMap.IPixelMapTransformSource;
 import com.ownimage.perception.pixelMap.Utility;
 import com.ownimage.perception.pixelMap.immutable.ImmutableIXY;
+import com.ownimage.perception.pixelMap.immutable.ImmutablePixelMap;
+import com.ownimage.perception.pixelMap.immutable.LineRaster;
 import com.ownimage.perception.pixelMap.immutable.XY;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.logging.LogManager;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 
 public class PixelMapTransformServiceTest {
 
@@ -80,6 +90,192 @@ public class PixelMapTransformServiceTest {
         assertEquals(data.expected, actual);
     }
 
+    /**
+     * Creates a map with lines that cross several SegmentGrid cells, and that are thick, normal and without thickness in turn.
+     */
+    private ImmutablePixelMap createCrossingLines() {
+        String[] input = {
+                "               ",
+                "  NEEEEEEEEN   ",
+                "            E  ",
+                "   N         E ",
+                "    E        N ",
+                "     E         ",
+                "      N        ",
+                "               ",
+                " NEEEEEEEEEEN  ",
+                "               ",
+        };
+        var pixelMap = StrongReference.of(Utility.createMap(input, true));
+        var pixelChains = new ArrayList<>(pixelMap.get().pixelChains().toCollection());
+        var thickness = new IPixelChain.Thickness[]{IPixelChain.Thickness.Thick, IPixelChain.Thickness.Normal, IPixelChain.Thickness.None};
+        for (int i = 0; i < pixelChains.size(); i++) {
+            var original = pixelChains.get(i);
+            var updated = original.withThickness(thickness[i % thickness.length]);
+            pixelMap.update(pm -> pixelMapService.removePixelChain(pm, original));
+            pixelMap.update(pm -> pixelMapService.addPixelChain(pm, updated));
+        }
+        return pixelMap.get();
+    }
+
+    private void assertLinesFoundBySegmentGrid(ImmutablePixelMap pixelMap) {
+        var height = pixelMap.height();
+        // the line widths are thickness / 1000 so that they are inside the window that is searched, as they are with real images
+        var transformSource = Utility.getDefaultTransformSource(1000);
+        var background = new Color(0, 0, 0, 0);
+        var lineColor = new Color(255, 255, 255, 255);
+        var multiplier = 40.0d;
+        var hits = 0;
+        for (boolean thickOnly : new boolean[]{false, true}) {
+            for (int x = 0; x < 8 * pixelMap.width(); x++) {
+                for (int y = 0; y < 8 * height; y++) {
+                    var point = new Point((x + 0.5d) / (8 * pixelMap.width()), (y + 0.5d) / (8 * height));
+                    var uhvw = pixelMapService.toUHVW(pixelMap, point);
+                    var expected = pixelMap.pixelChains().stream()
+                            .filter(pc -> pc.thickness() != IPixelChain.Thickness.None)
+                            .filter(pc -> !thickOnly || pc.thickness() == IPixelChain.Thickness.Thick)
+                            .anyMatch(pc -> pc.streamSegments().anyMatch(s -> s.closerThanActual(pixelMap, pc, transformSource, uhvw, multiplier)));
+                    // WHEN
+                    var actual = underTest.transformGetLineColor(pixelMap, transformSource,
+                            point, background, lineColor, 1.0d, multiplier, thickOnly);
+                    // THEN the SegmentGrid finds a line exactly where a search of every segment does
+                    assertEquals("uhvw=" + uhvw + " thickOnly=" + thickOnly, expected ? lineColor : background, actual);
+                    hits += expected ? 1 : 0;
+                }
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void transformGetLineColor_00() {
+        // GIVEN a map with lines that cross several SegmentGrid cells
+        var pixelMap = createCrossingLines();
+        // WHEN THEN
+        assertLinesFoundBySegmentGrid(pixelMap);
+    }
+
+    @Test
+    public void transformGetLineColor_01() {
+        // GIVEN a map whose segmentIndex is deferred, so that the SegmentGrid is built from the PixelChains
+        var pixelMap = createCrossingLines().withSegmentIndexDeferred(true);
+        // WHEN THEN
+        assertLinesFoundBySegmentGrid(pixelMap);
+        assertTrue(pixelMap.segmentGrid().size() > 0);
+    }
+
+    @Test
+    public void transformGetLineColor_02() {
+        // GIVEN the lines drawn into LineRasters, with and without the thin lines, tapering at the ends as they do in the transform
+        var pixelMap = createCrossingLines();
+        var transformSource = mock(IPixelMapTransformSource.class, delegatesTo(Utility.getDefaultTransformSource(1000)));
+        doReturn(25).when(transformSource).getLineEndLengthPercent();
+        var multiplier = 80.0d;
+        var scale = 4;
+        var width = scale * pixelMap.width();
+        var height = scale * pixelMap.height();
+        var covered = 0;
+        for (boolean thickOnly : new boolean[]{false, true}) {
+            var lineRaster = new LineRaster(pixelMap, transformSource, multiplier, thickOnly, scale);
+            // WHEN each cell is compared with the search of every segment
+            var inside = new boolean[width * height];
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    var uhvw = new Point((x + 0.5d) / height, (y + 0.5d) / height);
+                    inside[x + y * width] = pixelMap.pixelChains().stream()
+                            .filter(pc -> pc.thickness() != IPixelChain.Thickness.None)
+                            .filter(pc -> !thickOnly || pc.thickness() == IPixelChain.Thickness.Thick)
+                            .anyMatch(pc -> pc.streamSegments().anyMatch(s -> s.closerThanActual(pixelMap, pc, transformSource, uhvw, multiplier)));
+                }
+            }
+            // THEN cells that are well inside a line are mostly covered and cells that are well outside are not covered at all
+            for (int x = 2; x < width - 2; x++) {
+                for (int y = 2; y < height - 2; y++) {
+                    var insideCount = 0;
+                    for (int dx = -2; dx <= 2; dx++) {
+                        for (int dy = -2; dy <= 2; dy++) {
+                            insideCount += inside[x + dx + (y + dy) * width] ? 1 : 0;
+                        }
+                    }
+                    var coverage = lineRaster.getCoverage((x + 0.5d) / height, (y + 0.5d) / height);
+                    var message = "x=" + x + " y=" + y + " thickOnly=" + thickOnly;
+                    if (insideCount == 25) {
+                        assertTrue(message, coverage > 0.5d);
+                        assertTrue(message, !thickOnly || lineRaster.getPixelChain((x + 0.5d) / height, (y + 0.5d) / height)
+                                .thickness() == IPixelChain.Thickness.Thick);
+                        covered++;
+                    }
+                    if (insideCount == 0) {
+                        assertEquals(message, 0.0d, coverage, 0.0d);
+                    }
+                }
+            }
+        }
+        assertTrue(covered > 0);
+    }
+
+    @Test
+    public void transformGetLineColor_03() {
+        // GIVEN a thick line with its own color drawn into a LineRaster
+        String[] input = {
+                "          ",
+                "  NEEEEN  ",
+                "          ",
+                "          ",
+                "          ",
+        };
+        var pixelMap = StrongReference.of(Utility.createMap(input, true));
+        var originalPixelChain = pixelMap.get().pixelChains().stream().findFirst().orElseThrow();
+        var green = new Color(0, 255, 0, 255);
+        var newPixelChain = originalPixelChain.withThickness(IPixelChain.Thickness.Thick).withColor(green);
+        pixelMap.update(pm -> pixelMapService.removePixelChain(pm, originalPixelChain));
+        pixelMap.update(pm -> pixelMapService.addPixelChain(pm, newPixelChain));
+        var transformSource = mock(IPixelMapTransformSource.class, delegatesTo(Utility.getDefaultTransformSource(1000)));
+        doReturn(true).when(transformSource).getShowLines();
+        doReturn(1.0d).when(transformSource).getLineOpacity();
+        doReturn(new Color(0, 0, 255, 255)).when(transformSource).getLineColor();
+        var lineRaster = new LineRaster(pixelMap.get(), transformSource, 100.0d, false, 4);
+        var background = new Color(0, 0, 0, 0);
+        // WHEN
+        var hit = underTest.transformGetLineColor(pixelMap.get(), transformSource,
+                new Point(5.5d / 10, 1.5d / 5), background, lineRaster);
+        var miss = underTest.transformGetLineColor(pixelMap.get(), transformSource,
+                new Point(5.5d / 10, 4.5d / 5), background, lineRaster);
+        // THEN
+        assertEquals(green, hit);
+        assertEquals(background, miss);
+    }
+
+    @Test
+    public void getChangedBounds_00() {
+        // GIVEN
+        var pixelMap = createCrossingLines();
+        var transformSource = Utility.getDefaultTransformSource(pixelMap.height());
+        // WHEN
+        var actual = underTest.getChangedBounds(pixelMap, pixelMap, transformSource);
+        // THEN
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void getChangedBounds_01() {
+        // GIVEN a map where the color of the line that is on its own has changed
+        var before = createCrossingLines();
+        var original = before.pixelChains().stream().filter(pc -> pc.pixels().size() == 12).findFirst().orElseThrow();
+        var updated = original.withColor(new Color(0, 255, 0, 255));
+        var after = pixelMapService.addPixelChain(pixelMapService.removePixelChain(before, original), updated);
+        var transformSource = Utility.getDefaultTransformSource(before.height());
+        // WHEN
+        var actual = underTest.getChangedBounds(before, after, transformSource).orElseThrow();
+        // THEN the bounds cover the line, but none of the others
+        after.pixelChains().forEach(pc -> pc.pixels().forEach(p -> {
+            var uhvw = p.getUHVWMidPoint(after.height());
+            var inside = actual.getLeft() <= uhvw.getX() && uhvw.getX() <= actual.getRight()
+                    && actual.getBottom() <= uhvw.getY() && uhvw.getY() <= actual.getTop();
+            assertEquals(p.toString(), pc.color().isPresent(), inside);
+        }));
+    }
+
     public static class TestData {
         @Getter
         private XY testPoint;
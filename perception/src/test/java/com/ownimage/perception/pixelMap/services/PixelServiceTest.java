@@ -1,6 +1,6 @@
 package com.ownimage.perception.pixelMap.services;
 
-import com.ownimage.framework.util.immutable.ImmutableMap2D;
+import com.ownimage.framework.util.immutable.ImmutableByteMap2D;
 import com.ownimage.perception.pixelMap.immutable.ImmutableIXY;
 import com.ownimage.perception.pixelMap.immutable.PixelMap;
 import junit.framework.TestCase;
@@ -27,7 +27,7 @@ public class PixelServiceTest extends TestCase {
     @Mock
     private PixelMap pixelMap;
     @Mock
-    private ImmutableMap2D<Byte> data;
+    private ImmutableByteMap2D data;
 
     @BeforeClass
     public static void turnLoggingOff() {
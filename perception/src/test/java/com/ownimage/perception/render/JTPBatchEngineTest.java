@@ -0,0 +1,94 @@
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.control.type.PictureType;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JTPBatchEngineTest {
+
+    private RenderService mRenderService;
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Before
+    public void setUp() {
+        mRenderService = mock(RenderService.class);
+        when(mRenderService.getBaseBatchEngine()).thenReturn(new BaseBatchEngine());
+    }
+
+    private PictureType renderSingleThreaded(final IBatchTransform pTransform, final int pWidth, final int pHeight, final int pBatchSize) {
+        final PictureType picture = new PictureType(pWidth, pHeight);
+        final BaseBatchEngine engine = new BaseBatchEngine();
+        final TransformResultBatch batch = new TransformResultBatch(mRenderService, pBatchSize);
+        batch.initialize(picture, engine, pBatchSize);
+        while (batch.getYCurrent() < batch.getYEnd()) {
+            batch.next(2);
+            for (IBatchTransform transform = pTransform; transform != null; transform = transform.getPreviousTransform()) {
+                engine.transform(batch, transform);
+            }
+            batch.render(picture, 2);
+        }
+        return picture;
+    }
+
+    @Test
+    public void render_00() {
+        // GIVEN a batch size that does not divide the picture so that the last batch is a partial one
+        final IBatchTransform transform = StubBatchTransform.gradient(StubBatchTransform.gradient(null));
+        final PictureType expected = renderSingleThreaded(transform, 97, 61, 1000);
+        final PictureType actual = new PictureType(97, 61);
+        final JTPBatchEngine underTest = new JTPBatchEngine(mRenderService, 3, 64);
+        final AtomicInteger progress = new AtomicInteger();
+        // WHEN
+        underTest.render(actual, transform, 2, 1000, progress::set, () -> false);
+        // THEN
+        for (int x = 0; x < 97; x++) {
+            for (int y = 0; y < 61; y++) {
+                assertEquals(expected.getColor(x, y), actual.getColor(x, y));
+            }
+        }
+        assertEquals(100, progress.get());
+    }
+
+    @Test
+    public void render_01() {
+        // GIVEN a render that is terminated straight away
+        final IBatchTransform transform = StubBatchTransform.gradient(null);
+        final PictureType actual = new PictureType(50, 50);
+        final JTPBatchEngine underTest = new JTPBatchEngine(mRenderService, 2, 64);
+        final AtomicInteger progress = new AtomicInteger(-1);
+        // WHEN
+        underTest.render(actual, transform, 1, 100, progress::set, () -> true);
+        // THEN nothing is written back
+        assertEquals(-1, progress.get());
+    }
+
+    @Test
+    public void transformNew_00() {
+        // GIVEN
+        final IBatchTransform transform = StubBatchTransform.gradient(null);
+        final PictureType picture = new PictureType(20, 10);
+        final JTPBatchEngine underTest = new JTPBatchEngine(mRenderService, 3, 64);
+        final TransformResultBatch batch = new TransformResultBatch(mRenderService, 200);
+        batch.initialize(picture, underTest, 200);
+        batch.next(1);
+        // WHEN
+        underTest.transformNew(batch, transform);
+        // THEN every sample is transformed exactly once
+        for (int i = 0; i < batch.getBatchSize(); i++) {
+            assertEquals(batch.getX()[i], batch.getR()[i], 1.0e-6d);
+            assertEquals(1.0f, batch.getA()[i], 0.0f);
+        }
+    }
+}
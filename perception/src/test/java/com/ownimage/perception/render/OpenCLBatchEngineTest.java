@@ -0,0 +1,162 @@
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.transform.CircleMaskTransform;
+import com.ownimage.perception.transform.CropTransform;
+import com.ownimage.perception.transform.LayerCakeTransform;
+import com.ownimage.perception.transform.PolarTransform;
+import com.ownimage.perception.transform.QuadSpaceTransform;
+import com.ownimage.perception.transform.RotateTransform;
+import com.ownimage.perception.transform.SquarePolarTransform;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OpenCLBatchEngineTest {
+
+    private static final int WIDTH = 41;
+    private static final int HEIGHT = 37;
+    private static final int OVERSAMPLE = 2;
+
+    private RenderService mRenderService;
+    private BaseBatchEngine mBaseBatchEngine;
+    private OpenCLBatchEngine mUnderTest;
+
+    @BeforeClass
+    public static void setViewFactory() {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+    }
+
+    @Before
+    public void setUp() {
+        mBaseBatchEngine = new BaseBatchEngine();
+        mRenderService = mock(RenderService.class);
+        when(mRenderService.getBaseBatchEngine()).thenReturn(mBaseBatchEngine);
+        mUnderTest = new OpenCLBatchEngine(mRenderService);
+    }
+
+    @After
+    public void tearDown() {
+        mUnderTest.dispose();
+    }
+
+    private TransformResultBatch createBatch(final IBatchEngine pOwner) {
+        final TransformResultBatch batch = new TransformResultBatch(mRenderService, WIDTH * HEIGHT * OVERSAMPLE * OVERSAMPLE);
+        batch.initialize(WIDTH, HEIGHT, pOwner, WIDTH * HEIGHT * OVERSAMPLE * OVERSAMPLE, 0, 0, WIDTH, HEIGHT);
+        batch.next(OVERSAMPLE);
+        return batch;
+    }
+
+    /**
+     * Runs the transforms, last transform first, in Java and through the engine under test and checks that the results are the same.
+     */
+    private void assertSameAsJava(final IBatchTransform... pTransforms) {
+        // GIVEN
+        final TransformResultBatch expected = createBatch(mBaseBatchEngine);
+        final TransformResultBatch actual = createBatch(mUnderTest);
+        // WHEN
+        for (final IBatchTransform transform : pTransforms) {
+            transform.transform(expected, 0, expected.getBatchSize());
+            mUnderTest.transform(actual, transform);
+        }
+        actual.moveTo(mBaseBatchEngine);
+        // THEN
+        assertSameBatch(expected, actual);
+    }
+
+    private void assertSameBatch(final TransformResultBatch pExpected, final TransformResultBatch pActual) {
+        assertEquals(pExpected.getBatchSize(), pActual.getBatchSize());
+        assertArrayEquals(pExpected.getX(), pActual.getX(), 0.0d);
+        assertArrayEquals(pExpected.getY(), pActual.getY(), 0.0d);
+        assertArrayEquals(pExpected.getR(), pActual.getR(), 0.0f);
+        assertArrayEquals(pExpected.getG(), pActual.getG(), 0.0f);
+        assertArrayEquals(pExpected.getB(), pActual.getB(), 0.0f);
+        assertArrayEquals(pExpected.getA(), pActual.getA(), 0.0f);
+    }
+
+    @Test
+    public void transform_rotate_00() {
+        assertSameAsJava(new RotateTransform(null));
+    }
+
+    @Test
+    public void transform_rotate_01() {
+        // GIVEN point rotate, which colors the samples that rotate out of the picture
+        final RotateTransform transform = new RotateTransform(null);
+        final PersistDB db = new PersistDB();
+        db.write("rotate.point", "true");
+        transform.read(db, "");
+        // WHEN THEN
+        assertSameAsJava(transform);
+    }
+
+    @Test
+    public void transform_polar_00() {
+        assertSameAsJava(new PolarTransform(null));
+    }
+
+    @Test
+    public void transform_squarePolar_00() {
+        assertSameAsJava(new SquarePolarTransform(null));
+    }
+
+    @Test
+    public void transform_crop_00() {
+        assertSameAsJava(new CropTransform(null));
+    }
+
+    @Test
+    public void transform_circleMask_00() {
+        assertSameAsJava(new CircleMaskTransform(null));
+    }
+
+    @Test
+    public void transform_layerCake_00() {
+        assertSameAsJava(new LayerCakeTransform(null));
+    }
+
+    @Test
+    public void transform_quadSpace_00() {
+        assertSameAsJava(new QuadSpaceTransform(null));
+    }
+
+    @Test
+    public void transform_chain_00() {
+        // GIVEN consecutive kernel transforms with a Java transform at the start of the chain, so the batch stays on the kernel
+        // until it has to move back to Java
+        assertSameAsJava(new CircleMaskTransform(null), new PolarTransform(null), new RotateTransform(null), StubBatchTransform.gradient(null));
+    }
+
+    @Test
+    public void transform_batches_00() {
+        // GIVEN two batches that are on the device at the same time, as they are when two pictures are rendered at once
+        final IBatchTransform rotate = new RotateTransform(null);
+        final IBatchTransform polar = new PolarTransform(null);
+        final TransformResultBatch expected1 = createBatch(mBaseBatchEngine);
+        final TransformResultBatch expected2 = createBatch(mBaseBatchEngine);
+        rotate.transform(expected1, 0, expected1.getBatchSize());
+        polar.transform(expected2, 0, expected2.getBatchSize());
+        final TransformResultBatch actual1 = createBatch(mUnderTest);
+        final TransformResultBatch actual2 = createBatch(mUnderTest);
+        // WHEN
+        mUnderTest.transform(actual1, rotate);
+        mUnderTest.transform(actual2, polar);
+        actual1.moveTo(mBaseBatchEngine);
+        actual2.moveTo(mBaseBatchEngine);
+        // THEN each batch only has its own transform applied
+        assertSameBatch(expected1, actual1);
+        assertSameBatch(expected2, actual2);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ownimage.perception.render;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenderCacheTest {
+
+    private static IBatchTransform transform(final Object pKey) {
+        final IBatchTransform transform = mock(IBatchTransform.class);
+        when(transform.getUseTransform()).thenReturn(true);
+        when(transform.getRenderCacheKey()).thenReturn(Optional.ofNullable(pKey));
+        return transform;
+    }
+
+    private static RenderCache.Key key(final Object pKey) {
+        return RenderCache.getKeys(Collections.singletonList(transform(pKey)), 10, 10, 1, 16)[0];
+    }
+
+    private static float[][] field(final int pFloats) {
+        return new float[][]{new float[pFloats]};
+    }
+
+    @Test
+    public void put_00() {
+        // GIVEN a budget of two fields
+        final RenderCache underTest = new RenderCache(2 * 4 * 100);
+        final float[][] a = field(100);
+        final float[][] b = field(100);
+        underTest.put(key("a"), a);
+        underTest.put(key("b"), b);
+        underTest.get(key("a"));
+        // WHEN
+        underTest.put(key("c"), field(100));
+        // THEN the least recently used is dropped
+        assertSame(a, underTest.get(key("a")).get());
+        assertFalse(underTest.contains(key("b")));
+        assertTrue(underTest.contains(key("c")));
+        assertEquals(2 * 4 * 100, underTest.getSize());
+    }
+
+    @Test
+    public void put_01() {
+        // GIVEN WHEN a field that is larger than the budget
+        final RenderCache underTest = new RenderCache(100);
+        underTest.put(key("a"), field(100));
+        // THEN
+        assertFalse(underTest.contains(key("a")));
+        assertEquals(0, underTest.getSize());
+    }
+
+    @Test
+    public void setContext_00() {
+        // GIVEN
+        final RenderCache underTest = new RenderCache(1000);
+        underTest.setContext("a");
+        underTest.put(key("a"), field(10));
+        // WHEN the context is unchanged THEN the field is kept
+        underTest.setContext("a");
+        assertTrue(underTest.contains(key("a")));
+        // WHEN the context changes THEN the field is dropped
+        underTest.setContext("b");
+        assertFalse(underTest.contains(key("a")));
+    }
+
+    @Test
+    public void getKeys_00() {
+        // GIVEN a chain whose middle transform cannot be cached
+        final List<IBatchTransform> transforms = List.of(transform("last"), transform(null), transform("first"));
+        // WHEN
+        final RenderCache.Key[] actual = RenderCache.getKeys(transforms, 10, 10, 1, 16);
+        // THEN only the output of the first transform has a key
+        assertNull(actual[0]);
+        assertNull(actual[1]);
+        assertEquals(RenderCache.getKeys(List.of(transform("first")), 10, 10, 1, 16)[0], actual[2]);
+    }
+
+    @Test
+    public void identity_00() {
+        final Object object = new Object();
+        assertEquals(RenderCache.identity(object), RenderCache.identity(object));
+        assertFalse(RenderCache.identity("a").equals(RenderCache.identity(new String("a"))));
+    }
+}
@@ -0,0 +1,122 @@
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.control.container.Container;
+import com.ownimage.framework.control.control.PictureControl;
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.queue.IJob.Status;
+import com.ownimage.framework.undo.UndoRedoBuffer;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.app.Services;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RenderServiceTest {
+
+    @BeforeClass
+    public static void setUpProperties() throws Exception {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+        // render on the Base engine in small batches so that the batches of concurrent jobs interleave
+        final PersistDB db = new PersistDB();
+        Services.getServices().getProperties().write(db, "");
+        db.write("properties.useTileEngine", "false");
+        db.write("properties.useJTP", "false");
+        db.write("properties.useOpenCL", "false");
+        db.write("properties.batchSize", "50");
+        Services.getServices().getProperties().read(db, "");
+    }
+
+    @AfterClass
+    public static void resetProperties() {
+        Services.getServices().getProperties().reset();
+    }
+
+    private static PictureType render(final RenderService pRenderService, final IBatchTransform pTransform, final int pWidth, final int pHeight) throws InterruptedException {
+        final PictureType picture = new PictureType(pWidth, pHeight);
+        final RenderService.RenderJob job = pRenderService.getRenderJobBuilder("test", picture, pTransform).build();
+        job.run();
+        assertEquals(Status.COMPLETE, job.await());
+        return picture;
+    }
+
+    private static void assertSamePicture(final PictureType pExpected, final PictureType pActual) {
+        for (int x = 0; x < pExpected.getWidth(); x++) {
+            for (int y = 0; y < pExpected.getHeight(); y++) {
+                assertEquals(pExpected.getColor(x, y), pActual.getColor(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void render_00() throws InterruptedException {
+        // GIVEN two pictures of different sizes rendered one at a time
+        final RenderService underTest = new RenderService();
+        final IBatchTransform transform = StubBatchTransform.gradient(null);
+        final PictureType expected1 = render(underTest, transform, 197, 113);
+        final PictureType expected2 = render(underTest, transform, 89, 151);
+        final PictureType actual1 = new PictureType(197, 113);
+        final PictureType actual2 = new PictureType(89, 151);
+        final RenderService.RenderJob job1 = underTest.getRenderJobBuilder("test1", actual1, transform).build();
+        final RenderService.RenderJob job2 = underTest.getRenderJobBuilder("test2", actual2, transform).build();
+        // WHEN they are rendered at the same time
+        job1.run();
+        job2.run();
+        // THEN neither job writes the samples of the other into its picture
+        assertEquals(Status.COMPLETE, job1.await());
+        assertEquals(Status.COMPLETE, job2.await());
+        assertSamePicture(expected1, actual1);
+        assertSamePicture(expected2, actual2);
+    }
+
+    @Test(timeout = 60000)
+    public void await_00() throws InterruptedException {
+        // GIVEN a large render, and a small one for the same control object that is run straight after it
+        final RenderService underTest = new RenderService();
+        final IBatchTransform transform = StubBatchTransform.gradient(null);
+        final Object controlObject = new Object();
+        final RenderService.RenderJob replaced = underTest.getRenderJobBuilder("replaced", new PictureType(1000, 1000), transform)
+                .withControlObject(controlObject).build();
+        final RenderService.RenderJob job = underTest.getRenderJobBuilder("job", new PictureType(89, 151), transform)
+                .withControlObject(controlObject).build();
+        // WHEN
+        replaced.run();
+        job.run();
+        // THEN waiting for the replaced job returns as soon as it has been cancelled or terminated
+        final Status status = replaced.await();
+        assertTrue(status.toString(), status == Status.CANCELLED || status == Status.TERMINATED);
+        assertEquals(Status.COMPLETE, job.await());
+    }
+
+    @Test
+    public void render_01() throws InterruptedException {
+        // GIVEN a progressive render into a PictureControl
+        final RenderService underTest = new RenderService();
+        final IBatchTransform transform = StubBatchTransform.gradient(null);
+        final PictureType expected = render(underTest, transform, 197, 113);
+        final UndoRedoBuffer undoRedoBuffer = new UndoRedoBuffer(100);
+        final Container container = new Container("x", "x", () -> undoRedoBuffer);
+        final PictureControl control = new PictureControl("Preview", "preview", container, new PictureType(197, 113));
+        final List<PictureType> published = new ArrayList<>();
+        control.addControlChangeListener((c, m) -> published.add(control.getValue()));
+        final RenderService.RenderJob job = underTest.getRenderJobBuilder("test", control, transform).withProgressive(true).build();
+        // WHEN
+        job.run();
+        // THEN the passes at 1/4 and 1/2 are written into the same picture as the full render, which is published last
+        assertEquals(Status.COMPLETE, job.await());
+        assertEquals(3, published.size());
+        published.forEach(picture -> assertSame(control.getValue(), picture));
+        assertSamePicture(expected, control.getValue());
+    }
+}
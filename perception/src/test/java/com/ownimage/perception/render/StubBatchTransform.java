@@ -0,0 +1,136 @@
+package com.ownimage.perception.render;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * An IBatchTransform for the tests of the batch engines and the transform chain. It runs a function over each sample of a batch,
+ * and counts the number of times that it is run over a range of samples. Whether it is used, how it is classified and its
+ * RenderCache key can be set with the with... methods.
+ */
+class StubBatchTransform implements IBatchTransform {
+
+    /**
+     * Transforms the sample at pIndex of pBatch.
+     */
+    @FunctionalInterface
+    interface SampleFunction {
+        void apply(ITransformResultBatch pBatch, int pIndex);
+    }
+
+    private final String mDisplayName;
+    private final IBatchTransform mPreviousTransform;
+    private final SampleFunction mFunction;
+    private final AtomicInteger mCalls = new AtomicInteger();
+    private boolean mUseTransform = true;
+    private boolean mColorOnly = false;
+    private boolean mCoordinateOnly = false;
+    private boolean mIndependentOfColor = false;
+    private Supplier<Optional<Object>> mRenderCacheKey = Optional::empty;
+
+    StubBatchTransform(final String pDisplayName, final IBatchTransform pPreviousTransform, final SampleFunction pFunction) {
+        mDisplayName = pDisplayName;
+        mPreviousTransform = pPreviousTransform;
+        mFunction = pFunction;
+    }
+
+    /**
+     * Colors each sample from its position, so that any sample that is generated, transformed or written back in the wrong place
+     * shows up in the picture.
+     *
+     * @param pPreviousTransform the previous transform, or null
+     * @return the transform
+     */
+    static StubBatchTransform gradient(final IBatchTransform pPreviousTransform) {
+        return new StubBatchTransform("Gradient", pPreviousTransform, (pBatch, i) -> pBatch.setRGBA(i,
+                (float) pBatch.getX()[i], (float) pBatch.getY()[i], (float) (pBatch.getX()[i] * pBatch.getY()[i]), 1.0f));
+    }
+
+    StubBatchTransform withUseTransform(final boolean pUseTransform) {
+        mUseTransform = pUseTransform;
+        return this;
+    }
+
+    StubBatchTransform withColorOnly(final boolean pColorOnly) {
+        mColorOnly = pColorOnly;
+        return this;
+    }
+
+    StubBatchTransform withCoordinateOnly(final boolean pCoordinateOnly) {
+        mCoordinateOnly = pCoordinateOnly;
+        return this;
+    }
+
+    StubBatchTransform withIndependentOfColor(final boolean pIndependentOfColor) {
+        mIndependentOfColor = pIndependentOfColor;
+        return this;
+    }
+
+    StubBatchTransform withRenderCacheKey(final Supplier<Optional<Object>> pRenderCacheKey) {
+        mRenderCacheKey = pRenderCacheKey;
+        return this;
+    }
+
+    int getCalls() {
+        return mCalls.get();
+    }
+
+    @Override
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    @Override
+    public IBatchEngine getPreferredBatchEngine() {
+        return null;
+    }
+
+    @Override
+    public IBatchTransform getPreviousTransform() {
+        return mPreviousTransform;
+    }
+
+    @Override
+    public boolean getUseTransform() {
+        return mUseTransform;
+    }
+
+    @Override
+    public void transform(final ITransformResult pRenderResult) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void transform(final ITransformResultBatch pBatch) {
+        transform(pBatch, 0, pBatch.getBatchSize());
+    }
+
+    @Override
+    public void transform(final ITransformResultBatch pBatch, final int pStart, final int pStop) {
+        mCalls.incrementAndGet();
+        for (int i = pStart; i < pStop; i++) {
+            mFunction.apply(pBatch, i);
+        }
+    }
+
+    @Override
+    public Optional<Object> getRenderCacheKey() {
+        return mRenderCacheKey.get();
+    }
+
+    @Override
+    public boolean isColorOnly() {
+        return mColorOnly;
+    }
+
+    @Override
+    public boolean isCoordinateOnly() {
+        return mCoordinateOnly;
+    }
+
+    @Override
+    public boolean isIndependentOfColor() {
+        return mIndependentOfColor;
+    }
+}
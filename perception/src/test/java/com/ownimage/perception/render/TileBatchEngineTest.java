@@ -0,0 +1,176 @@
+package com.ownimage.perception.render;
+
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.math.Bounds;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Optional;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TileBatchEngineTest {
+
+    private RenderService mRenderService;
+
+    private Color mOverlayColor = new Color(255, 0, 0, 128);
+
+    /**
+     * Colours each sample from its position so that any sample that is rendered into the wrong place shows up.
+     */
+    private static StubBatchTransform createGradient() {
+        return StubBatchTransform.gradient(null)
+                .withRenderCacheKey(() -> Optional.of("gradient"))
+                .withIndependentOfColor(true);
+    }
+
+    /**
+     * Puts a translucent color over the left half of the picture, like a CannyEdgeTransform at the end of a chain puts lines over
+     * the picture.
+     */
+    private StubBatchTransform createOverlay(final IBatchTransform pPreviousTransform) {
+        return new StubBatchTransform("Overlay", pPreviousTransform, (pBatch, i) -> {
+            if (pBatch.getX()[i] < 0.5d) {
+                pBatch.setRGBA(i, mOverlayColor.getRGBComponents(null));
+            }
+        }).withRenderCacheKey(() -> Optional.of(mOverlayColor)).withColorOnly(true);
+    }
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Before
+    public void setUp() {
+        mRenderService = mock(RenderService.class);
+        when(mRenderService.getBaseBatchEngine()).thenReturn(new BaseBatchEngine());
+    }
+
+    @Test
+    public void renderStrip_00() {
+        // GIVEN a picture and strips that do not line up with the tiles
+        final IBatchTransform transform = createGradient();
+        final int width = 53;
+        final int height = 41;
+        final PictureType expected = new PictureType(width, height);
+        final TileBatchEngine underTest = new TileBatchEngine(mRenderService, 2, 16);
+        underTest.render(expected, transform, 2, p -> {
+        }, () -> false);
+        final int[] strip = new int[width * 12];
+        for (int yEnd = height; yEnd > 0; yEnd -= 12) {
+            final int yStart = Math.max(0, yEnd - 12);
+            // WHEN
+            underTest.renderStrip(width, height, transform, 2, yStart, yEnd, strip, () -> false);
+            // THEN the strip is top row first and matches the picture rendered in one go
+            for (int row = 0; row < yEnd - yStart; row++) {
+                for (int x = 0; x < width; x++) {
+                    final int y = yEnd - row - 1;
+                    assertEquals("x=" + x + " y=" + y,
+                            expected.getColor(x, y).get().getRGB() & 0xFFFFFF, strip[row * width + x] & 0xFFFFFF);
+                }
+            }
+        }
+    }
+
+    private void assertSamePicture(final PictureType pExpected, final PictureType pActual) {
+        for (int x = 0; x < pExpected.getWidth(); x++) {
+            for (int y = 0; y < pExpected.getHeight(); y++) {
+                assertEquals("x=" + x + " y=" + y, pExpected.getColor(x, y).get(), pActual.getColor(x, y).get());
+            }
+        }
+    }
+
+    private PictureType render(final TileBatchEngine pUnderTest, final IBatchTransform pTransform, final RenderCache pRenderCache) {
+        final PictureType picture = new PictureType(37, 29);
+        pUnderTest.render(picture, pTransform, 2, p -> {
+        }, () -> false, pRenderCache);
+        return picture;
+    }
+
+    @Test
+    public void render_cache_00() {
+        // GIVEN a gradient with an overlay on top of it, and an empty cache
+        final StubBatchTransform gradient = createGradient();
+        final StubBatchTransform overlay = createOverlay(gradient);
+        final TileBatchEngine underTest = new TileBatchEngine(mRenderService, 2, 16);
+        final RenderCache renderCache = new RenderCache(1024 * 1024);
+        assertFalse(underTest.isCached(renderCache, 37, 29, overlay, 2));
+        // WHEN
+        final PictureType actual = render(underTest, overlay, renderCache);
+        // THEN the picture is the same as one rendered without the cache
+        assertSamePicture(render(underTest, overlay, null), actual);
+        assertTrue(underTest.isCached(renderCache, 37, 29, overlay, 2));
+        assertFalse(underTest.isCached(renderCache, 37, 29, overlay, 1));
+    }
+
+    @Test
+    public void render_cache_01() {
+        // GIVEN a cache that holds the gradient
+        final StubBatchTransform gradient = createGradient();
+        final StubBatchTransform overlay = createOverlay(gradient);
+        final TileBatchEngine underTest = new TileBatchEngine(mRenderService, 2, 16);
+        final RenderCache renderCache = new RenderCache(1024 * 1024);
+        render(underTest, overlay, renderCache);
+        mOverlayColor = new Color(0, 0, 255, 64);
+        final int gradientCalls = gradient.getCalls();
+        final int overlayCalls = overlay.getCalls();
+        // WHEN the overlay changes
+        final PictureType actual = render(underTest, overlay, renderCache);
+        // THEN only the overlay is run again
+        assertEquals(gradientCalls, gradient.getCalls());
+        assertTrue(overlay.getCalls() > overlayCalls);
+        assertSamePicture(render(underTest, overlay, null), actual);
+    }
+
+    @Test
+    public void render_cache_02() {
+        // GIVEN a cache that holds the whole chain
+        final StubBatchTransform gradient = createGradient();
+        final StubBatchTransform overlay = createOverlay(gradient);
+        final TileBatchEngine underTest = new TileBatchEngine(mRenderService, 2, 16);
+        final RenderCache renderCache = new RenderCache(1024 * 1024);
+        final PictureType expected = render(underTest, overlay, renderCache);
+        final int gradientCalls = gradient.getCalls();
+        final int overlayCalls = overlay.getCalls();
+        // WHEN nothing has changed
+        final PictureType actual = render(underTest, overlay, renderCache);
+        // THEN nothing is run again
+        assertEquals(gradientCalls, gradient.getCalls());
+        assertEquals(overlayCalls, overlay.getCalls());
+        assertSamePicture(expected, actual);
+    }
+
+    @Test
+    public void renderRegion_00() {
+        // GIVEN a picture rendered with a cache that holds the gradient
+        final StubBatchTransform gradient = createGradient();
+        final StubBatchTransform overlay = createOverlay(gradient);
+        final TileBatchEngine underTest = new TileBatchEngine(mRenderService, 2, 16);
+        final RenderCache renderCache = new RenderCache(1024 * 1024);
+        final PictureType before = render(underTest, overlay, renderCache);
+        final PictureType actual = render(underTest, overlay, renderCache);
+        mOverlayColor = new Color(0, 0, 255, 64);
+        final int gradientCalls = gradient.getCalls();
+        // WHEN only a region that touches the bottom left two tiles is rendered again
+        underTest.renderRegion(actual, overlay, 2, new Bounds(10, 5, 20, 12), p -> {
+        }, () -> false, renderCache);
+        // THEN the gradient is not run again, those tiles are the same as a new render and the rest of the picture is as it was
+        assertEquals(gradientCalls, gradient.getCalls());
+        final PictureType after = render(underTest, overlay, null);
+        for (int x = 0; x < actual.getWidth(); x++) {
+            for (int y = 0; y < actual.getHeight(); y++) {
+                final PictureType expected = x < 32 && y < 16 ? after : before;
+                assertEquals("x=" + x + " y=" + y, expected.getColor(x, y).get(), actual.getColor(x, y).get());
+            }
+        }
+        assertFalse(before.getColor(5, 5).get().equals(actual.getColor(5, 5).get()));
+    }
+}
@@ -0,0 +1,147 @@
+package com.ownimage.perception.render;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransformChainTest {
+
+    private RenderService mRenderService;
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Before
+    public void setUp() {
+        mRenderService = mock(RenderService.class);
+        when(mRenderService.getBaseBatchEngine()).thenReturn(new BaseBatchEngine());
+    }
+
+    /**
+     * Maps the samples with a shift and a skew, coloring those that are mapped out of the picture, so that running the transforms
+     * in the wrong order or over the wrong samples shows up.
+     */
+    private static StubBatchTransform shift(final IBatchTransform pPrevious, final double pShift, final boolean pCoordinateOnly) {
+        return new StubBatchTransform("Shift" + pShift, pPrevious, (pBatch, i) -> {
+            final double x = pBatch.getX()[i] + pShift;
+            final double y = pBatch.getY()[i] + pShift * pBatch.getX()[i];
+            if (x > 1.0d || y > 1.0d) {
+                pBatch.setRGBA(i, (float) pShift, 0.5f, (float) x, 0.5f);
+            }
+            pBatch.getX()[i] = x % 1.0d;
+            pBatch.getY()[i] = y % 1.0d;
+        }).withCoordinateOnly(pCoordinateOnly);
+    }
+
+    private TransformResultBatch createBatch(final int pWidth, final int pHeight) {
+        final TransformResultBatch batch = new TransformResultBatch(mRenderService, pWidth * pHeight);
+        batch.initialize(pWidth, pHeight, mRenderService.getBaseBatchEngine(), pWidth * pHeight, 0, 0, pWidth, pHeight);
+        batch.next(1);
+        return batch;
+    }
+
+    @Test
+    public void compile_00() {
+        // GIVEN a chain, last transform first: coordinate, coordinate, color, coordinate, disabled coordinate, coordinate
+        final StubBatchTransform t6 = shift(null, 0.6d, true);
+        final StubBatchTransform t5 = shift(t6, 0.5d, true).withUseTransform(false);
+        final StubBatchTransform t4 = shift(t5, 0.4d, true);
+        final StubBatchTransform t3 = shift(t4, 0.3d, false);
+        final StubBatchTransform t2 = shift(t3, 0.2d, true);
+        final StubBatchTransform t1 = shift(t2, 0.1d, true);
+        // WHEN
+        final List<IBatchTransform> actual = TransformChain.compile(t1);
+        // THEN the disabled transform is left out and the runs either side of the color transform are fused
+        assertEquals(3, actual.size());
+        assertTrue(actual.get(0) instanceof TransformChain.FusedTransform);
+        assertEquals(Arrays.asList(t1, t2), ((TransformChain.FusedTransform) actual.get(0)).getTransforms());
+        assertSame(t3, actual.get(1));
+        assertEquals(Arrays.asList(t4, t6), ((TransformChain.FusedTransform) actual.get(2)).getTransforms());
+    }
+
+    @Test
+    public void compile_01() {
+        // GIVEN a single coordinate only transform
+        final StubBatchTransform t2 = shift(null, 0.2d, false);
+        final StubBatchTransform t1 = shift(t2, 0.1d, true);
+        // WHEN
+        final List<IBatchTransform> actual = TransformChain.compile(t1);
+        // THEN there is nothing to fuse it with
+        assertEquals(Arrays.asList(t1, t2), actual);
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a batch that is not a multiple of the block size
+        final int width = 37;
+        final int height = 29;
+        final StubBatchTransform t3 = shift(null, 0.35d, true);
+        final StubBatchTransform t2 = shift(t3, 0.25d, true);
+        final StubBatchTransform t1 = shift(t2, 0.15d, true);
+        final TransformResultBatch expected = createBatch(width, height);
+        final TransformResultBatch actual = createBatch(width, height);
+        // WHEN
+        for (final IBatchTransform transform : TransformChain.getTransforms(t1)) {
+            transform.transform(expected, 0, expected.getBatchSize());
+        }
+        final List<IBatchTransform> passes = TransformChain.compile(t1);
+        assertEquals(1, passes.size());
+        passes.get(0).transform(actual, 3, actual.getBatchSize() / 2);
+        passes.get(0).transform(actual, actual.getBatchSize() / 2, actual.getBatchSize());
+        passes.get(0).transform(actual, 0, 3);
+        // THEN
+        assertArrayEquals(expected.getX(), actual.getX(), 0.0d);
+        assertArrayEquals(expected.getY(), actual.getY(), 0.0d);
+        assertArrayEquals(expected.getR(), actual.getR(), 0.0f);
+        assertArrayEquals(expected.getG(), actual.getG(), 0.0f);
+        assertArrayEquals(expected.getB(), actual.getB(), 0.0f);
+        assertArrayEquals(expected.getA(), actual.getA(), 0.0f);
+    }
+
+    @Test
+    public void transform_01() {
+        // GIVEN the whole batch form, which runs the blocks in parallel
+        final int width = 61;
+        final int height = 43;
+        final StubBatchTransform t2 = shift(null, 0.45d, true);
+        final StubBatchTransform t1 = shift(t2, 0.3d, true);
+        final TransformResultBatch expected = createBatch(width, height);
+        final TransformResultBatch actual = createBatch(width, height);
+        // WHEN
+        t1.transform(expected);
+        t2.transform(expected);
+        TransformChain.compile(t1).get(0).transform(actual);
+        // THEN
+        assertArrayEquals(expected.getX(), actual.getX(), 0.0d);
+        assertArrayEquals(expected.getY(), actual.getY(), 0.0d);
+        assertArrayEquals(expected.getR(), actual.getR(), 0.0f);
+        assertArrayEquals(expected.getA(), actual.getA(), 0.0f);
+    }
+
+    @Test
+    public void isIndependentOfColor_00() {
+        // GIVEN
+        final StubBatchTransform t2 = shift(null, 0.2d, true);
+        final StubBatchTransform t1 = shift(t2, 0.1d, true);
+        // WHEN
+        final IBatchTransform actual = TransformChain.compile(t1).get(0);
+        // THEN the flags are those of all of the fused transforms
+        assertFalse(actual.isIndependentOfColor());
+        assertFalse(actual.isColorOnly());
+        assertTrue(actual.isCoordinateOnly());
+    }
+}
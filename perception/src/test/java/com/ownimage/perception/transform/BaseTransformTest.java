@@ -0,0 +1,48 @@
+package com.ownimage.perception.transform;
+
+import com.ownimage.perception.render.ITransformResult;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BaseTransformTest {
+
+    static class Unaudited extends BaseTransform {
+        Unaudited() {
+            super("Unaudited", "unaudited");
+        }
+
+        @Override
+        public void transform(final ITransformResult pRenderResult) {
+        }
+    }
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void getRenderCacheKey_00() {
+        // GIVEN a transform that has not been checked for the render cache
+        final BaseTransform underTest = new Unaudited();
+        // WHEN THEN its output is not cached
+        assertTrue(underTest.getRenderCacheKey().isEmpty());
+    }
+
+    @Test
+    public void getRenderCacheKey_01() {
+        // GIVEN transforms that are cached by the values of their controls
+        final RotateTransform rotate = withProperties(new RotateTransform(null), "rotate.rotate", "0.37");
+        final RotateTransform same = withProperties(new RotateTransform(null), "rotate.rotate", "0.37");
+        final RotateTransform other = withProperties(new RotateTransform(null), "rotate.rotate", "0.38");
+        // WHEN THEN the keys are only equal when the values are
+        assertEquals(rotate.getRenderCacheKey(), same.getRenderCacheKey());
+        assertNotEquals(rotate.getRenderCacheKey(), other.getRenderCacheKey());
+        assertTrue(rotate.getRenderCacheKey().isPresent());
+    }
+}
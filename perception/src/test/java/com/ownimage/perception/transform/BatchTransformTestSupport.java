@@ -0,0 +1,78 @@
+package com.ownimage.perception.transform;
+
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.persist.PersistDB;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.render.BaseBatchEngine;
+import com.ownimage.perception.render.RenderService;
+import com.ownimage.perception.render.TransformResultBatch;
+
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the batch transform of a transform gives exactly what its per sample transform gives.
+ */
+class BatchTransformTestSupport {
+
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 53;
+
+    private BatchTransformTestSupport() {
+    }
+
+    static void setViewFactory() {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * Sets the controls of the transform from the properties, which are pairs of name and value.
+     */
+    static <T extends BaseTransform> T withProperties(final T pTransform, final String... pProperties) {
+        final PersistDB db = new PersistDB();
+        for (int i = 0; i < pProperties.length; i += 2) {
+            db.write(pProperties[i], pProperties[i + 1]);
+        }
+        pTransform.read(db, "");
+        pTransform.setValues();
+        return pTransform;
+    }
+
+    private static TransformResultBatch createBatch() {
+        final RenderService renderService = mock(RenderService.class);
+        final BaseBatchEngine engine = new BaseBatchEngine();
+        when(renderService.getBaseBatchEngine()).thenReturn(engine);
+        final TransformResultBatch batch = new TransformResultBatch(renderService, WIDTH * HEIGHT);
+        batch.initialize(WIDTH, HEIGHT, engine, WIDTH * HEIGHT, 0, 0, WIDTH, HEIGHT);
+        batch.next(1);
+        // a color on every sample so that a transform that leaves it alone is checked as well as one that sets it
+        for (int i = 0; i < batch.getBatchSize(); i++) {
+            batch.getR()[i] = 0.2f;
+            batch.getA()[i] = 0.3f;
+        }
+        return batch;
+    }
+
+    static void assertBatchSameAsPerSample(final ITransform pTransform) {
+        // GIVEN a batch that covers the whole picture
+        final TransformResultBatch expected = createBatch();
+        final TransformResultBatch actual = createBatch();
+        // WHEN
+        for (int i = 0; i < expected.getBatchSize(); i++) {
+            pTransform.transform(expected.getTransformResult(i));
+        }
+        pTransform.transform(actual, 0, actual.getBatchSize());
+        // THEN the batch gives exactly the colors and positions of the per sample transform
+        assertArrayEquals(expected.getR(), actual.getR(), 0.0f);
+        assertArrayEquals(expected.getG(), actual.getG(), 0.0f);
+        assertArrayEquals(expected.getB(), actual.getB(), 0.0f);
+        assertArrayEquals(expected.getA(), actual.getA(), 0.0f);
+        assertArrayEquals(expected.getX(), actual.getX(), 0.0d);
+        assertArrayEquals(expected.getY(), actual.getY(), 0.0d);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ownimage.perception.transform;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.assertBatchSameAsPerSample;
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+
+public class BorderTransformTest {
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a border that is different on each side, so that some samples are in the border
+        final BorderTransform underTest = withProperties(new BorderTransform(null),
+                "border.left", "0.1", "border.right", "0.85", "border.bottom", "0.2", "border.top", "0.95",
+                "border.color", String.valueOf(0x80336699));
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+}
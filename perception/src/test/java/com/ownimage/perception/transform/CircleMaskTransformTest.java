@@ -0,0 +1,61 @@
+package com.ownimage.perception.transform;
+
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import com.ownimage.perception.render.BaseBatchEngine;
+import com.ownimage.perception.render.RenderService;
+import com.ownimage.perception.render.TransformResultBatch;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CircleMaskTransformTest {
+
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 53;
+
+    @BeforeClass
+    public static void setViewFactory() {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+    }
+
+    private static TransformResultBatch createBatch() {
+        final RenderService renderService = mock(RenderService.class);
+        final BaseBatchEngine engine = new BaseBatchEngine();
+        when(renderService.getBaseBatchEngine()).thenReturn(engine);
+        final TransformResultBatch batch = new TransformResultBatch(renderService, WIDTH * HEIGHT);
+        batch.initialize(WIDTH, HEIGHT, engine, WIDTH * HEIGHT, 0, 0, WIDTH, HEIGHT);
+        batch.next(1);
+        // a color behind the mask so that the blend is checked as well as the mask color
+        for (int i = 0; i < batch.getBatchSize(); i++) {
+            batch.getR()[i] = 0.2f;
+            batch.getA()[i] = 0.3f;
+        }
+        return batch;
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN samples that are inside, in the blend zone of, and outside the circle
+        final CircleMaskTransform underTest = new CircleMaskTransform(null);
+        final TransformResultBatch expected = createBatch();
+        final TransformResultBatch actual = createBatch();
+        // WHEN
+        for (int i = 0; i < expected.getBatchSize(); i++) {
+            underTest.transform(expected.getTransformResult(i));
+        }
+        underTest.transform(actual, 0, actual.getBatchSize());
+        // THEN the batch gives exactly the colors of the per sample transform
+        assertArrayEquals(expected.getR(), actual.getR(), 0.0f);
+        assertArrayEquals(expected.getG(), actual.getG(), 0.0f);
+        assertArrayEquals(expected.getB(), actual.getB(), 0.0f);
+        assertArrayEquals(expected.getA(), actual.getA(), 0.0f);
+    }
+}
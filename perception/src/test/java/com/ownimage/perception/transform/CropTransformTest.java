@@ -0,0 +1,24 @@
+package com.ownimage.perception.transform;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.assertBatchSameAsPerSample;
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+
+public class CropTransformTest {
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a crop that is not centered
+        final CropTransform underTest = withProperties(new CropTransform(null),
+                "crop.left", "0.23", "crop.right", "0.71", "crop.bottom", "0.05", "crop.top", "0.62");
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+}
@@ -0,0 +1,24 @@
+package com.ownimage.perception.transform;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.assertBatchSameAsPerSample;
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+
+public class PolarTransformTest {
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a rotation and a color for the corners outside the circle
+        final PolarTransform underTest = withProperties(new PolarTransform(null),
+                "polar.rotate", "0.17", "polar.color", String.valueOf(0x80336699));
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ownimage.perception.transform;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.assertBatchSameAsPerSample;
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+
+public class RotateTransformTest {
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a linear rotation
+        final RotateTransform underTest = withProperties(new RotateTransform(null), "rotate.rotate", "0.37");
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+
+    @Test
+    public void transform_01() {
+        // GIVEN a point rotation that rotates samples out of the picture onto a colored background
+        final RotateTransform underTest = withProperties(new RotateTransform(null),
+                "rotate.point", "true", "rotate.rotate", "0.13", "rotate.OOB", String.valueOf(0x80336699));
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+
+    @Test
+    public void transform_02() {
+        // GIVEN a point rotation that is extended to fill the picture
+        final RotateTransform underTest = withProperties(new RotateTransform(null),
+                "rotate.point", "true", "rotate.extend", "true", "rotate.rotate", "0.21");
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+}
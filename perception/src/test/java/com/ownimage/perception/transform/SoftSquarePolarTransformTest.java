@@ -0,0 +1,24 @@
+package com.ownimage.perception.transform;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static com.ownimage.perception.transform.BatchTransformTestSupport.assertBatchSameAsPerSample;
+import static com.ownimage.perception.transform.BatchTransformTestSupport.withProperties;
+
+public class SoftSquarePolarTransformTest {
+
+    @BeforeClass
+    public static void setViewFactory() {
+        BatchTransformTestSupport.setViewFactory();
+    }
+
+    @Test
+    public void transform_00() {
+        // GIVEN a rotation and a power that are not the defaults
+        final SoftSquarePolarTransform underTest = withProperties(new SoftSquarePolarTransform(null),
+                "softSquarePolar.rotate", "0.31", "softSquarePolar.power", "2.3");
+        // WHEN THEN
+        assertBatchSameAsPerSample(underTest);
+    }
+}
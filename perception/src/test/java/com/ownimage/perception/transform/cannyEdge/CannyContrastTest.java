@@ -0,0 +1,39 @@
+package com.ownimage.perception.transform.cannyEdge;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+public class CannyContrastTest {
+
+    @Test
+    public void normalize_00() {
+        // GIVEN luminances that are already spread evenly from 0 to 255
+        final int[] luminance = {0, 64, 128, 255};
+        // WHEN
+        final int[] actual = CannyContrast.normalize(luminance, new int[luminance.length]);
+        // THEN they are unchanged
+        assertArrayEquals(new int[]{0, 64, 128, 255}, actual);
+    }
+
+    @Test
+    public void normalize_01() {
+        // GIVEN
+        final Random random = new Random(17);
+        final int[] luminance = new int[97 * 61];
+        for (int i = 0; i < luminance.length; i++) {
+            luminance[i] = 60 + random.nextInt(80);
+        }
+        final int[] original = luminance.clone();
+        // WHEN
+        final int[] expected = CannyContrast.normalize(luminance, new int[luminance.length]);
+        assertArrayEquals(original, luminance);
+        final int[] actual = CannyContrast.normalize(luminance, luminance);
+        // THEN normalizing in place gives the same as normalizing into another array
+        assertSame(luminance, actual);
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,137 @@
+package com.ownimage.perception.transform.cannyEdge;
+
+import com.ownimage.framework.control.type.IPictureSource;
+import com.ownimage.framework.control.type.PictureType;
+import com.ownimage.framework.logging.FrameworkLogger;
+import com.ownimage.framework.view.javafx.FXViewFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Optional;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CannyEdgePreviewTest {
+
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 150;
+
+    @BeforeClass
+    public static void setViewFactory() {
+        FrameworkLogger.getInstance().init("logging.properties", "Perception.log");
+        FXViewFactory.setAsViewFactory(false);
+        LogManager.getLogManager().reset();
+    }
+
+    /**
+     * Creates a picture that is dark to the left of x = 100 and light to the right, with a faint vertical line at x = 40.
+     */
+    private static PictureType createPicture() {
+        final PictureType picture = new PictureType(WIDTH, HEIGHT);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                final int grey = (x < 100 ? 40 : 200) + (x == 40 ? 4 : 0);
+                picture.setColor(x, y, new Color(grey, grey, grey));
+            }
+        }
+        return picture;
+    }
+
+    private static boolean isEdgeNear(final boolean[] pEdges, final int pWidth, final int pX, final int pY, final int pTolerance) {
+        for (int x = pX - pTolerance; x <= pX + pTolerance; x++) {
+            if (pEdges[x + pY * pWidth]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void getWidth_00() {
+        // GIVEN
+        final CannyEdgePreview underTest = new CannyEdgePreview();
+        underTest.setSource(createPicture());
+        // THEN each level is half of the one above rounded up
+        assertEquals(WIDTH, underTest.getWidth(0));
+        assertEquals(HEIGHT, underTest.getHeight(0));
+        assertEquals(102, underTest.getWidth(1));
+        assertEquals(75, underTest.getHeight(1));
+        assertEquals(26, underTest.getWidth(3));
+        assertEquals(19, underTest.getHeight(3));
+    }
+
+    @Test
+    public void getEdges_00() {
+        // GIVEN
+        final CannyEdgePreview underTest = new CannyEdgePreview();
+        underTest.setSource(createPicture());
+        // WHEN
+        final boolean[] level0 = underTest.getEdges(0, 2.0f, 13, false, 0.5f, 1.0f);
+        final boolean[] level1 = underTest.getEdges(1, 2.0f, 13, false, 0.5f, 1.0f);
+        // THEN the step is found in the same place on both levels, but the faint line is not
+        assertTrue(isEdgeNear(level0, WIDTH, 100, HEIGHT / 2, 1));
+        assertTrue(isEdgeNear(level1, underTest.getWidth(1), 50, HEIGHT / 4, 1));
+        assertFalse(isEdgeNear(level0, WIDTH, 40, HEIGHT / 2, 3));
+        assertFalse(isEdgeNear(level1, underTest.getWidth(1), 20, HEIGHT / 4, 2));
+    }
+
+    @Test
+    public void getEdges_01() {
+        // GIVEN magnitudes that are kept from an earlier call
+        final CannyEdgePreview underTest = new CannyEdgePreview();
+        underTest.setSource(createPicture());
+        underTest.getEdges(1, 2.0f, 13, false, 0.5f, 1.0f);
+        // WHEN only the thresholds change
+        final boolean[] actual = underTest.getEdges(1, 2.0f, 13, false, 0.01f, 0.02f);
+        // THEN the edges are those that a new preview gives
+        final CannyEdgePreview expected = new CannyEdgePreview();
+        expected.setSource(createPicture());
+        assertArrayEquals(expected.getEdges(1, 2.0f, 13, false, 0.01f, 0.02f), actual);
+        assertTrue(isEdgeNear(actual, underTest.getWidth(1), 20, HEIGHT / 4, 2));
+    }
+
+    @Test
+    public void setSource_00() {
+        // GIVEN a picture that changes down as well as across, and a source that can only be read a pixel at a time
+        final PictureType picture = new PictureType(WIDTH, HEIGHT);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                picture.setColor(x, y, new Color((x * 7 + y * 13) % 256, (x * y) % 256, (y * 5) % 256));
+            }
+        }
+        final IPictureSource pixelSource = new IPictureSource() {
+            @Override
+            public Optional<Color> getColor(final int pX, final int pY) {
+                return picture.getColor(pX, pY);
+            }
+
+            @Override
+            public int getHeight() {
+                return picture.getHeight();
+            }
+
+            @Override
+            public int getWidth() {
+                return picture.getWidth();
+            }
+        };
+        final CannyEdgePreview expected = new CannyEdgePreview();
+        expected.setSource(pixelSource);
+        final CannyEdgePreview actual = new CannyEdgePreview();
+        // WHEN the picture is read a strip of rows at a time
+        actual.setSource(picture);
+        // THEN the edges are the same as those of reading it a pixel at a time
+        assertArrayEquals(expected.getEdges(0, 2.0f, 13, false, 0.05f, 0.1f), actual.getEdges(0, 2.0f, 13, false, 0.05f, 0.1f));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getEdges_02() {
+        // GIVEN no source
+        new CannyEdgePreview().getEdges(0, 2.0f, 13, false, 0.5f, 1.0f);
+    }
+}
@@ -0,0 +1,209 @@
+package com.ownimage.perception.transform.cannyEdge;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CannyGradientsTest {
+
+    /**
+     * The per pixel gradient stage that CannyGradients replaced, on column major arrays, which the magnitudes are checked against.
+     */
+    private static class Reference {
+        private final int mWidth;
+        private final int mHeight;
+        private final int[][] mData;
+        private final int[][] mMagnitude;
+        private final float[][] mXConv;
+        private final float[][] mYConv;
+        private final float[][] mXGradient;
+        private final float[][] mYGradient;
+
+        private Reference(final int[] pData, final int pWidth, final int pHeight) {
+            mWidth = pWidth;
+            mHeight = pHeight;
+            mData = new int[pWidth][pHeight];
+            mMagnitude = new int[pWidth][pHeight];
+            mXConv = new float[pWidth][pHeight];
+            mYConv = new float[pWidth][pHeight];
+            mXGradient = new float[pWidth][pHeight];
+            mYGradient = new float[pWidth][pHeight];
+            for (int x = 0; x < pWidth; x++) {
+                for (int y = 0; y < pHeight; y++) {
+                    mData[x][y] = pData[x + y * pWidth];
+                }
+            }
+        }
+
+        private int cx(final int pX) {
+            return pX < 0 ? 0 : pX > mWidth - 1 ? mWidth - 1 : pX;
+        }
+
+        private static float gaussian(final float x, final float sigma) {
+            return (float) Math.exp(-(x * x) / (2f * sigma * sigma));
+        }
+
+        private static float hypot(final float x, final float y) {
+            return (float) Math.hypot(x, y);
+        }
+
+        private float xg(final int pX, final int pY) {
+            return mXGradient[cx(pX)][pY];
+        }
+
+        private float yg(final int pX, final int pY) {
+            return mYGradient[cx(pX)][pY];
+        }
+
+        private int[] compute(final float kernelRadius, final int kernelWidth) {
+            final float[] kernel = new float[kernelWidth];
+            final float[] diffKernel = new float[kernelWidth];
+            int kwidth;
+            for (kwidth = 0; kwidth < kernelWidth; kwidth++) {
+                final float g1 = gaussian(kwidth, kernelRadius);
+                if (g1 <= 0.005f && kwidth >= 2) {
+                    break;
+                }
+                final float g2 = gaussian(kwidth - 0.5f, kernelRadius);
+                final float g3 = gaussian(kwidth + 0.5f, kernelRadius);
+                kernel[kwidth] = (g1 + g2 + g3) / 3f / (2f * (float) Math.PI * kernelRadius * kernelRadius);
+                diffKernel[kwidth] = g3 - g2;
+            }
+
+            for (int x = 0; x < mWidth; x++) {
+                for (int y = kwidth - 1; y < mHeight - (kwidth - 1); y++) {
+                    float sumX = mData[x][y] * kernel[0];
+                    float sumY = sumX;
+                    for (int i = 1; i < kwidth; i++) {
+                        sumY += kernel[i] * (mData[x][y - i] + mData[x][y + i]);
+                        sumX += kernel[i] * (mData[cx(x - i)][y] + mData[cx(x + i)][y]);
+                    }
+                    mXConv[x][y] = sumX;
+                    mYConv[x][y] = sumY;
+                }
+            }
+            for (int x = 0; x < mWidth; x++) {
+                for (int y = kwidth - 1; y < mHeight - (kwidth - 1); y++) {
+                    float sum = 0f;
+                    for (int i = 1; i < kwidth; i++) {
+                        sum += diffKernel[i] * (mYConv[cx(x - i)][y] - mYConv[cx(x + i)][y]);
+                    }
+                    mXGradient[x][y] = sum;
+                }
+            }
+            for (int x = 0; x < mWidth - 1; x++) {
+                for (int y = kwidth - 1; y < mHeight - (kwidth - 1); y++) {
+                    float sum = 0.0f;
+                    for (int i = 1; i < kwidth; i++) {
+                        sum += diffKernel[i] * (mXConv[x][y - i] - mXConv[x][y + i]);
+                    }
+                    mYGradient[x][y] = sum;
+                }
+            }
+            for (int y = kwidth; y < mHeight - kwidth; y++) {
+                for (int x = 0; x < mWidth - 1; x++) {
+                    final float xGrad = xg(x, y);
+                    final float yGrad = yg(x, y);
+                    final float gradMag = hypot(xGrad, yGrad);
+                    final float nMag = hypot(xg(x, y - 1), yg(x, y - 1));
+                    final float sMag = hypot(xg(x, y + 1), yg(x, y + 1));
+                    final float wMag = hypot(xg(x - 1, y), yg(x - 1, y));
+                    final float eMag = hypot(xg(x + 1, y), yg(x + 1, y));
+                    final float neMag = hypot(xg(x + 1, y - 1), yg(x + 1, y - 1));
+                    final float seMag = hypot(xg(x + 1, y + 1), yg(x + 1, y + 1));
+                    final float swMag = hypot(xg(x - 1, y + 1), yg(x - 1, y + 1));
+                    final float nwMag = hypot(xg(x - 1, y - 1), yg(x - 1, y - 1));
+                    float tmp;
+                    if (xGrad * yGrad <= 0
+                            ? Math.abs(xGrad) >= Math.abs(yGrad)
+                            ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag)
+                            && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag)
+                            : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag)
+                            && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag)
+                            : Math.abs(xGrad) >= Math.abs(yGrad)
+                            ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag)
+                            && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag)
+                            : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag)
+                            && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag)
+                    ) {
+                        mMagnitude[x][y] = gradMag >= 1000F ? 100000 : (int) (100F * gradMag);
+                    } else {
+                        mMagnitude[x][y] = 0;
+                    }
+                }
+            }
+
+            final int[] magnitude = new int[mWidth * mHeight];
+            for (int x = 0; x < mWidth; x++) {
+                for (int y = 0; y < mHeight; y++) {
+                    magnitude[x + y * mWidth] = mMagnitude[x][y];
+                }
+            }
+            return magnitude;
+        }
+    }
+
+    /**
+     * Creates a luminance picture with some shapes that have edges and some noise.
+     */
+    private static int[] createData(final int pWidth, final int pHeight, final long pSeed) {
+        final Random random = new Random(pSeed);
+        final int[] data = new int[pWidth * pHeight];
+        for (int y = 0; y < pHeight; y++) {
+            for (int x = 0; x < pWidth; x++) {
+                final boolean circle = Math.hypot(x - pWidth / 3.0d, y - pHeight / 2.0d) < pHeight / 4.0d;
+                final boolean band = (x + 2 * y) % 40 < 15;
+                data[x + y * pWidth] = (circle ? 200 : 40) + (band ? 30 : 0) + random.nextInt(10);
+            }
+        }
+        return data;
+    }
+
+    private void assertSameAsReference(final int pWidth, final int pHeight, final float pKernelRadius, final int pKernelWidth) {
+        // GIVEN
+        final int[] data = createData(pWidth, pHeight, pWidth * 31 + pHeight);
+        final int[] expected = new Reference(data, pWidth, pHeight).compute(pKernelRadius, pKernelWidth);
+        final int[] actual = new int[pWidth * pHeight];
+        Arrays.fill(actual, -1);
+        final CannyGradients underTest = new CannyGradients(data, pWidth, pHeight, pKernelRadius, pKernelWidth, actual);
+        // WHEN the strips are worked out in parallel
+        IntStream.range(0, underTest.getStripCount()).parallel().forEach(underTest::computeStrip);
+        // THEN
+        assertTrue(Arrays.stream(expected).anyMatch(m -> m > 0));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void computeStrip_00() {
+        assertSameAsReference(150, 101, 2.0f, 16);
+    }
+
+    @Test
+    public void computeStrip_01() {
+        // GIVEN a wide kernel and a height that is not a multiple of the strip height
+        assertSameAsReference(97, 83, 4.5f, 16);
+    }
+
+    @Test
+    public void computeStrip_02() {
+        // GIVEN the narrowest kernel
+        assertSameAsReference(64, 70, 0.5f, 2);
+    }
+
+    @Test
+    public void computeStrip_03() {
+        // GIVEN a picture that is too small for the kernel, so nothing is an edge
+        final int[] actual = new int[20 * 10];
+        Arrays.fill(actual, -1);
+        final CannyGradients underTest = new CannyGradients(createData(20, 10, 1), 20, 10, 4.5f, 16, actual);
+        // WHEN
+        IntStream.range(0, underTest.getStripCount()).forEach(underTest::computeStrip);
+        // THEN
+        assertTrue(Arrays.stream(actual).allMatch(m -> m == 0));
+    }
+}
@@ -0,0 +1,147 @@
+package com.ownimage.perception.transform.cannyEdge;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CannyHysteresisTest {
+
+    /**
+     * The recursive hysteresis that CannyHysteresis replaced, which the edges are checked against.
+     */
+    private static class Reference {
+        private final int[] mMagnitude;
+        private final int[] mData;
+        private final int mWidth;
+        private final int mHeight;
+
+        private Reference(final int[] pMagnitude, final int pWidth, final int pHeight) {
+            mMagnitude = pMagnitude;
+            mData = new int[pWidth * pHeight];
+            mWidth = pWidth;
+            mHeight = pHeight;
+        }
+
+        private void follow(final int x1, final int y1, final int i1, final int threshold) {
+            final int x0 = x1 == 0 ? x1 : x1 - 1;
+            final int x2 = x1 == mWidth - 1 ? x1 : x1 + 1;
+            final int y0 = y1 == 0 ? y1 : y1 - 1;
+            final int y2 = y1 == mHeight - 1 ? y1 : y1 + 1;
+
+            mData[i1] = mMagnitude[i1];
+            for (int x = x0; x <= x2; x++) {
+                for (int y = y0; y <= y2; y++) {
+                    final int i2 = x + y * mWidth;
+                    if ((y != y1 || x != x1) && mData[i2] == 0 && mMagnitude[i2] >= threshold) {
+                        follow(x, y, i2, threshold);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private int[] perform(final int low, final int high) {
+            int offset = 0;
+            for (int y = 0; y < mHeight; y++) {
+                for (int x = 0; x < mWidth; x++) {
+                    if (mData[offset] == 0 && mMagnitude[offset] >= high) {
+                        follow(x, y, offset, low);
+                    }
+                    offset++;
+                }
+            }
+            return mData;
+        }
+    }
+
+    /**
+     * Creates magnitudes with random blobs and lines on a background of noise, so that there are both many small components and
+     * some that cross the strips.
+     */
+    private static int[] createMagnitude(final int pWidth, final int pHeight, final long pSeed) {
+        final Random random = new Random(pSeed);
+        final int[] magnitude = new int[pWidth * pHeight];
+        for (int i = 0; i < magnitude.length; i++) {
+            magnitude[i] = random.nextInt(10) < 3 ? random.nextInt(400) : 0;
+        }
+        for (int line = 0; line < 20; line++) {
+            int x = random.nextInt(pWidth);
+            int y = random.nextInt(pHeight);
+            for (int step = 0; step < 300; step++) {
+                x = Math.max(0, Math.min(pWidth - 1, x + random.nextInt(3) - 1));
+                y = Math.max(0, Math.min(pHeight - 1, y + random.nextInt(3) - 1));
+                magnitude[x + y * pWidth] = 200 + random.nextInt(800);
+            }
+        }
+        return magnitude;
+    }
+
+    private int[] performInParallel(final int[] pMagnitude, final int pWidth, final int pHeight, final int pLow, final int pHigh) {
+        final int[] data = new int[pWidth * pHeight];
+        final CannyHysteresis underTest = new CannyHysteresis(pMagnitude, data, pWidth, pHeight, pLow, pHigh);
+        IntStream.range(0, underTest.getStripCount()).parallel().forEach(underTest::labelStrip);
+        underTest.mergeStrips();
+        IntStream.range(0, underTest.getStripCount()).parallel().forEach(underTest::flattenStrip);
+        underTest.groupComponents();
+        IntStream.range(0, underTest.getBatchCount()).parallel().forEach(underTest::followBatch);
+        return data;
+    }
+
+    private void assertSameAsReference(final int pWidth, final int pHeight, final int pLow, final int pHigh) {
+        // GIVEN
+        final int[] magnitude = createMagnitude(pWidth, pHeight, pWidth * 31 + pHeight);
+        final int[] expected = new Reference(magnitude, pWidth, pHeight).perform(pLow, pHigh);
+        // WHEN
+        final int[] actual = performInParallel(magnitude, pWidth, pHeight, pLow, pHigh);
+        // THEN
+        assertTrue(Arrays.stream(expected).anyMatch(d -> d > 0));
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void perform_00() {
+        assertSameAsReference(300, 250, 100, 300);
+    }
+
+    @Test
+    public void perform_01() {
+        // GIVEN a height that is not a multiple of the strip height and a low threshold that lets the noise join up the lines
+        assertSameAsReference(211, 197, 30, 600);
+    }
+
+    @Test
+    public void perform_02() {
+        // GIVEN a high threshold that is lower than the low threshold
+        assertSameAsReference(150, 140, 250, 150);
+    }
+
+    @Test
+    public void perform_03() {
+        // GIVEN the sequential form
+        final int[] magnitude = createMagnitude(180, 170, 3);
+        final int[] expected = new Reference(magnitude, 180, 170).perform(100, 300);
+        final int[] actual = new int[180 * 170];
+        // WHEN
+        new CannyHysteresis(magnitude, actual, 180, 170, 100, 300).perform();
+        // THEN
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void perform_04() {
+        // GIVEN an edge that covers the whole picture, which is far too long a path to follow by recursion
+        final int width = 1500;
+        final int height = 1500;
+        final int[] magnitude = new int[width * height];
+        Arrays.fill(magnitude, 500);
+        // WHEN
+        final int[] actual = performInParallel(magnitude, width, height, 100, 300);
+        // THEN
+        assertTrue(Arrays.stream(actual).allMatch(d -> d == 500));
+    }
+}
@@ -0,0 +1,152 @@
+package com.ownimage.perception.transform.sampling;
+
+import com.ownimage.framework.control.type.PictureType;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.logging.LogManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TiledRasterTest {
+
+    private PictureType mPicture;
+    private final float[] mRGB = new float[3];
+    private final double[] mWeights = new double[Sampler.WEIGHTS_LENGTH];
+
+    @BeforeClass
+    public static void turnLoggingOff() {
+        LogManager.getLogManager().reset();
+    }
+
+    @Before
+    public void setUp() {
+        // 70 x 40 so that the picture does not fit exactly into the tiles
+        mPicture = new PictureType(70, 40);
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 40; y++) {
+                mPicture.setColor(x, y, new Color(x * 3, y * 5, (x + y) % 256));
+            }
+        }
+    }
+
+    @Test
+    public void getARGB_00() {
+        // GIVEN
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        // WHEN THEN
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 40; y++) {
+                assertEquals(mPicture.getView().getARGB(x, y), underTest.getARGB(x, y));
+            }
+        }
+        assertEquals(underTest.getARGB(0, 5), underTest.getARGB(-3, 5));
+        assertEquals(underTest.getARGB(69, 39), underTest.getARGB(75, 42));
+    }
+
+    @Test
+    public void getARGB_01() {
+        // GIVEN
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), true);
+        // WHEN THEN
+        assertTrue(underTest.contains(-1, 5));
+        assertEquals(underTest.getARGB(69, 5), underTest.getARGB(-1, 5));
+        assertEquals(underTest.getARGB(3, 5), underTest.getARGB(73, 5));
+    }
+
+    @Test
+    public void sample_untiled_00() {
+        // GIVEN a raster that reads the view and one that copies it into tiles
+        final TiledRaster tiled = new TiledRaster(mPicture.getView(), true, true);
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), true, false);
+        final float[] expected = new float[3];
+        // WHEN THEN they give the same samples, including where x wraps round
+        assertFalse(underTest.isTiled());
+        assertTrue(underTest.isFor(mPicture.getView(), true, false));
+        assertFalse(underTest.isFor(mPicture.getView(), true, true));
+        for (final Sampler sampler : Sampler.values()) {
+            for (int x = -5; x < 75; x++) {
+                for (int y = 0; y < 40; y++) {
+                    final double px = (x + 0.3d) / 70.0d;
+                    final double py = (y + 0.7d) / 40.0d;
+                    assertTrue(tiled.sample(sampler, px, py, expected, mWeights));
+                    assertTrue(underTest.sample(sampler, px, py, mRGB, mWeights));
+                    assertEquals(sampler.name(), expected[0], mRGB[0], 0.0f);
+                    assertEquals(sampler.name(), expected[1], mRGB[1], 0.0f);
+                    assertEquals(sampler.name(), expected[2], mRGB[2], 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sample_nearest_00() {
+        // GIVEN
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        // WHEN THEN
+        for (int x = 0; x < 70; x++) {
+            for (int y = 0; y < 40; y++) {
+                final double px = (x + 0.3d) / 70.0d;
+                final double py = (y + 0.7d) / 40.0d;
+                assertTrue(underTest.sample(Sampler.Nearest, px, py, mRGB, mWeights));
+                final float[] expected = mPicture.getColor(px, py).get().getRGBComponents(null);
+                assertEquals(expected[0], mRGB[0], 0.0f);
+                assertEquals(expected[1], mRGB[1], 0.0f);
+                assertEquals(expected[2], mRGB[2], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void sample_outOfBounds_00() {
+        // GIVEN
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        // WHEN THEN
+        for (final Sampler sampler : Sampler.values()) {
+            assertFalse(underTest.sample(sampler, 1.0d, 0.5d, mRGB, mWeights));
+            assertFalse(underTest.sample(sampler, 0.5d, -0.1d, mRGB, mWeights));
+            assertFalse(underTest.sample(sampler, -0.1d, 0.5d, mRGB, mWeights));
+        }
+        assertTrue(new TiledRaster(mPicture.getView(), true).sample(Sampler.Bicubic, 1.2d, 0.5d, mRGB, mWeights));
+    }
+
+    @Test
+    public void sample_pixelCentre_00() {
+        // GIVEN every sampler should give back the pixel itself at the centre of a pixel
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        final Color expected = new Color(30 * 3, 20 * 5, 50);
+        // WHEN THEN
+        for (final Sampler sampler : Sampler.values()) {
+            assertTrue(underTest.sample(sampler, 30.5d / 70.0d, 20.5d / 40.0d, mRGB, mWeights));
+            assertEquals(sampler.name(), expected.getRed() / 255.0f, mRGB[0], 1.0e-5f);
+            assertEquals(sampler.name(), expected.getGreen() / 255.0f, mRGB[1], 1.0e-5f);
+            assertEquals(sampler.name(), expected.getBlue() / 255.0f, mRGB[2], 1.0e-5f);
+        }
+    }
+
+    @Test
+    public void sample_bilinear_00() {
+        // GIVEN halfway between the centres of pixels 30 and 31 the red is the average
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        // WHEN
+        assertTrue(underTest.sample(Sampler.Bilinear, 31.0d / 70.0d, 20.5d / 40.0d, mRGB, mWeights));
+        // THEN
+        assertEquals((30 * 3 + 31 * 3) / 2.0f / 255.0f, mRGB[0], 1.0e-5f);
+        assertEquals(20 * 5 / 255.0f, mRGB[1], 1.0e-5f);
+    }
+
+    @Test
+    public void sample_linearGradient_00() {
+        // GIVEN the red channel is linear in x so all of the filters should reproduce it away from the edges
+        final TiledRaster underTest = new TiledRaster(mPicture.getView(), false);
+        // WHEN THEN
+        for (final Sampler sampler : new Sampler[]{Sampler.Bilinear, Sampler.Bicubic}) {
+            assertTrue(underTest.sample(sampler, 30.75d / 70.0d, 20.5d / 40.0d, mRGB, mWeights));
+            assertEquals(sampler.name(), 30.25d * 3 / 255.0d, mRGB[0], 1.0e-5d);
+        }
+    }
+}